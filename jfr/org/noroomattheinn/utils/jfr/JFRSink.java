@@ -0,0 +1,156 @@
+/*
+ * JFRSink.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.noroomattheinn.utils.FlightEvents;
+
+/**
+ * JFRSink: A FlightEvents.Sink that turns each event into a Java Flight
+ * Recorder event. This class requires Java 11 or later and is built from the
+ * separate jfr source set. FlightEvents installs it automatically when it is
+ * on the classpath and the JVM supports JFR.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class JFRSink implements FlightEvents.Sink {
+
+    // The JFR type of each Kind of event, indexed by ordinal. Checking the
+    // type before creating an event means nothing is allocated when no
+    // recording wants the event.
+    private final EventType[] types = {
+        EventType.getEventType(ApiCall.class),
+        EventType.getEventType(ThrottleWait.class),
+        EventType.getEventType(StreamConnect.class),
+        EventType.getEventType(StreamRead.class),
+        EventType.getEventType(StreamReconnect.class),
+        EventType.getEventType(ExecutorRequest.class)
+    };
+
+    @Override public Object begin(FlightEvents.Kind kind) {
+        if (!types[kind.ordinal()].isEnabled()) return null;
+        BaseEvent e;
+        switch (kind) {
+            case ApiCall: e = new ApiCall(); break;
+            case ThrottleWait: e = new ThrottleWait(); break;
+            case StreamConnect: e = new StreamConnect(); break;
+            case StreamRead: e = new StreamRead(); break;
+            case StreamReconnect: e = new StreamReconnect(); break;
+            default: e = new ExecutorRequest(); break;
+        }
+        e.begin();
+        return e;
+    }
+
+    @Override public void commit(
+            Object event, String name, String detail, long bytes, int status) {
+        BaseEvent e = (BaseEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.fill(name, detail, bytes, status);
+            e.commit();
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * The JFR event types
+ *
+ *----------------------------------------------------------------------------*/
+
+    @Category({"Tesla Client"})
+    @StackTrace(false)
+    static abstract class BaseEvent extends Event {
+        abstract void fill(String name, String detail, long bytes, int status);
+    }
+
+    @Name("org.noroomattheinn.ApiCall")
+    @Label("API Call")
+    @Description("A request made to the Tesla owner API by Tesla.call()")
+    static class ApiCall extends BaseEvent {
+        @Label("Endpoint") String endpoint;
+        @Label("Outcome") String outcome;
+        @Label("Response Size") @DataAmount long bytes;
+        @Label("HTTP Status") int status;
+
+        @Override void fill(String name, String detail, long bytes, int status) {
+            this.endpoint = name; this.outcome = detail;
+            this.bytes = bytes; this.status = status;
+        }
+    }
+
+    @Name("org.noroomattheinn.ThrottleWait")
+    @Label("Throttle Admission")
+    @Description("Time a request spent waiting for admission by RestHelper.Throttle")
+    static class ThrottleWait extends BaseEvent {
+        @Label("Endpoint") String endpoint;
+
+        @Override void fill(String name, String detail, long bytes, int status) {
+            this.endpoint = name;
+        }
+    }
+
+    @Name("org.noroomattheinn.StreamConnect")
+    @Label("Stream Connect")
+    @Description("Establishing a streaming connection, including auth refreshes and retries")
+    static class StreamConnect extends BaseEvent {
+        @Label("Streaming VID") String vid;
+        @Label("Outcome") String outcome;
+
+        @Override void fill(String name, String detail, long bytes, int status) {
+            this.vid = name; this.outcome = detail;
+        }
+    }
+
+    @Name("org.noroomattheinn.StreamRead")
+    @Label("Stream Read")
+    @Description("Waiting for and reading one line of streaming data")
+    static class StreamRead extends BaseEvent {
+        @Label("Streaming VID") String vid;
+        @Label("End Reason") String endReason;
+        @Label("Line Length") @DataAmount long bytes;
+
+        @Override void fill(String name, String detail, long bytes, int status) {
+            this.vid = name; this.endReason = detail; this.bytes = bytes;
+        }
+    }
+
+    @Name("org.noroomattheinn.StreamReconnect")
+    @Label("Stream Reconnect")
+    @Description("Replacing a stream that ended with a new one")
+    static class StreamReconnect extends BaseEvent {
+        @Label("Streaming VID") String vid;
+        @Label("Outcome") String outcome;
+
+        @Override void fill(String name, String detail, long bytes, int status) {
+            this.vid = name; this.outcome = detail;
+        }
+    }
+
+    @Name("org.noroomattheinn.ExecutorRequest")
+    @Label("Executor Request")
+    @Description("Execution of one request by an Executor")
+    static class ExecutorRequest extends BaseEvent {
+        @Label("Request") String request;
+        @Label("Executor") String executor;
+        @Label("Succeeded") boolean succeeded;
+        @Label("Retries") int retries;
+
+        @Override void fill(String name, String detail, long bytes, int status) {
+            this.request = name; this.executor = detail;
+            this.succeeded = bytes > 0; this.retries = status;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * StateBenchmark.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla;
+
+import java.util.concurrent.TimeUnit;
+import org.noroomattheinn.utils.RestHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import us.monoid.json.JSONObject;
+
+/**
+ * StateBenchmark: Measures the cost of turning server responses into state
+ * objects: building each BaseState subclass from representative JSON, parsing
+ * a line of streaming data, and parsing a long option string.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+/*------------------------------------------------------------------------------
+ *
+ * Representative data as returned by the owner API
+ *
+ *----------------------------------------------------------------------------*/
+
+    static final String ChargeJSON =
+        "{\"charging_state\":\"Charging\",\"charge_limit_soc\":90,\"charge_limit_soc_std\":90," +
+        "\"charge_limit_soc_min\":50,\"charge_limit_soc_max\":100,\"charge_to_max_range\":false," +
+        "\"battery_heater_on\":false,\"not_enough_power_to_heat\":false," +
+        "\"max_range_charge_counter\":0,\"fast_charger_present\":false," +
+        "\"fast_charger_type\":\"<invalid>\",\"battery_range\":201.34," +
+        "\"est_battery_range\":180.5,\"ideal_battery_range\":233.1,\"battery_level\":74," +
+        "\"usable_battery_level\":74,\"battery_current\":-0.4,\"charge_energy_added\":12.61," +
+        "\"charge_miles_added_rated\":42.5,\"charge_miles_added_ideal\":49.0," +
+        "\"charger_voltage\":241,\"charger_pilot_current\":40,\"charger_actual_current\":40," +
+        "\"charger_power\":10,\"time_to_full_charge\":1.58,\"trip_charging\":false," +
+        "\"charge_rate\":29.4,\"charge_port_door_open\":true,\"motorized_charge_port\":true," +
+        "\"scheduled_charging_start_time\":null,\"scheduled_charging_pending\":false," +
+        "\"user_charge_enable_request\":null,\"charge_enable_request\":true," +
+        "\"eu_vehicle\":false,\"charger_phases\":1,\"charge_starting_range\":null," +
+        "\"charge_starting_soc\":null}";
+    static final String DriveJSON =
+        "{\"shift_state\":null,\"speed\":null,\"latitude\":37.394012," +
+        "\"longitude\":-122.150307,\"heading\":207,\"gps_as_of\":1413928374}";
+    static final String GUIJSON =
+        "{\"gui_distance_units\":\"mi/hr\",\"gui_temperature_units\":\"F\"," +
+        "\"gui_charge_rate_units\":\"mi/hr\",\"gui_24_hour_time\":false," +
+        "\"gui_range_display\":\"Rated\"}";
+    static final String HVACJSON =
+        "{\"inside_temp\":21.5,\"outside_temp\":17.0,\"driver_temp_setting\":22.0," +
+        "\"passenger_temp_setting\":22.0,\"is_auto_conditioning_on\":false," +
+        "\"is_front_defroster_on\":0,\"is_rear_defroster_on\":false,\"fan_status\":0}";
+    static final String VehicleJSON =
+        "{\"df\":0,\"dr\":0,\"pf\":0,\"pr\":0,\"ft\":0,\"rt\":0,\"car_version\":\"2.2.132\"," +
+        "\"locked\":true,\"sun_roof_installed\":1,\"sun_roof_state\":\"unknown\"," +
+        "\"sun_roof_percent_open\":0,\"dark_rims\":false,\"wheel_type\":\"Base19\"," +
+        "\"has_spoiler\":false,\"roof_color\":\"None\",\"perf_config\":\"Base\"," +
+        "\"remote_start\":false}";
+    static final String StreamLine =
+        "1413928374123,10523.4,65,74,125,207,37.394012,-122.150307,42,D,201,180,207";
+    static final String OptionString =
+        "MS01,RENA,TM00,DRLH,PF00,BT85,PBSB,RFPO,WT19,IBMB,IDPB,TR00,SU01,SC01,TP01," +
+        "AU01,CH01,HP00,PA00,PS00,AD02,X020,X025,X001,X003,X007,X011,X013,X019," +
+        "X024,X027,X028,X031,X037,X040,COUS,PK01,LP01,SP01,CW01,FG01,IX01,YF01," +
+        "DV4W,BC0R,PX00,WTX1";
+
+/*------------------------------------------------------------------------------
+ *
+ * Benchmark State
+ *
+ *----------------------------------------------------------------------------*/
+
+    JSONObject charge = RestHelper.newJSONObject(ChargeJSON);
+    JSONObject drive = RestHelper.newJSONObject(DriveJSON);
+    JSONObject gui = RestHelper.newJSONObject(GUIJSON);
+    JSONObject hvac = RestHelper.newJSONObject(HVACJSON);
+    JSONObject vehicle = RestHelper.newJSONObject(VehicleJSON);
+    JSONObject stream = Streamer.parseLine(StreamLine);
+
+/*------------------------------------------------------------------------------
+ *
+ * The Benchmarks
+ *
+ *----------------------------------------------------------------------------*/
+
+    @Benchmark public ChargeState chargeState() { return new ChargeState(charge); }
+    @Benchmark public DriveState driveState() { return new DriveState(drive); }
+    @Benchmark public GUIState guiState() { return new GUIState(gui); }
+    @Benchmark public HVACState hvacState() { return new HVACState(hvac); }
+    @Benchmark public VehicleState vehicleState() { return new VehicleState(vehicle); }
+    @Benchmark public StreamState streamState() { return new StreamState(stream); }
+
+    @Benchmark public ChargeState chargeStateFromText() {
+        return new ChargeState(RestHelper.newJSONObject(ChargeJSON));
+    }
+
+    @Benchmark public JSONObject streamLine() { return Streamer.parseLine(StreamLine); }
+
+    @Benchmark public StreamState streamLineToState() {
+        return new StreamState(Streamer.parseLine(StreamLine));
+    }
+
+    @Benchmark public Options options() { return new Options(OptionString); }
+
+    @Benchmark public String optionsToString() { return new Options(OptionString).toString(); }
+}
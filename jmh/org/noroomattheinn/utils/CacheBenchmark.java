@@ -0,0 +1,69 @@
+/*
+ * CacheBenchmark.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CacheBenchmark: Compares a ConcurrentCache with a synchronized LRUMap when
+ * four threads look up keys, adding the ones that miss. The key range is a
+ * little larger than the caches so about one lookup in six misses.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class CacheBenchmark {
+    static final int Size = 10000;
+
+    @Param({"10000", "12000"}) int range;
+
+    ConcurrentCache<Integer,Integer> cache = new ConcurrentCache<>(Size);
+    LRUMap<Integer,Integer> lru = new LRUMap<>(Size);
+
+    public CacheBenchmark() {
+        for (int i = 0; i < Size; i++) {
+            cache.put(i, i);
+            lru.put(i, i);
+        }
+    }
+
+    @Benchmark public Integer concurrentCache() {
+        Integer key = ThreadLocalRandom.current().nextInt(range);
+        Integer value = cache.getIfPresent(key);
+        if (value == null) cache.put(key, value = key);
+        return value;
+    }
+
+    @Benchmark public Integer synchronizedLRUMap() {
+        Integer key = ThreadLocalRandom.current().nextInt(range);
+        synchronized (lru) {
+            Integer value = lru.get(key);
+            if (value == null) lru.put(key, value = key);
+            return value;
+        }
+    }
+}
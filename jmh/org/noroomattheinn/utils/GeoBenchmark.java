@@ -0,0 +1,82 @@
+/*
+ * GeoBenchmark.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GeoBenchmark: Compares measuring a 10,000 point path and finding the nearest
+ * of 10,000 points one distance() call at a time with the batch methods.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoBenchmark {
+    static final int N = 10000;
+
+    double[] lats = new double[N], lngs = new double[N], out = new double[N];
+
+    public GeoBenchmark() {
+        Random r = new Random(1);
+        double lat = 37.394012, lng = -122.150307;
+        for (int i = 0; i < N; i++) {
+            lats[i] = lat += (r.nextDouble() - 0.5) * 0.001;
+            lngs[i] = lng += (r.nextDouble() - 0.5) * 0.001;
+        }
+    }
+
+    @Benchmark public double pathOneAtATime() {
+        double total = 0;
+        for (int i = 1; i < N; i++) {
+            total += GeoUtils.distance(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+        }
+        return total;
+    }
+
+    @Benchmark public double pathHaversine() {
+        return GeoUtils.pathDistances(lats, lngs, N, out, GeoUtils.DistanceMode.Haversine);
+    }
+
+    @Benchmark public double pathEquirectangular() {
+        return GeoUtils.pathDistances(lats, lngs, N, out, GeoUtils.DistanceMode.Equirectangular);
+    }
+
+    @Benchmark public int nearestOneAtATime() {
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < N; i++) {
+            double d = GeoUtils.distance(37.4, -122.1, lats[i], lngs[i]);
+            if (d < bestDistance) { bestDistance = d; best = i; }
+        }
+        return best;
+    }
+
+    @Benchmark public int nearest() {
+        return GeoUtils.nearest(37.4, -122.1, lats, lngs, N);
+    }
+
+    @Benchmark public double[] pathBearings() {
+        GeoUtils.pathBearings(lats, lngs, N, out);
+        return out;
+    }
+}
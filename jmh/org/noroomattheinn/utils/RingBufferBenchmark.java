@@ -0,0 +1,61 @@
+/*
+ * RingBufferBenchmark.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RingBufferBenchmark: Compares the Throttle's old request history, a
+ * CircularBuffer of Pairs, with a LongRingBuffer when one thread records
+ * requests while three others check the rate limits.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingBufferBenchmark {
+    static final int Count = 150;
+
+    CircularBuffer<Pair<Long,String>> circular = new CircularBuffer<>(200);
+    LongRingBuffer ring = new LongRingBuffer(200);
+    long now = 0;
+
+    @Benchmark @Group("circular") @GroupThreads(1)
+    public void circularInsert() { circular.insert(new Pair<>(now++, "vehicles")); }
+
+    @Benchmark @Group("circular") @GroupThreads(3)
+    public long circularCheck() {
+        int size = circular.size();
+        if (size < Count) return 0;
+        Pair<Long,String> p = circular.peekAt(size - Count);
+        return (p == null) ? 0 : p.item1;
+    }
+
+    @Benchmark @Group("ring") @GroupThreads(1)
+    public void ringInsert() { ring.insert(now++); }
+
+    @Benchmark @Group("ring") @GroupThreads(3)
+    public long ringCheck() {
+        return (ring.size() < Count) ? 0 : ring.peekBack(Count - 1);
+    }
+}
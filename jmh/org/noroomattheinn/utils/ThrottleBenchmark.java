@@ -0,0 +1,76 @@
+/*
+ * ThrottleBenchmark.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ThrottleBenchmark: Measures RestHelper.Throttle.apply() when many threads
+ * issue requests at once. The rate limits have a zero length window so every
+ * request walks all of the limits without ever being delayed.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThrottleBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedThrottle {
+        RestHelper.Throttle throttle;
+
+        @Setup public void setup() {
+            List<Pair<Integer,Integer>> limits = new ArrayList<>();
+            limits.add(new Pair<>(10, 0));
+            limits.add(new Pair<>(20, 0));
+            limits.add(new Pair<>(150, 0));
+            throttle = new RestHelper.Throttle(limits);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        URLConnection connection;
+
+        @Setup public void setup() throws IOException {
+            // Opening a URLConnection doesn't connect to the server
+            connection = new URL(
+                "https://owner-api.teslamotors.com/api/1/vehicles/1/data_request/charge_state")
+                .openConnection();
+        }
+    }
+
+    @Benchmark @Threads(1)
+    public void applyUncontended(SharedThrottle t, Connection c) {
+        t.throttle.apply(c.connection);
+    }
+
+    @Benchmark @Threads(8)
+    public void applyContended(SharedThrottle t, Connection c) {
+        t.throttle.apply(c.connection);
+    }
+}
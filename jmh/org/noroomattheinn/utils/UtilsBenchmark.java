@@ -0,0 +1,62 @@
+/*
+ * UtilsBenchmark.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UtilsBenchmark: Measures the small utility methods that sit on hot paths:
+ * LongRingBuffer inserts and peeks, GeoUtils.distance, and Utils.round.
+ * RingBufferBenchmark compares LongRingBuffer with the legacy CircularBuffer.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+
+    LongRingBuffer buffer = new LongRingBuffer(200);
+    long counter = 0;
+    int peekIndex = 0;
+
+    double lat1 = 37.394012, lng1 = -122.150307;
+    double lat2 = 37.401524, lng2 = -122.139541;
+    double value = 123.456789;
+
+    public UtilsBenchmark() {
+        for (int i = 0; i < 200; i++) { buffer.insert(i); }
+    }
+
+    @Benchmark public void ringBufferInsert() { buffer.insert(counter++); }
+
+    @Benchmark public long ringBufferPeek() {
+        peekIndex = (peekIndex + 1) % 200;
+        return buffer.peekBack(peekIndex);
+    }
+
+    @Benchmark public long ringBufferPeekLast() { return buffer.peekLast(); }
+
+    @Benchmark public double geoDistance() {
+        return GeoUtils.distance(lat1, lng1, lat2, lng2);
+    }
+
+    @Benchmark public double round() { return Utils.round(value, 2); }
+}
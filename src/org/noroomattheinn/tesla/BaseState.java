@@ -5,6 +5,10 @@
  */
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import org.noroomattheinn.utils.EnumLookup;
 import org.noroomattheinn.utils.RestHelper;
 import us.monoid.json.JSONObject;
 
@@ -22,6 +26,7 @@ public abstract class BaseState {
  *============================================================================*/
 
     protected static final JSONObject emptyJSONObj = RestHelper.newJSONObject("{}");
+    private static final Enum<?>[] NoFields = new Enum<?>[0];
     
     public final long         timestamp;
     public final JSONObject   rawState;
@@ -32,4 +37,158 @@ public abstract class BaseState {
         this.rawState = rawState;
         valid = (rawState.length() > 0);
     }
+    
+    // Used for states decoded by StateCodec, which don't have a raw state
+    BaseState(long timestamp, boolean valid) {
+        this.timestamp = timestamp;
+        this.rawState = emptyJSONObj;
+        this.valid = valid;
+    }
+    
+    /**
+     * Return the fields of this state that differ from an earlier state of
+     * the same kind. Each subclass has a Field enum and bit n of the result
+     * is set if the Field whose ordinal is n has changed. The timestamp and
+     * raw state aren't compared. A subclass that doesn't override this
+     * reports every field as changed.
+     * @param previous  The earlier state
+     * @return          The changed fields. Every field is considered changed
+     *                  if previous is null or a different kind of state.
+     */
+    public long changedFields(BaseState previous) { return -1L; }
+    
+    /**
+     * Return the Field constants of this kind of state, in bit order
+     * @return  The values() of the subclass's Field enum, or an empty array
+     *          if it has none
+     */
+    public Enum<?>[] fields() { return NoFields; }
+    
+    /**
+     * Write the fields whose bits are set in mask to out, in Field order.
+     * Subclasses have a matching constructor that reads them back. See
+     * StateCodec. States defined outside this package have no codec.
+     * @param out   The buffer to write to
+     * @param mask  The fields to write
+     * @throws IllegalArgumentException if this kind of state has no codec
+     */
+    void encodeFields(ByteBuffer out, long mask) {
+        throw new IllegalArgumentException("No codec for " + getClass().getName());
+    }
+    
+/*------------------------------------------------------------------------------
+ *
+ * Methods for subclasses to compare fields
+ * 
+ *----------------------------------------------------------------------------*/
+    
+    protected static long bit(Enum<?> field) { return 1L << field.ordinal(); }
+    
+    protected static long changed(boolean a, boolean b, Enum<?> field) {
+        return (a != b) ? bit(field) : 0;
+    }
+    
+    protected static long changed(long a, long b, Enum<?> field) {
+        return (a != b) ? bit(field) : 0;
+    }
+    
+    // NaN is considered equal to NaN so that missing values don't always differ
+    protected static long changed(double a, double b, Enum<?> field) {
+        return (Double.compare(a, b) != 0) ? bit(field) : 0;
+    }
+    
+    protected static long changed(Object a, Object b, Enum<?> field) {
+        return Objects.equals(a, b) ? 0 : bit(field);
+    }
+    
+/*------------------------------------------------------------------------------
+ *
+ * Methods for subclasses to encode and decode fields. A field is only
+ * written or read if its bit is set in the mask. Otherwise get() returns
+ * the default, which is the value from the state being decoded against.
+ * 
+ *----------------------------------------------------------------------------*/
+    
+    static boolean has(long mask, Enum<?> field) { return (mask & bit(field)) != 0; }
+    
+    static void put(ByteBuffer out, long mask, Enum<?> field, boolean v) {
+        if (has(mask, field)) out.put((byte)(v ? 1 : 0));
+    }
+    
+    static void put(ByteBuffer out, long mask, Enum<?> field, int v) {
+        if (has(mask, field)) out.putInt(v);
+    }
+    
+    static void put(ByteBuffer out, long mask, Enum<?> field, long v) {
+        if (has(mask, field)) out.putLong(v);
+    }
+    
+    static void put(ByteBuffer out, long mask, Enum<?> field, double v) {
+        if (has(mask, field)) out.putDouble(v);
+    }
+    
+    static void put(ByteBuffer out, long mask, Enum<?> field, String v) {
+        if (has(mask, field)) putString(out, v);
+    }
+    
+    // Enums are their ordinal in a byte, so the constants of a stored Enum
+    // may only be added at the end. A null enum is -1.
+    static void put(ByteBuffer out, long mask, Enum<?> field, Enum<?> v) {
+        if (has(mask, field)) out.put((byte)(v == null ? -1 : v.ordinal()));
+    }
+    
+    static boolean get(ByteBuffer in, long mask, Enum<?> field, boolean dflt) {
+        return has(mask, field) ? in.get() != 0 : dflt;
+    }
+    
+    static int get(ByteBuffer in, long mask, Enum<?> field, int dflt) {
+        return has(mask, field) ? in.getInt() : dflt;
+    }
+    
+    static long get(ByteBuffer in, long mask, Enum<?> field, long dflt) {
+        return has(mask, field) ? in.getLong() : dflt;
+    }
+    
+    static double get(ByteBuffer in, long mask, Enum<?> field, double dflt) {
+        return has(mask, field) ? in.getDouble() : dflt;
+    }
+    
+    static String get(ByteBuffer in, long mask, Enum<?> field, String dflt) {
+        return has(mask, field) ? getString(in) : dflt;
+    }
+    
+    // Strings are a short length followed by UTF-8. A null String has length -1.
+    static void putString(ByteBuffer out, String v) {
+        if (v == null) { out.putShort((short)-1); return; }
+        byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("String too long: " + bytes.length + " bytes");
+        out.putShort((short)bytes.length);
+        out.put(bytes);
+    }
+    
+    static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) return null;
+        if (!in.hasArray()) {   // e.g. a mapped file
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String v = new String(in.array(), in.arrayOffset() + in.position(), length,
+                              StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return v;
+    }
+    
+    // An ordinal this code doesn't know, written by a newer build that added
+    // a constant, is read as the Enum's Unknown constant, or dflt if it has none
+    static <E extends Enum<E>> E get(
+            ByteBuffer in, long mask, Enum<?> field, E[] values, E dflt) {
+        if (!has(mask, field)) return dflt;
+        int ordinal = in.get();
+        if (ordinal == -1) return null;
+        if (ordinal >= 0 && ordinal < values.length) return values[ordinal];
+        return EnumLookup.of(values[0].getDeclaringClass()).lookup(EnumLookup.UnknownName, dflt);
+    }
 }
@@ -6,6 +6,7 @@
 
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
 import org.noroomattheinn.utils.Utils;
 import us.monoid.json.JSONObject;
 
@@ -24,8 +25,32 @@ public class ChargeState extends BaseState {
  * Constants and Enums
  * 
  *----------------------------------------------------------------------------*/
+    /**
+     * Status: The charging state. StateCodec stores the ordinals, so add new
+     * values at the end and never remove or reorder any.
+     */
     public enum Status {Complete, Charging, Disconnected, Stopped, NoPower, Starting, Unknown};
     
+    /**
+     * Field: The fields compared by changedFields(), in bit order. StateCodec
+     * stores the ordinals, so add new fields at the end and never remove any.
+     */
+    public enum Field {
+        chargeToMaxRange, maxRangeCharges, range, estimatedRange, idealRange,
+        batteryPercent, batteryCurrent, chargerVoltage, timeToFullCharge,
+        chargeRate, chargePortOpen, scheduledChargePending, scheduledStart,
+        chargerPilotCurrent, chargerActualCurrent, fastChargerPresent,
+        chargerPower, chargingState, batteryHeaterOn, notEnoughPowerToHeat,
+        fastChargerType, usableBatteryLevel, energyAdded, ratedMilesAdded,
+        idealMilesAdded, chargeEnableRequest, chargeStartingRange,
+        chargeStartingSOC, userChargeEnableRequest, chargeLimitSOC,
+        chargeLimitSOCMax, chargeLimitSOCMin, chargeLimitSOCStd,
+        motorizedChargePort, euVehicle, chargerPhases
+    };
+    public static final long AllFields = (1L << Field.values().length) - 1;
+    private static final ChargeState Empty = new ChargeState();
+    private static final Status[] Statuses = Status.values();
+    
 /*------------------------------------------------------------------------------
  *
  * Public State
@@ -129,6 +154,48 @@ public class ChargeState extends BaseState {
         idealMilesAdded = source.optDouble("charge_miles_added_ideal");
         chargeEnableRequest = source.optBoolean("charge_enable_request");
     }
+    
+    // Decode the fields in mask from in. The rest come from base, if any.
+    ChargeState(long timestamp, boolean valid, ByteBuffer in, long mask, ChargeState base) {
+        super(timestamp, valid);
+        ChargeState b = (base != null) ? base : Empty;
+        chargeToMaxRange = get(in, mask, Field.chargeToMaxRange, b.chargeToMaxRange);
+        maxRangeCharges = get(in, mask, Field.maxRangeCharges, b.maxRangeCharges);
+        range = get(in, mask, Field.range, b.range);
+        estimatedRange = get(in, mask, Field.estimatedRange, b.estimatedRange);
+        idealRange = get(in, mask, Field.idealRange, b.idealRange);
+        batteryPercent = get(in, mask, Field.batteryPercent, b.batteryPercent);
+        batteryCurrent = get(in, mask, Field.batteryCurrent, b.batteryCurrent);
+        chargerVoltage = get(in, mask, Field.chargerVoltage, b.chargerVoltage);
+        timeToFullCharge = get(in, mask, Field.timeToFullCharge, b.timeToFullCharge);
+        chargeRate = get(in, mask, Field.chargeRate, b.chargeRate);
+        chargePortOpen = get(in, mask, Field.chargePortOpen, b.chargePortOpen);
+        scheduledChargePending = get(in, mask, Field.scheduledChargePending, b.scheduledChargePending);
+        scheduledStart = get(in, mask, Field.scheduledStart, b.scheduledStart);
+        chargerPilotCurrent = get(in, mask, Field.chargerPilotCurrent, b.chargerPilotCurrent);
+        chargerActualCurrent = get(in, mask, Field.chargerActualCurrent, b.chargerActualCurrent);
+        fastChargerPresent = get(in, mask, Field.fastChargerPresent, b.fastChargerPresent);
+        chargerPower = get(in, mask, Field.chargerPower, b.chargerPower);
+        chargingState = get(in, mask, Field.chargingState, Statuses, b.chargingState);
+        batteryHeaterOn = get(in, mask, Field.batteryHeaterOn, b.batteryHeaterOn);
+        notEnoughPowerToHeat = get(in, mask, Field.notEnoughPowerToHeat, b.notEnoughPowerToHeat);
+        fastChargerType = get(in, mask, Field.fastChargerType, b.fastChargerType);
+        usableBatteryLevel = get(in, mask, Field.usableBatteryLevel, b.usableBatteryLevel);
+        energyAdded = get(in, mask, Field.energyAdded, b.energyAdded);
+        ratedMilesAdded = get(in, mask, Field.ratedMilesAdded, b.ratedMilesAdded);
+        idealMilesAdded = get(in, mask, Field.idealMilesAdded, b.idealMilesAdded);
+        chargeEnableRequest = get(in, mask, Field.chargeEnableRequest, b.chargeEnableRequest);
+        chargeStartingRange = get(in, mask, Field.chargeStartingRange, b.chargeStartingRange);
+        chargeStartingSOC = get(in, mask, Field.chargeStartingSOC, b.chargeStartingSOC);
+        userChargeEnableRequest = get(in, mask, Field.userChargeEnableRequest, b.userChargeEnableRequest);
+        chargeLimitSOC = get(in, mask, Field.chargeLimitSOC, b.chargeLimitSOC);
+        chargeLimitSOCMax = get(in, mask, Field.chargeLimitSOCMax, b.chargeLimitSOCMax);
+        chargeLimitSOCMin = get(in, mask, Field.chargeLimitSOCMin, b.chargeLimitSOCMin);
+        chargeLimitSOCStd = get(in, mask, Field.chargeLimitSOCStd, b.chargeLimitSOCStd);
+        motorizedChargePort = get(in, mask, Field.motorizedChargePort, b.motorizedChargePort);
+        euVehicle = get(in, mask, Field.euVehicle, b.euVehicle);
+        chargerPhases = get(in, mask, Field.chargerPhases, b.chargerPhases);
+    }
 
     public boolean connectedToCharger() {
         return (chargingState != Status.Disconnected && chargingState != Status.Unknown);
@@ -146,6 +213,90 @@ public class ChargeState extends BaseState {
         return String.format("%02d:%02d:%02d", hours, minutes, seconds);
     }
     
+    @Override public long changedFields(BaseState previous) {
+        if (!(previous instanceof ChargeState)) return AllFields;
+        ChargeState p = (ChargeState)previous;
+        long m = 0;
+        m |= changed(chargeToMaxRange, p.chargeToMaxRange, Field.chargeToMaxRange);
+        m |= changed(maxRangeCharges, p.maxRangeCharges, Field.maxRangeCharges);
+        m |= changed(range, p.range, Field.range);
+        m |= changed(estimatedRange, p.estimatedRange, Field.estimatedRange);
+        m |= changed(idealRange, p.idealRange, Field.idealRange);
+        m |= changed(batteryPercent, p.batteryPercent, Field.batteryPercent);
+        m |= changed(batteryCurrent, p.batteryCurrent, Field.batteryCurrent);
+        m |= changed(chargerVoltage, p.chargerVoltage, Field.chargerVoltage);
+        m |= changed(timeToFullCharge, p.timeToFullCharge, Field.timeToFullCharge);
+        m |= changed(chargeRate, p.chargeRate, Field.chargeRate);
+        m |= changed(chargePortOpen, p.chargePortOpen, Field.chargePortOpen);
+        m |= changed(scheduledChargePending, p.scheduledChargePending, Field.scheduledChargePending);
+        m |= changed(scheduledStart, p.scheduledStart, Field.scheduledStart);
+        m |= changed(chargerPilotCurrent, p.chargerPilotCurrent, Field.chargerPilotCurrent);
+        m |= changed(chargerActualCurrent, p.chargerActualCurrent, Field.chargerActualCurrent);
+        m |= changed(fastChargerPresent, p.fastChargerPresent, Field.fastChargerPresent);
+        m |= changed(chargerPower, p.chargerPower, Field.chargerPower);
+        m |= changed(chargingState, p.chargingState, Field.chargingState);
+        m |= changed(batteryHeaterOn, p.batteryHeaterOn, Field.batteryHeaterOn);
+        m |= changed(notEnoughPowerToHeat, p.notEnoughPowerToHeat, Field.notEnoughPowerToHeat);
+        m |= changed(fastChargerType, p.fastChargerType, Field.fastChargerType);
+        m |= changed(usableBatteryLevel, p.usableBatteryLevel, Field.usableBatteryLevel);
+        m |= changed(energyAdded, p.energyAdded, Field.energyAdded);
+        m |= changed(ratedMilesAdded, p.ratedMilesAdded, Field.ratedMilesAdded);
+        m |= changed(idealMilesAdded, p.idealMilesAdded, Field.idealMilesAdded);
+        m |= changed(chargeEnableRequest, p.chargeEnableRequest, Field.chargeEnableRequest);
+        m |= changed(chargeStartingRange, p.chargeStartingRange, Field.chargeStartingRange);
+        m |= changed(chargeStartingSOC, p.chargeStartingSOC, Field.chargeStartingSOC);
+        m |= changed(userChargeEnableRequest, p.userChargeEnableRequest, Field.userChargeEnableRequest);
+        m |= changed(chargeLimitSOC, p.chargeLimitSOC, Field.chargeLimitSOC);
+        m |= changed(chargeLimitSOCMax, p.chargeLimitSOCMax, Field.chargeLimitSOCMax);
+        m |= changed(chargeLimitSOCMin, p.chargeLimitSOCMin, Field.chargeLimitSOCMin);
+        m |= changed(chargeLimitSOCStd, p.chargeLimitSOCStd, Field.chargeLimitSOCStd);
+        m |= changed(motorizedChargePort, p.motorizedChargePort, Field.motorizedChargePort);
+        m |= changed(euVehicle, p.euVehicle, Field.euVehicle);
+        m |= changed(chargerPhases, p.chargerPhases, Field.chargerPhases);
+        return m;
+    }
+    
+    @Override public Enum<?>[] fields() { return Field.values(); }
+    
+    @Override void encodeFields(ByteBuffer out, long mask) {
+        put(out, mask, Field.chargeToMaxRange, chargeToMaxRange);
+        put(out, mask, Field.maxRangeCharges, maxRangeCharges);
+        put(out, mask, Field.range, range);
+        put(out, mask, Field.estimatedRange, estimatedRange);
+        put(out, mask, Field.idealRange, idealRange);
+        put(out, mask, Field.batteryPercent, batteryPercent);
+        put(out, mask, Field.batteryCurrent, batteryCurrent);
+        put(out, mask, Field.chargerVoltage, chargerVoltage);
+        put(out, mask, Field.timeToFullCharge, timeToFullCharge);
+        put(out, mask, Field.chargeRate, chargeRate);
+        put(out, mask, Field.chargePortOpen, chargePortOpen);
+        put(out, mask, Field.scheduledChargePending, scheduledChargePending);
+        put(out, mask, Field.scheduledStart, scheduledStart);
+        put(out, mask, Field.chargerPilotCurrent, chargerPilotCurrent);
+        put(out, mask, Field.chargerActualCurrent, chargerActualCurrent);
+        put(out, mask, Field.fastChargerPresent, fastChargerPresent);
+        put(out, mask, Field.chargerPower, chargerPower);
+        put(out, mask, Field.chargingState, chargingState);
+        put(out, mask, Field.batteryHeaterOn, batteryHeaterOn);
+        put(out, mask, Field.notEnoughPowerToHeat, notEnoughPowerToHeat);
+        put(out, mask, Field.fastChargerType, fastChargerType);
+        put(out, mask, Field.usableBatteryLevel, usableBatteryLevel);
+        put(out, mask, Field.energyAdded, energyAdded);
+        put(out, mask, Field.ratedMilesAdded, ratedMilesAdded);
+        put(out, mask, Field.idealMilesAdded, idealMilesAdded);
+        put(out, mask, Field.chargeEnableRequest, chargeEnableRequest);
+        put(out, mask, Field.chargeStartingRange, chargeStartingRange);
+        put(out, mask, Field.chargeStartingSOC, chargeStartingSOC);
+        put(out, mask, Field.userChargeEnableRequest, userChargeEnableRequest);
+        put(out, mask, Field.chargeLimitSOC, chargeLimitSOC);
+        put(out, mask, Field.chargeLimitSOCMax, chargeLimitSOCMax);
+        put(out, mask, Field.chargeLimitSOCMin, chargeLimitSOCMin);
+        put(out, mask, Field.chargeLimitSOCStd, chargeLimitSOCStd);
+        put(out, mask, Field.motorizedChargePort, motorizedChargePort);
+        put(out, mask, Field.euVehicle, euVehicle);
+        put(out, mask, Field.chargerPhases, chargerPhases);
+    }
+    
     @Override public String toString() {
         return String.format(
             "    Estimated, Ideal, Rated: (%3.1f, %3.1f, %3.1f)\n" +
@@ -6,6 +6,7 @@
 
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
 import java.util.Date;
 import us.monoid.json.JSONObject;
 
@@ -17,6 +18,21 @@ import us.monoid.json.JSONObject;
  */
 
 public class DriveState extends BaseState {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ * 
+ *----------------------------------------------------------------------------*/
+    /**
+     * Field: The fields compared by changedFields(), in bit order. StateCodec
+     * stores the ordinals, so add new fields at the end and never remove any.
+     */
+    public enum Field {
+        latitude, longitude, heading, gpsAsOf, shiftState, speed
+    };
+    public static final long AllFields = (1L << Field.values().length) - 1;
+    private static final DriveState Empty = new DriveState(emptyJSONObj);
+    
 /*------------------------------------------------------------------------------
  *
  * Public State
@@ -45,6 +61,42 @@ public class DriveState extends BaseState {
         speed = source.optString("speed"); 
     }
     
+    // Decode the fields in mask from in. The rest come from base, if any.
+    DriveState(long timestamp, boolean valid, ByteBuffer in, long mask, DriveState base) {
+        super(timestamp, valid);
+        DriveState b = (base != null) ? base : Empty;
+        latitude = get(in, mask, Field.latitude, b.latitude);
+        longitude = get(in, mask, Field.longitude, b.longitude);
+        heading = get(in, mask, Field.heading, b.heading);
+        gpsAsOf = get(in, mask, Field.gpsAsOf, b.gpsAsOf);
+        shiftState = get(in, mask, Field.shiftState, b.shiftState);
+        speed = get(in, mask, Field.speed, b.speed);
+    }
+    
+    @Override public long changedFields(BaseState previous) {
+        if (!(previous instanceof DriveState)) return AllFields;
+        DriveState p = (DriveState)previous;
+        long m = 0;
+        m |= changed(latitude, p.latitude, Field.latitude);
+        m |= changed(longitude, p.longitude, Field.longitude);
+        m |= changed(heading, p.heading, Field.heading);
+        m |= changed(gpsAsOf, p.gpsAsOf, Field.gpsAsOf);
+        m |= changed(shiftState, p.shiftState, Field.shiftState);
+        m |= changed(speed, p.speed, Field.speed);
+        return m;
+    }
+    
+    @Override public Enum<?>[] fields() { return Field.values(); }
+    
+    @Override void encodeFields(ByteBuffer out, long mask) {
+        put(out, mask, Field.latitude, latitude);
+        put(out, mask, Field.longitude, longitude);
+        put(out, mask, Field.heading, heading);
+        put(out, mask, Field.gpsAsOf, gpsAsOf);
+        put(out, mask, Field.shiftState, shiftState);
+        put(out, mask, Field.speed, speed);
+    }
+    
     @Override public String toString() {
         return String.format(
             "    Location: (%3.5f, %3.5f)\n" +
@@ -6,6 +6,7 @@
 
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
 import us.monoid.json.JSONObject;
 
 /**
@@ -16,6 +17,21 @@ import us.monoid.json.JSONObject;
  */
 
 public class GUIState extends BaseState {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ * 
+ *----------------------------------------------------------------------------*/
+    /**
+     * Field: The fields compared by changedFields(), in bit order. StateCodec
+     * stores the ordinals, so add new fields at the end and never remove any.
+     */
+    public enum Field {
+        distanceUnits, temperatureUnits, chargeRateUnits, use24HrTime, rangeDisplay
+    };
+    public static final long AllFields = (1L << Field.values().length) - 1;
+    private static final GUIState Empty = new GUIState(emptyJSONObj);
+    
 /*------------------------------------------------------------------------------
  *
  * Public State
@@ -42,6 +58,39 @@ public class GUIState extends BaseState {
         rangeDisplay = source.optString("gui_range_display"); 
     }
     
+    // Decode the fields in mask from in. The rest come from base, if any.
+    GUIState(long timestamp, boolean valid, ByteBuffer in, long mask, GUIState base) {
+        super(timestamp, valid);
+        GUIState b = (base != null) ? base : Empty;
+        distanceUnits = get(in, mask, Field.distanceUnits, b.distanceUnits);
+        temperatureUnits = get(in, mask, Field.temperatureUnits, b.temperatureUnits);
+        chargeRateUnits = get(in, mask, Field.chargeRateUnits, b.chargeRateUnits);
+        use24HrTime = get(in, mask, Field.use24HrTime, b.use24HrTime);
+        rangeDisplay = get(in, mask, Field.rangeDisplay, b.rangeDisplay);
+    }
+    
+    @Override public long changedFields(BaseState previous) {
+        if (!(previous instanceof GUIState)) return AllFields;
+        GUIState p = (GUIState)previous;
+        long m = 0;
+        m |= changed(distanceUnits, p.distanceUnits, Field.distanceUnits);
+        m |= changed(temperatureUnits, p.temperatureUnits, Field.temperatureUnits);
+        m |= changed(chargeRateUnits, p.chargeRateUnits, Field.chargeRateUnits);
+        m |= changed(use24HrTime, p.use24HrTime, Field.use24HrTime);
+        m |= changed(rangeDisplay, p.rangeDisplay, Field.rangeDisplay);
+        return m;
+    }
+    
+    @Override public Enum<?>[] fields() { return Field.values(); }
+    
+    @Override void encodeFields(ByteBuffer out, long mask) {
+        put(out, mask, Field.distanceUnits, distanceUnits);
+        put(out, mask, Field.temperatureUnits, temperatureUnits);
+        put(out, mask, Field.chargeRateUnits, chargeRateUnits);
+        put(out, mask, Field.use24HrTime, use24HrTime);
+        put(out, mask, Field.rangeDisplay, rangeDisplay);
+    }
+    
     @Override public String toString() {
         return String.format(
             "    Distance Units: %s\n" +
@@ -6,6 +6,7 @@
 
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
 import org.noroomattheinn.utils.Utils;
 import us.monoid.json.JSONObject;
 
@@ -16,6 +17,22 @@ import us.monoid.json.JSONObject;
  */
 
 public class HVACState extends BaseState {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ * 
+ *----------------------------------------------------------------------------*/
+    /**
+     * Field: The fields compared by changedFields(), in bit order. StateCodec
+     * stores the ordinals, so add new fields at the end and never remove any.
+     */
+    public enum Field {
+        insideTemp, outsideTemp, driverTemp, passengerTemp, autoConditioning,
+        isFrontDefrosterOn, isRearDefrosterOn, fanStatus
+    };
+    public static final long AllFields = (1L << Field.values().length) - 1;
+    private static final HVACState Empty = new HVACState(emptyJSONObj);
+    
 /*------------------------------------------------------------------------------
  *
  * Public State
@@ -48,6 +65,48 @@ public class HVACState extends BaseState {
         fanStatus = source.optInt("fan_status"); 
     }
     
+    // Decode the fields in mask from in. The rest come from base, if any.
+    HVACState(long timestamp, boolean valid, ByteBuffer in, long mask, HVACState base) {
+        super(timestamp, valid);
+        HVACState b = (base != null) ? base : Empty;
+        insideTemp = get(in, mask, Field.insideTemp, b.insideTemp);
+        outsideTemp = get(in, mask, Field.outsideTemp, b.outsideTemp);
+        driverTemp = get(in, mask, Field.driverTemp, b.driverTemp);
+        passengerTemp = get(in, mask, Field.passengerTemp, b.passengerTemp);
+        autoConditioning = get(in, mask, Field.autoConditioning, b.autoConditioning);
+        isFrontDefrosterOn = get(in, mask, Field.isFrontDefrosterOn, b.isFrontDefrosterOn);
+        isRearDefrosterOn = get(in, mask, Field.isRearDefrosterOn, b.isRearDefrosterOn);
+        fanStatus = get(in, mask, Field.fanStatus, b.fanStatus);
+    }
+    
+    @Override public long changedFields(BaseState previous) {
+        if (!(previous instanceof HVACState)) return AllFields;
+        HVACState p = (HVACState)previous;
+        long m = 0;
+        m |= changed(insideTemp, p.insideTemp, Field.insideTemp);
+        m |= changed(outsideTemp, p.outsideTemp, Field.outsideTemp);
+        m |= changed(driverTemp, p.driverTemp, Field.driverTemp);
+        m |= changed(passengerTemp, p.passengerTemp, Field.passengerTemp);
+        m |= changed(autoConditioning, p.autoConditioning, Field.autoConditioning);
+        m |= changed(isFrontDefrosterOn, p.isFrontDefrosterOn, Field.isFrontDefrosterOn);
+        m |= changed(isRearDefrosterOn, p.isRearDefrosterOn, Field.isRearDefrosterOn);
+        m |= changed(fanStatus, p.fanStatus, Field.fanStatus);
+        return m;
+    }
+    
+    @Override public Enum<?>[] fields() { return Field.values(); }
+    
+    @Override void encodeFields(ByteBuffer out, long mask) {
+        put(out, mask, Field.insideTemp, insideTemp);
+        put(out, mask, Field.outsideTemp, outsideTemp);
+        put(out, mask, Field.driverTemp, driverTemp);
+        put(out, mask, Field.passengerTemp, passengerTemp);
+        put(out, mask, Field.autoConditioning, autoConditioning);
+        put(out, mask, Field.isFrontDefrosterOn, isFrontDefrosterOn);
+        put(out, mask, Field.isRearDefrosterOn, isRearDefrosterOn);
+        put(out, mask, Field.fanStatus, fanStatus);
+    }
+    
     @Override public String toString() {
         return String.format(
             "    Inside Temp: %3.0f\n" +
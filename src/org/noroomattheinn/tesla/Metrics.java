@@ -0,0 +1,521 @@
+/*
+ * Metrics.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import org.noroomattheinn.utils.RestHelper;
+
+/**
+ * Metrics: A registry of counters, gauges, and histograms describing the
+ * traffic between this library and Tesla's servers. Metrics are identified by
+ * a name and an optional set of labels such as the endpoint (charge_state,
+ * honk_horn, ...) and the outcome of a request.
+ * <P>
+ * The registry is fed by Tesla.call(), the RestHelper.Throttle used by all
+ * Tesla connections, and the Streamer. Its contents can be published by adding
+ * one or more Exporters (see MetricsExporters for JMX, Prometheus, and log
+ * based implementations).
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class Metrics {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public enum Type {counter, gauge, histogram};
+    public enum Outcome {ok, http_error, io_error, bad_response};
+
+    public static final String ApiRequests = "tesla_api_requests_total";
+    public static final String ApiStatus = "tesla_api_status_total";
+    public static final String ApiLatency = "tesla_api_latency_ms";
+    public static final String ApiResponseBytes = "tesla_api_response_bytes";
+    public static final String ApiInFlight = "tesla_api_in_flight";
+    public static final String ThrottleAdmissions = "tesla_throttle_admissions_total";
+    public static final String ThrottleWait = "tesla_throttle_wait_ms";
+    public static final String StreamConnects = "tesla_stream_connects_total";
+    public static final String StreamActive = "tesla_stream_active";
+    public static final String StreamSamples = "tesla_stream_samples_total";
+    public static final String StreamEnded = "tesla_stream_ended_total";
+    public static final String StreamReadLatency = "tesla_stream_read_ms";
+
+    public static final long[] LatencyBuckets = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+    public static final long[] SizeBuckets = {
+        64, 256, 1024, 4096, 16384, 65536, 262144, 1048576};
+
+    private static final Pattern StatusPattern = Pattern.compile(": \\[(\\d{3})\\]");
+    private static final Metrics registry = new Metrics();
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final ConcurrentHashMap<String,Metric> metrics;
+    private final List<Exporter> exporters;
+    private final ConcurrentHashMap<String,EndpointMetrics> endpoints;
+    private volatile Gauge inFlight;
+    private volatile Counter streamSamples;
+    private volatile Histogram streamReadLatency;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Return the registry shared by all Tesla, Vehicle, and Streamer objects
+     * @return  The shared Metrics registry
+     */
+    public static Metrics get() { return registry; }
+
+    public Metrics() {
+        metrics = new ConcurrentHashMap<>();
+        exporters = new CopyOnWriteArrayList<>();
+        endpoints = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Return the Counter with the given name and labels, creating it if needed.
+     * @param name      The name of the metric
+     * @param labels    Interspersed label names and values: k,v,k,v,...
+     * @return          The Counter
+     */
+    public Counter counter(String name, String... labels) {
+        return (Counter)lookup(Type.counter, name, labels, null);
+    }
+
+    /**
+     * Return the Gauge with the given name and labels, creating it if needed.
+     * @param name      The name of the metric
+     * @param labels    Interspersed label names and values: k,v,k,v,...
+     * @return          The Gauge
+     */
+    public Gauge gauge(String name, String... labels) {
+        return (Gauge)lookup(Type.gauge, name, labels, null);
+    }
+
+    /**
+     * Return the Histogram with the given name and labels, creating it with
+     * the supplied bucket bounds if needed.
+     * @param name      The name of the metric
+     * @param bounds    The (inclusive) upper bounds of the buckets in
+     *                  ascending order. An overflow bucket is always added.
+     * @param labels    Interspersed label names and values: k,v,k,v,...
+     * @return          The Histogram
+     */
+    public Histogram histogram(String name, long[] bounds, String... labels) {
+        return (Histogram)lookup(Type.histogram, name, labels, bounds);
+    }
+
+    /**
+     * Return all of the metrics in the registry ordered by name and labels
+     * so that metrics with the same name are adjacent.
+     * @return  A snapshot of the list of metrics
+     */
+    public List<Metric> all() {
+        List<Metric> list = new ArrayList<>(metrics.values());
+        Collections.sort(list, new Comparator<Metric>() {
+            @Override public int compare(Metric a, Metric b) {
+                return a.key.compareTo(b.key);
+            }
+        });
+        return list;
+    }
+
+    public void addExporter(Exporter e) {
+        e.start(this);
+        exporters.add(e);
+    }
+
+    public void removeExporter(Exporter e) {
+        if (exporters.remove(e)) e.stop();
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Methods used by the rest of the library to record activity
+ *
+ *----------------------------------------------------------------------------*/
+
+    void callStarted() { inFlight().add(1); }
+
+    void callCompleted(
+            String endpoint, Outcome outcome, int status, long millis, long bytes) {
+        EndpointMetrics em = endpointMetrics(endpoint);
+        inFlight().add(-1);
+        em.requests(outcome).inc();
+        em.latency(outcome).record(millis);
+        if (status > 0) {
+            em.status(status).inc();
+        }
+        if (bytes >= 0) {
+            em.responseBytes().record(bytes);
+        }
+    }
+
+    void streamConnected(String outcome) {
+        counter(StreamConnects, "outcome", outcome).inc();
+        if (outcome.equals(Outcome.ok.name())) gauge(StreamActive).add(1);
+    }
+
+    void streamSample(long readMillis) {
+        Counter c = streamSamples;
+        if (c == null) streamSamples = c = counter(StreamSamples);
+        Histogram h = streamReadLatency;
+        if (h == null) streamReadLatency = h = histogram(StreamReadLatency, LatencyBuckets);
+        c.inc();
+        h.record(readMillis);
+    }
+
+    void streamEnded(String reason) {
+        counter(StreamEnded, "reason", reason).inc();
+        gauge(StreamActive).add(-1);
+    }
+
+    /**
+     * A Throttle.Listener which records throttle admissions and waits
+     */
+    final RestHelper.Throttle.Listener throttleListener = new RestHelper.Throttle.Listener() {
+        @Override public void admitted(String endpoint, long waitMillis) {
+            EndpointMetrics em = endpointMetrics(endpointName(endpoint));
+            em.admissions(waitMillis > 0).inc();
+            em.throttleWait().record(waitMillis);
+        }
+    };
+
+    /**
+     * Turn a full endpoint URL into the short name used as a metric label.
+     * For example, ".../vehicles/123/data_request/charge_state" becomes
+     * "charge_state".
+     * @param url   The endpoint URL
+     * @return      The last path component of the URL
+     */
+    static String endpointName(String url) {
+        String path = StringUtils.substringBefore(url, "?");
+        path = StringUtils.stripEnd(path, "/");
+        return StringUtils.substringAfterLast(path, "/");
+    }
+
+    /**
+     * Extract the HTTP status code from the text of an exception thrown by
+     * Resty. Resty reports errors as "Error while reading from GET: [401] ..."
+     * @param error The exception text
+     * @return      The status code or 0 if none was found
+     */
+    static int statusFromError(String error) {
+        Matcher m = StatusPattern.matcher(error);
+        return m.find() ? Integer.parseInt(m.group(1)) : 0;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * The metric types
+ *
+ *----------------------------------------------------------------------------*/
+
+    /**
+     * Exporter: Publishes the contents of a registry. An Exporter is started
+     * when it is added to a registry and stopped when it is removed.
+     */
+    public interface Exporter {
+        void start(Metrics registry);
+        void stop();
+    }
+
+    public static abstract class Metric {
+        public final String   name;
+        public final String[] labels;
+        public final String   key;
+
+        Metric(String name, String[] labels) {
+            this.name = name;
+            this.labels = labels;
+            this.key = keyFor(name, labels);
+        }
+
+        public abstract Type type();
+
+        /**
+         * Render the labels in Prometheus style, e.g. {endpoint="honk_horn"}
+         * @param extra Additional interspersed label names and values
+         * @return      The rendered labels or "" if there are none
+         */
+        public String labelString(String... extra) {
+            if (labels.length == 0 && extra.length == 0) return "";
+            StringBuilder sb = new StringBuilder("{");
+            appendLabels(sb, labels);
+            if (labels.length != 0 && extra.length != 0) sb.append(',');
+            appendLabels(sb, extra);
+            return sb.append('}').toString();
+        }
+
+        private static void appendLabels(StringBuilder sb, String[] kv) {
+            for (int i = 0; i < kv.length; i += 2) {
+                if (i != 0) sb.append(',');
+                sb.append(kv[i]).append("=\"");
+                appendEscaped(sb, kv[i+1]);
+                sb.append('"');
+            }
+        }
+
+        // The exposition format requires \, ", and newline to be escaped
+        // within label values
+        private static void appendEscaped(StringBuilder sb, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\': sb.append("\\\\"); break;
+                    case '"': sb.append("\\\""); break;
+                    case '\n': sb.append("\\n"); break;
+                    default: sb.append(c); break;
+                }
+            }
+        }
+    }
+
+    public static class Counter extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name, String[] labels) { super(name, labels); }
+
+        @Override public Type type() { return Type.counter; }
+        public void inc() { value.incrementAndGet(); }
+        public void add(long n) { value.addAndGet(n); }
+        public long get() { return value.get(); }
+    }
+
+    public static class Gauge extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        Gauge(String name, String[] labels) { super(name, labels); }
+
+        @Override public Type type() { return Type.gauge; }
+        public void set(long v) { value.set(v); }
+        public void add(long n) { value.addAndGet(n); }
+        public long get() { return value.get(); }
+    }
+
+    /**
+     * Histogram: Counts recorded values in a fixed set of buckets. Percentiles
+     * are estimated as the upper bound of the bucket in which they fall.
+     */
+    public static class Histogram extends Metric {
+        private final long[]         bounds;
+        private final AtomicLongArray counts;
+        private final AtomicLong     count = new AtomicLong();
+        private final AtomicLong     sum = new AtomicLong();
+        private final AtomicLong     max = new AtomicLong();
+
+        Histogram(String name, String[] labels, long[] bounds) {
+            super(name, labels);
+            this.bounds = bounds;
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        @Override public Type type() { return Type.histogram; }
+
+        public void record(long v) {
+            int i = 0;
+            while (i < bounds.length && v > bounds[i]) { i++; }
+            counts.incrementAndGet(i);
+            count.incrementAndGet();
+            sum.addAndGet(v);
+            long m;
+            while (v > (m = max.get()) && !max.compareAndSet(m, v)) { }
+        }
+
+        public long count() { return count.get(); }
+        public long sum() { return sum.get(); }
+        public long max() { return max.get(); }
+        public double mean() {
+            long n = count.get();
+            return n == 0 ? 0 : ((double)sum.get()) / n;
+        }
+        public int nBuckets() { return counts.length(); }
+
+        /**
+         * Return the upper bound of the given bucket
+         * @param i The bucket index
+         * @return  The upper bound or Long.MAX_VALUE for the overflow bucket
+         */
+        public long bound(int i) { return i < bounds.length ? bounds[i] : Long.MAX_VALUE; }
+        public long bucketCount(int i) { return counts.get(i); }
+
+        /**
+         * Estimate the value at the given quantile
+         * @param q The quantile in the range [0.0, 1.0]
+         * @return  The upper bound of the bucket containing the quantile,
+         *          or the maximum recorded value if it is in the overflow
+         *          bucket or is smaller than that bound.
+         */
+        public long percentile(double q) {
+            long n = count.get();
+            if (n == 0) return 0;
+            long target = (long)Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= target) return Math.min(bound(i), max.get());
+            }
+            return max.get();
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private Metric lookup(Type type, String name, String[] labels, long[] bounds) {
+        String key = keyFor(name, labels);
+        Metric m = metrics.get(key);
+        if (m == null) {
+            switch (type) {
+                case counter: m = new Counter(name, labels); break;
+                case gauge: m = new Gauge(name, labels); break;
+                default: m = new Histogram(name, labels, bounds); break;
+            }
+            Metric existing = metrics.putIfAbsent(key, m);
+            if (existing != null) m = existing;
+        }
+        if (m.type() != type) {
+            throw new IllegalArgumentException(key + " is a " + m.type() + ", not a " + type);
+        }
+        return m;
+    }
+
+    private Gauge inFlight() {
+        Gauge g = inFlight;
+        if (g == null) inFlight = g = gauge(ApiInFlight);
+        return g;
+    }
+
+    private EndpointMetrics endpointMetrics(String endpoint) {
+        EndpointMetrics em = endpoints.get(endpoint);
+        if (em == null) {
+            em = new EndpointMetrics(endpoint);
+            EndpointMetrics existing = endpoints.putIfAbsent(endpoint, em);
+            if (existing != null) em = existing;
+        }
+        return em;
+    }
+
+    /**
+     * EndpointMetrics: The metrics recorded for each call to an endpoint.
+     * They are looked up in the registry the first time they are used and
+     * held here afterward so that recording a call doesn't have to build
+     * a registry key. A slot may be filled twice by racing threads, but
+     * both get the same metric from the registry.
+     */
+    private class EndpointMetrics {
+        private static final int MaxStatus = 600;
+
+        private final String endpoint;
+        private final AtomicReferenceArray<Metric> requests, latency;
+        private final AtomicReferenceArray<Metric> status, admissions;
+        private volatile Histogram responseBytes, throttleWait;
+
+        EndpointMetrics(String endpoint) {
+            int nOutcomes = Outcome.values().length;
+            this.endpoint = endpoint;
+            this.requests = new AtomicReferenceArray<>(nOutcomes);
+            this.latency = new AtomicReferenceArray<>(nOutcomes);
+            this.status = new AtomicReferenceArray<>(MaxStatus);
+            this.admissions = new AtomicReferenceArray<>(2);
+        }
+
+        Counter requests(Outcome o) {
+            Metric m = requests.get(o.ordinal());
+            if (m == null) {
+                m = counter(ApiRequests, "endpoint", endpoint, "outcome", o.name());
+                requests.set(o.ordinal(), m);
+            }
+            return (Counter)m;
+        }
+
+        Histogram latency(Outcome o) {
+            Metric m = latency.get(o.ordinal());
+            if (m == null) {
+                m = histogram(ApiLatency, LatencyBuckets,
+                        "endpoint", endpoint, "outcome", o.name());
+                latency.set(o.ordinal(), m);
+            }
+            return (Histogram)m;
+        }
+
+        Counter status(int code) {
+            if (code >= MaxStatus) {
+                return counter(ApiStatus, "endpoint", endpoint, "status", String.valueOf(code));
+            }
+            Metric m = status.get(code);
+            if (m == null) {
+                m = counter(ApiStatus, "endpoint", endpoint, "status", String.valueOf(code));
+                status.set(code, m);
+            }
+            return (Counter)m;
+        }
+
+        Counter admissions(boolean delayed) {
+            int i = delayed ? 1 : 0;
+            Metric m = admissions.get(i);
+            if (m == null) {
+                m = counter(ThrottleAdmissions,
+                        "endpoint", endpoint, "delayed", String.valueOf(delayed));
+                admissions.set(i, m);
+            }
+            return (Counter)m;
+        }
+
+        Histogram responseBytes() {
+            Histogram h = responseBytes;
+            if (h == null) {
+                responseBytes = h = histogram(
+                        ApiResponseBytes, SizeBuckets, "endpoint", endpoint);
+            }
+            return h;
+        }
+
+        Histogram throttleWait() {
+            Histogram h = throttleWait;
+            if (h == null) {
+                throttleWait = h = histogram(
+                        ThrottleWait, LatencyBuckets, "endpoint", endpoint);
+            }
+            return h;
+        }
+    }
+
+    private static String keyFor(String name, String[] labels) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("Mismatched label names and values");
+        if (labels.length == 0) return name;
+        StringBuilder sb = new StringBuilder(name);
+        for (int i = 0; i < labels.length; i += 2) {
+            sb.append(i == 0 ? '{' : ',').append(labels[i]).append('=').append(labels[i+1]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * MetricsExporters.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * MetricsExporters: Implementations of Metrics.Exporter that publish the
+ * registry via JMX, as a Prometheus text endpoint, or as periodic snapshots
+ * written to a Logger.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class MetricsExporters {
+
+    /**
+     * Render the registry in the Prometheus text exposition format
+     * @param registry  The registry to render
+     * @return          The text representation
+     */
+    public static String toPrometheusText(Metrics registry) {
+        StringBuilder sb = new StringBuilder();
+        String lastName = null;
+        for (Metrics.Metric m : registry.all()) {
+            if (!m.name.equals(lastName)) {
+                sb.append("# TYPE ").append(m.name).append(' ').append(m.type()).append('\n');
+                lastName = m.name;
+            }
+            switch (m.type()) {
+                case counter:
+                    line(sb, m.name, m.labelString(), ((Metrics.Counter)m).get());
+                    break;
+                case gauge:
+                    line(sb, m.name, m.labelString(), ((Metrics.Gauge)m).get());
+                    break;
+                case histogram:
+                    Metrics.Histogram h = (Metrics.Histogram)m;
+                    long cumulative = 0;
+                    for (int i = 0; i < h.nBuckets(); i++) {
+                        cumulative += h.bucketCount(i);
+                        long bound = h.bound(i);
+                        String le = (bound == Long.MAX_VALUE) ? "+Inf" : String.valueOf(bound);
+                        line(sb, m.name + "_bucket", m.labelString("le", le), cumulative);
+                    }
+                    line(sb, m.name + "_sum", m.labelString(), h.sum());
+                    line(sb, m.name + "_count", m.labelString(), h.count());
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Render a compact, human readable snapshot of the registry
+     * @param registry  The registry to render
+     * @return          The text representation
+     */
+    public static String toSnapshotText(Metrics registry) {
+        StringBuilder sb = new StringBuilder("Tesla API Metrics:\n");
+        for (Metrics.Metric m : registry.all()) {
+            sb.append("    ").append(m.key).append(": ");
+            switch (m.type()) {
+                case counter: sb.append(((Metrics.Counter)m).get()); break;
+                case gauge: sb.append(((Metrics.Gauge)m).get()); break;
+                case histogram:
+                    Metrics.Histogram h = (Metrics.Histogram)m;
+                    sb.append(String.format(Locale.US,
+                            "count=%d, mean=%.1f, p50=%d, p99=%d, max=%d",
+                            h.count(), h.mean(), h.percentile(0.5),
+                            h.percentile(0.99), h.max()));
+                    break;
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Prometheus: Serve the registry over HTTP in the Prometheus text format
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static class Prometheus implements Metrics.Exporter {
+        private final InetSocketAddress address;
+        private final String path;
+        private HttpServer server;
+
+        /**
+         * Create an exporter which will serve http://host:port/metrics
+         * @param port  The port on which to listen
+         */
+        public Prometheus(int port) { this(new InetSocketAddress(port), "/metrics"); }
+
+        public Prometheus(InetSocketAddress address, String path) {
+            this.address = address;
+            this.path = path;
+        }
+
+        @Override public void start(final Metrics registry) {
+            try {
+                server = HttpServer.create(address, 0);
+                server.createContext(path, new HttpHandler() {
+                    @Override public void handle(HttpExchange exchange) throws IOException {
+                        byte[] body = toPrometheusText(registry).getBytes(StandardCharsets.UTF_8);
+                        exchange.getResponseHeaders().set(
+                                "Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                        exchange.sendResponseHeaders(200, body.length);
+                        try (OutputStream os = exchange.getResponseBody()) { os.write(body); }
+                    }
+                });
+                server.start();
+            } catch (IOException ex) {
+                Tesla.logger.warning("Unable to start Prometheus exporter: " + ex);
+                server = null;
+            }
+        }
+
+        @Override public void stop() {
+            if (server != null) { server.stop(0); server = null; }
+        }
+
+        public int getPort() {
+            return (server == null) ? -1 : server.getAddress().getPort();
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * LogSnapshot: Periodically write a snapshot of the registry to a Logger
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static class LogSnapshot implements Metrics.Exporter {
+        private final Logger logger;
+        private final Level level;
+        private final long periodInMillis;
+        private Timer timer;
+
+        public LogSnapshot(long periodInMillis) {
+            this(Tesla.logger, Level.INFO, periodInMillis);
+        }
+
+        public LogSnapshot(Logger logger, Level level, long periodInMillis) {
+            this.logger = logger;
+            this.level = level;
+            this.periodInMillis = periodInMillis;
+        }
+
+        @Override public void start(final Metrics registry) {
+            timer = new Timer("Metrics Log Snapshot", true);
+            timer.schedule(new TimerTask() {
+                @Override public void run() {
+                    if (logger.isLoggable(level)) logger.log(level, toSnapshotText(registry));
+                }
+            }, periodInMillis, periodInMillis);
+        }
+
+        @Override public void stop() {
+            if (timer != null) { timer.cancel(); timer = null; }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * JMX: Publish the registry as a single DynamicMBean. Counters and gauges
+ * appear as attributes named by their key. Histograms appear as a set of
+ * attributes with the suffixes .count, .mean, .p50, .p99, and .max
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static class JMX implements Metrics.Exporter, DynamicMBean {
+        public static final String DefaultName = "org.noroomattheinn.tesla:type=Metrics";
+        private static final String[] HistogramStats = {"count", "mean", "p50", "p99", "max"};
+
+        private final String objectName;
+        private Metrics registry;
+        private ObjectName registeredAs;
+
+        public JMX() { this(DefaultName); }
+
+        public JMX(String objectName) { this.objectName = objectName; }
+
+        @Override public void start(Metrics registry) {
+            this.registry = registry;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                registeredAs = server.registerMBean(this, new ObjectName(objectName)).getObjectName();
+            } catch (JMException ex) {
+                Tesla.logger.warning("Unable to register metrics MBean: " + ex);
+            }
+        }
+
+        @Override public void stop() {
+            if (registeredAs == null) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+            } catch (JMException ex) {
+                Tesla.logger.warning("Unable to unregister metrics MBean: " + ex);
+            }
+            registeredAs = null;
+        }
+
+        @Override public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (Metrics.Metric m : registry.all()) {
+                if (m.type() != Metrics.Type.histogram) {
+                    if (m.key.equals(attribute)) return valueOf(m);
+                } else if (attribute.startsWith(m.key + ".")) {
+                    String stat = StringUtils.substringAfterLast(attribute, ".");
+                    Metrics.Histogram h = (Metrics.Histogram)m;
+                    switch (stat) {
+                        case "count": return h.count();
+                        case "mean": return h.mean();
+                        case "p50": return (double)h.percentile(0.5);
+                        case "p99": return (double)h.percentile(0.99);
+                        case "max": return (double)h.max();
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                try {
+                    list.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException ex) { /* Omit it */ }
+            }
+            return list;
+        }
+
+        @Override public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override public Object invoke(String action, Object[] params, String[] signature)
+                throws ReflectionException {
+            throw new ReflectionException(
+                    new NoSuchMethodException(action), "Metrics have no operations");
+        }
+
+        @Override public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attrs = new ArrayList<>();
+            for (Metrics.Metric m : registry.all()) {
+                if (m.type() != Metrics.Type.histogram) {
+                    attrs.add(new MBeanAttributeInfo(
+                            m.key, "java.lang.Long", m.name, true, false, false));
+                } else {
+                    attrs.add(new MBeanAttributeInfo(
+                            m.key + ".count", "java.lang.Long", m.name, true, false, false));
+                    for (int i = 1; i < HistogramStats.length; i++) {
+                        attrs.add(new MBeanAttributeInfo(
+                                m.key + "." + HistogramStats[i], "java.lang.Double",
+                                m.name, true, false, false));
+                    }
+                }
+            }
+            return new MBeanInfo(
+                    getClass().getName(), "Tesla API Metrics",
+                    attrs.toArray(new MBeanAttributeInfo[attrs.size()]), null, null, null);
+        }
+
+        private static Object valueOf(Metrics.Metric m) {
+            return (m.type() == Metrics.Type.counter) ?
+                    ((Metrics.Counter)m).get() : ((Metrics.Gauge)m).get();
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static void line(StringBuilder sb, String name, String labels, long value) {
+        sb.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+}
@@ -6,6 +6,8 @@
 
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
+import org.noroomattheinn.utils.ConcurrentCache;
 import org.noroomattheinn.utils.Utils;
 import java.util.HashMap;
 import java.util.Map;
@@ -16,6 +18,12 @@ import java.util.Map;
  * enum's of the known types. All of those enum's have an "Unknown" instance
  * to handle unexpected or new option types. For example, if Tesla adds a new
  * paint color, it will be reported as Unknown until the code is updated.
+ * <P>
+ * The option codes are decoded once, when the Options are created, into the
+ * option enums and a bitset of the yes/no options, so the accessors don't do
+ * any lookups. Options are immutable and vehicles in a fleet tend to share a
+ * few configurations, so forString() returns a shared instance for each
+ * distinct option string.
  *
  * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
  */
@@ -245,8 +253,35 @@ public class Options {
  * Internal State
  * 
  *----------------------------------------------------------------------------*/
-    private final Map<String,String> optionsFound;
-    private int productionYear = 2012;
+    // The yes/no options, as their option code or prefix
+    private enum Feature {
+        PF, PX, PD, TR, SU, SC, TP, AU, CH, HP, PA, PS, PK, LP, SP, CW, FG, IX, YF,
+        X001, X003, X007, X011, X013, X019, X024, BC0R
+    };
+    
+    private static final int MaxShared = 256;
+    private static final Options None = new Options(null);
+    private static final ConcurrentCache<String,Options> shared =
+        new ConcurrentCache<String,Options>(MaxShared).setLoader(
+            new ConcurrentCache.Loader<String,Options>() {
+                @Override public Options load(String codes) { return new Options(codes); }
+            });
+    
+    private final String        codes;
+    private final long          features;       // Bit n is Feature n
+    private final int           productionYear;
+    private final Region        region;
+    private final TrimLevel     trimLevel;
+    private final DriveSide     driveSide;
+    private final BatteryType   batteryType;
+    private final RoofType      roofType;
+    private final WheelType     wheelType;
+    private final DecorType     decorType;
+    private final AdapterType   adapterType;
+    private final PaintColor    paintColor;
+    private final SeatType      seatType;
+    private final DriveType     driveType;
+    private final Model         model;
     
 /*==============================================================================
  * -------                                                               -------
@@ -254,58 +289,109 @@ public class Options {
  * -------                                                               -------
  *============================================================================*/
     
+    /**
+     * Return the Options for an option string, shared with any other
+     * vehicles that have the same option string.
+     * @param optionsString The option codes, e.g. "MS01,RENA,TM00,..."
+     * @return              The Options
+     */
+    public static Options forString(String optionsString) {
+        if (optionsString == null) return None;
+        Options options = shared.get(optionsString);
+        // The cache swallows failures. Try again so the caller sees them.
+        return (options != null) ? options : new Options(optionsString);
+    }
+    
     public Options(String optionsString) {
-        optionsFound = new HashMap<>();
-
-        if (optionsString == null) {
-            return;
-        }
-
-        // Deal with special case for P85D
-        optionsString = optionsString.replace("P85D", "PD01");
-
-        // Deal with the one 3 letter prefix in the options: PBT. Turn this into BT
-        optionsString = optionsString.replace("PBT", "BT");
-
-        // Sometimes it appears that a P85+ (perhaps other perf models as well)
-        // will have two wheel types listed, the real one and WTX0 or WTX1.
-        // Unfortunately WTX0/X1 are often the last one encountered and gets 
-        // used as the wheel type. We need the real one so ignore WTXO/X1.
-        // The ASSERTION is that it never appears by itself. Other code depends
-        // on that assertion being true.
-        optionsString = optionsString.replace("WTX0", "wtXO");
-        optionsString = optionsString.replace("WTX1", "wtX1");
-        
-
-        String[] tokens = optionsString.split(",");
-        for (String token : tokens) {
-            if (token.length() < 2) {
-                Tesla.logger.warning("Malformed Option token: " + token);
-                continue;
-            }
-            String prefix = token.substring(0,2);
-            
-            // The MS token appears to be a model year or production year. MS
-            // is followed by a two digit number which is monotonically increasing
-            // starting with 01. 01 corresponds to the first production year, 2012.
-            // 02 corresponds to 2013 and so on.
-            if (prefix.equals("MS")) {
-                if (token.length() == 4) {  // This is a well formed token
-                    int yearOffset = Integer.valueOf(token.substring(2,4));
-                    productionYear = 2011 + yearOffset;
+        codes = optionsString;
+        Map<String,String> optionsFound = new HashMap<>();
+        int year = 2012;
+
+        if (optionsString != null) {
+            // Deal with special case for P85D
+            optionsString = optionsString.replace("P85D", "PD01");
+
+            // Deal with the one 3 letter prefix in the options: PBT. Turn this into BT
+            optionsString = optionsString.replace("PBT", "BT");
+
+            // Sometimes it appears that a P85+ (perhaps other perf models as well)
+            // will have two wheel types listed, the real one and WTX0 or WTX1.
+            // Unfortunately WTX0/X1 are often the last one encountered and gets 
+            // used as the wheel type. We need the real one so ignore WTXO/X1.
+            // The ASSERTION is that it never appears by itself. Other code depends
+            // on that assertion being true.
+            optionsString = optionsString.replace("WTX0", "wtXO");
+            optionsString = optionsString.replace("WTX1", "wtX1");
+
+            String[] tokens = optionsString.split(",");
+            for (String token : tokens) {
+                if (token.length() < 2) {
+                    Tesla.logger.warning("Malformed Option token: " + token);
                     continue;
                 }
+                String prefix = token.substring(0,2);
+
+                // The MS token appears to be a model year or production year. MS
+                // is followed by a two digit number which is monotonically increasing
+                // starting with 01. 01 corresponds to the first production year, 2012.
+                // 02 corresponds to 2013 and so on.
+                if (prefix.equals("MS")) {
+                    if (token.length() == 4) {  // This is a well formed token
+                        int yearOffset = Integer.valueOf(token.substring(2,4));
+                        year = 2011 + yearOffset;
+                        continue;
+                    }
+                }
+
+                // X0 options are handled differently. Speculation is that these are
+                // the old way Tesla handled things. In this case we store the whole
+                // token as the key and the value.
+                if (prefix.equals("X0")) prefix = token;
+
+                optionsFound.put(prefix, token);
             }
-            
-            // X0 options are handled differently. Speculation is that these are
-            // the old way Tesla handled things. In this case we store the whole
-            // token as the key and the value.
-            if (prefix.equals("X0")) prefix = token;
-            
-            optionsFound.put(prefix, token);
         }
+        
+        // Decode everything now so the accessors are simple field reads
+        long f = 0;
+        for (Feature feature : Feature.values()) {
+            if (hasOption(optionsFound, feature.name())) f |= 1L << feature.ordinal();
+        }
+        // Brake Calipers: Red = BC0R, Black = BC0B
+        if ("BC0R".equals(optionsFound.get("BC"))) f |= 1L << Feature.BC0R.ordinal();
+        features = f;
+        productionYear = year;
+        region = optionToEnum(optionsFound, Region.class, "RE");
+        trimLevel = optionToEnum(optionsFound, TrimLevel.class, "TM");
+        driveSide = optionToEnum(optionsFound, DriveSide.class, "DR");
+        roofType = optionToEnum(optionsFound, RoofType.class, "RF");
+        wheelType = optionToEnum(optionsFound, WheelType.class, "WT");
+        decorType = optionToEnum(optionsFound, DecorType.class, "ID");
+        adapterType = optionToEnum(optionsFound, AdapterType.class, "AD");
+        paintColor = optionToEnum(optionsFound, PaintColor.class, "PB", "PM", "PP");
+        seatType = optionToEnum(optionsFound, SeatType.class, "IB", "IP", "IZ", "IS");
+        
+        BatteryType bt = optionToEnum(optionsFound, BatteryType.class, "BT");
+        if (bt == Options.BatteryType.Unknown) {
+            bt = (isP85D() || isPerfPlus()) ? BatteryType.BT85 : BatteryType.BT70;
+        }
+        batteryType = bt;
+        
+        DriveType dt = optionToEnum(optionsFound, DriveType.class, "DV");
+        driveType = (dt == Options.DriveType.Unknown) ? DriveType.DV2W : dt;
+        
+        model = computeModel();
     }
     
+    // Read Options written by encode(). See StateCodec.
+    static Options decode(ByteBuffer in) {
+        return forString(BaseState.getString(in));
+    }
+    
+    // Write the option string the Options were created from
+    void encode(ByteBuffer out) {
+        BaseState.putString(out, codes);
+    }
     
 /*------------------------------------------------------------------------------
  *
@@ -313,72 +399,48 @@ public class Options {
  * 
  *----------------------------------------------------------------------------*/
     
-    public Region region() { return optionToEnum(Region.class, "RE"); }
-    public TrimLevel trimLevel() { return optionToEnum(TrimLevel.class, "TM"); }
-    public DriveSide driveSide() { return optionToEnum(DriveSide.class, "DR"); }
-    public BatteryType batteryType() {
-        BatteryType bt = optionToEnum(BatteryType.class, "BT");
-        if (bt == Options.BatteryType.Unknown) {
-            if (isP85D() || isPerfPlus()) { return Options.BatteryType.BT85; }
-            return Options.BatteryType.BT70;
-        }
-        return bt;
-    }
-    public RoofType roofType() { return optionToEnum(RoofType.class, "RF"); }
-    public WheelType wheelType() { return optionToEnum(WheelType.class, "WT"); }
-    public DecorType decorType() { return optionToEnum(DecorType.class, "ID"); }
-    public AdapterType adapterType() { return optionToEnum(AdapterType.class, "AD"); }
-    public PaintColor paintColor() { 
-        return optionToEnum(PaintColor.class, "PB", "PM", "PP"); }
-    public SeatType seatType() {
-        return optionToEnum(SeatType.class, "IB", "IP", "IZ", "IS"); }
-    public DriveType driveType() {
-        DriveType dt = optionToEnum(DriveType.class, "DV");
-        if (dt == Options.DriveType.Unknown) { return Options.DriveType.DV2W; }
-        return dt;
-    }
-    public Model model() {
-        if (isAWD()) {
-            if (isP85D()) { return Model.P85D; }
-            if (batteryType() == Options.BatteryType.BT85) { return Model.S85D; }
-            return Model.S70D;
-        }
-        if (isPerfPlus()) { return Model.P85Plus; }
-        else if (isPerformance()) { return Model.P85; }
-        else if (batteryType() == Options.BatteryType.BT85) { return Model.S85; } 
-        return Model.S60;
-    }
+    public Region region() { return region; }
+    public TrimLevel trimLevel() { return trimLevel; }
+    public DriveSide driveSide() { return driveSide; }
+    public BatteryType batteryType() { return batteryType; }
+    public RoofType roofType() { return roofType; }
+    public WheelType wheelType() { return wheelType; }
+    public DecorType decorType() { return decorType; }
+    public AdapterType adapterType() { return adapterType; }
+    public PaintColor paintColor() { return paintColor; }
+    public SeatType seatType() { return seatType; }
+    public DriveType driveType() { return driveType; }
+    public Model model() { return model; }
     public int productionYear() { return productionYear; }
 
-    public boolean isPerformance() { return hasOption("PF"); }
-    public boolean isPerfPlus() { return hasOption("PX") || wheelType() == WheelType.WTSG; }
-    public boolean isP85D() { return hasOption("PD"); }
-    public boolean isAWD() { return driveType() == Options.DriveType.DV4W; }
-    public boolean hasThirdRow() { return hasOption("TR"); }
-    public boolean hasAirSuspension() { return hasOption("SU"); }
-    public boolean hasSupercharger() { return hasOption("SC") || isPerfPlus(); }    
-    public boolean hasTechPackage() { return hasOption("TP"); }
-    public boolean hasAudioUpgrade() { return hasOption("AU"); }
-    public boolean hasTwinCharger() { return hasOption("CH"); }
-    public boolean hasHPWC() { return hasOption("HP"); }
-    public boolean hasPaintArmor() { return hasOption("PA"); }
-    public boolean hasParcelShelf() { return hasOption("PS"); }
-    public boolean hasPowerLiftgate() { return hasOption("X001"); }
-    public boolean hasNavSystem() { return hasOption("X003"); }
-    public boolean hasPremiumLighting() { return hasOption("X007"); }
-    public boolean hasHomeLink() { return hasOption("X011"); }
-    public boolean hasSatRadio() { return hasOption("X013"); }
-    public boolean hasPerfExterior() { return hasOption("X019"); }
-    public boolean hasPerfPowertrain() { return hasOption("X024"); }
-    public boolean hasParkingSensors() { return hasOption("PK"); }
-    public boolean hasLightingPackage() { return hasOption("LP"); }
-    public boolean hasSecurityPackage() { return hasOption("SP"); }
-    public boolean hasColdWeather() { return hasOption("CW"); }
-    public boolean hasFogLamps() { return hasOption("FG"); }
-    public boolean hasExtendedNappaTrim() { return hasOption("IX"); }
-    public boolean hasYachtFloor() { return hasOption("YF"); }
-    // Brake Calipers: Red = BC0R, Black = BC0B
-    public boolean hasRedCalipers() { return optionsFound.get("BC0R") != null; }
+    public boolean isPerformance() { return has(Feature.PF); }
+    public boolean isPerfPlus() { return has(Feature.PX) || wheelType == WheelType.WTSG; }
+    public boolean isP85D() { return has(Feature.PD); }
+    public boolean isAWD() { return driveType == Options.DriveType.DV4W; }
+    public boolean hasThirdRow() { return has(Feature.TR); }
+    public boolean hasAirSuspension() { return has(Feature.SU); }
+    public boolean hasSupercharger() { return has(Feature.SC) || isPerfPlus(); }    
+    public boolean hasTechPackage() { return has(Feature.TP); }
+    public boolean hasAudioUpgrade() { return has(Feature.AU); }
+    public boolean hasTwinCharger() { return has(Feature.CH); }
+    public boolean hasHPWC() { return has(Feature.HP); }
+    public boolean hasPaintArmor() { return has(Feature.PA); }
+    public boolean hasParcelShelf() { return has(Feature.PS); }
+    public boolean hasPowerLiftgate() { return has(Feature.X001); }
+    public boolean hasNavSystem() { return has(Feature.X003); }
+    public boolean hasPremiumLighting() { return has(Feature.X007); }
+    public boolean hasHomeLink() { return has(Feature.X011); }
+    public boolean hasSatRadio() { return has(Feature.X013); }
+    public boolean hasPerfExterior() { return has(Feature.X019); }
+    public boolean hasPerfPowertrain() { return has(Feature.X024); }
+    public boolean hasParkingSensors() { return has(Feature.PK); }
+    public boolean hasLightingPackage() { return has(Feature.LP); }
+    public boolean hasSecurityPackage() { return has(Feature.SP); }
+    public boolean hasColdWeather() { return has(Feature.CW); }
+    public boolean hasFogLamps() { return has(Feature.FG); }
+    public boolean hasExtendedNappaTrim() { return has(Feature.IX); }
+    public boolean hasYachtFloor() { return has(Feature.YF); }
+    public boolean hasRedCalipers() { return has(Feature.BC0R); }
     
     @Override
     public String toString() {
@@ -451,7 +513,21 @@ public class Options {
  * 
  *----------------------------------------------------------------------------*/
 
-    private boolean hasOption(String optionName) {
+    private boolean has(Feature f) { return (features & (1L << f.ordinal())) != 0; }
+    
+    private Model computeModel() {
+        if (isAWD()) {
+            if (isP85D()) { return Model.P85D; }
+            if (batteryType == Options.BatteryType.BT85) { return Model.S85D; }
+            return Model.S70D;
+        }
+        if (isPerfPlus()) { return Model.P85Plus; }
+        else if (isPerformance()) { return Model.P85; }
+        else if (batteryType == Options.BatteryType.BT85) { return Model.S85; } 
+        return Model.S60;
+    }
+    
+    private static boolean hasOption(Map<String,String> optionsFound, String optionName) {
         String option = optionsFound.get(optionName);
         if (option == null)
             return false;
@@ -485,6 +561,7 @@ public class Options {
      * Type and the class is alo passed in. This is required to handle some
      * oddities of dealing with Generic Enums.
      * 
+     * @param optionsFound  The option codes, keyed by prefix
      * @param eClass    The class of the Enum for which we want an instance
      * @param prefix    A variable length list of one or more prefixes
      *                  that we'll look for in turn. Some options (like 
@@ -493,7 +570,8 @@ public class Options {
      * @return          An instance of the specified Enum type corresponding
      *                  to the specified prefix
      */
-    private <T extends Enum<T>> T optionToEnum(Class<T> eClass, String... prefix) {
+    private static <T extends Enum<T>> T optionToEnum(
+            Map<String,String> optionsFound, Class<T> eClass, String... prefix) {
         String option = null;
         for (String p : prefix) {
             if ( (option = optionsFound.get(p)) != null)
@@ -503,4 +581,3 @@ public class Options {
     }
 
 }
-    
\ No newline at end of file
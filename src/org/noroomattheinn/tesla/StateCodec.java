@@ -0,0 +1,356 @@
+/*
+ * StateCodec.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla;
+
+import java.nio.ByteBuffer;
+
+/**
+ * StateCodec: A compact binary form of the BaseState subclasses. A state
+ * can be written in full or as a delta against the previous state of the
+ * same kind, in which case only the fields that changed are written (see
+ * BaseState.changedFields). Consecutive polled states usually differ in a
+ * field or two, so a delta is typically a few bytes rather than the
+ * kilobyte or so of the JSON it came from.
+ *
+ * Each record is:
+ *     byte kind, byte flags, varlong time, varlong mask, ushort length,
+ *     the fields in mask
+ * The high 4 bits of the flags are the format Version. The time is the
+ * state's timestamp, or in a delta the (zigzag encoded) difference from the
+ * previous state's timestamp. The length is the number of bytes of fields,
+ * which are written in Field order as fixed width big-endian primitives.
+ * Strings are a short length and at most 32767 bytes of UTF-8, and enums are
+ * an ordinal byte.
+ *
+ * Records stay readable as fields are added: new fields go at the end of a
+ * Field enum, so an older reader reads the fields it knows and uses the
+ * length to skip the rest, and a newer reader defaults the fields an older
+ * writer didn't have. Fields are never removed or reordered. The Version
+ * only changes if the record layout itself does, and a reader rejects
+ * versions it doesn't know.
+ *
+ * Options are written the same way with their own kind, as the option
+ * string they were created from. See encode(Options, ByteBuffer).
+ *
+ * The static methods encode and decode single records. An Encoder and a
+ * Decoder keep the previous state of each kind so a sequence of states,
+ * like an on-disk history or a feed to another process, can be written as
+ * deltas with a full "keyframe" now and then. A reader joining the feed
+ * part way through can start at any keyframe.
+ *
+ * Decoded states have an empty rawState.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public final class StateCodec {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final int Version = 1;
+    public static final int DefaultKeyframeInterval = 100;
+
+    // Record kinds. Never renumber these, they're stored. States are numbered
+    // from 1 to StreamKind and a new kind of state takes the next number and
+    // becomes the last in NumKinds. Other records, like Options, use kinds of
+    // 0x40 and up so the two never collide.
+    private static final int ChargeKind = 1;
+    private static final int DriveKind = 2;
+    private static final int GUIKind = 3;
+    private static final int HVACKind = 4;
+    private static final int VehicleKind = 5;
+    private static final int StreamKind = 6;
+    private static final int NumKinds = StreamKind + 1;   // For the Encoder and Decoder
+    private static final int OptionsKind = 0x40;
+
+    private static final int DeltaFlag = 0x01;
+    private static final int ValidFlag = 0x02;
+    private static final int VersionShift = 4;
+    private static final int MaxLength = 0xFFFF;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Write a state in full
+     * @param s     The state
+     * @param out   Where to write it
+     * @throws java.nio.BufferOverflowException if out is too small
+     * @throws IllegalArgumentException if s has no codec or a field is too
+     *                  long to encode
+     */
+    public static void encode(BaseState s, ByteBuffer out) {
+        encodeDelta(s, null, out);
+    }
+
+    /**
+     * Write the fields of a state that differ from the previous one
+     * @param s         The state
+     * @param previous  The previous state of the same kind. If it is null or
+     *                  a different kind of state, s is written in full.
+     * @param out       Where to write it
+     * @throws java.nio.BufferOverflowException if out is too small
+     * @throws IllegalArgumentException if s has no codec or a field is too
+     *                  long to encode
+     */
+    public static void encodeDelta(BaseState s, BaseState previous, ByteBuffer out) {
+        int kind = kindOf(s);
+        boolean delta = previous != null && previous.getClass() == s.getClass();
+        long mask = delta ? s.changedFields(previous) : s.changedFields(null);
+
+        out.put((byte)kind);
+        out.put((byte)((Version << VersionShift) |
+                       (delta ? DeltaFlag : 0) | (s.valid ? ValidFlag : 0)));
+        putVarLong(out, delta ? zigzag(s.timestamp - previous.timestamp) : s.timestamp);
+        putVarLong(out, mask);
+        int lengthAt = out.position();
+        out.putShort((short)0);
+        s.encodeFields(out, mask);
+        patchLength(out, lengthAt);
+    }
+
+    /**
+     * Read a state
+     * @param in        Where to read it from
+     * @param previous  The state a delta is applied to. It is ignored if the
+     *                  record is a full state.
+     * @return          The state
+     * @throws IllegalArgumentException if the record is a delta and previous
+     *                  isn't the same kind of state, or it is an unknown kind
+     *                  or version
+     */
+    public static BaseState decode(ByteBuffer in, BaseState previous) {
+        int kind = in.get(in.position());
+        boolean delta = (in.get(in.position() + 1) & DeltaFlag) != 0;
+        if (delta && (previous == null || kindOf(previous) != kind))
+            throw new IllegalArgumentException("Delta record without a previous state");
+        return read(in, previous);
+    }
+
+    /**
+     * Write a set of Options
+     * @param options   The Options
+     * @param out       Where to write them
+     * @throws java.nio.BufferOverflowException if out is too small
+     * @throws IllegalArgumentException if the option string is too long
+     */
+    public static void encode(Options options, ByteBuffer out) {
+        out.put((byte)OptionsKind);
+        out.put((byte)(Version << VersionShift));
+        int lengthAt = out.position();
+        out.putShort((short)0);
+        options.encode(out);
+        patchLength(out, lengthAt);
+    }
+
+    /**
+     * Read a set of Options
+     * @param in    Where to read them from
+     * @return      The Options
+     * @throws IllegalArgumentException if the record isn't Options or is an
+     *                                  unknown version
+     */
+    public static Options decodeOptions(ByteBuffer in) {
+        if (in.get() != OptionsKind)
+            throw new IllegalArgumentException("Not an Options record");
+        checkVersion(in.get());
+        int end = getLength(in);
+        Options options = Options.decode(in);
+        in.position(end);
+        return options;
+    }
+
+    /**
+     * Encoder: Writes a sequence of states, each as a delta against the
+     * previous one of its kind. Every keyframeInterval'th state of each kind
+     * is written in full. Encoders are thread safe.
+     */
+    public static class Encoder {
+        private final BaseState[] last = new BaseState[NumKinds];
+        private final int[] sinceKeyframe = new int[NumKinds];
+        private int keyframeInterval = DefaultKeyframeInterval;
+
+        public Encoder() { }
+
+        /**
+         * How often to write a full state
+         * @param n The number of states of a kind between full states. If it
+         *          is 1, every state is written in full.
+         * @return  this Encoder
+         */
+        public synchronized Encoder setKeyframeInterval(int n) {
+            keyframeInterval = Math.max(1, n);
+            return this;
+        }
+
+        /**
+         * Write the next state of the sequence
+         * @param s     The state
+         * @param out   Where to write it
+         */
+        public synchronized void encode(BaseState s, ByteBuffer out) {
+            int kind = kindOf(s);
+            boolean keyframe = (sinceKeyframe[kind] == 0);
+            encodeDelta(s, keyframe ? null : last[kind], out);
+            last[kind] = s;
+            sinceKeyframe[kind] = (sinceKeyframe[kind] + 1) % keyframeInterval;
+        }
+
+        /**
+         * Make the next state of each kind a keyframe, e.g. when a new
+         * reader joins
+         */
+        public synchronized void reset() {
+            for (int i = 0; i < NumKinds; i++) { last[i] = null; sinceKeyframe[i] = 0; }
+        }
+    }
+
+    /**
+     * Decoder: Reads a sequence of states written by an Encoder. Decoders
+     * are thread safe.
+     */
+    public static class Decoder {
+        private final BaseState[] last = new BaseState[NumKinds];
+
+        public Decoder() { }
+
+        /**
+         * Read the next state of the sequence
+         * @param in    Where to read it from
+         * @return      The state, or null if it was a delta whose previous
+         *              state hasn't been read (i.e. before the first keyframe)
+         */
+        public synchronized BaseState decode(ByteBuffer in) {
+            int kind = in.get(in.position());
+            boolean delta = (in.get(in.position() + 1) & DeltaFlag) != 0;
+            BaseState s = read(in, last[checkKind(kind)]);
+            if (delta && last[kind] == null) return null;
+            return last[kind] = s;
+        }
+
+        public synchronized void reset() {
+            for (int i = 0; i < NumKinds; i++) { last[i] = null; }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * PRIVATE - Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private StateCodec() { }
+
+    private static int kindOf(BaseState s) {
+        if (s instanceof ChargeState) return ChargeKind;
+        if (s instanceof DriveState) return DriveKind;
+        if (s instanceof GUIState) return GUIKind;
+        if (s instanceof HVACState) return HVACKind;
+        if (s instanceof VehicleState) return VehicleKind;
+        if (s instanceof StreamState) return StreamKind;
+        throw new IllegalArgumentException("No codec for " + s.getClass().getName());
+    }
+
+    private static int checkVersion(int flags) {
+        int version = (flags & 0xFF) >>> VersionShift;
+        if (version != Version)
+            throw new IllegalArgumentException("Unknown record version: " + version);
+        return flags;
+    }
+
+    private static void patchLength(ByteBuffer out, int lengthAt) {
+        int length = out.position() - lengthAt - 2;
+        if (length > MaxLength)
+            throw new IllegalArgumentException("Record too long: " + length);
+        out.putShort(lengthAt, (short)length);
+    }
+
+    // Read the length and return where the record ends
+    private static int getLength(ByteBuffer in) {
+        int length = in.getShort() & MaxLength;
+        return in.position() + length;
+    }
+
+    private static int checkKind(int kind) {
+        if (kind <= 0 || kind >= NumKinds)
+            throw new IllegalArgumentException("Unknown state kind: " + kind);
+        return kind;
+    }
+
+    // Fields missing from a delta come from previous. If there is no previous
+    // state of the same kind they're defaulted as in an empty state. Fields
+    // newer than this code are skipped.
+    private static BaseState read(ByteBuffer in, BaseState previous) {
+        int kind = checkKind(in.get());
+        int flags = checkVersion(in.get());
+        boolean valid = (flags & ValidFlag) != 0;
+        if (previous != null && kindOf(previous) != kind) previous = null;
+        long time = getVarLong(in);
+        if ((flags & DeltaFlag) != 0)
+            time = unzigzag(time) + (previous == null ? 0 : previous.timestamp);
+        long mask = getVarLong(in);
+        int end = getLength(in);
+
+        BaseState s;
+        switch (kind) {
+            case ChargeKind:
+                s = new ChargeState(time, valid, in, mask & ChargeState.AllFields,
+                                    (ChargeState)previous);
+                break;
+            case DriveKind:
+                s = new DriveState(time, valid, in, mask & DriveState.AllFields,
+                                   (DriveState)previous);
+                break;
+            case GUIKind:
+                s = new GUIState(time, valid, in, mask & GUIState.AllFields,
+                                 (GUIState)previous);
+                break;
+            case HVACKind:
+                s = new HVACState(time, valid, in, mask & HVACState.AllFields,
+                                  (HVACState)previous);
+                break;
+            case VehicleKind:
+                s = new VehicleState(time, valid, in, mask & VehicleState.AllFields,
+                                     (VehicleState)previous);
+                break;
+            default:
+                s = new StreamState(time, valid, in, mask & StreamState.AllFields,
+                                    (StreamState)previous);
+                break;
+        }
+        in.position(end);
+        return s;
+    }
+
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    // 7 bits per byte, low order first, with the high bit set on all but the last
+    private static void putVarLong(ByteBuffer out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte)v);
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long)(b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+}
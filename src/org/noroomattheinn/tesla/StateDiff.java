@@ -0,0 +1,186 @@
+/*
+ * StateDiff.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * StateDiff: The fields that changed between two successive states of the
+ * same kind. The changed fields are kept as a bitset in a long: bit n is set
+ * if the Field of the state class whose ordinal is n changed. For example:
+ * <pre>
+ *   StateDiff&lt;VehicleState&gt; d = StateDiff.between(before, after);
+ *   if (d.changed(VehicleState.Field.locked)) ...
+ * </pre>
+ *
+ * StateDiff.Tracker remembers the last state of each kind for each vehicle
+ * and tells its listeners when a new state differs from it.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class StateDiff<S extends BaseState> {
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public final S      previous;       // null for the first state of its kind
+    public final S      current;
+    public final long   changed;
+
+    private StateDiff(S previous, S current, long changed) {
+        this.previous = previous;
+        this.current = current;
+        this.changed = changed;
+    }
+
+    /**
+     * Compare two states of the same kind
+     * @param previous  The earlier state. If it is null every field is
+     *                  considered changed.
+     * @param current   The later state
+     * @return          The differences
+     */
+    public static <S extends BaseState> StateDiff<S> between(S previous, S current) {
+        return new StateDiff<>(previous, current, current.changedFields(previous));
+    }
+
+    /**
+     * Return a bitset of the given fields, suitable for changedAny()
+     * @param fields    The Field constants, all from the same state class
+     * @return          The bitset
+     */
+    public static long mask(Enum<?>... fields) {
+        long m = 0;
+        for (Enum<?> f : fields) { m |= 1L << f.ordinal(); }
+        return m;
+    }
+
+    public boolean isEmpty() { return changed == 0; }
+
+    public boolean changed(Enum<?> field) { return (changed & (1L << field.ordinal())) != 0; }
+
+    public boolean changedAny(long mask) { return (changed & mask) != 0; }
+
+    /**
+     * Return the Field constants of the fields that changed
+     * @return  The fields in ordinal order
+     */
+    public List<Enum<?>> changedFields() {
+        List<Enum<?>> result = new ArrayList<>(Long.bitCount(changed));
+        for (Enum<?> f : current.fields()) {
+            if (changed(f)) result.add(f);
+        }
+        return result;
+    }
+
+    @Override public String toString() {
+        return current.getClass().getSimpleName() + " changed " + changedFields();
+    }
+
+    /**
+     * Listener: Is told about states that differ from the previous state of
+     * the same kind for the same vehicle. Listeners are called on the thread
+     * that delivered the state and should return quickly.
+     */
+    public interface Listener {
+        void stateChanged(Vehicle v, StateDiff<?> diff);
+    }
+
+    /**
+     * Tracker: Diffs each state a Vehicle receives against the last one of
+     * the same kind. Add it to one or more Vehicles as a StateListener. The
+     * first state of each kind is reported with every field changed.
+     */
+    public static class Tracker implements Vehicle.StateListener {
+        private final ConcurrentHashMap<String,ConcurrentHashMap<Class<?>,BaseState>> last =
+                new ConcurrentHashMap<>();
+        private final List<Registration> listeners = new CopyOnWriteArrayList<>();
+
+        public Tracker() { }
+
+        /**
+         * Tell a listener about every change
+         * @param l The listener
+         */
+        public void addListener(Listener l) { listeners.add(new Registration(l, null, -1L)); }
+
+        /**
+         * Tell a listener only about changes to some fields of one kind of state
+         * @param l         The listener
+         * @param kind      The kind of state, e.g. ChargeState.class
+         * @param fields    The Field constants of interest. If there are none,
+         *                  any change to the kind of state is reported.
+         */
+        public void addListener(Listener l, Class<? extends BaseState> kind, Enum<?>... fields) {
+            listeners.add(new Registration(l, kind, fields.length == 0 ? -1L : mask(fields)));
+        }
+
+        public void removeListener(Listener l) {
+            for (Registration r : listeners) {
+                if (r.listener == l) listeners.remove(r);
+            }
+        }
+
+        /**
+         * Return the last state of a given kind received for a vehicle
+         * @param vid   The vehicle
+         * @param kind  The kind of state
+         * @return      The state or null if none has been received
+         */
+        public <S extends BaseState> S getLast(String vid, Class<S> kind) {
+            ConcurrentHashMap<Class<?>,BaseState> states = last.get(vid);
+            return (states == null) ? null : kind.cast(states.get(kind));
+        }
+
+        /**
+         * Forget the states of a vehicle. Its next states are reported with
+         * every field changed.
+         * @param vid   The vehicle
+         */
+        public void forget(String vid) { last.remove(vid); }
+
+        @Override public void stateReceived(Vehicle v, BaseState state) {
+            ConcurrentHashMap<Class<?>,BaseState> states = last.get(v.getVID());
+            if (states == null) {
+                states = new ConcurrentHashMap<>();
+                ConcurrentHashMap<Class<?>,BaseState> existing =
+                        last.putIfAbsent(v.getVID(), states);
+                if (existing != null) states = existing;
+            }
+
+            BaseState previous = states.put(state.getClass(), state);
+            StateDiff<BaseState> diff = between(previous, state);
+            if (diff.isEmpty()) return;
+
+            for (Registration r : listeners) {
+                if (r.kind != null && r.kind != state.getClass()) continue;
+                if (!diff.changedAny(r.mask)) continue;
+                try {
+                    r.listener.stateChanged(v, diff);
+                } catch (Exception ex) {
+                    Tesla.logger.warning("StateDiff listener failed: " + ex);
+                }
+            }
+        }
+
+        private static class Registration {
+            final Listener listener;
+            final Class<? extends BaseState> kind;
+            final long mask;
+
+            Registration(Listener l, Class<? extends BaseState> kind, long mask) {
+                this.listener = l; this.kind = kind; this.mask = mask;
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@
 
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
 import java.util.Date;
 import static org.noroomattheinn.tesla.BaseState.emptyJSONObj;
 import us.monoid.json.JSONObject;
@@ -17,6 +18,22 @@ import us.monoid.json.JSONObject;
  */
 
 public class StreamState extends BaseState {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ * 
+ *----------------------------------------------------------------------------*/
+    /**
+     * Field: The fields compared by changedFields(), in bit order. StateCodec
+     * stores the ordinals, so add new fields at the end and never remove any.
+     */
+    public enum Field {
+        vehicleTimestamp, speed, odometer, soc, elevation, estHeading, heading,
+        estLat, estLng, power, range, estRange, shiftState
+    };
+    public static final long AllFields = (1L << Field.values().length) - 1;
+    private static final StreamState Empty = new StreamState();
+    
 /*------------------------------------------------------------------------------
  *
  * Public State
@@ -63,6 +80,25 @@ public class StreamState extends BaseState {
         estRange = source.optInt(Streamer.Keys.est_range);
     }
     
+    // Decode the fields in mask from in. The rest come from base, if any.
+    StreamState(long timestamp, boolean valid, ByteBuffer in, long mask, StreamState base) {
+        super(timestamp, valid);
+        StreamState b = (base != null) ? base : Empty;
+        vehicleTimestamp = get(in, mask, Field.vehicleTimestamp, b.vehicleTimestamp);
+        speed = get(in, mask, Field.speed, b.speed);
+        odometer = get(in, mask, Field.odometer, b.odometer);
+        soc = get(in, mask, Field.soc, b.soc);
+        elevation = get(in, mask, Field.elevation, b.elevation);
+        estHeading = get(in, mask, Field.estHeading, b.estHeading);
+        heading = get(in, mask, Field.heading, b.heading);
+        estLat = get(in, mask, Field.estLat, b.estLat);
+        estLng = get(in, mask, Field.estLng, b.estLng);
+        power = get(in, mask, Field.power, b.power);
+        range = get(in, mask, Field.range, b.range);
+        estRange = get(in, mask, Field.estRange, b.estRange);
+        shiftState = get(in, mask, Field.shiftState, b.shiftState);
+    }
+    
     public String shiftState() {
         if (shiftState == null || shiftState.isEmpty()) return "P";
         return shiftState;
@@ -72,6 +108,44 @@ public class StreamState extends BaseState {
         return (speed > 0 || !shiftState().equals("P"));
     }
     
+    @Override public long changedFields(BaseState previous) {
+        if (!(previous instanceof StreamState)) return AllFields;
+        StreamState p = (StreamState)previous;
+        long m = 0;
+        m |= changed(vehicleTimestamp, p.vehicleTimestamp, Field.vehicleTimestamp);
+        m |= changed(speed, p.speed, Field.speed);
+        m |= changed(odometer, p.odometer, Field.odometer);
+        m |= changed(soc, p.soc, Field.soc);
+        m |= changed(elevation, p.elevation, Field.elevation);
+        m |= changed(estHeading, p.estHeading, Field.estHeading);
+        m |= changed(heading, p.heading, Field.heading);
+        m |= changed(estLat, p.estLat, Field.estLat);
+        m |= changed(estLng, p.estLng, Field.estLng);
+        m |= changed(power, p.power, Field.power);
+        m |= changed(range, p.range, Field.range);
+        m |= changed(estRange, p.estRange, Field.estRange);
+        m |= changed(shiftState, p.shiftState, Field.shiftState);
+        return m;
+    }
+    
+    @Override public Enum<?>[] fields() { return Field.values(); }
+    
+    @Override void encodeFields(ByteBuffer out, long mask) {
+        put(out, mask, Field.vehicleTimestamp, vehicleTimestamp);
+        put(out, mask, Field.speed, speed);
+        put(out, mask, Field.odometer, odometer);
+        put(out, mask, Field.soc, soc);
+        put(out, mask, Field.elevation, elevation);
+        put(out, mask, Field.estHeading, estHeading);
+        put(out, mask, Field.heading, heading);
+        put(out, mask, Field.estLat, estLat);
+        put(out, mask, Field.estLng, estLng);
+        put(out, mask, Field.power, power);
+        put(out, mask, Field.range, range);
+        put(out, mask, Field.estRange, estRange);
+        put(out, mask, Field.shiftState, shiftState);
+    }
+    
     @Override public String toString() {
         return String.format(
                 "Time Stamp: %s (%s)\n" +
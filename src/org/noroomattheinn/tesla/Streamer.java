@@ -10,8 +10,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URLConnection;
 import org.apache.commons.lang3.StringUtils;
+import org.noroomattheinn.utils.FlightEvents;
 import org.noroomattheinn.utils.Utils;
 import us.monoid.json.JSONException;
 import us.monoid.json.JSONObject;
@@ -35,12 +37,11 @@ public class Streamer {
     public enum Keys {
         timestamp, odometer, speed, soc, elevation, est_heading,
         est_lat, est_lng, power, shift_state, range, est_range, heading};
-    private final Keys[] keyList = Keys.values();
-    private final String allKeys =
+    private static final Keys[] keyList = Keys.values();
+    private static final String allKeys =
             StringUtils.join(keyList, ',', 1, keyList.length);
 
-    private static final String endpointFormat = 
-            "https://streaming.vn.teslamotors.com/stream/%s/?values=%s";
+    private static final String endpointFormat = "%sstream/%s/?values=%s";
 
     private static final int WakeupRetries = 3;
     private static final int ReadTimeoutInMillis = 25 * 1000;
@@ -67,18 +68,31 @@ public class Streamer {
     }
         
     public StreamState beginNewStream() {
+        if (streamReader != null) { Metrics.get().streamEnded("replaced"); }
+        Object event = FlightEvents.begin(FlightEvents.Kind.StreamConnect);
         streamReader = establishStreamingConnection();
+        TrafficCapture.Recorder recorder = v.tesla().activeRecorder();
+        if (recorder != null && streamReader != null) {
+            recorder.streamOpened(v.getStreamingVID());
+        }
+        FlightEvents.commit(
+                event, v.getStreamingVID(), streamReader == null ? "failed" : "ok", -1, 0);
         return tryExistingStream();
     }
     
     public StreamState tryExistingStream() {
         JSONObject val = produce();
-        return val == null ? null : new StreamState(val);
+        return val == null ? null : v.received(new StreamState(val));
     }
     
     public StreamState beginStreamIfNeeded() {
         StreamState state = tryExistingStream();
-        if (state == null) { state = beginNewStream(); }
+        if (state == null) {
+            Object event = FlightEvents.begin(FlightEvents.Kind.StreamReconnect);
+            state = beginNewStream();
+            FlightEvents.commit(
+                    event, v.getStreamingVID(), state == null ? "failed" : "ok", -1, 0);
+        }
         return state;
     }
     
@@ -101,13 +115,42 @@ public class Streamer {
         if (streamReader == null) { return null; }
         
         String line = null;
-        try { line = streamReader.readLine(); } catch (IOException ex) { }
+        String endReason = "eof";
+        long start = System.currentTimeMillis();
+        Object event = FlightEvents.begin(FlightEvents.Kind.StreamRead);
+        try {
+            line = streamReader.readLine();
+        } catch (SocketTimeoutException ex) {
+            endReason = "timeout";
+        } catch (IOException ex) {
+            endReason = "error";
+        }
+        FlightEvents.commit(
+                event, v.getStreamingVID(), line == null ? endReason : null,
+                line == null ? -1 : line.length(), 0);
+        TrafficCapture.Recorder recorder = v.tesla().activeRecorder();
+        if (recorder != null) {
+            if (line == null) recorder.streamEnded(v.getStreamingVID(), endReason);
+            else recorder.streamLine(
+                    v.getStreamingVID(), line, (System.currentTimeMillis() - start) * 1000);
+        }
         if (line == null) { // End of stream or timeout, shut it down...
+            Metrics.get().streamEnded(endReason);
             streamReader = null;
             httpConnection = null;
             return null;
         }
+        Metrics.get().streamSample(System.currentTimeMillis() - start);
+        return parseLine(line);
+    }
 
+    /**
+     * Convert one line of comma separated streaming data into a JSONObject
+     * whose keys are the corresponding Keys.
+     * @param line  A line of data as returned by the streaming endpoint
+     * @return      The parsed values or null if the line was malformed
+     */
+    static JSONObject parseLine(String line) {
         JSONObject jo = new JSONObject();
         String vals[] = line.split(",");
         for (int i = 0; i < keyList.length; i++) {
@@ -122,6 +165,14 @@ public class Streamer {
     }
 
     private BufferedReader establishStreamingConnection() {
+        TrafficCapture.Replayer replayer = v.tesla().getReplayer();
+        if (replayer != null) {
+            BufferedReader r = replayer.openStream(v.getStreamingVID());
+            Metrics.get().streamConnected(
+                    r == null ? Metrics.Outcome.http_error.name() : Metrics.Outcome.ok.name());
+            return r;
+        }
+        
         if (authenticatedVehicle == null) {
             refreshAuthentication();
             if (authenticatedVehicle == null) {
@@ -131,7 +182,8 @@ public class Streamer {
         }
         
         String endpoint = String.format(
-                endpointFormat, authenticatedVehicle.getStreamingVID(), allKeys);
+                endpointFormat, v.tesla().getStreamingURI(),
+                authenticatedVehicle.getStreamingVID(), allKeys);
         
         Resty rw = getAuthAPI(authenticatedVehicle);
         
@@ -142,10 +194,15 @@ public class Streamer {
                     URLConnection uc =  r.getUrlConnection();
                     httpConnection = (uc instanceof HttpURLConnection) ?
                         httpConnection = (HttpURLConnection)uc : null;
+                    Metrics.get().streamConnected(Metrics.Outcome.ok.name());
                     return new BufferedReader(new InputStreamReader(r.stream()));
                 }
             } catch (IOException e) {
                 String msg = e.toString();
+                Metrics.get().streamConnected(
+                        Metrics.statusFromError(msg) == 0 ? 
+                            Metrics.Outcome.io_error.name() :
+                            Metrics.Outcome.http_error.name());
                 if (msg.contains("[401]") || msg.contains("Stream closed")) {
                     Tesla.logger.info("Getting new token: " + msg.trim());
                     refreshAuthentication();
@@ -158,6 +215,7 @@ public class Streamer {
             Utils.sleep(500);
         }
         
+        Metrics.get().streamConnected("gave_up");
         Tesla.logger.warning("Tried 5 times to establish a stream - giving up");
         return null;
     }
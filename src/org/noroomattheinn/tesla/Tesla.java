@@ -8,6 +8,8 @@ package org.noroomattheinn.tesla;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -20,6 +22,7 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 import org.apache.commons.lang3.StringUtils;
+import org.noroomattheinn.utils.FlightEvents;
 import org.noroomattheinn.utils.Pair;
 import org.noroomattheinn.utils.RestHelper;
 import us.monoid.json.JSONArray;
@@ -55,7 +58,8 @@ public class Tesla {
     public  static final Logger logger = Logger.getLogger(Tesla.class.getName());
     
     private static final String apiName = "Tesla Client API";
-    private static final String TeslaURI = "https://owner-api.teslamotors.com/";
+    public  static final String DefaultOwnerURI = "https://owner-api.teslamotors.com/";
+    public  static final String DefaultStreamingURI = "https://streaming.vn.teslamotors.com/";
     private static final String APIVersion = "api/1/";
     
     private static final RestHelper.Throttle Throttle;
@@ -65,6 +69,7 @@ public class Tesla {
         rateLimits.add(new Pair<>(20, 60));     // No more than 20 requests/minute
         rateLimits.add(new Pair<>(150, 10*60)); // No more than 150 requests/(10 minutes)
         Throttle = new RestHelper.Throttle(rateLimits);
+        Throttle.setListener(Metrics.get().throttleListener);
     }
     private static final String TeslaUserAgent =
             "Model S 2.1.79 (Nexus 5; Android REL 4.4.4; en_US)";
@@ -77,10 +82,15 @@ public class Tesla {
  * 
  *----------------------------------------------------------------------------*/
         
+    private final String ownerURI;
+    private final String streamingURI;
+    private final RestHelper.Throttle throttle;
     private final Resty api;
     private List<Vehicle> vehicles;
     private String username;
     private String token;
+    private volatile TrafficCapture.Recorder recorder = null;
+    private volatile TrafficCapture.Replayer replayer = null;
     
 /*==============================================================================
  * -------                                                               -------
@@ -88,15 +98,41 @@ public class Tesla {
  * -------                                                               -------
  *============================================================================*/
     
-    public Tesla() {
+    public Tesla() { this(DefaultOwnerURI, DefaultStreamingURI); }
+    
+    /**
+     * Create a Tesla object which talks to the specified servers rather than
+     * Tesla's. This is useful for testing against a simulator. Requests are
+     * subject to the same rate limits as requests to Tesla's servers.
+     * @param ownerURI      The base URI of the owner API, e.g.
+     *                      "https://owner-api.teslamotors.com/"
+     * @param streamingURI  The base URI of the streaming API, e.g.
+     *                      "https://streaming.vn.teslamotors.com/"
+     */
+    public Tesla(String ownerURI, String streamingURI) {
+        this(ownerURI, streamingURI, Throttle);
+    }
+    
+    /**
+     * Create a Tesla object which talks to the specified servers and uses
+     * the specified Throttle to limit the request rate.
+     * @param ownerURI      The base URI of the owner API
+     * @param streamingURI  The base URI of the streaming API
+     * @param throttle      The throttle to apply to requests. If null,
+     *                      requests will not be throttled.
+     */
+    public Tesla(String ownerURI, String streamingURI, RestHelper.Throttle throttle) {
+        this.ownerURI = ownerURI.endsWith("/") ? ownerURI : ownerURI + "/";
+        this.streamingURI = streamingURI.endsWith("/") ? streamingURI : streamingURI + "/";
+        this.throttle = throttle;
         api = createConnection(60* 1000);
         vehicles = new ArrayList<>();
     }
         
     final Resty createConnection(int readTimeout) {
-        return RestHelper.getInstance(
-                new RestHelper.ReadTimeout(readTimeout),
-                UserAgent, Throttle);
+        RestHelper.ReadTimeout timeout = new RestHelper.ReadTimeout(readTimeout);
+        if (throttle == null) return RestHelper.getInstance(timeout, UserAgent);
+        return RestHelper.getInstance(timeout, UserAgent, throttle);
     }
     
 /*------------------------------------------------------------------------------
@@ -155,11 +191,12 @@ public class Tesla {
         }
 
         try {
-            JSONResource r = api.json(
-                    rawEndpoint("oauth/token"),
-                    Resty.content(new JSONObject(payload)));
+            // The credentials in the payload aren't recorded
+            JSONObject r = exchange(
+                    rawEndpoint("oauth/token"), null,
+                    Resty.content(new JSONObject(payload)), new Exchange());
             if (r == null) return false;
-            String accessToken = r.object().getString("access_token");
+            String accessToken = r.getString("access_token");
             if (accessToken == null) return false;
             return connectWithToken(username, accessToken);
         } catch (IOException | JSONException e) {
@@ -170,6 +207,33 @@ public class Tesla {
     
     public String getUsername() { return username; }
     public String getToken() { return token; }
+    public String getOwnerURI() { return ownerURI; }
+    public String getStreamingURI() { return streamingURI; }
+    
+    /**
+     * Record all traffic with Tesla's servers. Pass null to stop recording.
+     * Nothing is recorded while a Replayer is set. The caller is responsible
+     * for closing the Recorder. The password given to connect() isn't
+     * recorded, but the access token it returns is, so a capture should be
+     * kept as private as the credentials themselves.
+     * @param recorder  The Recorder to write traffic to
+     */
+    public void setRecorder(TrafficCapture.Recorder recorder) { this.recorder = recorder; }
+    public TrafficCapture.Recorder getRecorder() { return recorder; }
+    
+    // The Recorder to write traffic to, or null if there is none or the
+    // traffic is being replayed
+    TrafficCapture.Recorder activeRecorder() {
+        return (replayer == null) ? recorder : null;
+    }
+    
+    /**
+     * Answer all requests from a previously recorded capture rather than
+     * Tesla's servers. Pass null to resume talking to the servers.
+     * @param replayer  The Replayer to answer requests
+     */
+    public void setReplayer(TrafficCapture.Replayer replayer) { this.replayer = replayer; }
+    public TrafficCapture.Replayer getReplayer() { return replayer; }
     
 /*------------------------------------------------------------------------------
  *
@@ -180,8 +244,8 @@ public class Tesla {
     public List<Vehicle> queryVehicles() {
         List<Vehicle> list = new ArrayList<>(2);
         try {
-            JSONResource r = api.json(apiEndpoint("vehicles"));
-            JSONArray rawVehicleData = r.object().getJSONArray("response");
+            JSONObject raw = exchange(apiEndpoint("vehicles"), null, null, new Exchange());
+            JSONArray rawVehicleData = raw.getJSONArray("response");
             int numVehicles = rawVehicleData.length();
             for (int i = 0; i < numVehicles; i++) {
                 Vehicle vehicle = new Vehicle(this, rawVehicleData.getJSONObject(i));
@@ -203,7 +267,7 @@ public class Tesla {
  *----------------------------------------------------------------------------*/
     
     String rawEndpoint(String name) {
-        return TeslaURI + name;
+        return ownerURI + name;
     }
 
     String apiEndpoint(String name) {
@@ -222,7 +286,7 @@ public class Tesla {
         return vehicleSpecific(vid, "data_request/" + name);
     }
 
-    JSONObject getState(String state) { return call(state, null); }
+    JSONObject getState(String state) { return call(state, null, null); }
     
     JSONObject invokeCommand(String command) { return invokeCommand(command, "{}"); }
         
@@ -234,25 +298,111 @@ public class Tesla {
             Tesla.logger.severe("Can't Happen - JSON Syntax Error: " + payload);
             return new JSONObject();
         }
-        return call(command, c);
+        return call(command, payload, c);
     }
     
-    private JSONObject call(String command, Content payload) {
+    String relativeEndpoint(String endpoint) {
+        return endpoint.startsWith(ownerURI) ? endpoint.substring(ownerURI.length()) : endpoint;
+    }
+    
+    private JSONObject call(String command, String payloadText, Content payload) {
+        Metrics metrics = Metrics.get();
+        Metrics.Outcome outcome = Metrics.Outcome.ok;
+        int status = 0;
+        long bytes = -1;
+        long start = System.currentTimeMillis();
         JSONObject rawResponse = null;
+        Exchange x = new Exchange();
+        
+        Object event = FlightEvents.begin(FlightEvents.Kind.ApiCall);
+        metrics.callStarted();
         try {
-            if (payload == null) rawResponse = api.json(command).object();
-            else rawResponse = api.json(command, payload).object();
-            if (rawResponse == null) return new JSONObject();
+            rawResponse = exchange(command, payloadText, payload, x);
+            if (rawResponse == null) {
+                outcome = Metrics.Outcome.bad_response;
+                return new JSONObject();
+            }
             return rawResponse.getJSONObject("response");
         } catch (IOException | JSONException ex) {
             String error = ex.toString().replace("\n", " -- ");
+            if (ex instanceof IOException) {
+                outcome = (x.status == 0) ? Metrics.Outcome.io_error : Metrics.Outcome.http_error;
+            } else {
+                outcome = Metrics.Outcome.bad_response;
+            }
             Tesla.logger.finer(
                     "Failed invoking (" + 
                     StringUtils.substringAfterLast(command, "/") + "): [" + 
                     StringUtils.substringAfter(error, "[") );
             return (rawResponse == null) ? new JSONObject() : rawResponse;
+        } finally {
+            status = x.status;
+            bytes = x.bytes;
+            String endpoint = Metrics.endpointName(command);
+            metrics.callCompleted(
+                    endpoint, outcome, status, System.currentTimeMillis() - start, bytes);
+            FlightEvents.commit(event, endpoint, outcome.name(), bytes, status);
         }
     }
+    
+    /**
+     * Make a request of the owner API, or answer it from the Replayer if
+     * there is one, and give it to the Recorder. A replayed request returns
+     * or fails just as the recorded request did.
+     * @param endpoint      The endpoint
+     * @param payloadText   The payload to record, or null for none
+     * @param payload       The payload to send, or null for a GET
+     * @param x             Receives the HTTP status and response length
+     * @return              The response
+     * @throws IOException      If the request failed
+     * @throws JSONException    If the response wasn't JSON
+     */
+    private JSONObject exchange(String endpoint, String payloadText, Content payload,
+                                Exchange x) throws IOException, JSONException {
+        String relative = relativeEndpoint(endpoint);
+        TrafficCapture.Replayer rep = replayer;
+        if (rep != null) {
+            TrafficCapture.Response r = rep.response(relative);
+            if (r == null) throw new IOException("No recorded response for " + relative);
+            x.status = r.status;
+            if (r.failed) throw new IOException(r.body);
+            x.bytes = r.body.length();
+            return new JSONObject(r.body);
+        }
+        
+        TrafficCapture.Recorder rec = activeRecorder();
+        long start = System.nanoTime();
+        String response = null;
+        boolean failed = false;
+        try {
+            JSONResource r = (payload == null) ? api.json(endpoint) : api.json(endpoint, payload);
+            URLConnection uc = r.getUrlConnection();
+            if (uc instanceof HttpURLConnection) {
+                x.status = ((HttpURLConnection)uc).getResponseCode();
+            }
+            x.bytes = uc.getContentLengthLong();
+            JSONObject o = r.object();
+            if (o != null) response = o.toString();
+            return o;
+        } catch (IOException e) {
+            x.status = Metrics.statusFromError(e.toString());
+            response = e.getMessage();
+            failed = true;
+            throw e;
+        } finally {
+            if (rec != null) {
+                long micros = (System.nanoTime() - start) / 1000;
+                if (failed) rec.callFailed(relative, payloadText, x.status, micros, response);
+                else rec.call(relative, payloadText, x.status, micros, response);
+            }
+        }
+    }
+    
+    // The HTTP status and length of a response
+    private static class Exchange {
+        int status = 0;
+        long bytes = -1;
+    }
 
     
 /*------------------------------------------------------------------------------
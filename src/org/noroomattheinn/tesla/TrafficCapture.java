@@ -0,0 +1,391 @@
+/*
+ * TrafficCapture.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.noroomattheinn.utils.Utils;
+
+/**
+ * TrafficCapture: Record and replay of the traffic between the library and
+ * Tesla's servers. A Recorder attached to a Tesla object writes every
+ * owner-API request and response, and every line of streaming data, along
+ * with their timings, to a compact (deflated, dictionary coded) capture file.
+ * A Replayer attached to a Tesla object answers the same requests from a
+ * capture instead of the network, either at the recorded speed, N times
+ * faster, or as fast as possible. This allows parsing, caching, and
+ * scheduling changes to be measured offline against real traffic.
+ *
+ * Responses are replayed per endpoint in the order they were recorded, with
+ * their recorded HTTP status. A failed request is recorded with its status
+ * and error and fails the same way when it is replayed. Requesting an
+ * endpoint more often than it was recorded fails as an I/O error would.
+ * Endpoints are recorded relative to the owner API base URI so a capture can
+ * be replayed against any URI.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class TrafficCapture {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final double RealTime = 1.0;
+    public static final double AsFastAsPossible = 0.0;
+
+    private static final int Magic = 0x54434150;    // "TCAP"
+    private static final int Version = 2;       // 1 didn't record failed calls' errors
+
+    private static final byte Call = 1;
+    private static final byte StreamOpen = 2;
+    private static final byte StreamLine = 3;
+    private static final byte StreamEnd = 4;
+    private static final byte CallFailed = 5;
+
+    private TrafficCapture() { }
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Recorder                                         -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Recorder: Writes traffic to a capture file. All methods are thread safe.
+     * Call close() to complete the file.
+     */
+    public static class Recorder implements Closeable {
+        private final DataOutputStream out;
+        private final Map<String,Integer> dictionary = new HashMap<>();
+        private final long start = System.nanoTime();
+        private long nRecords = 0;
+        private boolean closed = false;
+
+        public Recorder(File file) throws IOException {
+            FileOutputStream fos = new FileOutputStream(file);
+            DataOutputStream header = new DataOutputStream(fos);
+            header.writeInt(Magic);
+            header.writeInt(Version);
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(fos, new Deflater(Deflater.BEST_SPEED), 65536)));
+        }
+
+        public synchronized long getRecordCount() { return nRecords; }
+
+        synchronized void call(String endpoint, String payload, int status,
+                               long latencyMicros, String response) {
+            exchange(Call, endpoint, payload, status, latencyMicros, response);
+        }
+
+        synchronized void callFailed(String endpoint, String payload, int status,
+                                     long latencyMicros, String error) {
+            exchange(CallFailed, endpoint, payload, status, latencyMicros, error);
+        }
+
+        private void exchange(byte type, String endpoint, String payload, int status,
+                              long latencyMicros, String response) {
+            if (closed) return;
+            try {
+                header(type);
+                key(endpoint);
+                string(payload == null ? "" : payload);
+                varLong(status);
+                varLong(latencyMicros);
+                string(response == null ? "" : response);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        synchronized void streamOpened(String vid) {
+            if (closed) return;
+            try {
+                header(StreamOpen);
+                key(vid);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        synchronized void streamLine(String vid, String line, long latencyMicros) {
+            if (closed) return;
+            try {
+                header(StreamLine);
+                key(vid);
+                varLong(latencyMicros);
+                string(line);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        synchronized void streamEnded(String vid, String reason) {
+            if (closed) return;
+            try {
+                header(StreamEnd);
+                key(vid);
+                string(reason);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        @Override public synchronized void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            out.close();
+        }
+
+        private void header(byte type) throws IOException {
+            out.writeByte(type);
+            varLong((System.nanoTime() - start) / 1000);
+            nRecords++;
+        }
+
+        // Strings that repeat (endpoints and VIDs) are written once and then
+        // referred to by number
+        private void key(String s) throws IOException {
+            Integer id = dictionary.get(s);
+            if (id != null) { varLong(id); return; }
+            id = dictionary.size() + 1;
+            dictionary.put(s, id);
+            varLong(0);
+            string(s);
+        }
+
+        private void string(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varLong(bytes.length);
+            out.write(bytes);
+        }
+
+        private void varLong(long v) throws IOException {
+            while ((v & ~0x7fL) != 0) {
+                out.writeByte((int)((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            out.writeByte((int)v);
+        }
+
+        private void failed(IOException e) {
+            Tesla.logger.warning("Traffic recording stopped: " + e.getMessage());
+            closed = true;
+            try { out.close(); } catch (IOException ignored) { }
+        }
+    }
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Replayer                                         -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Replayer: Answers requests from a capture file. The capture is read into
+     * memory when the Replayer is created.
+     */
+    public static class Replayer {
+        private final double speed;
+        private final Map<String,Queue<Response>> responses = new HashMap<>();
+        private final Map<String,Queue<List<Line>>> streams = new HashMap<>();
+        private long nCalls = 0, nLines = 0;
+
+        /**
+         * Load a capture for replay
+         * @param file  The capture file
+         * @param speed The replay speed: RealTime, a multiple of real time,
+         *              or AsFastAsPossible
+         * @throws IOException  If the file can't be read or isn't a capture
+         */
+        public Replayer(File file, double speed) throws IOException {
+            this.speed = speed;
+            try (FileInputStream fis = new FileInputStream(file)) {
+                DataInputStream header = new DataInputStream(fis);
+                int version = (header.readInt() == Magic) ? header.readInt() : 0;
+                if (version < 1 || version > Version) {
+                    throw new IOException("Not a traffic capture: " + file);
+                }
+                load(new DataInputStream(new BufferedInputStream(new InflaterInputStream(fis))),
+                     version);
+            }
+        }
+
+        public synchronized long getCallCount() { return nCalls; }
+        public synchronized long getLineCount() { return nLines; }
+
+        /**
+         * Return the next recorded response for an endpoint, after waiting
+         * for its (scaled) recorded latency
+         * @param endpoint  The endpoint relative to the owner API base URI
+         * @return          The response or null if there are no more
+         */
+        Response response(String endpoint) {
+            Response r;
+            synchronized (this) {
+                Queue<Response> q = responses.get(endpoint);
+                r = (q == null) ? null : q.poll();
+            }
+            if (r != null) pause(r.latencyMicros);
+            return r;
+        }
+
+        /**
+         * Return a reader over the next recorded stream for a vehicle. Each
+         * line is delivered after its (scaled) recorded delay.
+         * @param vid   The streaming VID
+         * @return      The reader or null if there are no more streams
+         */
+        BufferedReader openStream(String vid) {
+            final List<Line> lines;
+            synchronized (this) {
+                Queue<List<Line>> q = streams.get(vid);
+                lines = (q == null) ? null : q.poll();
+            }
+            if (lines == null) return null;
+            return new BufferedReader(new StringReader("")) {
+                private int next = 0;
+                @Override public String readLine() {
+                    if (next >= lines.size()) return null;
+                    Line l = lines.get(next++);
+                    pause(l.latencyMicros);
+                    return l.text;
+                }
+            };
+        }
+
+        private void pause(long micros) {
+            if (speed <= 0 || micros <= 0) return;
+            long millis = (long)(micros / (1000 * speed));
+            if (millis > 0) Utils.yieldFor(millis);
+        }
+
+        private void load(DataInputStream in, int version) throws IOException {
+            List<String> dictionary = new ArrayList<>();
+            Map<String,List<Line>> open = new HashMap<>();
+            while (true) {
+                int type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                varLong(in);    // The time of the record isn't needed for replay
+                String key = key(in, dictionary);
+                switch (type) {
+                    case Call:
+                    case CallFailed:
+                        string(in);     // The payload
+                        int status = (int)varLong(in);
+                        long latency = varLong(in);
+                        String body = string(in);
+                        // Version 1 recorded failures as calls with no body
+                        boolean failed = (type == CallFailed) ||
+                                         (version == 1 && status != 200);
+                        queueFor(responses, key).add(new Response(status, latency, body, failed));
+                        nCalls++;
+                        break;
+                    case StreamOpen:
+                        List<Line> lines = new ArrayList<>();
+                        open.put(key, lines);
+                        queueFor(streams, key).add(lines);
+                        break;
+                    case StreamLine:
+                        long delay = varLong(in);
+                        String text = string(in);
+                        List<Line> current = open.get(key);
+                        if (current != null) current.add(new Line(delay, text));
+                        nLines++;
+                        break;
+                    case StreamEnd:
+                        string(in);
+                        open.remove(key);
+                        break;
+                    default:
+                        throw new IOException("Corrupt traffic capture, record type " + type);
+                }
+            }
+        }
+
+        private static <T> Queue<T> queueFor(Map<String,Queue<T>> map, String key) {
+            Queue<T> q = map.get(key);
+            if (q == null) { q = new ArrayDeque<>(); map.put(key, q); }
+            return q;
+        }
+
+        private static String key(DataInputStream in, List<String> dictionary) throws IOException {
+            int id = (int)varLong(in);
+            if (id != 0) return dictionary.get(id - 1);
+            String s = string(in);
+            dictionary.add(s);
+            return s;
+        }
+
+        private static String string(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[(int)varLong(in)];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static long varLong(DataInputStream in) throws IOException {
+            long v = 0;
+            int shift = 0, b;
+            do {
+                b = in.readByte();
+                v |= (long)(b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+    }
+
+    /**
+     * Response: A recorded response. If the call failed the body is the
+     * error it failed with and the status is the HTTP status of the failure,
+     * or 0 if it failed before a status was received.
+     */
+    static class Response {
+        final int status;
+        final long latencyMicros;
+        final String body;
+        final boolean failed;
+        Response(int status, long latencyMicros, String body, boolean failed) {
+            this.status = status; this.latencyMicros = latencyMicros;
+            this.body = body; this.failed = failed;
+        }
+    }
+
+    private static class Line {
+        final long latencyMicros;
+        final String text;
+        Line(long latencyMicros, String text) {
+            this.latencyMicros = latencyMicros; this.text = text;
+        }
+    }
+}
@@ -6,7 +6,9 @@
 
 package org.noroomattheinn.tesla;
 
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.noroomattheinn.utils.Utils;
@@ -55,6 +57,7 @@ public class Vehicle {
  *----------------------------------------------------------------------------*/
     private final Tesla         tesla;
     private final Streamer      streamer;
+    private final List<StateListener> stateListeners = new CopyOnWriteArrayList<>();
 
     // Instance variables that describe the Vehicle
     private final String        color;
@@ -79,6 +82,16 @@ public class Vehicle {
  * -------                                                               -------
  *============================================================================*/
     
+    /**
+     * StateListener: Is told about every valid state received for a Vehicle,
+     * whether it came from one of the query methods or from its Streamer.
+     * Listeners are called on the thread that received the state and should
+     * return quickly.
+     */
+    public interface StateListener {
+        void stateReceived(Vehicle v, BaseState state);
+    }
+
     public Vehicle(Tesla tesla, JSONObject description) {
         this.tesla = tesla;
         this.baseValues = description.toString();
@@ -108,7 +121,7 @@ public class Vehicle {
         }
                 
         // Handle the Options
-        options = new Options(description.optString("option_codes"));
+        options = Options.forString(description.optString("option_codes"));
         streamer = new Streamer(this);
         
         // Initialize state endpoints
@@ -197,22 +210,37 @@ public class Vehicle {
     }
     
     public ChargeState queryCharge() {
-        return new ChargeState(tesla.getState(ChargeEndpoint));
+        return received(new ChargeState(tesla.getState(ChargeEndpoint)));
     }
     public DriveState queryDrive() {
-        return new DriveState(tesla.getState(DriveEndpoint));
+        return received(new DriveState(tesla.getState(DriveEndpoint)));
     }
     public GUIState queryGUI() {
-        return new GUIState(tesla.getState(GUIEndpoint));
+        return received(new GUIState(tesla.getState(GUIEndpoint)));
     }
     public HVACState queryHVAC() {
-        return new HVACState(tesla.getState(HVACEndpoint));
+        return received(new HVACState(tesla.getState(HVACEndpoint)));
     }
     public VehicleState queryVehicle() {
-        return new VehicleState(tesla.getState(VehicleStateEndpoint));
+        return received(new VehicleState(tesla.getState(VehicleStateEndpoint)));
     }
     public Streamer getStreamer() { return streamer; }
 
+    public void addStateListener(StateListener l) { stateListeners.add(l); }
+    public void removeStateListener(StateListener l) { stateListeners.remove(l); }
+
+    /**
+     * Tell the StateListeners about a newly received state
+     * @param state The state
+     * @return      The same state
+     */
+    <T extends BaseState> T received(T state) {
+        if (state.valid) {
+            for (StateListener l : stateListeners) { l.stateReceived(this, state); }
+        }
+        return state;
+    }
+
 /*------------------------------------------------------------------------------
  *
  * Methods to control the HVAC system
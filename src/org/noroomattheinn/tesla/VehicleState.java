@@ -6,6 +6,7 @@
 
 package org.noroomattheinn.tesla;
 
+import java.nio.ByteBuffer;
 import org.noroomattheinn.utils.Utils;
 import us.monoid.json.JSONObject;
 
@@ -23,8 +24,26 @@ public class VehicleState extends BaseState {
  * Constants and Enums
  * 
  *----------------------------------------------------------------------------*/
+    /**
+     * PanoPosition: The position of the panoramic roof. StateCodec stores
+     * the ordinals, so add new values at the end and never remove or reorder
+     * any.
+     */
     public enum PanoPosition {open, closed, vent, comfort, moving, unknown, Unknown};
     
+    /**
+     * Field: The fields compared by changedFields(), in bit order. StateCodec
+     * stores the ordinals, so add new fields at the end and never remove any.
+     */
+    public enum Field {
+        isDFOpen, isPFOpen, isDROpen, isPROpen, isFTOpen, isRTOpen, locked,
+        hasPano, panoPercent, panoState, version, hasDarkRims, wheelType,
+        hasSpoiler, roofColor, perfConfig, remoteStart
+    };
+    public static final long AllFields = (1L << Field.values().length) - 1;
+    private static final VehicleState Empty = new VehicleState(emptyJSONObj);
+    private static final PanoPosition[] PanoPositions = PanoPosition.values();
+    
 /*------------------------------------------------------------------------------
  *
  * Public State
@@ -76,6 +95,75 @@ public class VehicleState extends BaseState {
         remoteStart = source.optBoolean("remote_start");
     }
     
+    // Decode the fields in mask from in. The rest come from base, if any.
+    VehicleState(long timestamp, boolean valid, ByteBuffer in, long mask, VehicleState base) {
+        super(timestamp, valid);
+        VehicleState b = (base != null) ? base : Empty;
+        isDFOpen = get(in, mask, Field.isDFOpen, b.isDFOpen);
+        isPFOpen = get(in, mask, Field.isPFOpen, b.isPFOpen);
+        isDROpen = get(in, mask, Field.isDROpen, b.isDROpen);
+        isPROpen = get(in, mask, Field.isPROpen, b.isPROpen);
+        isFTOpen = get(in, mask, Field.isFTOpen, b.isFTOpen);
+        isRTOpen = get(in, mask, Field.isRTOpen, b.isRTOpen);
+        locked = get(in, mask, Field.locked, b.locked);
+        hasPano = get(in, mask, Field.hasPano, b.hasPano);
+        panoPercent = get(in, mask, Field.panoPercent, b.panoPercent);
+        panoState = get(in, mask, Field.panoState, PanoPositions, b.panoState);
+        version = get(in, mask, Field.version, b.version);
+        hasDarkRims = get(in, mask, Field.hasDarkRims, b.hasDarkRims);
+        wheelType = get(in, mask, Field.wheelType, b.wheelType);
+        hasSpoiler = get(in, mask, Field.hasSpoiler, b.hasSpoiler);
+        roofColor = get(in, mask, Field.roofColor, b.roofColor);
+        perfConfig = get(in, mask, Field.perfConfig, b.perfConfig);
+        remoteStart = get(in, mask, Field.remoteStart, b.remoteStart);
+    }
+    
+    @Override public long changedFields(BaseState previous) {
+        if (!(previous instanceof VehicleState)) return AllFields;
+        VehicleState p = (VehicleState)previous;
+        long m = 0;
+        m |= changed(isDFOpen, p.isDFOpen, Field.isDFOpen);
+        m |= changed(isPFOpen, p.isPFOpen, Field.isPFOpen);
+        m |= changed(isDROpen, p.isDROpen, Field.isDROpen);
+        m |= changed(isPROpen, p.isPROpen, Field.isPROpen);
+        m |= changed(isFTOpen, p.isFTOpen, Field.isFTOpen);
+        m |= changed(isRTOpen, p.isRTOpen, Field.isRTOpen);
+        m |= changed(locked, p.locked, Field.locked);
+        m |= changed(hasPano, p.hasPano, Field.hasPano);
+        m |= changed(panoPercent, p.panoPercent, Field.panoPercent);
+        m |= changed(panoState, p.panoState, Field.panoState);
+        m |= changed(version, p.version, Field.version);
+        m |= changed(hasDarkRims, p.hasDarkRims, Field.hasDarkRims);
+        m |= changed(wheelType, p.wheelType, Field.wheelType);
+        m |= changed(hasSpoiler, p.hasSpoiler, Field.hasSpoiler);
+        m |= changed(roofColor, p.roofColor, Field.roofColor);
+        m |= changed(perfConfig, p.perfConfig, Field.perfConfig);
+        m |= changed(remoteStart, p.remoteStart, Field.remoteStart);
+        return m;
+    }
+    
+    @Override public Enum<?>[] fields() { return Field.values(); }
+    
+    @Override void encodeFields(ByteBuffer out, long mask) {
+        put(out, mask, Field.isDFOpen, isDFOpen);
+        put(out, mask, Field.isPFOpen, isPFOpen);
+        put(out, mask, Field.isDROpen, isDROpen);
+        put(out, mask, Field.isPROpen, isPROpen);
+        put(out, mask, Field.isFTOpen, isFTOpen);
+        put(out, mask, Field.isRTOpen, isRTOpen);
+        put(out, mask, Field.locked, locked);
+        put(out, mask, Field.hasPano, hasPano);
+        put(out, mask, Field.panoPercent, panoPercent);
+        put(out, mask, Field.panoState, panoState);
+        put(out, mask, Field.version, version);
+        put(out, mask, Field.hasDarkRims, hasDarkRims);
+        put(out, mask, Field.wheelType, wheelType);
+        put(out, mask, Field.hasSpoiler, hasSpoiler);
+        put(out, mask, Field.roofColor, roofColor);
+        put(out, mask, Field.perfConfig, perfConfig);
+        put(out, mask, Field.remoteStart, remoteStart);
+    }
+    
     @Override public String toString() {
         StringBuilder sb = new StringBuilder();
         if (isDFOpen) sb.append("    Driver Front Door is open\n");
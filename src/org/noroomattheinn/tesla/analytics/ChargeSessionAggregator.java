@@ -0,0 +1,349 @@
+/*
+ * ChargeSessionAggregator.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.analytics;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.noroomattheinn.tesla.BaseState;
+import org.noroomattheinn.tesla.ChargeState;
+import org.noroomattheinn.tesla.Tesla;
+import org.noroomattheinn.tesla.Vehicle;
+
+/**
+ * ChargeSessionAggregator: Detects charging sessions incrementally from a
+ * series of ChargeState polls and keeps running totals for each one. A
+ * session begins when the vehicle is connected to a charger and ends when it
+ * is disconnected. Only a fixed amount of state is kept per vehicle.
+ *
+ * Polls whose Status is Unknown, because the server sent no charging state
+ * or one this code doesn't know, are ignored. Treating one in the middle of
+ * a charge as a disconnection would split the charge into two sessions.
+ *
+ * The vehicle's energyAdded counter restarts when charging restarts, so a
+ * drop in the counter during a session is treated as a new charge within the
+ * same session. Time between polls is attributed to the Status seen at the
+ * start of the interval and power is integrated only while Charging.
+ *
+ * The aggregator also recommends how often to poll each vehicle: rarely
+ * when it isn't connected, often when a charge is starting, and more often
+ * as a charge approaches its limit so that the end isn't missed.
+ *
+ * ChargeSessionAggregator is a Vehicle.StateListener, so adding it to a
+ * Vehicle feeds it every ChargeState from queryCharge().
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class ChargeSessionAggregator implements Vehicle.StateListener {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final long DefaultMinPollInterval = 30 * 1000;
+    public static final long DefaultMaxPollInterval = 10 * 60 * 1000;
+
+    private static final ChargeState.Status[] Statuses = ChargeState.Status.values();
+    private static final double MillisPerHour = 60 * 60 * 1000;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String,Tracker> trackers = new ConcurrentHashMap<>();
+    private long minPollInterval = DefaultMinPollInterval;
+    private long maxPollInterval = DefaultMaxPollInterval;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Listener: Is told when charging sessions start and end. The same
+     * Session object is passed to both calls and is updated as the session
+     * progresses, so it must not be modified by the listener.
+     */
+    public interface Listener {
+        void sessionStarted(Session session);
+        void sessionEnded(Session session);
+    }
+
+    /**
+     * Session: The running totals of a charging session
+     */
+    public static class Session {
+        public final String vid;
+        public long    startTime, endTime;
+        public int     startSOC, endSOC;
+        public double  energyAdded;         // kWh
+        public double  ratedMilesAdded;
+        public int     peakPower;           // kW
+        public int     peakVoltage;
+        public int     peakCurrent;
+        public boolean fastCharger;
+        public int     nPolls;
+        public boolean complete;
+        private final long[] timeInStatus = new long[Statuses.length];
+        private double integratedPower;     // kWh while Charging
+        private long   chargingTime;
+
+        Session(String vid) { this.vid = vid; }
+
+        public long duration() { return endTime - startTime; }
+
+        /**
+         * Return the time spent in a Status during this session
+         * @param status    The Status
+         * @return          The time in milliseconds
+         */
+        public long timeIn(ChargeState.Status status) { return timeInStatus[status.ordinal()]; }
+
+        /**
+         * Return the average charger power while charging
+         * @return  The average power in kW or 0 if the vehicle hasn't charged
+         */
+        public double averagePower() {
+            return chargingTime == 0 ? 0 : integratedPower / (chargingTime / MillisPerHour);
+        }
+
+        /**
+         * Return the energy needed per rated mile added
+         * @return  Wh per rated mile or NaN if no miles have been added
+         */
+        public double whPerRatedMile() {
+            return ratedMilesAdded <= 0 ? Double.NaN : energyAdded * 1000 / ratedMilesAdded;
+        }
+
+        @Override public String toString() {
+            return String.format(
+                    "Session[%s: %d - %d (%ds), SOC %d -> %d, %.2f kWh, %.1f rated mi, " +
+                    "peak %d kW, avg %.1f kW, %.0f Wh/mi, charging %ds%s]",
+                    vid, startTime, endTime, duration() / 1000, startSOC, endSOC,
+                    energyAdded, ratedMilesAdded, peakPower, averagePower(),
+                    whPerRatedMile(), timeIn(ChargeState.Status.Charging) / 1000,
+                    complete ? "" : ", in progress");
+        }
+    }
+
+    public ChargeSessionAggregator() { }
+
+    public void addListener(Listener l) { listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    /**
+     * Set the range of poll intervals that getPollInterval recommends
+     * @param min   The interval near the end of a charge, in milliseconds
+     * @param max   The interval when not charging, in milliseconds
+     * @return      this ChargeSessionAggregator
+     */
+    public ChargeSessionAggregator setPollIntervals(long min, long max) {
+        minPollInterval = min;
+        maxPollInterval = max;
+        return this;
+    }
+
+    @Override public void stateReceived(Vehicle v, BaseState state) {
+        if (state instanceof ChargeState) process(v.getVID(), (ChargeState)state);
+    }
+
+    /**
+     * Process the next ChargeState poll for a vehicle
+     * @param vid   The vehicle the state belongs to
+     * @param cs    The state
+     */
+    public void process(String vid, ChargeState cs) { process(vid, cs, cs.timestamp); }
+
+    /**
+     * Process a ChargeState poll that was taken at a given time, e.g. when
+     * replaying stored states
+     * @param vid   The vehicle the state belongs to
+     * @param cs    The state
+     * @param time  The time of the poll in milliseconds
+     */
+    public void process(String vid, ChargeState cs, long time) {
+        if (!cs.valid || cs.chargingState == ChargeState.Status.Unknown) return;
+        Tracker k = trackers.get(vid);
+        if (k == null) {
+            k = new Tracker();
+            Tracker existing = trackers.putIfAbsent(vid, k);
+            if (existing != null) k = existing;
+        }
+
+        Session started = null, ended = null;
+        synchronized (k) {
+            if (time < k.lastTime) return;
+            Session s = k.session;
+            if (s != null) {
+                accumulate(k, cs, time);
+                if (!cs.connectedToCharger()) {
+                    s.complete = true;
+                    ended = s;
+                    k.session = null;
+                }
+            } else if (cs.connectedToCharger()) {
+                started = k.session = begin(vid, cs, time);
+                // Until charging starts the counters still describe the last
+                // charge, so they don't count toward this session
+                k.lastEnergy = Double.isNaN(cs.energyAdded) ? 0 : cs.energyAdded;
+                k.lastMiles = Double.isNaN(cs.ratedMilesAdded) ? 0 : cs.ratedMilesAdded;
+                boolean charging = cs.chargingState == ChargeState.Status.Charging;
+                k.energyBase = charging ? 0 : -k.lastEnergy;
+                k.milesBase = charging ? 0 : -k.lastMiles;
+                started.energyAdded = k.energyBase + k.lastEnergy;
+                started.ratedMilesAdded = k.milesBase + k.lastMiles;
+            }
+            k.remember(cs, time);
+        }
+        if (ended != null) notifyEnded(ended);
+        if (started != null) notifyStarted(started);
+    }
+
+    /**
+     * Return the session in progress for a vehicle
+     * @param vid   The vehicle
+     * @return      The session or null if the vehicle isn't connected
+     */
+    public Session getCurrentSession(String vid) {
+        Tracker k = trackers.get(vid);
+        if (k == null) return null;
+        synchronized (k) { return k.session; }
+    }
+
+    /**
+     * Recommend when to poll a vehicle's ChargeState next, based on the
+     * last ChargeState seen. The interval shrinks toward the minimum as the
+     * charge nears its limit or is about to finish.
+     * @param vid   The vehicle
+     * @return      The recommended interval in milliseconds
+     */
+    public long getPollInterval(String vid) {
+        Tracker k = trackers.get(vid);
+        if (k == null) return minPollInterval;
+        synchronized (k) {
+            if (k.session == null) return maxPollInterval;
+            switch (k.lastStatus) {
+                case Starting:
+                    return minPollInterval;
+                case Charging:
+                    // Poll about ten times during the remaining charge
+                    long remaining = (long)(k.lastTimeToFull * MillisPerHour);
+                    if (k.lastLimit > 0) {
+                        int socLeft = k.lastLimit - k.lastSOC;
+                        if (socLeft <= 2) return minPollInterval;
+                    }
+                    if (remaining <= 0) return minPollInterval;
+                    return clamp(remaining / 10);
+                default:
+                    return maxPollInterval / 2;
+            }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static Session begin(String vid, ChargeState cs, long time) {
+        Session s = new Session(vid);
+        s.startTime = s.endTime = time;
+        s.startSOC = s.endSOC = cs.batteryPercent;
+        s.fastCharger = cs.fastChargerPresent;
+        s.peakPower = cs.chargerPower;
+        s.peakVoltage = cs.chargerVoltage;
+        s.peakCurrent = cs.chargerActualCurrent;
+        s.nPolls = 1;
+        return s;
+    }
+
+    private void accumulate(Tracker k, ChargeState cs, long time) {
+        Session s = k.session;
+        long dt = time - k.lastTime;
+        s.timeInStatus[k.lastStatus.ordinal()] += dt;
+        if (k.lastStatus == ChargeState.Status.Charging) {
+            s.integratedPower += (k.lastPower + cs.chargerPower) / 2.0 * (dt / MillisPerHour);
+            s.chargingTime += dt;
+        }
+
+        // The energy counter restarts with each charge; carry the old total
+        double energy = Double.isNaN(cs.energyAdded) ? k.lastEnergy : cs.energyAdded;
+        double miles = Double.isNaN(cs.ratedMilesAdded) ? k.lastMiles : cs.ratedMilesAdded;
+        if (energy < k.lastEnergy) {
+            k.energyBase += k.lastEnergy;
+            k.milesBase += k.lastMiles;
+        }
+        k.lastEnergy = energy;
+        k.lastMiles = miles;
+        s.energyAdded = k.energyBase + energy;
+        s.ratedMilesAdded = k.milesBase + miles;
+
+        s.endTime = time;
+        s.endSOC = cs.batteryPercent;
+        s.nPolls++;
+        s.fastCharger |= cs.fastChargerPresent;
+        if (cs.chargerPower > s.peakPower) s.peakPower = cs.chargerPower;
+        if (cs.chargerVoltage > s.peakVoltage) s.peakVoltage = cs.chargerVoltage;
+        if (cs.chargerActualCurrent > s.peakCurrent) s.peakCurrent = cs.chargerActualCurrent;
+    }
+
+    private long clamp(long interval) {
+        return Math.max(minPollInterval, Math.min(maxPollInterval, interval));
+    }
+
+    private void notifyStarted(Session s) {
+        for (Listener l : listeners) {
+            try {
+                l.sessionStarted(s);
+            } catch (Exception e) {
+                Tesla.logger.warning("Charge session listener failed: " + e);
+            }
+        }
+    }
+
+    private void notifyEnded(Session s) {
+        for (Listener l : listeners) {
+            try {
+                l.sessionEnded(s);
+            } catch (Exception e) {
+                Tesla.logger.warning("Charge session listener failed: " + e);
+            }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * The per-vehicle state
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static class Tracker {
+        Session session = null;             // null when not connected
+        long    lastTime = Long.MIN_VALUE;
+        ChargeState.Status lastStatus = ChargeState.Status.Unknown;
+        int     lastPower, lastSOC, lastLimit;
+        double  lastTimeToFull;
+        double  lastEnergy, lastMiles;      // The vehicle's counters at the last poll
+        double  energyBase, milesBase;      // Totals from earlier charges this session
+
+        void remember(ChargeState cs, long time) {
+            lastTime = time;
+            lastStatus = cs.chargingState;
+            lastPower = cs.chargerPower;
+            lastSOC = cs.batteryPercent;
+            lastLimit = cs.chargeLimitSOC;
+            lastTimeToFull = Double.isNaN(cs.timeToFullCharge) ? 0 : cs.timeToFullCharge;
+        }
+    }
+}
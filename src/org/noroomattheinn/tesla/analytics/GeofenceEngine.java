@@ -0,0 +1,320 @@
+/*
+ * GeofenceEngine.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.analytics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.noroomattheinn.tesla.BaseState;
+import org.noroomattheinn.tesla.DriveState;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Tesla;
+import org.noroomattheinn.tesla.Vehicle;
+import org.noroomattheinn.utils.GeoIndex;
+import org.noroomattheinn.utils.GeoUtils;
+import org.noroomattheinn.utils.GeoUtils.Area;
+
+/**
+ * GeofenceEngine: Tells listeners when vehicles enter, leave, and dwell in
+ * geofences. Locations come from StreamStates or DriveStates. The fences are
+ * kept in a GeoIndex, so each location is matched against only the few fences
+ * near it, and each vehicle's memberships are tracked incrementally, so the
+ * work per location doesn't depend on the number of fences or vehicles.
+ *
+ * GPS locations jitter, so events are stabilized two ways:
+ * - Debouncing: a vehicle must be seen inside a fence for a number of
+ *   consecutive locations before it ENTERs, and outside for the same number
+ *   before it EXITs.
+ * - Hysteresis: once a vehicle is inside a CircularArea it isn't considered
+ *   outside until it is more than the hysteresis distance beyond the radius.
+ *   Other kinds of Area exit as soon as they no longer contain the location.
+ * A DWELL event is sent once per visit when a vehicle has been inside a fence
+ * for the dwell time.
+ *
+ * GeofenceEngine is a Vehicle.StateListener, so adding it to a Vehicle feeds
+ * it every location from the Vehicle's Streamer and from queryDrive().
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class GeofenceEngine implements Vehicle.StateListener {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public enum Type {Enter, Exit, Dwell};
+
+    public static final int  DefaultDebounce = 2;
+    public static final double DefaultHysteresis = 25;      // meters
+    public static final long DefaultDwellTime = 5 * 60 * 1000;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private volatile Fences fences = new Fences(Collections.<Area>emptySet());
+    private final ConcurrentHashMap<String,Tracker> trackers = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private int debounce = DefaultDebounce;
+    private double hysteresis = DefaultHysteresis;
+    private long dwellTime = DefaultDwellTime;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Event: A vehicle crossed or dwelled in a fence
+     */
+    public static class Event {
+        public final String vid;
+        public final Area   area;
+        public final Type   type;
+        public final long   time;
+        public final double lat, lng;
+
+        Event(String vid, Area area, Type type, long time, double lat, double lng) {
+            this.vid = vid; this.area = area; this.type = type;
+            this.time = time; this.lat = lat; this.lng = lng;
+        }
+
+        @Override public String toString() {
+            return String.format("%s %s %s at %d (%f, %f)",
+                    vid, type, area.getName(), time, lat, lng);
+        }
+    }
+
+    /**
+     * Listener: Is told about geofence events. Listeners are called on the
+     * thread that delivered the location and should return quickly.
+     */
+    public interface Listener {
+        void geofenceEvent(Event e);
+    }
+
+    public GeofenceEngine() { }
+
+    public void addListener(Listener l) { listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    /**
+     * The number of consecutive locations needed to enter or exit a fence
+     * @param n The number of locations (at least 1)
+     * @return  this GeofenceEngine
+     */
+    public GeofenceEngine setDebounce(int n) { debounce = Math.max(1, n); return this; }
+
+    /**
+     * How far beyond a CircularArea a vehicle must be to be outside it
+     * @param meters    The distance in meters
+     * @return          this GeofenceEngine
+     */
+    public GeofenceEngine setHysteresis(double meters) { hysteresis = meters; return this; }
+
+    /**
+     * How long a vehicle must be inside a fence before a DWELL event
+     * @param millis    The time in milliseconds
+     * @return          this GeofenceEngine
+     */
+    public GeofenceEngine setDwellTime(long millis) { dwellTime = millis; return this; }
+
+    /**
+     * Replace all of the fences. Locations being processed at the same time
+     * are matched against either the old fences or the new ones. Vehicles
+     * inside fences that are removed don't receive EXIT events.
+     * @param areas The new fences
+     */
+    public synchronized void setFences(Collection<? extends Area> areas) {
+        fences = new Fences(areas);
+    }
+
+    public synchronized void addFence(Area area) {
+        if (fences.set.contains(area)) return;
+        List<Area> areas = new ArrayList<>(fences.set);
+        areas.add(area);
+        fences = new Fences(areas);
+    }
+
+    public synchronized void removeFence(Area area) {
+        if (!fences.set.contains(area)) return;
+        List<Area> areas = new ArrayList<>(fences.set);
+        areas.remove(area);
+        fences = new Fences(areas);
+    }
+
+    public int getFenceCount() { return fences.set.size(); }
+
+    @Override public void stateReceived(Vehicle v, BaseState state) {
+        if (state instanceof StreamState) {
+            StreamState s = (StreamState)state;
+            long time = (s.vehicleTimestamp != 0) ? s.vehicleTimestamp : s.timestamp;
+            process(v.getVID(), s.estLat, s.estLng, time);
+        } else if (state instanceof DriveState) {
+            DriveState d = (DriveState)state;
+            process(v.getVID(), d.latitude, d.longitude, d.timestamp);
+        }
+    }
+
+    /**
+     * Process the next location of a vehicle
+     * @param vid   The vehicle
+     * @param lat   Its latitude
+     * @param lng   Its longitude
+     * @param time  The time of the location in milliseconds
+     */
+    public void process(String vid, double lat, double lng, long time) {
+        if (Double.isNaN(lat) || Double.isNaN(lng)) return;
+        Tracker k = trackers.get(vid);
+        if (k == null) {
+            k = new Tracker();
+            Tracker existing = trackers.putIfAbsent(vid, k);
+            if (existing != null) k = existing;
+        }
+
+        Fences f = fences;
+        List<Event> events = null;
+        synchronized (k) {
+            if (time < k.lastTime) return;
+            k.lastTime = time;
+
+            List<Area> containing = k.scratch;
+            containing.clear();
+            f.index.containing(lat, lng, containing);
+            for (Membership m : k.memberships) m.inside = false;
+            for (Area a : containing) {
+                Membership m = k.find(a);
+                if (m == null) { m = new Membership(a); k.memberships.add(m); }
+                m.inside = true;
+            }
+
+            for (int i = k.memberships.size() - 1; i >= 0; i--) {
+                Membership m = k.memberships.get(i);
+                if (!f.set.contains(m.area)) { k.memberships.remove(i); continue; }
+                Type type = null;
+                if (!m.confirmed) {
+                    if (!m.inside) {
+                        k.memberships.remove(i);
+                    } else if (++m.count >= debounce) {
+                        m.confirmed = true;
+                        m.count = 0;
+                        m.enteredAt = time;
+                        type = Type.Enter;
+                    }
+                } else if (m.inside || withinMargin(m.area, lat, lng)) {
+                    m.count = 0;
+                    if (!m.dwelled && time - m.enteredAt >= dwellTime) {
+                        m.dwelled = true;
+                        type = Type.Dwell;
+                    }
+                } else if (++m.count >= debounce) {
+                    k.memberships.remove(i);
+                    type = Type.Exit;
+                }
+                if (type != null) {
+                    if (events == null) events = new ArrayList<>(2);
+                    events.add(new Event(vid, m.area, type, time, lat, lng));
+                }
+            }
+        }
+        if (events != null) {
+            for (Event e : events) notifyListeners(e);
+        }
+    }
+
+    /**
+     * Return the fences a vehicle is currently inside
+     * @param vid   The vehicle
+     * @return      The fences, which may be empty
+     */
+    public List<Area> getFencesFor(String vid) {
+        List<Area> result = new ArrayList<>();
+        Tracker k = trackers.get(vid);
+        if (k == null) return result;
+        Set<Area> current = fences.set;
+        synchronized (k) {
+            for (Membership m : k.memberships) {
+                if (m.confirmed && current.contains(m.area)) result.add(m.area);
+            }
+        }
+        return result;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private boolean withinMargin(Area a, double lat, double lng) {
+        if (a instanceof GeoUtils.CircularArea) {
+            GeoUtils.CircularArea c = (GeoUtils.CircularArea)a;
+            return GeoUtils.distance(c.lat, c.lng, lat, lng) <= c.radius + hysteresis;
+        }
+        return a.contains(lat, lng);
+    }
+
+    private void notifyListeners(Event e) {
+        for (Listener l : listeners) {
+            try {
+                l.geofenceEvent(e);
+            } catch (Exception ex) {
+                Tesla.logger.warning("Geofence listener failed: " + ex);
+            }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * The fences and the per-vehicle state
+ *
+ *----------------------------------------------------------------------------*/
+
+    // The fences and an index over them. Changing the fences replaces both
+    // at once so process() never sees an index that disagrees with the set.
+    private static class Fences {
+        final Set<Area> set;
+        final GeoIndex<Area> index;
+
+        Fences(Collection<? extends Area> areas) {
+            this.set = Collections.unmodifiableSet(new HashSet<Area>(areas));
+            this.index = new GeoIndex<Area>(set);
+        }
+    }
+
+    private static class Membership {
+        final Area area;
+        boolean confirmed = false;  // An ENTER has been sent
+        boolean dwelled = false;    // A DWELL has been sent
+        boolean inside;             // The latest location is inside the area
+        int     count = 0;          // Consecutive locations toward a change
+        long    enteredAt;
+
+        Membership(Area area) { this.area = area; }
+    }
+
+    private static class Tracker {
+        final List<Membership> memberships = new ArrayList<>(4);
+        final List<Area> scratch = new ArrayList<>(4);
+        long lastTime = Long.MIN_VALUE;
+
+        Membership find(Area a) {
+            for (Membership m : memberships) { if (m.area == a) return m; }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * TripSegmenter.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.analytics;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.noroomattheinn.tesla.BaseState;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Tesla;
+import org.noroomattheinn.tesla.Vehicle;
+import org.noroomattheinn.utils.GeoUtils;
+
+/**
+ * TripSegmenter: Detects trips incrementally as stream samples arrive. Each
+ * sample is processed in constant time using a small amount of per-vehicle
+ * state, so one segmenter can keep up with thousands of concurrent streams.
+ *
+ * A trip starts with the first sample in which the vehicle is in motion and
+ * ends once the vehicle has been stationary (parked with no speed) for the
+ * stop timeout. The trip's end time is the time the vehicle stopped. A gap in
+ * the samples longer than the maximum gap ends the trip at the last sample
+ * before the gap. Shorter gaps, such as a stream reconnect, are bridged:
+ * distance continues to be measured by the odometer, but power isn't
+ * integrated across gaps longer than the integration gap. Samples whose
+ * timestamp isn't after the previous sample (e.g. repeated after a reconnect)
+ * are dropped.
+ *
+ * Distance comes from odometer deltas when the odometer is available and
+ * from GeoUtils.distance otherwise. Units follow StreamState: miles, mph,
+ * and kW. Energy is in kWh.
+ *
+ * TripSegmenter is a Vehicle.StateListener, so adding it to a Vehicle feeds
+ * it every StreamState from the Vehicle's Streamer.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class TripSegmenter implements Vehicle.StateListener {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final long DefaultStopTimeout = 3 * 60 * 1000;
+    public static final long DefaultMaxGap = 10 * 60 * 1000;
+    public static final long DefaultIntegrationGap = 60 * 1000;
+
+    private static final double MetersPerMile = 1609.344;
+    private static final double MillisPerHour = 60 * 60 * 1000;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String,Tracker> trackers = new ConcurrentHashMap<>();
+    private long stopTimeout = DefaultStopTimeout;
+    private long maxGap = DefaultMaxGap;
+    private long integrationGap = DefaultIntegrationGap;
+    private final AtomicLong nSamples = new AtomicLong();
+    private final AtomicLong nDropped = new AtomicLong();
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Listener: Is told when trips start and end. The same Trip object is
+     * passed to both calls and is updated as the trip progresses, so it must
+     * not be modified by the listener. Listeners are called on the thread
+     * that delivered the sample and should return quickly.
+     */
+    public interface Listener {
+        void tripStarted(Trip trip);
+        void tripEnded(Trip trip);
+    }
+
+    /**
+     * Trip: The running totals of a trip
+     */
+    public static class Trip {
+        public final String vid;
+        public long    startTime, endTime;
+        public double  startLat, startLng, endLat, endLng;
+        public double  startOdometer, endOdometer;
+        public int     startSOC, endSOC;
+        public double  distance;            // Miles
+        public double  energyUsed;          // kWh, net of regeneration
+        public double  energyRegenerated;   // kWh
+        public double  maxSpeed;            // mph
+        public int     elevationGain;
+        public int     nSamples;
+        public int     nGaps;
+        public boolean complete;
+
+        Trip(String vid) { this.vid = vid; }
+
+        public long duration() { return endTime - startTime; }
+
+        @Override public String toString() {
+            return String.format(
+                    "Trip[%s: %d - %d (%ds), %.2f mi, %.2f kWh (%.2f regen), " +
+                    "max %.1f mph, +%d elev, %d samples, %d gaps%s]",
+                    vid, startTime, endTime, duration() / 1000, distance,
+                    energyUsed, energyRegenerated, maxSpeed, elevationGain,
+                    nSamples, nGaps, complete ? "" : ", in progress");
+        }
+    }
+
+    public TripSegmenter() { }
+
+    public void addListener(Listener l) { listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    /**
+     * How long a vehicle must be stationary before its trip ends
+     * @param millis    The timeout in milliseconds
+     * @return          this TripSegmenter
+     */
+    public TripSegmenter setStopTimeout(long millis) { stopTimeout = millis; return this; }
+
+    /**
+     * Gaps in the samples longer than this end the current trip
+     * @param millis    The maximum gap in milliseconds
+     * @return          this TripSegmenter
+     */
+    public TripSegmenter setMaxGap(long millis) { maxGap = millis; return this; }
+
+    /**
+     * Power isn't integrated across gaps longer than this
+     * @param millis    The integration gap in milliseconds
+     * @return          this TripSegmenter
+     */
+    public TripSegmenter setIntegrationGap(long millis) { integrationGap = millis; return this; }
+
+    @Override public void stateReceived(Vehicle v, BaseState state) {
+        if (state instanceof StreamState) process(v.getVID(), (StreamState)state);
+    }
+
+    /**
+     * Process the next stream sample for a vehicle
+     * @param vid   The vehicle the sample belongs to
+     * @param s     The sample
+     */
+    public void process(String vid, StreamState s) {
+        long time = (s.vehicleTimestamp != 0) ? s.vehicleTimestamp : s.timestamp;
+        Tracker k = trackers.get(vid);
+        if (k == null) {
+            k = new Tracker();
+            Tracker existing = trackers.putIfAbsent(vid, k);
+            if (existing != null) k = existing;
+        }
+
+        Trip started = null, ended = null;
+        synchronized (k) {
+            if (time <= k.lastTime) { nDropped.incrementAndGet(); return; }
+            nSamples.incrementAndGet();
+            boolean moving = s.isInMotion();
+            if (k.trip != null) {
+                if (time - k.lastTime > maxGap) {
+                    ended = k.finish(k.stoppedSince >= 0 ? k.stoppedSince : k.lastTime);
+                } else {
+                    accumulate(k, s, time);
+                    if (moving) {
+                        k.stoppedSince = -1;
+                    } else if (k.stoppedSince < 0) {
+                        k.stoppedSince = time;
+                    } else if (time - k.stoppedSince >= stopTimeout) {
+                        ended = k.finish(k.stoppedSince);
+                    }
+                }
+            }
+            if (k.trip == null && moving) {
+                started = k.begin(vid, s, time);
+            }
+            k.remember(s, time);
+        }
+        if (ended != null) notifyEnded(ended);
+        if (started != null) notifyStarted(started);
+    }
+
+    /**
+     * End any trip that has had no samples for the maximum gap or has been
+     * stationary for the stop timeout. Call this periodically so that trips
+     * end even if their stream has gone quiet.
+     * @param now   The current time in milliseconds
+     */
+    public void expire(long now) {
+        for (Tracker k : trackers.values()) {
+            Trip ended = null;
+            synchronized (k) {
+                if (k.trip == null) continue;
+                if (k.stoppedSince >= 0 && now - k.stoppedSince >= stopTimeout) {
+                    ended = k.finish(k.stoppedSince);
+                } else if (now - k.lastTime > maxGap) {
+                    ended = k.finish(k.stoppedSince >= 0 ? k.stoppedSince : k.lastTime);
+                }
+            }
+            if (ended != null) notifyEnded(ended);
+        }
+    }
+
+    /**
+     * End every trip in progress, e.g. at shutdown
+     */
+    public void endAll() {
+        for (Tracker k : trackers.values()) {
+            Trip ended = null;
+            synchronized (k) {
+                if (k.trip != null) {
+                    ended = k.finish(k.stoppedSince >= 0 ? k.stoppedSince : k.lastTime);
+                }
+            }
+            if (ended != null) notifyEnded(ended);
+        }
+    }
+
+    /**
+     * Return the trip in progress for a vehicle
+     * @param vid   The vehicle
+     * @return      The trip or null if the vehicle isn't on a trip
+     */
+    public Trip getCurrentTrip(String vid) {
+        Tracker k = trackers.get(vid);
+        if (k == null) return null;
+        synchronized (k) { return k.trip; }
+    }
+
+    public long getSampleCount() { return nSamples.get(); }
+    public long getDroppedCount() { return nDropped.get(); }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private void accumulate(Tracker k, StreamState s, long time) {
+        Trip trip = k.trip;
+        long dt = time - k.lastTime;
+        if (dt > integrationGap) {
+            trip.nGaps++;
+        } else {
+            double kWh = (k.lastPower + s.power) / 2.0 * (dt / MillisPerHour);
+            trip.energyUsed += kWh;
+            if (kWh < 0) trip.energyRegenerated -= kWh;
+        }
+
+        if (s.odometer > 0 && k.lastOdometer > 0 && s.odometer >= k.lastOdometer) {
+            trip.distance += s.odometer - k.lastOdometer;
+        } else if (hasLocation(s) && !Double.isNaN(k.lastLat)) {
+            trip.distance += GeoUtils.distance(
+                    k.lastLat, k.lastLng, s.estLat, s.estLng) / MetersPerMile;
+        }
+
+        // An elevation of 0 means it wasn't reported
+        if (s.elevation != 0 && k.lastElevation != 0 && s.elevation > k.lastElevation) {
+            trip.elevationGain += s.elevation - k.lastElevation;
+        }
+        trip.nSamples++;
+        trip.endTime = time;
+        if (s.speed > trip.maxSpeed) trip.maxSpeed = s.speed;
+        if (s.odometer > 0) trip.endOdometer = s.odometer;
+        if (hasLocation(s)) { trip.endLat = s.estLat; trip.endLng = s.estLng; }
+        trip.endSOC = s.soc;
+    }
+
+    private static boolean hasLocation(StreamState s) {
+        return !Double.isNaN(s.estLat) && !Double.isNaN(s.estLng);
+    }
+
+    private void notifyStarted(Trip trip) {
+        for (Listener l : listeners) {
+            try {
+                l.tripStarted(trip);
+            } catch (Exception e) {
+                Tesla.logger.warning("Trip listener failed: " + e);
+            }
+        }
+    }
+
+    private void notifyEnded(Trip trip) {
+        for (Listener l : listeners) {
+            try {
+                l.tripEnded(trip);
+            } catch (Exception e) {
+                Tesla.logger.warning("Trip listener failed: " + e);
+            }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * The per-vehicle state
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static class Tracker {
+        Trip   trip = null;                 // null when not on a trip
+        long   lastTime = Long.MIN_VALUE;
+        long   stoppedSince = -1;           // When the vehicle stopped during a trip
+        double lastLat = Double.NaN, lastLng = Double.NaN, lastOdometer;
+        int    lastPower, lastElevation;
+
+        Trip begin(String vid, StreamState s, long time) {
+            trip = new Trip(vid);
+            trip.startTime = trip.endTime = time;
+            trip.startLat = trip.endLat = s.estLat;
+            trip.startLng = trip.endLng = s.estLng;
+            trip.startOdometer = trip.endOdometer = s.odometer;
+            trip.startSOC = trip.endSOC = s.soc;
+            trip.maxSpeed = s.speed;
+            trip.nSamples = 1;
+            stoppedSince = -1;
+            return trip;
+        }
+
+        Trip finish(long endTime) {
+            Trip t = trip;
+            t.endTime = Math.max(t.startTime, endTime);
+            t.complete = true;
+            trip = null;
+            stoppedSince = -1;
+            return t;
+        }
+
+        void remember(StreamState s, long time) {
+            lastTime = time;
+            lastPower = s.power;
+            if (s.odometer > 0) lastOdometer = s.odometer;
+            if (hasLocation(s)) { lastLat = s.estLat; lastLng = s.estLng; }
+            if (s.elevation != 0) lastElevation = s.elevation;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * SimulatedCar.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.sim;
+
+import java.util.Random;
+import org.noroomattheinn.tesla.Streamer;
+import org.noroomattheinn.utils.RestHelper;
+import us.monoid.json.JSONArray;
+import us.monoid.json.JSONObject;
+
+/**
+ * SimulatedCar: The state of one synthetic vehicle served by the Simulator.
+ * A car cycles between being parked, driving, and charging. Rather than
+ * running a thread per car, the state is advanced lazily to the current time
+ * whenever the car is asked for data.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class SimulatedCar {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public enum Mode {Parked, Driving, Charging};
+
+    public static final long IdBase = 10000000L;
+    public static final long StreamingIdBase = 50000000L;
+
+    private static final double MetersPerMile = 1609.34;
+    private static final double MilesPerPercent = 2.65;
+    private static final String OptionCodes =
+        "MS01,RENA,TM00,DRLH,PF00,BT85,PBSB,RFPO,WT19,IBMB,IDPB,TR00,SU01,SC01," +
+        "TP01,AU01,CH01,HP00,PA00,PS00,AD02,X001,X003,X007,X011,X013,DV2W";
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    public final int    index;
+    public final long   id;
+    public final long   streamingID;
+    public final String vin;
+    public final String[] tokens;
+
+    private final Random random;
+    private Mode    mode = Mode.Parked;
+    private long    modeEnds;
+    private long    lastAdvanced;
+    private long    lastActivity;
+    private long    awakeAt = 0;
+    private boolean asleep = false;
+
+    private double  lat, lng, odometer, speed, soc, energyAdded, milesAdded;
+    private int     heading, elevation, power, chargeLimit = 90;
+    private boolean locked = true, hvacOn = false, portOpen = false, maxRange = false;
+    private double  driverTemp = 21.0, passengerTemp = 21.0, insideTemp = 20.0;
+    private String  panoState = "closed";
+    private int     panoPercent = 0;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public SimulatedCar(int index, long seed, long now) {
+        this.index = index;
+        this.id = IdBase + index;
+        this.streamingID = StreamingIdBase + index;
+        this.vin = String.format("5YJSA1H1XSIM%05d", index);
+        this.tokens = new String[] {"stream-" + index + "-a", "stream-" + index + "-b"};
+        this.random = new Random(seed + index);
+
+        lat = 37.0 + random.nextDouble();
+        lng = -122.5 + random.nextDouble();
+        odometer = 1000 + random.nextInt(50000);
+        soc = 30 + random.nextInt(60);
+        heading = random.nextInt(360);
+        elevation = random.nextInt(200);
+        lastAdvanced = lastActivity = now;
+        modeEnds = now + (long)(random.nextDouble() * 10 * 60 * 1000);
+    }
+
+    public synchronized boolean isAsleep(long now, long sleepAfterMillis) {
+        if (!asleep && sleepAfterMillis > 0 && mode == Mode.Parked &&
+                now - lastActivity > sleepAfterMillis) {
+            asleep = true;
+        }
+        return asleep || now < awakeAt;
+    }
+
+    public synchronized void wake(long now, long wakeDelayMillis) {
+        if (asleep) {
+            asleep = false;
+            awakeAt = now + wakeDelayMillis;
+        }
+        lastActivity = now;
+    }
+
+    public synchronized String status(long now, long sleepAfterMillis) {
+        if (now < awakeAt) return "waking";
+        return isAsleep(now, sleepAfterMillis) ? "asleep" : "online";
+    }
+
+    /**
+     * Return the vehicle description as it appears in the vehicle list
+     * @param status    The value to use for the "state" field
+     * @return          The description
+     */
+    public JSONObject description(String status) {
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, "id", String.valueOf(id));
+        RestHelper.put(jo, "vehicle_id", String.valueOf(streamingID));
+        RestHelper.put(jo, "user_id", String.valueOf(index));
+        RestHelper.put(jo, "vin", vin);
+        RestHelper.put(jo, "display_name", "Sim " + index);
+        RestHelper.put(jo, "color", JSONObject.NULL);
+        RestHelper.put(jo, "option_codes", OptionCodes);
+        RestHelper.put(jo, "tokens", new JSONArray().put(tokens[0]).put(tokens[1]));
+        RestHelper.put(jo, "state", status);
+        RestHelper.put(jo, "remote_start_enabled", true);
+        RestHelper.put(jo, "notifications_enabled", true);
+        RestHelper.put(jo, "calendar_enabled", true);
+        return jo;
+    }
+
+    /**
+     * Return the data for one of the data_request endpoints
+     * @param which The name of the endpoint, e.g. charge_state
+     * @param now   The current time
+     * @return      The data or null if the endpoint is unknown
+     */
+    public synchronized JSONObject data(String which, long now) {
+        advance(now);
+        lastActivity = now;
+        switch (which) {
+            case "charge_state": return chargeState();
+            case "drive_state": return driveState(now);
+            case "gui_settings": return guiSettings();
+            case "climate_state": return climateState();
+            case "vehicle_state": return vehicleState();
+            default: return null;
+        }
+    }
+
+    /**
+     * Perform a command
+     * @param command   The name of the command, e.g. honk_horn
+     * @param payload   The parameters of the command, may be empty
+     * @param now       The current time
+     * @return          A response with result and reason fields
+     */
+    public synchronized JSONObject command(String command, JSONObject payload, long now) {
+        advance(now);
+        lastActivity = now;
+        String reason = "";
+        switch (command) {
+            case "auto_conditioning_start": hvacOn = true; break;
+            case "auto_conditioning_stop": hvacOn = false; break;
+            case "set_temps":
+                driverTemp = payload.optDouble("driver_temp", driverTemp);
+                passengerTemp = payload.optDouble("passenger_temp", passengerTemp);
+                break;
+            case "charge_start":
+                if (mode == Mode.Driving) { reason = "not_parked"; break; }
+                startMode(Mode.Charging, now);
+                break;
+            case "charge_stop":
+                if (mode == Mode.Charging) startMode(Mode.Parked, now);
+                else reason = "not_charging";
+                break;
+            case "charge_max_range": maxRange = true; chargeLimit = 100; break;
+            case "charge_standard": maxRange = false; chargeLimit = 90; break;
+            case "set_charge_limit":
+                int percent = payload.optInt("percent", chargeLimit);
+                if (percent == chargeLimit) reason = "already_set";
+                chargeLimit = percent;
+                break;
+            case "charge_port_door_open": portOpen = true; break;
+            case "door_unlock": locked = false; break;
+            case "door_lock": locked = true; break;
+            case "sun_roof_control":
+                panoState = payload.optString("state", panoState);
+                panoPercent = panoState.equals("open") ? 100 :
+                              panoState.equals("comfort") ? 80 :
+                              panoState.equals("vent") ? 15 : 0;
+                break;
+            case "trunk_open":
+            case "honk_horn":
+            case "flash_lights":
+            case "remote_start_drive":
+                break;
+            default:
+                return result(false, "unknown command: " + command);
+        }
+        return result(reason.isEmpty() || reason.equals("already_set"), reason);
+    }
+
+    /**
+     * Produce one line of streaming data with the values in the requested order
+     * @param keys  The requested values (the timestamp is always first)
+     * @param now   The current time
+     * @return      A line of comma separated values
+     */
+    public synchronized String streamLine(Streamer.Keys[] keys, long now) {
+        advance(now);
+        lastActivity = now;
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(now);
+        for (Streamer.Keys k : keys) {
+            sb.append(',');
+            switch (k) {
+                case odometer: sb.append(Math.round(odometer * 10) / 10.0); break;
+                case speed: if (mode == Mode.Driving) sb.append((int)speed); break;
+                case soc: sb.append((int)soc); break;
+                case elevation: sb.append(elevation); break;
+                case est_heading: case heading: sb.append(heading); break;
+                case est_lat: sb.append(lat); break;
+                case est_lng: sb.append(lng); break;
+                case power: sb.append(power); break;
+                case shift_state: if (mode == Mode.Driving) sb.append('D'); break;
+                case range: sb.append((int)(soc * MilesPerPercent)); break;
+                case est_range: sb.append((int)(soc * MilesPerPercent * 0.9)); break;
+                default: break;
+            }
+        }
+        return sb.toString();
+    }
+
+    public synchronized Mode mode() { return mode; }
+
+/*------------------------------------------------------------------------------
+ *
+ * Simulation of the car's behavior over time
+ *
+ *----------------------------------------------------------------------------*/
+
+    private void advance(long now) {
+        while (lastAdvanced < now) {
+            long until = Math.min(now, modeEnds);
+            step(until - lastAdvanced);
+            lastAdvanced = until;
+            if (until == modeEnds) nextMode(until);
+        }
+    }
+
+    private void step(long millis) {
+        double hours = millis / 3600000.0;
+        switch (mode) {
+            case Driving:
+                double miles = speed * hours;
+                double meters = miles * MetersPerMile;
+                double rad = Math.toRadians(heading);
+                lat += (meters * Math.cos(rad)) / 111320.0;
+                lng += (meters * Math.sin(rad)) / (111320.0 * Math.cos(Math.toRadians(lat)));
+                odometer += miles;
+                soc = Math.max(0, soc - miles / MilesPerPercent);
+                if (random.nextInt(20) == 0) heading = (heading + random.nextInt(61) - 30 + 360) % 360;
+                speed = Math.max(5, Math.min(80, speed + random.nextInt(11) - 5));
+                power = (int)(speed * 0.35) + random.nextInt(10);
+                elevation = Math.max(0, elevation + random.nextInt(5) - 2);
+                break;
+            case Charging:
+                double added = 10.0 * hours;    // 10kW
+                energyAdded += added;
+                milesAdded += added * 3.3;
+                soc = Math.min(chargeLimit, soc + (added * 3.3) / MilesPerPercent);
+                power = -10;
+                if (soc >= chargeLimit) modeEnds = lastAdvanced + millis;
+                break;
+            default:
+                power = 0;
+                break;
+        }
+    }
+
+    private void nextMode(long now) {
+        if (mode != Mode.Parked) {
+            startMode(Mode.Parked, now);
+        } else if (soc < 40 || random.nextInt(4) == 0) {
+            startMode(Mode.Charging, now);
+        } else {
+            startMode(Mode.Driving, now);
+        }
+    }
+
+    private void startMode(Mode newMode, long now) {
+        mode = newMode;
+        long minutes;
+        switch (newMode) {
+            case Driving:
+                speed = 25 + random.nextInt(40);
+                minutes = 5 + random.nextInt(40);
+                break;
+            case Charging:
+                energyAdded = milesAdded = 0;
+                portOpen = true;
+                minutes = 30 + random.nextInt(240);
+                break;
+            default:
+                speed = 0;
+                minutes = 10 + random.nextInt(120);
+                break;
+        }
+        modeEnds = now + minutes * 60 * 1000;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Methods to produce the JSON for the various data requests
+ *
+ *----------------------------------------------------------------------------*/
+
+    private JSONObject chargeState() {
+        boolean charging = (mode == Mode.Charging);
+        String state = charging ? "Charging" :
+                (soc >= chargeLimit && portOpen) ? "Complete" :
+                portOpen ? "Stopped" : "Disconnected";
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, "charging_state", state);
+        RestHelper.put(jo, "charge_limit_soc", chargeLimit);
+        RestHelper.put(jo, "charge_limit_soc_std", 90);
+        RestHelper.put(jo, "charge_limit_soc_min", 50);
+        RestHelper.put(jo, "charge_limit_soc_max", 100);
+        RestHelper.put(jo, "charge_to_max_range", maxRange);
+        RestHelper.put(jo, "battery_heater_on", false);
+        RestHelper.put(jo, "not_enough_power_to_heat", false);
+        RestHelper.put(jo, "max_range_charge_counter", 0);
+        RestHelper.put(jo, "fast_charger_present", false);
+        RestHelper.put(jo, "fast_charger_type", "<invalid>");
+        RestHelper.put(jo, "battery_range", soc * MilesPerPercent);
+        RestHelper.put(jo, "est_battery_range", soc * MilesPerPercent * 0.9);
+        RestHelper.put(jo, "ideal_battery_range", soc * MilesPerPercent * 1.15);
+        RestHelper.put(jo, "battery_level", (int)soc);
+        RestHelper.put(jo, "usable_battery_level", (int)soc);
+        RestHelper.put(jo, "battery_current", charging ? 25.0 : -0.4);
+        RestHelper.put(jo, "charge_energy_added", energyAdded);
+        RestHelper.put(jo, "charge_miles_added_rated", milesAdded);
+        RestHelper.put(jo, "charge_miles_added_ideal", milesAdded * 1.15);
+        RestHelper.put(jo, "charger_voltage", charging ? 241 : 0);
+        RestHelper.put(jo, "charger_pilot_current", charging ? 40 : 0);
+        RestHelper.put(jo, "charger_actual_current", charging ? 40 : 0);
+        RestHelper.put(jo, "charger_power", charging ? 10 : 0);
+        RestHelper.put(jo, "charger_phases", charging ? 1 : 0);
+        RestHelper.put(jo, "time_to_full_charge",
+                charging ? ((chargeLimit - soc) * MilesPerPercent / 33.0) : 0.0);
+        RestHelper.put(jo, "charge_rate", charging ? 33.0 : 0.0);
+        RestHelper.put(jo, "charge_port_door_open", portOpen);
+        RestHelper.put(jo, "motorized_charge_port", true);
+        RestHelper.put(jo, "scheduled_charging_start_time", JSONObject.NULL);
+        RestHelper.put(jo, "scheduled_charging_pending", false);
+        RestHelper.put(jo, "user_charge_enable_request", JSONObject.NULL);
+        RestHelper.put(jo, "charge_enable_request", charging);
+        RestHelper.put(jo, "eu_vehicle", false);
+        RestHelper.put(jo, "charge_starting_range", JSONObject.NULL);
+        RestHelper.put(jo, "charge_starting_soc", JSONObject.NULL);
+        return jo;
+    }
+
+    private JSONObject driveState(long now) {
+        JSONObject jo = new JSONObject();
+        boolean driving = (mode == Mode.Driving);
+        RestHelper.put(jo, "shift_state", driving ? "D" : JSONObject.NULL);
+        RestHelper.put(jo, "speed", driving ? (Object)(int)speed : JSONObject.NULL);
+        RestHelper.put(jo, "latitude", lat);
+        RestHelper.put(jo, "longitude", lng);
+        RestHelper.put(jo, "heading", heading);
+        RestHelper.put(jo, "gps_as_of", now / 1000);
+        return jo;
+    }
+
+    private JSONObject guiSettings() {
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, "gui_distance_units", "mi/hr");
+        RestHelper.put(jo, "gui_temperature_units", "F");
+        RestHelper.put(jo, "gui_charge_rate_units", "mi/hr");
+        RestHelper.put(jo, "gui_24_hour_time", false);
+        RestHelper.put(jo, "gui_range_display", "Rated");
+        return jo;
+    }
+
+    private JSONObject climateState() {
+        if (hvacOn) insideTemp += (driverTemp - insideTemp) * 0.5;
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, "inside_temp", insideTemp);
+        RestHelper.put(jo, "outside_temp", 17.0);
+        RestHelper.put(jo, "driver_temp_setting", driverTemp);
+        RestHelper.put(jo, "passenger_temp_setting", passengerTemp);
+        RestHelper.put(jo, "is_auto_conditioning_on", hvacOn);
+        RestHelper.put(jo, "is_front_defroster_on", 0);
+        RestHelper.put(jo, "is_rear_defroster_on", false);
+        RestHelper.put(jo, "fan_status", hvacOn ? 4 : 0);
+        return jo;
+    }
+
+    private JSONObject vehicleState() {
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, "df", 0); RestHelper.put(jo, "dr", 0);
+        RestHelper.put(jo, "pf", 0); RestHelper.put(jo, "pr", 0);
+        RestHelper.put(jo, "ft", 0); RestHelper.put(jo, "rt", 0);
+        RestHelper.put(jo, "car_version", "2.2.132");
+        RestHelper.put(jo, "locked", locked);
+        RestHelper.put(jo, "sun_roof_installed", 1);
+        RestHelper.put(jo, "sun_roof_state", panoState);
+        RestHelper.put(jo, "sun_roof_percent_open", panoPercent);
+        RestHelper.put(jo, "dark_rims", false);
+        RestHelper.put(jo, "wheel_type", "Base19");
+        RestHelper.put(jo, "has_spoiler", false);
+        RestHelper.put(jo, "roof_color", "None");
+        RestHelper.put(jo, "perf_config", "Base");
+        RestHelper.put(jo, "remote_start", false);
+        return jo;
+    }
+
+    private static JSONObject result(boolean success, String reason) {
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, "result", success);
+        RestHelper.put(jo, "reason", reason);
+        return jo;
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Simulator.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.sim;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.StringUtils;
+import org.noroomattheinn.tesla.Streamer;
+import org.noroomattheinn.tesla.Tesla;
+import org.noroomattheinn.utils.RestHelper;
+import org.noroomattheinn.utils.Utils;
+import us.monoid.json.JSONArray;
+import us.monoid.json.JSONObject;
+
+/**
+ * Simulator: An in-process stand-in for Tesla's owner API and streaming
+ * servers. It serves the oauth, vehicle list, data_request, command, wake_up,
+ * mobile_enabled, and streaming endpoints for any number of synthetic cars
+ * (see SimulatedCar). Latency, server errors, rate limiting (429), and cars
+ * that fall asleep can all be configured so that throughput and latency
+ * tests are repeatable without a network connection.
+ *
+ * Point a client at the simulator using the Tesla constructor that takes
+ * base URLs, for example:
+ * <pre>
+ *     Simulator sim = new Simulator(new Simulator.Config()).start();
+ *     Tesla t = new Tesla(sim.getBaseURI(), sim.getBaseURI(), null);
+ *     t.connectWithToken("user0@sim", sim.tokenFor(0));
+ * </pre>
+ *
+ * Cars are divided among accounts, carsPerAccount at a time. Logging in with
+ * an email address containing a number N selects account N; any other email
+ * is hashed to an account. The password is ignored.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class Simulator {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final String VehiclesPath = "/api/1/vehicles";
+    private static final String TokenPrefix = "sim-token-";
+
+    /**
+     * Config: The knobs that control the simulator. The defaults describe a
+     * fast, well behaved server with 100 cars that never sleep.
+     */
+    public static class Config {
+        public int    port = 0;                     // 0 means pick a free port
+        public int    nCars = 100;
+        public int    carsPerAccount = 1;
+        public long   latencyMillis = 0;            // Added to every request
+        public long   latencyJitterMillis = 0;      // Uniform in [0, jitter)
+        public double errorRate = 0;                // Fraction answered with 500
+        public double throttleRate = 0;             // Fraction answered with 429
+        public long   sleepAfterMillis = 0;         // Idle time before sleep, 0 = never
+        public long   wakeDelayMillis = 2000;       // Time between wake_up and online
+        public long   streamIntervalMillis = 250;   // Time between streamed lines
+        public long   streamDurationMillis = 30000; // Length of each stream
+        public int    backlog = 1024;
+        public long   seed = 1;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final Config config;
+    private final SimulatedCar[] cars;
+    private final int nAccounts;
+    private final AtomicLong nRequests = new AtomicLong();
+    private final AtomicLong nErrors = new AtomicLong();
+    private final AtomicLong nThrottled = new AtomicLong();
+    private final AtomicLong nStreams = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService pool;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public Simulator(Config config) {
+        this.config = config;
+        this.cars = new SimulatedCar[config.nCars];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < config.nCars; i++) {
+            cars[i] = new SimulatedCar(i, config.seed, now);
+        }
+        int perAccount = Math.max(1, config.carsPerAccount);
+        this.nAccounts = Math.max(1, (config.nCars + perAccount - 1) / perAccount);
+    }
+
+    /**
+     * Start serving requests
+     * @return  this Simulator
+     * @throws IOException  If the server can't be created
+     */
+    public Simulator start() throws IOException {
+        // Without this, small responses are held up by Nagle's algorithm and
+        // every request appears to take ~40ms. It must be set before the
+        // first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", config.port), config.backlog);
+        server.createContext("/oauth/token", new TokenHandler());
+        server.createContext(VehiclesPath, new VehiclesHandler());
+        server.createContext("/stream/", new StreamHandler());
+        pool = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicLong count = new AtomicLong();
+            @Override public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Simulator-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        server.setExecutor(pool);
+        server.start();
+        Tesla.logger.info("Simulator serving " + cars.length + " cars at " + getBaseURI());
+        return this;
+    }
+
+    public void stop() {
+        if (server != null) { server.stop(0); server = null; }
+        if (pool != null) { pool.shutdownNow(); pool = null; }
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+    public String getBaseURI() { return "http://localhost:" + getPort() + "/"; }
+    public Config getConfig() { return config; }
+    public int getAccountCount() { return nAccounts; }
+    public String tokenFor(int account) { return TokenPrefix + account; }
+    public SimulatedCar getCar(int index) { return cars[index]; }
+
+    public long getRequestCount() { return nRequests.get(); }
+    public long getErrorCount() { return nErrors.get(); }
+    public long getThrottledCount() { return nThrottled.get(); }
+    public long getStreamCount() { return nStreams.get(); }
+
+    /**
+     * Run a standalone simulator. Arguments are name/value pairs corresponding
+     * to the fields of Config, for example:
+     *     -port 8000 -nCars 5000 -carsPerAccount 10 -latencyMillis 150
+     * @param args  The configuration
+     * @throws Exception    If the server can't be started
+     */
+    public static void main(String[] args) throws Exception {
+        Config c = new Config();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String name = StringUtils.removeStart(args[i], "-");
+            java.lang.reflect.Field f = Config.class.getField(name);
+            Class<?> type = f.getType();
+            if (type == int.class) f.setInt(c, Integer.parseInt(args[i+1]));
+            else if (type == long.class) f.setLong(c, Long.parseLong(args[i+1]));
+            else f.setDouble(c, Double.parseDouble(args[i+1]));
+        }
+        Simulator sim = new Simulator(c).start();
+        System.out.println("Simulator listening at " + sim.getBaseURI());
+        System.out.println("Use token " + sim.tokenFor(0) + " for account 0");
+        Thread.currentThread().join();
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Handlers for the various endpoints
+ *
+ *----------------------------------------------------------------------------*/
+
+    private class TokenHandler implements HttpHandler {
+        @Override public void handle(HttpExchange ex) throws IOException {
+            if (!admit(ex)) return;
+            JSONObject body = RestHelper.newJSONObject(readBody(ex));
+            String email = (body == null) ? "" : body.optString("email", "");
+            String digits = email.replaceAll("[^0-9]", "");
+            int account = digits.isEmpty() || digits.length() > 9 ?
+                    (email.hashCode() & 0x7fffffff) % nAccounts :
+                    Integer.parseInt(digits) % nAccounts;
+            JSONObject jo = new JSONObject();
+            RestHelper.put(jo, "access_token", tokenFor(account));
+            RestHelper.put(jo, "token_type", "bearer");
+            RestHelper.put(jo, "expires_in", 7776000);
+            RestHelper.put(jo, "created_at", System.currentTimeMillis() / 1000);
+            send(ex, 200, jo.toString());
+        }
+    }
+
+    private class VehiclesHandler implements HttpHandler {
+        @Override public void handle(HttpExchange ex) throws IOException {
+            if (!admit(ex)) return;
+            int account = accountFor(ex);
+            if (account < 0) { send(ex, 401, "{\"error\":\"invalid bearer token\"}"); return; }
+
+            long now = System.currentTimeMillis();
+            String rest = StringUtils.removeStart(ex.getRequestURI().getPath(), VehiclesPath);
+            String[] parts = StringUtils.split(rest, '/');
+            if (parts.length == 0) {
+                JSONArray list = new JSONArray();
+                int first = account * Math.max(1, config.carsPerAccount);
+                int last = Math.min(cars.length, first + Math.max(1, config.carsPerAccount));
+                for (int i = first; i < last; i++) {
+                    list.put(cars[i].description(cars[i].status(now, config.sleepAfterMillis)));
+                }
+                sendResponse(ex, list);
+                return;
+            }
+
+            SimulatedCar car = carFor(parts[0], account);
+            if (car == null) { send(ex, 404, "{\"error\":\"not_found\"}"); return; }
+            String op = parts.length > 1 ? parts[1] : "";
+            switch (op) {
+                case "wake_up":
+                    car.wake(now, config.wakeDelayMillis);
+                    sendResponse(ex, car.description(car.status(now, config.sleepAfterMillis)));
+                    return;
+                case "mobile_enabled":
+                    if (asleep(ex, car, now)) return;
+                    sendResponse(ex, true);
+                    return;
+                case "data_request":
+                    if (parts.length < 3) break;
+                    if (asleep(ex, car, now)) return;
+                    JSONObject data = car.data(parts[2], now);
+                    if (data == null) break;
+                    sendResponse(ex, data);
+                    return;
+                case "command":
+                    if (parts.length < 3) break;
+                    JSONObject payload = RestHelper.newJSONObject(readBody(ex));
+                    if (asleep(ex, car, now)) return;
+                    sendResponse(ex, car.command(
+                            parts[2], payload == null ? new JSONObject() : payload, now));
+                    return;
+                default:
+                    break;
+            }
+            send(ex, 404, "{\"error\":\"not_found\"}");
+        }
+    }
+
+    private class StreamHandler implements HttpHandler {
+        @Override public void handle(HttpExchange ex) throws IOException {
+            if (!admit(ex)) return;
+            String[] parts = StringUtils.split(ex.getRequestURI().getPath(), '/');
+            SimulatedCar car = null;
+            if (parts.length >= 2) {
+                try {
+                    long index = Long.parseLong(parts[1]) - SimulatedCar.StreamingIdBase;
+                    if (index >= 0 && index < cars.length) car = cars[(int)index];
+                } catch (NumberFormatException e) { /* Treated as not found */ }
+            }
+            if (car == null) { send(ex, 404, ""); return; }
+            if (!streamingTokenMatches(ex, car)) { send(ex, 401, ""); return; }
+
+            long now = System.currentTimeMillis();
+            if (car.isAsleep(now, config.sleepAfterMillis)) {
+                // A sleeping car produces an empty stream
+                ex.sendResponseHeaders(200, -1);
+                ex.close();
+                return;
+            }
+
+            Streamer.Keys[] keys = requestedKeys(ex.getRequestURI().getRawQuery());
+            nStreams.incrementAndGet();
+            ex.getResponseHeaders().set("Content-Type", "text/csv");
+            ex.sendResponseHeaders(200, 0);
+            long end = now + config.streamDurationMillis;
+            try (OutputStream os = ex.getResponseBody()) {
+                while ((now = System.currentTimeMillis()) < end) {
+                    String line = car.streamLine(keys, now) + "\r\n";
+                    os.write(line.getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                    Utils.yieldFor(config.streamIntervalMillis);
+                }
+            } catch (IOException e) {
+                // The client went away, nothing to do
+            } finally {
+                ex.close();
+            }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    /**
+     * Apply the configured latency and fault injection to a request
+     * @return  true if the request should be handled normally
+     */
+    private boolean admit(HttpExchange ex) throws IOException {
+        nRequests.incrementAndGet();
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        long delay = config.latencyMillis;
+        if (config.latencyJitterMillis > 0) delay += r.nextLong(config.latencyJitterMillis);
+        if (delay > 0) Utils.yieldFor(delay);
+
+        if (config.throttleRate > 0 && r.nextDouble() < config.throttleRate) {
+            nThrottled.incrementAndGet();
+            ex.getResponseHeaders().set("Retry-After", "1");
+            send(ex, 429, "{\"error\":\"rate limited\"}");
+            return false;
+        }
+        if (config.errorRate > 0 && r.nextDouble() < config.errorRate) {
+            nErrors.incrementAndGet();
+            send(ex, 500, "{\"error\":\"simulated server error\"}");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean asleep(HttpExchange ex, SimulatedCar car, long now) throws IOException {
+        if (!car.isAsleep(now, config.sleepAfterMillis)) return false;
+        send(ex, 408, "{\"response\":null,\"error\":\"vehicle unavailable: " +
+                "{:error=>\\\"vehicle unavailable:\\\"}\",\"error_description\":\"\"}");
+        return true;
+    }
+
+    private int accountFor(HttpExchange ex) {
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        if (auth == null || !auth.startsWith("Bearer " + TokenPrefix)) return -1;
+        try {
+            int account = Integer.parseInt(auth.substring(7 + TokenPrefix.length()));
+            return (account >= 0 && account < nAccounts) ? account : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private SimulatedCar carFor(String id, int account) {
+        try {
+            long index = Long.parseLong(id) - SimulatedCar.IdBase;
+            if (index < 0 || index >= cars.length) return null;
+            if (index / Math.max(1, config.carsPerAccount) != account) return null;
+            return cars[(int)index];
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean streamingTokenMatches(HttpExchange ex, SimulatedCar car) {
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        if (auth == null || !auth.startsWith("Basic ")) return false;
+        String decoded = new String(
+                Utils.fromB64(auth.substring(6).trim()), StandardCharsets.UTF_8);
+        String token = StringUtils.substringAfterLast(decoded, ":");
+        return token.equals(car.tokens[0]) || token.equals(car.tokens[1]);
+    }
+
+    private static Streamer.Keys[] requestedKeys(String query) throws IOException {
+        String values = "";
+        for (String param : StringUtils.split(query == null ? "" : query, '&')) {
+            if (param.startsWith("values=")) {
+                values = URLDecoder.decode(param.substring(7), "UTF-8");
+            }
+        }
+        List<Streamer.Keys> keys = new ArrayList<>();
+        for (String name : StringUtils.split(values, ',')) {
+            try {
+                keys.add(Streamer.Keys.valueOf(name));
+            } catch (IllegalArgumentException e) { /* Ignore unknown values */ }
+        }
+        return keys.toArray(new Streamer.Keys[keys.size()]);
+    }
+
+    private static String readBody(HttpExchange ex) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        try (InputStream is = ex.getRequestBody()) {
+            int n;
+            while ((n = is.read(buf)) > 0) bytes.write(buf, 0, n);
+        }
+        return bytes.size() == 0 ? "{}" : bytes.toString("UTF-8");
+    }
+
+    private static void sendResponse(HttpExchange ex, Object response) throws IOException {
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, "response", response);
+        send(ex, 200, jo.toString());
+    }
+
+    private static void send(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            if (bytes.length > 0) os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Archive.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Archive: A compressed, columnar copy of a Segment. Each field of the
+ * samples is stored as a separately compressed column (see ColumnCodecs) so
+ * a reader only needs to read and decode the columns it is interested in.
+ * Archives are written by the Compactor and are read transparently by
+ * StreamStore queries.
+ *
+ * Layout:
+ *     int magic, int version, int count, int nColumns, long startTime, long endTime
+ *     nColumns x (int column, int length, long offset)
+ *     The column data
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class Archive {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    static final int Magic = 0x54534131;    // "TSA1"
+    static final int Version = 1;
+    static final String Suffix = ".arc";
+    private static final int HeaderSize = 32;
+    private static final int DirectoryEntrySize = 16;
+
+    public enum Encoding {Timestamp, Double, Int, Run};
+
+    /**
+     * Column: The columns of an archive. The directory stores the ordinals,
+     * so add new columns at the end and never remove or reorder any.
+     */
+    public enum Column {
+        timestamp(Encoding.Timestamp, Segment.TimestampOff),
+        lat(Encoding.Double, Segment.LatOff),
+        lng(Encoding.Double, Segment.LngOff),
+        odometer(Encoding.Double, Segment.OdometerOff),
+        speed(Encoding.Double, Segment.SpeedOff),
+        power(Encoding.Int, Segment.PowerOff),
+        soc(Encoding.Int, Segment.SocOff),
+        heading(Encoding.Int, Segment.HeadingOff),
+        estHeading(Encoding.Int, Segment.EstHeadingOff),
+        elevation(Encoding.Int, Segment.ElevationOff),
+        range(Encoding.Int, Segment.RangeOff),
+        estRange(Encoding.Int, Segment.EstRangeOff),
+        shiftState(Encoding.Run, Segment.ShiftOff);
+
+        public final Encoding encoding;
+        final int recordOffset;
+
+        Column(Encoding encoding, int recordOffset) {
+            this.encoding = encoding;
+            this.recordOffset = recordOffset;
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final File file;
+    private final int count;
+    private final long startTime, endTime;
+    private final Map<Column,long[]> directory = new EnumMap<>(Column.class);
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Open an archive and read its directory. No column data is read.
+     * @param file  The archive file
+     * @throws IOException  If the file can't be read or isn't an archive
+     */
+    public Archive(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = read(channel, 0, HeaderSize);
+            if (header.getInt() != Magic || header.getInt() != Version) {
+                throw new IOException("Not an archive: " + file);
+            }
+            count = header.getInt();
+            int nColumns = header.getInt();
+            startTime = header.getLong();
+            endTime = header.getLong();
+            ByteBuffer dir = read(channel, HeaderSize, nColumns * DirectoryEntrySize);
+            Column[] columns = Column.values();
+            for (int i = 0; i < nColumns; i++) {
+                int column = dir.getInt();
+                long length = dir.getInt();
+                long offset = dir.getLong();
+                if (column < columns.length) {
+                    directory.put(columns[column], new long[] {offset, length});
+                }
+            }
+        }
+    }
+
+    public File getFile() { return file; }
+    public int count() { return count; }
+    public long startTime() { return startTime; }
+    public long endTime() { return endTime; }
+    public boolean hasColumn(Column c) { return directory.containsKey(c); }
+
+    /**
+     * Return the compressed size of a column in bytes
+     */
+    public long columnSize(Column c) {
+        long[] entry = directory.get(c);
+        return entry == null ? 0 : entry[1];
+    }
+
+    public long[] readTimestamps() throws IOException {
+        return ColumnCodecs.decodeTimestamps(columnData(Column.timestamp), count);
+    }
+
+    public double[] readDoubles(Column c) throws IOException {
+        checkEncoding(c, Encoding.Double);
+        return ColumnCodecs.decodeDoubles(columnData(c), count);
+    }
+
+    public int[] readInts(Column c) throws IOException {
+        checkEncoding(c, Encoding.Int);
+        return ColumnCodecs.decodeInts(columnData(c), count);
+    }
+
+    public byte[] readBytes(Column c) throws IOException {
+        checkEncoding(c, Encoding.Run);
+        return ColumnCodecs.decodeRuns(columnData(c), count);
+    }
+
+    /**
+     * Write an archive containing the records of a segment
+     * @param file      The archive file to create
+     * @param records   A buffer in Segment layout (header followed by records)
+     * @return          The archive
+     * @throws IOException  If the archive can't be written
+     */
+    public static Archive write(File file, ByteBuffer records) throws IOException {
+        int n = Segment.recordCount(records);
+        Column[] columns = Column.values();
+        byte[][] data = new byte[columns.length][];
+        for (Column c : columns) { data[c.ordinal()] = encode(records, c, n); }
+
+        int dirSize = columns.length * DirectoryEntrySize;
+        ByteBuffer header = ByteBuffer.allocate(HeaderSize + dirSize).order(Segment.Order);
+        header.putInt(Magic).putInt(Version).putInt(n).putInt(columns.length);
+        header.putLong(n == 0 ? 0 : Segment.timestampAt(records, 0));
+        header.putLong(n == 0 ? 0 : Segment.timestampAt(records, n - 1));
+        long offset = HeaderSize + dirSize;
+        for (Column c : columns) {
+            header.putInt(c.ordinal()).putInt(data[c.ordinal()].length).putLong(offset);
+            offset += data[c.ordinal()].length;
+        }
+        header.flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            write(channel, header);
+            for (byte[] d : data) { write(channel, ByteBuffer.wrap(d)); }
+            channel.force(false);
+        }
+        return new Archive(file);
+    }
+
+    /**
+     * Decode every column into a buffer laid out like a Segment so that the
+     * archive can be scanned by a SampleCursor
+     * @return  A buffer with a segment header followed by the records
+     * @throws IOException  If the archive can't be read
+     */
+    ByteBuffer toRecords() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(
+                Segment.HeaderSize + count * Segment.RecordSize).order(Segment.Order);
+        buf.putInt(0, Segment.Magic);
+        buf.putInt(4, Segment.Version);
+        buf.putInt(8, Segment.RecordSize);
+        buf.putLong(16, startTime);
+        for (Column c : Column.values()) {
+            if (!hasColumn(c)) continue;
+            switch (c.encoding) {
+                case Timestamp:
+                    long[] longs = readTimestamps();
+                    for (int i = 0; i < count; i++) buf.putLong(at(i, c), longs[i]);
+                    break;
+                case Double:
+                    double[] doubles = readDoubles(c);
+                    for (int i = 0; i < count; i++) {
+                        if (c == Column.speed) buf.putFloat(at(i, c), (float)doubles[i]);
+                        else buf.putDouble(at(i, c), doubles[i]);
+                    }
+                    break;
+                case Int:
+                    int[] ints = readInts(c);
+                    for (int i = 0; i < count; i++) {
+                        if (c == Column.power) buf.putInt(at(i, c), ints[i]);
+                        else buf.putShort(at(i, c), (short)ints[i]);
+                    }
+                    break;
+                default:
+                    byte[] bytes = readBytes(c);
+                    for (int i = 0; i < count; i++) buf.put(at(i, c), bytes[i]);
+                    break;
+            }
+        }
+        return buf;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static byte[] encode(ByteBuffer records, Column c, int n) {
+        switch (c.encoding) {
+            case Timestamp:
+                long[] longs = new long[n];
+                for (int i = 0; i < n; i++) longs[i] = records.getLong(at(i, c));
+                return ColumnCodecs.encodeTimestamps(longs, n);
+            case Double:
+                double[] doubles = new double[n];
+                for (int i = 0; i < n; i++) {
+                    doubles[i] = (c == Column.speed) ?
+                            records.getFloat(at(i, c)) : records.getDouble(at(i, c));
+                }
+                return ColumnCodecs.encodeDoubles(doubles, n);
+            case Int:
+                int[] ints = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ints[i] = (c == Column.power) ?
+                            records.getInt(at(i, c)) : records.getShort(at(i, c));
+                }
+                return ColumnCodecs.encodeInts(ints, n);
+            default:
+                byte[] bytes = new byte[n];
+                for (int i = 0; i < n; i++) bytes[i] = records.get(at(i, c));
+                return ColumnCodecs.encodeRuns(bytes, n);
+        }
+    }
+
+    private static int at(int index, Column c) {
+        return Segment.recordOffset(index) + c.recordOffset;
+    }
+
+    private byte[] columnData(Column c) throws IOException {
+        long[] entry = directory.get(c);
+        if (entry == null) throw new IOException("Archive has no column " + c + ": " + file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return read(channel, entry[0], (int)entry[1]).array();
+        }
+    }
+
+    private static void checkEncoding(Column c, Encoding e) {
+        if (c.encoding != e) {
+            throw new IllegalArgumentException(c + " is not encoded as " + e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(Segment.Order);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+}
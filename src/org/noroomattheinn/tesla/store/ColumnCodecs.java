@@ -0,0 +1,291 @@
+/*
+ * ColumnCodecs.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.store;
+
+import java.util.Arrays;
+
+/**
+ * ColumnCodecs: Compression for the columns of an Archive. Each codec takes
+ * advantage of how a kind of telemetry value changes over time:
+ * - Timestamps: delta-of-delta with variable width buckets. Regularly spaced
+ *   samples cost one bit each.
+ * - Doubles: XOR with the previous value, storing only the meaningful bits
+ *   (as in Facebook's Gorilla). Slowly changing values are a few bits each.
+ * - Ints: zigzag encoded deltas in 7 bit groups. Unchanged values cost a bit.
+ * - Bytes: run-length encoded (value, run length) pairs.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+final class ColumnCodecs {
+
+    private ColumnCodecs() { }
+
+/*------------------------------------------------------------------------------
+ *
+ * Timestamps: delta-of-delta
+ *
+ *----------------------------------------------------------------------------*/
+
+    static byte[] encodeTimestamps(long[] values, int n) {
+        BitOutput out = new BitOutput(n);
+        long prev = 0, prevDelta = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0) { out.write(values[0], 64); prev = values[0]; continue; }
+            long delta = values[i] - prev;
+            long dod = delta - prevDelta;
+            if (dod == 0) {
+                out.write(0, 1);
+            } else if (dod >= -64 && dod <= 63) {
+                out.write(0b10, 2); out.write(dod, 7);
+            } else if (dod >= -256 && dod <= 255) {
+                out.write(0b110, 3); out.write(dod, 9);
+            } else if (dod >= -2048 && dod <= 2047) {
+                out.write(0b1110, 4); out.write(dod, 12);
+            } else {
+                out.write(0b1111, 4); out.write(dod, 64);
+            }
+            prevDelta = delta;
+            prev = values[i];
+        }
+        return out.toByteArray();
+    }
+
+    static long[] decodeTimestamps(byte[] data, int n) {
+        long[] values = new long[n];
+        BitInput in = new BitInput(data);
+        long prev = 0, prevDelta = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0) { prev = values[0] = in.read(64); continue; }
+            long dod;
+            if (in.read(1) == 0) dod = 0;
+            else if (in.read(1) == 0) dod = in.readSigned(7);
+            else if (in.read(1) == 0) dod = in.readSigned(9);
+            else if (in.read(1) == 0) dod = in.readSigned(12);
+            else dod = in.read(64);
+            prevDelta += dod;
+            prev = values[i] = prev + prevDelta;
+        }
+        return values;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Doubles: XOR with the previous value
+ *
+ *----------------------------------------------------------------------------*/
+
+    static byte[] encodeDoubles(double[] values, int n) {
+        BitOutput out = new BitOutput(n * 2);
+        long prev = 0;
+        int prevLeading = -1, prevTrailing = 0;
+        for (int i = 0; i < n; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            if (i == 0) { out.write(bits, 64); prev = bits; continue; }
+            long xor = bits ^ prev;
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    // The meaningful bits fit in the previous window
+                    out.write(0b10, 2);
+                    out.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                } else {
+                    int length = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(length - 1, 6);
+                    out.write(xor >>> trailing, length);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+            prev = bits;
+        }
+        return out.toByteArray();
+    }
+
+    static double[] decodeDoubles(byte[] data, int n) {
+        double[] values = new double[n];
+        BitInput in = new BitInput(data);
+        long prev = 0;
+        int leading = 0, trailing = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0) {
+                prev = in.read(64);
+            } else if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leading = (int)in.read(5);
+                    trailing = 64 - leading - ((int)in.read(6) + 1);
+                }
+                prev ^= in.read(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(prev);
+        }
+        return values;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Ints: zigzag deltas
+ *
+ *----------------------------------------------------------------------------*/
+
+    static byte[] encodeInts(int[] values, int n) {
+        BitOutput out = new BitOutput(n / 4 + 1);
+        int prev = 0;
+        for (int i = 0; i < n; i++) {
+            int delta = values[i] - prev;
+            prev = values[i];
+            if (delta == 0) { out.write(0, 1); continue; }
+            out.write(1, 1);
+            long zz = ((long)delta << 1) ^ ((long)delta >> 63);
+            while ((zz & ~0x7fL) != 0) {
+                out.write((zz & 0x7f) | 0x80, 8);
+                zz >>>= 7;
+            }
+            out.write(zz, 8);
+        }
+        return out.toByteArray();
+    }
+
+    static int[] decodeInts(byte[] data, int n) {
+        int[] values = new int[n];
+        BitInput in = new BitInput(data);
+        int prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (in.read(1) == 1) {
+                long zz = 0, group;
+                int shift = 0;
+                do {
+                    group = in.read(8);
+                    zz |= (group & 0x7f) << shift;
+                    shift += 7;
+                } while ((group & 0x80) != 0);
+                prev += (int)((zz >>> 1) ^ -(zz & 1));
+            }
+            values[i] = prev;
+        }
+        return values;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Bytes: run-length encoding
+ *
+ *----------------------------------------------------------------------------*/
+
+    static byte[] encodeRuns(byte[] values, int n) {
+        BitOutput out = new BitOutput(16);
+        int i = 0;
+        while (i < n) {
+            int run = 1;
+            while (i + run < n && values[i + run] == values[i]) run++;
+            out.write(values[i], 8);
+            out.write(run, 32);
+            i += run;
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] decodeRuns(byte[] data, int n) {
+        byte[] values = new byte[n];
+        BitInput in = new BitInput(data);
+        int i = 0;
+        while (i < n) {
+            byte value = (byte)in.read(8);
+            int run = (int)in.read(32);
+            Arrays.fill(values, i, i + run, value);
+            i += run;
+        }
+        return values;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Bit level input and output
+ *
+ *----------------------------------------------------------------------------*/
+
+    static final class BitOutput {
+        private long[] words;
+        private int nBits = 0;
+
+        BitOutput(int expectedWords) { words = new long[Math.max(4, expectedWords)]; }
+
+        /**
+         * Append the low order nBits of value, most significant bit first
+         */
+        void write(long value, int n) {
+            if (n == 0) return;
+            if (n < 64) value &= (1L << n) - 1;
+            ensure(nBits + n);
+            int word = nBits >>> 6, used = nBits & 63;
+            int free = 64 - used;
+            if (n <= free) {
+                words[word] |= value << (free - n);
+            } else {
+                words[word] |= value >>> (n - free);
+                words[word + 1] |= value << (64 - (n - free));
+            }
+            nBits += n;
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[(nBits + 7) >>> 3];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte)(words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+            }
+            return bytes;
+        }
+
+        private void ensure(int bits) {
+            int needed = (bits + 63) >>> 6;
+            if (needed > words.length) {
+                words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+            }
+        }
+    }
+
+    static final class BitInput {
+        private final byte[] data;
+        private long position = 0;
+
+        BitInput(byte[] data) { this.data = data; }
+
+        /**
+         * Read the next n bits (0 to 64) as an unsigned value
+         */
+        long read(int n) {
+            if (n == 0) return 0;
+            if (n > 56) return (read(n - 32) << 32) | read(32);
+            int index = (int)(position >>> 3);
+            int offset = (int)(position & 7);
+            long window = 0;
+            if (index + 8 <= data.length) {
+                for (int i = 0; i < 8; i++) window = (window << 8) | (data[index + i] & 0xff);
+            } else {
+                for (int i = 0; i < 8; i++) {
+                    int b = (index + i < data.length) ? (data[index + i] & 0xff) : 0;
+                    window = (window << 8) | b;
+                }
+            }
+            position += n;
+            return (window << offset) >>> (64 - n);
+        }
+
+        /**
+         * Read the next n bits as a two's complement value
+         */
+        long readSigned(int n) {
+            long v = read(n);
+            return (v << (64 - n)) >> (64 - n);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Compactor.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.noroomattheinn.tesla.Tesla;
+
+/**
+ * Compactor: Converts the sealed segments of a StreamStore into compressed
+ * columnar Archives in the background. The last segment of each vehicle is
+ * still being appended to, so it is never compacted. A segment is replaced
+ * by writing its archive under a temporary name, renaming it into place, and
+ * then deleting the segment, so a query always finds one or the other.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class Compactor {
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final StreamStore store;
+    private long minAge = 0;
+    private ScheduledExecutorService scheduler = null;
+    private final AtomicLong segmentsCompacted = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public Compactor(StreamStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Only compact segments that haven't been modified for this long
+     * @param minAge    The minimum age in milliseconds
+     * @return          this Compactor
+     */
+    public Compactor setMinAge(long minAge) {
+        this.minAge = minAge;
+        return this;
+    }
+
+    /**
+     * Start compacting periodically on a background thread
+     * @param period    The time between compaction passes in milliseconds
+     */
+    public synchronized void start(long period) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "StreamStore Compactor");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                try {
+                    compactNow();
+                } catch (Exception e) {
+                    Tesla.logger.warning("Compaction failed: " + e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+    }
+
+    /**
+     * Compact every eligible segment in the store
+     * @return  The number of segments that were compacted
+     * @throws IOException  If a segment couldn't be compacted
+     */
+    public int compactNow() throws IOException {
+        int compacted = 0;
+        long cutoff = System.currentTimeMillis() - minAge;
+        for (String vid : store.vehicles()) {
+            List<Segment> segments = Segment.list(new File(store.getRoot(), vid));
+            // Leave the last segment alone, it is still being written
+            for (int i = 0; i < segments.size() - 1; i++) {
+                Segment s = segments.get(i);
+                if (s.archived || s.file.lastModified() > cutoff) continue;
+                compact(s);
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    public long getSegmentsCompacted() { return segmentsCompacted.get(); }
+    public long getBytesIn() { return bytesIn.get(); }
+    public long getBytesOut() { return bytesOut.get(); }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private void compact(Segment s) throws IOException {
+        File dir = s.file.getParentFile();
+        File target = Segment.archiveFor(dir, s.startTime);
+        File temp = new File(dir, target.getName() + ".tmp");
+        long size = s.file.length();
+
+        Archive a = Archive.write(temp, s.map());
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Couldn't rename " + temp + " to " + target);
+        }
+        if (!s.file.delete()) {
+            Tesla.logger.warning("Couldn't delete compacted segment: " + s.file);
+        }
+        segmentsCompacted.incrementAndGet();
+        bytesIn.addAndGet(size);
+        bytesOut.addAndGet(target.length());
+        Tesla.logger.fine(String.format("Compacted %s: %d records, %d -> %d bytes",
+                s.file.getName(), a.count(), size, target.length()));
+    }
+}
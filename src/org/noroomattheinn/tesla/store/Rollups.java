@@ -0,0 +1,571 @@
+/*
+ * Rollups.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import org.noroomattheinn.tesla.BaseState;
+import org.noroomattheinn.tesla.ChargeState;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Tesla;
+import org.noroomattheinn.tesla.Vehicle;
+
+/**
+ * Rollups: Maintains pre-aggregated (count, min, max, sum, last) buckets of
+ * vehicle telemetry at 1 minute, 1 hour, and 1 day resolution so that
+ * questions like "average power per minute over the last month" can be
+ * answered without scanning raw samples. Buckets are updated incrementally as
+ * samples arrive and are persisted to one file per vehicle, field, and tier.
+ *
+ * Rollups is a Vehicle.StateListener, so adding it to a Vehicle keeps the
+ * rollups current with every StreamState from its Streamer and every
+ * ChargeState from queryCharge(). The states it receives are handed to a
+ * background writer thread so the threads delivering them never wait on
+ * disk I/O; flush() and close() wait for the states that are queued.
+ * Arbitrary values can also be recorded directly. Buckets are aligned to
+ * UTC. A sample older than the current minute bucket of its field is
+ * dropped.
+ * <P>
+ * Each file starts with a header giving its magic number, bucket size, and
+ * tier width. A file whose header doesn't match is rejected rather than
+ * being read as buckets.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class Rollups implements Vehicle.StateListener {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public enum Tier {
+        Minute(60L * 1000, "1m"), Hour(60L * 60 * 1000, "1h"), Day(24L * 60 * 60 * 1000, "1d");
+
+        public final long width;
+        final String suffix;
+
+        Tier(long width, String suffix) { this.width = width; this.suffix = suffix; }
+
+        public long align(long time) { return alignTo(time, width); }
+    }
+
+    // The fields recorded for each kind of state
+    public static final String StreamSpeed = "stream.speed";
+    public static final String StreamPower = "stream.power";
+    public static final String StreamSOC = "stream.soc";
+    public static final String StreamOdometer = "stream.odometer";
+    public static final String StreamElevation = "stream.elevation";
+    public static final String StreamRange = "stream.range";
+    public static final String ChargePower = "charge.chargerPower";
+    public static final String ChargeBattery = "charge.batteryPercent";
+    public static final String ChargeRange = "charge.range";
+    public static final String ChargeRate = "charge.chargeRate";
+    public static final String ChargeEnergyAdded = "charge.energyAdded";
+    public static final String ChargeVoltage = "charge.chargerVoltage";
+    public static final String ChargeCurrent = "charge.chargerActualCurrent";
+
+    private static final int Magic = 0x54535231;    // "TSR1"
+    private static final int HeaderSize = 16;
+    private static final int BucketSize = 48;
+    private static final Pattern ValidName = Pattern.compile("[A-Za-z0-9_.\\-]+");
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final File root;
+    private final StreamStore raw;
+    private final Map<String,FieldRollup> fields = new HashMap<>();
+    private final ExecutorService writer;
+    private long nDropped = 0;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Bucket: The aggregate of the values recorded in a time interval
+     */
+    public static class Bucket {
+        public final long start;
+        public long   count = 0;
+        public double min = Double.POSITIVE_INFINITY;
+        public double max = Double.NEGATIVE_INFINITY;
+        public double sum = 0;
+        public double last = Double.NaN;
+
+        public Bucket(long start) { this.start = start; }
+
+        public double avg() { return count == 0 ? Double.NaN : sum / count; }
+
+        public void add(double value) {
+            count++;
+            if (value < min) min = value;
+            if (value > max) max = value;
+            sum += value;
+            last = value;
+        }
+
+        /**
+         * Combine another (later) bucket into this one
+         */
+        public void merge(Bucket b) {
+            if (b.count == 0) return;
+            count += b.count;
+            min = Math.min(min, b.min);
+            max = Math.max(max, b.max);
+            sum += b.sum;
+            last = b.last;
+        }
+
+        @Override public String toString() {
+            return String.format("[%d: n=%d, min=%s, max=%s, avg=%s, last=%s]",
+                    start, count, min, max, avg(), last);
+        }
+    }
+
+    /**
+     * Create Rollups which are stored in the given directory
+     * @param root  The directory in which rollups are persisted
+     * @param raw   The store holding raw stream samples. It is used to answer
+     *              downsampling requests that the tiers can't. May be null.
+     */
+    public Rollups(File root, StreamStore raw) {
+        this.root = root;
+        this.raw = raw;
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Rollups Writer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        root.mkdirs();
+    }
+
+    @Override public void stateReceived(Vehicle v, final BaseState state) {
+        if (!(state instanceof StreamState) && !(state instanceof ChargeState)) return;
+        final String vid = v.getVID();
+        try {
+            writer.execute(new Runnable() {
+                @Override public void run() {
+                    try {
+                        if (state instanceof StreamState) {
+                            record(vid, (StreamState)state);
+                        } else {
+                            record(vid, (ChargeState)state);
+                        }
+                    } catch (IOException | IllegalArgumentException e) {
+                        Tesla.logger.warning("Unable to update rollups: " + e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The Rollups have been closed
+        }
+    }
+
+    public void record(String vid, StreamState s) throws IOException {
+        long time = (s.vehicleTimestamp != 0) ? s.vehicleTimestamp : s.timestamp;
+        record(vid, StreamSpeed, time, s.speed);
+        record(vid, StreamPower, time, s.power);
+        record(vid, StreamSOC, time, s.soc);
+        record(vid, StreamOdometer, time, s.odometer);
+        record(vid, StreamElevation, time, s.elevation);
+        record(vid, StreamRange, time, s.range);
+    }
+
+    public void record(String vid, ChargeState s) throws IOException {
+        long time = s.timestamp;
+        record(vid, ChargePower, time, s.chargerPower);
+        record(vid, ChargeBattery, time, s.batteryPercent);
+        record(vid, ChargeRange, time, s.range);
+        record(vid, ChargeRate, time, s.chargeRate);
+        record(vid, ChargeEnergyAdded, time, s.energyAdded);
+        record(vid, ChargeVoltage, time, s.chargerVoltage);
+        record(vid, ChargeCurrent, time, s.chargerActualCurrent);
+    }
+
+    /**
+     * Record a value for a field of a vehicle in every tier
+     * @param vid   The vehicle's ID
+     * @param field The name of the field
+     * @param time  The time of the value
+     * @param value The value. NaN values are ignored.
+     * @throws IOException  If a completed bucket couldn't be written
+     */
+    public void record(String vid, String field, long time, double value) throws IOException {
+        if (Double.isNaN(value)) return;
+        FieldRollup r = rollupFor(vid, field);
+        synchronized (r) {
+            if (!r.add(time, value)) {
+                synchronized (this) { nDropped++; }
+            }
+        }
+    }
+
+    /**
+     * Return the buckets of a tier for a field whose start is in [from, to]
+     * @param vid   The vehicle's ID
+     * @param field The name of the field
+     * @param tier  The tier
+     * @param from  The start of the range
+     * @param to    The end of the range (inclusive)
+     * @return      The buckets that have at least one value, in time order
+     * @throws IOException  If the rollup can't be read
+     */
+    public List<Bucket> query(String vid, String field, Tier tier, long from, long to)
+            throws IOException {
+        FieldRollup r = rollupFor(vid, field);
+        synchronized (r) { return r.series[tier.ordinal()].read(from, to); }
+    }
+
+    /**
+     * Aggregate a field into buckets of an arbitrary width. The buckets are
+     * assembled from the coarsest tier whose width evenly divides bucketWidth.
+     * If there is no such tier, the raw samples in the StreamStore are used
+     * (only stream fields can be answered this way).
+     * @param vid           The vehicle's ID
+     * @param field         The name of the field
+     * @param from          The start of the range
+     * @param to            The end of the range (inclusive)
+     * @param bucketWidth   The width of each bucket in milliseconds
+     * @return              The non-empty buckets in time order
+     * @throws IOException  If the data can't be read
+     */
+    public List<Bucket> downsample(
+            String vid, String field, long from, long to, long bucketWidth)
+            throws IOException {
+        Tier[] tiers = Tier.values();
+        for (int i = tiers.length - 1; i >= 0; i--) {
+            if (bucketWidth % tiers[i].width == 0) {
+                return regroup(query(vid, field, tiers[i], from, to), bucketWidth);
+            }
+        }
+        Archive.Column column = streamColumn(field);
+        if (raw == null || column == null) {
+            throw new IllegalArgumentException(
+                "No tier or raw data can produce " + bucketWidth + "ms buckets for " + field);
+        }
+        return downsample(raw.query(vid, from, to), column, bucketWidth);
+    }
+
+    /**
+     * Aggregate one field of raw samples into buckets
+     * @param c             A cursor over the samples
+     * @param column        The field to aggregate
+     * @param bucketWidth   The width of each bucket in milliseconds
+     * @return              The non-empty buckets in time order
+     * @throws IOException  If the samples can't be read
+     */
+    public static List<Bucket> downsample(SampleCursor c, Archive.Column column, long bucketWidth)
+            throws IOException {
+        List<Bucket> buckets = new ArrayList<>();
+        Bucket current = null;
+        while (c.next()) {
+            long start = alignTo(c.timestamp(), bucketWidth);
+            if (current == null || current.start != start) {
+                current = new Bucket(start);
+                buckets.add(current);
+            }
+            current.add(value(c, column));
+        }
+        return buckets;
+    }
+
+    /**
+     * Record any states that are queued and write every open bucket to disk
+     * @throws IOException  If a bucket couldn't be written
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(new Callable<Void>() {
+                @Override public Void call() throws IOException {
+                    persistAll();
+                    return null;
+                }
+            }).get();
+        } catch (RejectedExecutionException e) {
+            persistAll();   // Closed, so nothing else is writing
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing rollups");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw new IOException("Unable to flush rollups", e.getCause());
+        }
+    }
+
+    /**
+     * Flush the rollups and stop the writer thread. States received after
+     * the Rollups are closed are ignored.
+     * @throws IOException  If a bucket couldn't be written
+     */
+    public void close() throws IOException {
+        if (writer.isShutdown()) return;
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    // The number of values dropped because they arrived too late
+    public synchronized long getDroppedCount() { return nDropped; }
+
+/*------------------------------------------------------------------------------
+ *
+ * The rollups for one field of one vehicle
+ *
+ *----------------------------------------------------------------------------*/
+
+    private class FieldRollup {
+        final Series[] series;
+
+        FieldRollup(File dir, String field) throws IOException {
+            Tier[] tiers = Tier.values();
+            series = new Series[tiers.length];
+            for (Tier t : tiers) {
+                series[t.ordinal()] = new Series(new File(dir, field + "." + t.suffix), t);
+            }
+        }
+
+        boolean add(long time, double value) throws IOException {
+            // The finest tier decides whether a sample is too late
+            Series finest = series[0];
+            if (finest.open != null && finest.tier.align(time) < finest.open.start) {
+                return false;
+            }
+            for (Series s : series) s.add(time, value);
+            return true;
+        }
+    }
+
+    /**
+     * Series: The buckets of one tier. Completed buckets are in the file, the
+     * open (most recent) bucket is in memory and is written when it completes
+     * or when the Rollups are flushed.
+     */
+    private static class Series {
+        final File file;
+        final Tier tier;
+        Bucket open = null;
+        boolean openPersisted = false;  // Is the open bucket the last one in the file?
+
+        Series(File file, Tier tier) throws IOException {
+            this.file = file;
+            this.tier = tier;
+            resume();
+        }
+
+        void add(long time, double value) throws IOException {
+            long start = tier.align(time);
+            if (open == null || start > open.start) {
+                persist();
+                open = new Bucket(start);
+                openPersisted = false;
+            }
+            open.add(value);
+        }
+
+        void persist() throws IOException {
+            if (open == null) return;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                long size = channel.size();
+                if (size >= HeaderSize) {
+                    checkHeader(channel);
+                } else {
+                    ByteBuffer header = ByteBuffer.allocate(HeaderSize).order(Segment.Order);
+                    header.putInt(Magic).putInt(BucketSize).putLong(tier.width).flip();
+                    channel.write(header, 0);
+                    size = HeaderSize;
+                }
+                long nBuckets = (size - HeaderSize) / BucketSize;
+                long position = HeaderSize + (openPersisted ? nBuckets - 1 : nBuckets) * BucketSize;
+                ByteBuffer buf = ByteBuffer.allocate(BucketSize).order(Segment.Order);
+                buf.putLong(open.start).putLong(open.count).putDouble(open.min);
+                buf.putDouble(open.max).putDouble(open.sum).putDouble(open.last).flip();
+                channel.write(buf, position);
+            }
+            openPersisted = true;
+        }
+
+        List<Bucket> read(long from, long to) throws IOException {
+            List<Bucket> result = new ArrayList<>();
+            if (file.exists()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                     FileChannel channel = raf.getChannel()) {
+                    if (channel.size() >= HeaderSize) checkHeader(channel);
+                    long n = (channel.size() - HeaderSize) / BucketSize;
+                    if (n > 0) {
+                        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                                HeaderSize, n * BucketSize).order(Segment.Order);
+                        int lo = 0, hi = (int)n;
+                        while (lo < hi) {
+                            int mid = (lo + hi) >>> 1;
+                            if (buf.getLong(mid * BucketSize) < from) lo = mid + 1; else hi = mid;
+                        }
+                        for (int i = lo; i < n; i++) {
+                            Bucket b = decode(buf, i * BucketSize);
+                            if (b.start > to) break;
+                            result.add(b);
+                        }
+                    }
+                }
+            }
+            // The in-memory copy of the open bucket is always the latest
+            if (open != null && open.start >= from && open.start <= to) {
+                int last = result.size() - 1;
+                if (last >= 0 && result.get(last).start == open.start) result.remove(last);
+                result.add(copy(open));
+            }
+            return result;
+        }
+
+        private void checkHeader(FileChannel channel) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HeaderSize).order(Segment.Order);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) break;
+            }
+            header.flip();
+            if (header.remaining() < HeaderSize || header.getInt(0) != Magic ||
+                    header.getInt(4) != BucketSize || header.getLong(8) != tier.width) {
+                throw new IOException("Not a " + tier + " rollup file: " + file);
+            }
+        }
+
+        // Pick up the last bucket in the file as the open bucket
+        private void resume() throws IOException {
+            List<Bucket> all = read(Long.MIN_VALUE, Long.MAX_VALUE);
+            if (all.isEmpty()) return;
+            open = all.get(all.size() - 1);
+            openPersisted = true;
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private void persistAll() throws IOException {
+        List<FieldRollup> all;
+        synchronized (fields) { all = new ArrayList<>(fields.values()); }
+        for (FieldRollup r : all) {
+            synchronized (r) { for (Series s : r.series) s.persist(); }
+        }
+    }
+
+    private FieldRollup rollupFor(String vid, String field) throws IOException {
+        if (!ValidName.matcher(vid).matches() || !ValidName.matcher(field).matches()) {
+            throw new IllegalArgumentException("Invalid vehicle or field: " + vid + ", " + field);
+        }
+        String key = vid + "/" + field;
+        synchronized (fields) {
+            FieldRollup r = fields.get(key);
+            if (r == null) {
+                File dir = new File(root, vid);
+                dir.mkdirs();
+                r = new FieldRollup(dir, field);
+                fields.put(key, r);
+            }
+            return r;
+        }
+    }
+
+    private static List<Bucket> regroup(List<Bucket> buckets, long width) {
+        if (buckets.isEmpty()) return Collections.emptyList();
+        List<Bucket> result = new ArrayList<>();
+        Bucket current = null;
+        for (Bucket b : buckets) {
+            long start = alignTo(b.start, width);
+            if (current == null || current.start != start) {
+                current = new Bucket(start);
+                result.add(current);
+            }
+            current.merge(b);
+        }
+        return result;
+    }
+
+    // The start of the bucket of the given width that contains time
+    private static long alignTo(long time, long width) {
+        long q = time / width;
+        if (time % width != 0 && time < 0) q--;
+        return q * width;
+    }
+
+    private static Archive.Column streamColumn(String field) {
+        switch (field) {
+            case StreamSpeed: return Archive.Column.speed;
+            case StreamPower: return Archive.Column.power;
+            case StreamSOC: return Archive.Column.soc;
+            case StreamOdometer: return Archive.Column.odometer;
+            case StreamElevation: return Archive.Column.elevation;
+            case StreamRange: return Archive.Column.range;
+            default: return null;
+        }
+    }
+
+    private static double value(SampleCursor c, Archive.Column column) {
+        switch (column) {
+            case timestamp: return c.timestamp();
+            case lat: return c.lat();
+            case lng: return c.lng();
+            case odometer: return c.odometer();
+            case speed: return c.speed();
+            case power: return c.power();
+            case soc: return c.soc();
+            case heading: return c.heading();
+            case estHeading: return c.estHeading();
+            case elevation: return c.elevation();
+            case range: return c.range();
+            case estRange: return c.estRange();
+            default: return c.shiftState().charAt(0);
+        }
+    }
+
+    private static Bucket decode(ByteBuffer buf, int offset) {
+        Bucket b = new Bucket(buf.getLong(offset));
+        b.count = buf.getLong(offset + 8);
+        b.min = buf.getDouble(offset + 16);
+        b.max = buf.getDouble(offset + 24);
+        b.sum = buf.getDouble(offset + 32);
+        b.last = buf.getDouble(offset + 40);
+        return b;
+    }
+
+    private static Bucket copy(Bucket b) {
+        Bucket c = new Bucket(b.start);
+        c.count = b.count; c.min = b.min; c.max = b.max; c.sum = b.sum; c.last = b.last;
+        return c;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * SampleCursor.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Streamer;
+import org.noroomattheinn.utils.RestHelper;
+import us.monoid.json.JSONObject;
+
+/**
+ * SampleCursor: Iterates over the stored samples of one vehicle within a
+ * time range. The values are read directly from memory mapped segments, so
+ * scanning doesn't allocate anything per sample. Archived segments are
+ * decoded a segment at a time. Call next() to advance to
+ * each sample and then use the accessors to read its fields:
+ * <pre>
+ *     SampleCursor c = store.query(vid, from, to);
+ *     while (c.next()) { total += c.power(); }
+ * </pre>
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class SampleCursor {
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final List<Segment> segments;
+    private final long from, to;
+    private int segmentIndex = -1;
+    private ByteBuffer buf = null;
+    private int index, count;
+    private int base;
+    private boolean done = false;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    SampleCursor(List<Segment> segments, long from, long to) {
+        this.segments = segments;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Advance to the next sample in the range
+     * @return  true if there is a sample, false if the range is exhausted
+     * @throws IOException  If a segment can't be read
+     */
+    public boolean next() throws IOException {
+        if (done) return false;
+        index++;
+        while (buf == null || index >= count) {
+            if (++segmentIndex >= segments.size()) { return finish(); }
+            buf = segments.get(segmentIndex).map();
+            count = Segment.recordCount(buf);
+            index = Segment.search(buf, from);
+        }
+        base = Segment.recordOffset(index);
+        if (timestamp() > to) { return finish(); }
+        return true;
+    }
+
+    public long   timestamp()   { return buf.getLong(base + Segment.TimestampOff); }
+    public double lat()         { return buf.getDouble(base + Segment.LatOff); }
+    public double lng()         { return buf.getDouble(base + Segment.LngOff); }
+    public double odometer()    { return buf.getDouble(base + Segment.OdometerOff); }
+    public double speed()       { return buf.getFloat(base + Segment.SpeedOff); }
+    public int    power()       { return buf.getInt(base + Segment.PowerOff); }
+    public int    soc()         { return buf.getShort(base + Segment.SocOff); }
+    public int    heading()     { return buf.getShort(base + Segment.HeadingOff); }
+    public int    estHeading()  { return buf.getShort(base + Segment.EstHeadingOff); }
+    public int    elevation()   { return buf.getShort(base + Segment.ElevationOff); }
+    public int    range()       { return buf.getShort(base + Segment.RangeOff); }
+    public int    estRange()    { return buf.getShort(base + Segment.EstRangeOff); }
+    public String shiftState()  { return String.valueOf((char)buf.get(base + Segment.ShiftOff)); }
+
+    /**
+     * Create a StreamState for the current sample. This allocates, so use the
+     * individual accessors when scanning large ranges.
+     * @return  The sample as a StreamState
+     */
+    public StreamState toStreamState() {
+        JSONObject jo = new JSONObject();
+        RestHelper.put(jo, Streamer.Keys.timestamp.name(), timestamp());
+        putFinite(jo, Streamer.Keys.est_lat, lat());
+        putFinite(jo, Streamer.Keys.est_lng, lng());
+        putFinite(jo, Streamer.Keys.odometer, odometer());
+        putFinite(jo, Streamer.Keys.speed, speed());
+        RestHelper.put(jo, Streamer.Keys.power.name(), power());
+        RestHelper.put(jo, Streamer.Keys.soc.name(), soc());
+        RestHelper.put(jo, Streamer.Keys.heading.name(), heading());
+        RestHelper.put(jo, Streamer.Keys.est_heading.name(), estHeading());
+        RestHelper.put(jo, Streamer.Keys.elevation.name(), elevation());
+        RestHelper.put(jo, Streamer.Keys.range.name(), range());
+        RestHelper.put(jo, Streamer.Keys.est_range.name(), estRange());
+        String shift = shiftState();
+        if (!shift.equals("P")) RestHelper.put(jo, Streamer.Keys.shift_state.name(), shift);
+        return new StreamState(jo);
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    // JSON can't represent NaN, which is what a missing value was stored as
+    private static void putFinite(JSONObject jo, Streamer.Keys key, double value) {
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            RestHelper.put(jo, key.name(), value);
+        }
+    }
+
+    private boolean finish() {
+        done = true;
+        buf = null;
+        return false;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Segment.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.store;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.noroomattheinn.tesla.StreamState;
+
+/**
+ * Segment: One file of fixed-width StreamState records for a single vehicle.
+ * A segment starts with a header followed by records in timestamp order. The
+ * file name is the (zero padded) timestamp of the first record so the
+ * segments in a directory sort into time order by name. Once a segment has
+ * been compacted into an Archive, the Segment refers to the archive instead
+ * and map() decodes it into the same record layout.
+ *
+ * Header (32 bytes):
+ *     int magic, int version, int recordSize, int reserved, long startTime, long reserved
+ * Record (56 bytes):
+ *     long timestamp, double lat, double lng, double odometer,
+ *     float speed, int power, short soc, short heading, short estHeading,
+ *     short elevation, short range, short estRange, byte shiftState, 3 bytes pad
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+final class Segment {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    static final int Magic = 0x54535331;    // "TSS1"
+    static final int Version = 1;
+    static final int HeaderSize = 32;
+    static final int RecordSize = 56;
+    static final String Suffix = ".seg";
+    static final ByteOrder Order = ByteOrder.LITTLE_ENDIAN;
+
+    // Offsets of the fields within a record
+    static final int TimestampOff = 0;
+    static final int LatOff = 8;
+    static final int LngOff = 16;
+    static final int OdometerOff = 24;
+    static final int SpeedOff = 32;
+    static final int PowerOff = 36;
+    static final int SocOff = 40;
+    static final int HeadingOff = 42;
+    static final int EstHeadingOff = 44;
+    static final int ElevationOff = 46;
+    static final int RangeOff = 48;
+    static final int EstRangeOff = 50;
+    static final int ShiftOff = 52;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    final File file;
+    final long startTime;
+    final boolean archived;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Package Interface To This Class                  -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    Segment(File file, long startTime) {
+        this.file = file;
+        this.startTime = startTime;
+        this.archived = file.getName().endsWith(Archive.Suffix);
+    }
+
+    static File fileFor(File dir, long startTime) {
+        return new File(dir, String.format("%019d%s", startTime, Suffix));
+    }
+
+    static File archiveFor(File dir, long startTime) {
+        return new File(dir, String.format("%019d%s", startTime, Archive.Suffix));
+    }
+
+    /**
+     * Return the segments in a vehicle's directory in time order. If a
+     * segment has been archived but not yet deleted, only the archive is
+     * returned.
+     * @param dir   The vehicle's directory
+     * @return      The segments, possibly empty
+     */
+    static List<Segment> list(File dir) {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override public boolean accept(File f) {
+                String name = f.getName();
+                return f.isFile() && (name.endsWith(Suffix) || name.endsWith(Archive.Suffix));
+            }
+        });
+        List<Segment> segments = new ArrayList<>();
+        if (files == null) return segments;
+        Arrays.sort(files);
+        for (File f : files) {
+            String name = f.getName();
+            try {
+                long start = Long.parseLong(name.substring(0, name.lastIndexOf('.')));
+                Segment s = new Segment(f, start);
+                int last = segments.size() - 1;
+                if (last >= 0 && segments.get(last).startTime == start) {
+                    if (s.archived) segments.set(last, s);
+                } else {
+                    segments.add(s);
+                }
+            } catch (NumberFormatException e) { /* Not one of ours */ }
+        }
+        return segments;
+    }
+
+    /**
+     * Map the complete records of this segment read-only. Records that are
+     * appended after the mapping is created are not visible through it. An
+     * archived segment is decoded into a heap buffer with the same layout.
+     * @return  A buffer covering the header and every complete record
+     * @throws IOException  If the file can't be mapped or has a bad header
+     */
+    ByteBuffer map() throws IOException {
+        if (archived) return new Archive(file).toRecords();
+        if (!file.exists()) {
+            // It may have been compacted since the directory was listed
+            File archive = archiveFor(file.getParentFile(), startTime);
+            if (archive.exists()) return new Archive(archive).toRecords();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HeaderSize) throw new IOException("Truncated segment: " + file);
+            long nRecords = (size - HeaderSize) / RecordSize;
+            MappedByteBuffer buf = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, HeaderSize + nRecords * RecordSize);
+            buf.order(Order);
+            if (buf.getInt(0) != Magic || buf.getInt(8) != RecordSize) {
+                throw new IOException("Not a stream segment: " + file);
+            }
+            return buf;
+        }
+    }
+
+    static int recordCount(ByteBuffer buf) {
+        return (buf.limit() - HeaderSize) / RecordSize;
+    }
+
+    static int recordOffset(int index) { return HeaderSize + index * RecordSize; }
+
+    static long timestampAt(ByteBuffer buf, int index) {
+        return buf.getLong(recordOffset(index) + TimestampOff);
+    }
+
+    /**
+     * Find the first record whose timestamp is at least the given time
+     * @return  The index of the record, or recordCount if there is none
+     */
+    static int search(ByteBuffer buf, long time) {
+        int lo = 0, hi = recordCount(buf);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestampAt(buf, mid) < time) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    static void writeHeader(FileChannel channel, long startTime) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HeaderSize).order(Order);
+        header.putInt(Magic).putInt(Version).putInt(RecordSize).putInt(0);
+        header.putLong(startTime).putLong(0);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Append one record to a buffer
+     * @param buf       The buffer, which must have at least RecordSize remaining
+     * @param time      The timestamp for the record
+     * @param s         The sample
+     */
+    static void encode(ByteBuffer buf, long time, StreamState s) {
+        buf.putLong(time);
+        buf.putDouble(s.estLat);
+        buf.putDouble(s.estLng);
+        buf.putDouble(s.odometer);
+        buf.putFloat((float)s.speed);
+        buf.putInt(s.power);
+        buf.putShort((short)s.soc);
+        buf.putShort((short)s.heading);
+        buf.putShort((short)s.estHeading);
+        buf.putShort((short)s.elevation);
+        buf.putShort((short)s.range);
+        buf.putShort((short)s.estRange);
+        buf.put((byte)s.shiftState().charAt(0));
+        buf.put((byte)0).put((byte)0).put((byte)0);
+    }
+}
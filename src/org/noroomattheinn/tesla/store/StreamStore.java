@@ -0,0 +1,348 @@
+/*
+ * StreamStore.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Tesla;
+
+/**
+ * StreamStore: An append-only, on-disk store of StreamState samples. Each
+ * vehicle has its own directory of Segments containing fixed-width binary
+ * records in time order. Appends are collected into batches which are written
+ * when they fill up (or when flush() is called) and are forced to disk
+ * according to the SyncPolicy. Queries memory map the segments and return a
+ * SampleCursor that reads the records in place.
+ *
+ * Samples are timestamped with the vehicle's timestamp when it is present.
+ * A sample older than the last one stored for the vehicle is dropped so that
+ * every segment stays in time order. Samples become visible to queries once
+ * their batch has been written.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class StreamStore implements Closeable {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    /**
+     * SyncPolicy: When written batches are forced to stable storage
+     * Never       - Leave it to the operating system
+     * EveryBatch  - Force each batch as it is written
+     * Interval    - Force at most once per sync interval
+     */
+    public enum SyncPolicy {Never, EveryBatch, Interval};
+
+    public static final int DefaultBatchSize = 256;
+    public static final int DefaultSegmentRecords = 1 << 20;   // ~3 days at 4Hz
+    public static final long DefaultSyncInterval = 1000;
+
+    private static final Pattern ValidVehicleID = Pattern.compile("[A-Za-z0-9_\\-]+");
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final File root;
+    private final SyncPolicy syncPolicy;
+    private final long syncInterval;
+    private int batchSize = DefaultBatchSize;
+    private int segmentRecords = DefaultSegmentRecords;
+    private final Map<String,Writer> writers = new HashMap<>();
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public StreamStore(File root) {
+        this(root, SyncPolicy.Interval, DefaultSyncInterval);
+    }
+
+    public StreamStore(File root, SyncPolicy syncPolicy, long syncInterval) {
+        this.root = root;
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+        root.mkdirs();
+    }
+
+    public StreamStore setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    public StreamStore setSegmentRecords(int segmentRecords) {
+        this.segmentRecords = Math.max(1, segmentRecords);
+        return this;
+    }
+
+    public File getRoot() { return root; }
+
+    /**
+     * Append a sample for a vehicle
+     * @param vid   The vehicle's ID
+     * @param s     The sample
+     * @return      true if the sample was stored, false if it was out of order
+     * @throws IOException  If a batch couldn't be written
+     */
+    public boolean append(String vid, StreamState s) throws IOException {
+        Writer w = writerFor(vid);
+        synchronized (w) { return w.append(s); }
+    }
+
+    /**
+     * Write any batched samples for a vehicle and force them to disk unless
+     * the SyncPolicy is Never
+     * @param vid   The vehicle's ID
+     * @throws IOException  If the samples couldn't be written
+     */
+    public void flush(String vid) throws IOException {
+        Writer w;
+        synchronized (writers) { w = writers.get(vid); }
+        if (w != null) synchronized (w) { w.flush(syncPolicy != SyncPolicy.Never); }
+    }
+
+    public void flush() throws IOException {
+        for (String vid : activeVehicles()) { flush(vid); }
+    }
+
+    /**
+     * Return a cursor over the stored samples for a vehicle whose timestamps
+     * are in the range [from, to]
+     * @param vid   The vehicle's ID
+     * @param from  The start of the range
+     * @param to    The end of the range (inclusive)
+     * @return      A cursor positioned before the first sample in the range
+     */
+    public SampleCursor query(String vid, long from, long to) {
+        return new SampleCursor(segmentsFor(vid, from, to), from, to);
+    }
+
+    /**
+     * Return the segments of a vehicle that may hold samples in [from, to]
+     */
+    List<Segment> segmentsFor(String vid, long from, long to) {
+        List<Segment> all = Segment.list(new File(root, checkID(vid)));
+        List<Segment> selected = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) {
+            Segment s = all.get(i);
+            if (s.startTime > to) break;
+            boolean nextStartsBeforeRange = (i + 1 < all.size()) && all.get(i + 1).startTime <= from;
+            if (!nextStartsBeforeRange) selected.add(s);
+        }
+        return selected;
+    }
+
+    /**
+     * Return the IDs of all vehicles with stored samples
+     */
+    public List<String> vehicles() {
+        List<String> ids = new ArrayList<>();
+        File[] dirs = root.listFiles();
+        if (dirs == null) return ids;
+        for (File d : dirs) {
+            if (d.isDirectory() && ValidVehicleID.matcher(d.getName()).matches()) {
+                ids.add(d.getName());
+            }
+        }
+        return ids;
+    }
+
+    @Override public void close() throws IOException {
+        IOException failure = null;
+        for (String vid : activeVehicles()) {
+            Writer w;
+            synchronized (writers) { w = writers.remove(vid); }
+            try {
+                synchronized (w) { w.close(); }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Writer: Batches the samples of one vehicle and appends them to its segments
+ *
+ *----------------------------------------------------------------------------*/
+
+    private class Writer {
+        private final File dir;
+        private final ByteBuffer batch;
+        private FileChannel channel = null;
+        private long position;
+        private int nRecords;
+        private long segmentStart;
+        private long lastTime = Long.MIN_VALUE;
+        private long lastSync = 0;
+
+        Writer(File dir) throws IOException {
+            this.dir = dir;
+            dir.mkdirs();
+            batch = ByteBuffer.allocateDirect(batchSize * Segment.RecordSize).order(Segment.Order);
+            reopenLastSegment();
+        }
+
+        boolean append(StreamState s) throws IOException {
+            long time = (s.vehicleTimestamp != 0) ? s.vehicleTimestamp : s.timestamp;
+            if (time < lastTime) return false;
+            if (channel == null || (nRecords >= segmentRecords && time != segmentStart)) {
+                startSegment(time);
+            }
+            Segment.encode(batch, time, s);
+            lastTime = time;
+            nRecords++;
+            if (!batch.hasRemaining() || nRecords >= segmentRecords) { flush(false); }
+            return true;
+        }
+
+        void flush(boolean force) throws IOException {
+            if (channel == null) return;
+            if (batch.position() > 0) {
+                batch.flip();
+                while (batch.hasRemaining()) { position += channel.write(batch, position); }
+                batch.clear();
+                switch (syncPolicy) {
+                    case EveryBatch: force = true; break;
+                    case Interval:
+                        force = force || System.currentTimeMillis() - lastSync >= syncInterval;
+                        break;
+                    default: break;
+                }
+            }
+            if (force) {
+                channel.force(false);
+                lastSync = System.currentTimeMillis();
+            }
+        }
+
+        void close() throws IOException {
+            if (channel == null) return;
+            try {
+                flush(syncPolicy != SyncPolicy.Never);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        // Segments are named by their start time, so if one already starts at
+        // this time (every sample in it has the same timestamp) keep appending
+        // to it even though it is full. An archived one is restored first.
+        private void startSegment(long time) throws IOException {
+            if (channel != null) close();
+            File f = Segment.fileFor(dir, time);
+            File archive = Segment.archiveFor(dir, time);
+            if (archive.exists()) restore(archive, f);
+            if (f.exists()) {
+                resume(f, time, Segment.recordCount(new Segment(f, time).map()));
+                return;
+            }
+            channel = new RandomAccessFile(f, "rw").getChannel();
+            Segment.writeHeader(channel, time);
+            position = Segment.HeaderSize;
+            nRecords = 0;
+            segmentStart = time;
+        }
+
+        private void resume(File f, long start, int count) throws IOException {
+            channel = new RandomAccessFile(f, "rw").getChannel();
+            position = Segment.recordOffset(count);
+            channel.truncate(position);
+            nRecords = count;
+            segmentStart = start;
+        }
+
+        // Turn an archive back into a segment that can be appended to
+        private void restore(File archive, File f) throws IOException {
+            ByteBuffer records = new Archive(archive).toRecords();
+            File temp = new File(dir, f.getName() + ".tmp");
+            try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+                 FileChannel out = raf.getChannel()) {
+                out.truncate(0);
+                while (records.hasRemaining()) { out.write(records); }
+                out.force(false);
+            }
+            f.delete();     // Any leftover from before the archive was made
+            if (!temp.renameTo(f)) {
+                temp.delete();
+                throw new IOException("Couldn't rename " + temp + " to " + f);
+            }
+            archive.delete();
+        }
+
+        // Continue appending to the last segment after a restart. A partial
+        // record left by a crash is discarded.
+        private void reopenLastSegment() throws IOException {
+            List<Segment> segments = Segment.list(dir);
+            if (segments.isEmpty()) return;
+            Segment last = segments.get(segments.size() - 1);
+            if (last.archived) {
+                lastTime = new Archive(last.file).endTime();
+                return;
+            }
+            ByteBuffer buf;
+            try {
+                buf = last.map();
+            } catch (IOException e) {
+                Tesla.logger.warning("Ignoring unreadable segment: " + e.getMessage());
+                return;
+            }
+            int count = Segment.recordCount(buf);
+            if (count > 0) lastTime = Segment.timestampAt(buf, count - 1);
+            if (count >= segmentRecords) return;
+            resume(last.file, last.startTime, count);
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private Writer writerFor(String vid) throws IOException {
+        synchronized (writers) {
+            Writer w = writers.get(vid);
+            if (w == null) {
+                w = new Writer(new File(root, checkID(vid)));
+                writers.put(vid, w);
+            }
+            return w;
+        }
+    }
+
+    private List<String> activeVehicles() {
+        synchronized (writers) { return new ArrayList<>(writers.keySet()); }
+    }
+
+    private static String checkID(String vid) {
+        if (vid == null || !ValidVehicleID.matcher(vid).matches()) {
+            throw new IllegalArgumentException("Invalid vehicle ID: " + vid);
+        }
+        return vid;
+    }
+}
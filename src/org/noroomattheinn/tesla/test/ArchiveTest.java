@@ -0,0 +1,143 @@
+/*
+ * ArchiveTest.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Streamer;
+import org.noroomattheinn.tesla.store.Compactor;
+import org.noroomattheinn.tesla.store.SampleCursor;
+import org.noroomattheinn.tesla.store.StreamStore;
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+
+/**
+ * ArchiveTest: Round trips stream samples through the compressed archive
+ * format. Samples with steady and irregular timing, repeated timestamps,
+ * runs of identical values, and extreme doubles are stored, read back, then
+ * compacted into archives and read back again. Every field of every sample
+ * must be unchanged, for the whole range and for ranges that start and end
+ * part way through a segment. Exits with a non-zero status if any check
+ * fails.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class ArchiveTest {
+    private static final String VID = "1234";
+    private static final int NSamples = 20000;
+    private static final int SegmentRecords = 1000;
+    private static final double[] Odd = {   // NaN is a missing value
+        Double.NaN, 0.0, -0.0, Double.MAX_VALUE, -Double.MIN_VALUE, 1e-300};
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String... args) throws IOException, JSONException {
+        File root = Files.createTempDirectory("archive").toFile();
+        Random random = new Random(1234);
+
+        StreamStore store = new StreamStore(root).setSegmentRecords(SegmentRecords);
+        long time = 1381000000000L;
+        double lat = 37.44, lng = -122.18, odometer = 12000;
+        for (int i = 0; i < NSamples; i++) {
+            switch (random.nextInt(20)) {
+                case 0: break;                                  // Same timestamp
+                case 1: time += random.nextInt(1000000); break; // A gap
+                default: time += 240 + random.nextInt(20); break;
+            }
+            lat += (random.nextDouble() - 0.5) / 1000;
+            lng += (random.nextDouble() - 0.5) / 1000;
+            odometer += random.nextDouble() / 100;
+            JSONObject jo = new JSONObject();
+            jo.put(Streamer.Keys.timestamp.name(), time);
+            double v = (i % 500 == 7) ? Odd[(i / 500) % Odd.length] : lat;
+            if (!Double.isNaN(v)) jo.put(Streamer.Keys.est_lat.name(), v);
+            jo.put(Streamer.Keys.est_lng.name(), lng);
+            jo.put(Streamer.Keys.odometer.name(), odometer);
+            jo.put(Streamer.Keys.speed.name(), (i / 100) % 2 == 0 ? 0 : random.nextInt(90));
+            jo.put(Streamer.Keys.power.name(), random.nextInt(400) - 100);
+            jo.put(Streamer.Keys.soc.name(), 80 - i / 400);
+            jo.put(Streamer.Keys.heading.name(), random.nextInt(360));
+            jo.put(Streamer.Keys.est_heading.name(), random.nextInt(360));
+            jo.put(Streamer.Keys.elevation.name(), random.nextInt(3000) - 50);
+            jo.put(Streamer.Keys.range.name(), 200 - i / 150);
+            jo.put(Streamer.Keys.est_range.name(), 180 - i / 150);
+            jo.put(Streamer.Keys.shift_state.name(), (i / 300) % 3 == 0 ? "P" : "D");
+            check("append", store.append(VID, new StreamState(jo)));
+        }
+        store.close();
+
+        List<String> stored = read(store, Long.MIN_VALUE, Long.MAX_VALUE);
+        check("count", stored.size() == NSamples);
+        long from = timestampOf(stored.get(NSamples / 3)), to = timestampOf(stored.get(NSamples / 2));
+        List<String> range = read(store, from, to);
+
+        Compactor compactor = new Compactor(store).setMinAge(0);
+        int compacted = compactor.compactNow();
+        check("compacted", compacted == NSamples / SegmentRecords - 1);
+        check("smaller", compactor.getBytesOut() < compactor.getBytesIn());
+
+        check("all samples", stored.equals(read(store, Long.MIN_VALUE, Long.MAX_VALUE)));
+        check("range", range.equals(read(store, from, to)));
+        for (int i = 0; i < 50; i++) {
+            int a = random.nextInt(NSamples), b = a + random.nextInt(NSamples - a);
+            long t0 = timestampOf(stored.get(a)), t1 = timestampOf(stored.get(b));
+            List<String> expected = new ArrayList<>();
+            for (String s : stored) {
+                long t = timestampOf(s);
+                if (t >= t0 && t <= t1) expected.add(s);
+            }
+            check("random range", expected.equals(read(store, t0, t1)));
+        }
+
+        System.out.format("%d samples, %d segments compacted (%d -> %d bytes), %d checks, %d failures%n",
+                NSamples, compacted, compactor.getBytesIn(), compactor.getBytesOut(),
+                checks, failures);
+        delete(root);
+        if (failures != 0) System.exit(1);
+    }
+
+    // Every field of each sample, with doubles as bits so that NaN and -0.0
+    // are compared exactly
+    private static List<String> read(StreamStore store, long from, long to) throws IOException {
+        List<String> samples = new ArrayList<>();
+        SampleCursor c = store.query(VID, from, to);
+        while (c.next()) {
+            samples.add(c.timestamp() + " " + bits(c.lat()) + " " + bits(c.lng()) + " " +
+                    bits(c.odometer()) + " " + bits(c.speed()) + " " + c.power() + " " +
+                    c.soc() + " " + c.heading() + " " + c.estHeading() + " " +
+                    c.elevation() + " " + c.range() + " " + c.estRange() + " " + c.shiftState());
+        }
+        return samples;
+    }
+
+    private static String bits(double d) { return Long.toHexString(Double.doubleToLongBits(d)); }
+
+    private static long timestampOf(String sample) {
+        return Long.parseLong(sample.substring(0, sample.indexOf(' ')));
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) { for (File c : children) delete(c); }
+        f.delete();
+    }
+
+    private static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
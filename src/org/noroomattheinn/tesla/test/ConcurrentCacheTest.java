@@ -0,0 +1,212 @@
+/*
+ * ConcurrentCacheTest.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.noroomattheinn.utils.ConcurrentCache;
+
+/**
+ * ConcurrentCacheTest: Checks ConcurrentCache against simple models. A
+ * HashMap of the last value put for each key must agree with every cached
+ * entry, the size or weight bound must hold, and every entry put must be
+ * either cached or reported to the RemovalListener, including when several
+ * threads use the cache at once. On a skewed workload interrupted by scans,
+ * the W-TinyLFU policy must hit at least as often as an LRU of the same
+ * size. Exits with a non-zero status if any check fails.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class ConcurrentCacheTest {
+    private static final int Size = 500;
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String... args) throws Exception {
+        Random random = new Random(1234);
+        model(random);
+        weighted(random);
+        expiry();
+        loader();
+        concurrent();
+        hitRate(random);
+
+        System.out.format("%d checks, %d failures%n", checks, failures);
+        if (failures != 0) System.exit(1);
+    }
+
+    private static void model(Random random) {
+        final Map<Integer,Integer> removed = new HashMap<>();
+        ConcurrentCache<Integer,Integer> cache = new ConcurrentCache<>(Size);
+        cache.setRemovalListener(new ConcurrentCache.RemovalListener<Integer,Integer>() {
+            @Override public void removed(Integer key, Integer value, ConcurrentCache.Cause cause) {
+                synchronized (removed) { removed.put(value, key); }
+            }
+        });
+        Map<Integer,Integer> last = new HashMap<>();
+        for (int i = 0; i < 20 * Size; i++) {
+            int key = random.nextInt(4 * Size);
+            if (random.nextInt(10) == 0) {
+                cache.invalidate(key);
+                last.remove(key);
+            } else {
+                cache.put(key, i);      // Values are unique so removals can be matched
+                last.put(key, i);
+            }
+            if (random.nextInt(3) == 0) cache.getIfPresent(random.nextInt(4 * Size));
+        }
+        cache.cleanUp();
+        check("model: size bound", cache.size() <= Size);
+
+        int cached = 0;
+        for (Map.Entry<Integer,Integer> e : last.entrySet()) {
+            Integer v = cache.getIfPresentQuietly(e.getKey());
+            if (v != null) {
+                cached++;
+                check("model: latest value", v.equals(e.getValue()));
+                check("model: not reported removed", !removed.containsKey(v));
+            } else {
+                check("model: eviction reported", removed.containsKey(e.getValue()));
+            }
+        }
+        check("model: size", cached == cache.size());
+    }
+
+    private static void weighted(Random random) {
+        ConcurrentCache<Integer,int[]> cache = new ConcurrentCache<>(10 * Size,
+            new ConcurrentCache.Weigher<Integer,int[]>() {
+                @Override public int weigh(Integer key, int[] value) { return value.length; }
+            });
+        for (int i = 0; i < 20 * Size; i++) {
+            cache.put(random.nextInt(4 * Size), new int[1 + random.nextInt(20)]);
+        }
+        cache.cleanUp();
+        long total = 0;
+        for (int key = 0; key < 4 * Size; key++) {
+            int[] v = cache.getIfPresentQuietly(key);
+            if (v != null) total += v.length;
+        }
+        check("weighted: bound", total <= cache.getMaximumWeight());
+        check("weighted: weighted size", total == cache.getWeightedSize());
+    }
+
+    private static void expiry() throws InterruptedException {
+        final AtomicLong expired = new AtomicLong();
+        ConcurrentCache<String,String> cache = new ConcurrentCache<String,String>(Size)
+                .setExpireAfterWrite(50)
+                .setRemovalListener(new ConcurrentCache.RemovalListener<String,String>() {
+                    @Override public void removed(String k, String v, ConcurrentCache.Cause c) {
+                        if (c == ConcurrentCache.Cause.Expired) expired.incrementAndGet();
+                    }
+                });
+        cache.put("a", "1");
+        cache.put("b", "2");
+        check("expiry: fresh", "1".equals(cache.getIfPresent("a")));
+        Thread.sleep(100);
+        check("expiry: expired", cache.getIfPresent("a") == null);
+        cache.cleanUp();
+        check("expiry: reported", expired.get() == 2 && cache.size() == 0);
+    }
+
+    private static void loader() {
+        final AtomicLong loads = new AtomicLong();
+        ConcurrentCache<Integer,String> cache = new ConcurrentCache<Integer,String>(Size)
+                .setLoader(new ConcurrentCache.Loader<Integer,String>() {
+                    @Override public String load(Integer key) {
+                        loads.incrementAndGet();
+                        return (key < 0) ? null : "v" + key;
+                    }
+                });
+        check("loader: loads", "v7".equals(cache.get(7)));
+        check("loader: cached", "v7".equals(cache.get(7)) && loads.get() == 1);
+        check("loader: no value", cache.get(-1) == null && cache.getIfPresent(-1) == null);
+    }
+
+    private static void concurrent() throws InterruptedException {
+        final AtomicLong added = new AtomicLong(), removed = new AtomicLong();
+        final ConcurrentCache<Integer,Integer> cache = new ConcurrentCache<>(Size);
+        cache.setRemovalListener(new ConcurrentCache.RemovalListener<Integer,Integer>() {
+            @Override public void removed(Integer k, Integer v, ConcurrentCache.Cause c) {
+                removed.incrementAndGet();
+            }
+        });
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final Random r = new Random(t);
+            threads[t] = new Thread() {
+                @Override public void run() {
+                    for (int i = 0; i < 200000; i++) {
+                        int key = r.nextInt(4 * Size);
+                        switch (r.nextInt(10)) {
+                            case 0: cache.put(key, i); added.incrementAndGet(); break;
+                            case 1: cache.invalidate(key); break;
+                            default: cache.getIfPresent(key); break;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        cache.cleanUp();
+        check("concurrent: size bound", cache.size() <= Size);
+        check("concurrent: every entry accounted for",
+              added.get() == removed.get() + cache.size());
+    }
+
+    // Zipf distributed requests with a scan of never repeated keys now and
+    // then, the pattern that LRU handles worst
+    private static void hitRate(Random random) {
+        ConcurrentCache<Integer,Integer> cache = new ConcurrentCache<>(Size);
+        final int lruSize = Size;
+        LinkedHashMap<Integer,Integer> lru = new LinkedHashMap<Integer,Integer>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Integer,Integer> e) {
+                return size() > lruSize;
+            }
+        };
+        double[] cdf = zipf(20 * Size, 0.9);
+        long lruHits = 0, requests = 0;
+        int scanKey = Integer.MAX_VALUE;
+        for (int i = 0; i < 400000; i++) {
+            int key;
+            if ((i / 1000) % 10 == 9) {
+                key = scanKey--;
+            } else {
+                int k = Arrays.binarySearch(cdf, random.nextDouble());
+                key = (k < 0) ? -k - 1 : k;
+            }
+            requests++;
+            if (cache.getIfPresent(key) == null) cache.put(key, key);
+            if (lru.get(key) != null) lruHits++; else lru.put(key, key);
+        }
+        double lruRate = (double)lruHits / requests;
+        System.out.format("Hit rate: W-TinyLFU %.3f, LRU %.3f%n", cache.getHitRate(), lruRate);
+        check("hit rate", cache.getHitRate() >= lruRate);
+    }
+
+    private static double[] zipf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) { sum += 1 / Math.pow(i + 1, s); cdf[i] = sum; }
+        for (int i = 0; i < n; i++) cdf[i] /= sum;
+        return cdf;
+    }
+
+    private static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * GeoIndexTest.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.noroomattheinn.utils.GeoIndex;
+import org.noroomattheinn.utils.GeoUtils.CircularArea;
+
+/**
+ * GeoIndexTest: Compares GeoIndex with a brute force scan of every area. Random
+ * circular areas, some tiny and some large, some overlapping and some
+ * repeated, are bulk loaded, then added to and removed from one at a time.
+ * After each stage, random points and boxes must find exactly the areas the
+ * scan finds. Exits with a non-zero status if any check fails.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class GeoIndexTest {
+    private static final int NAreas = 2000;
+    private static final int NQueries = 5000;
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String... args) {
+        Random random = new Random(1234);
+        List<CircularArea> areas = new ArrayList<>();
+        for (int i = 0; i < NAreas; i++) areas.add(randomArea(random, i));
+        areas.add(areas.get(0));                // The same area twice
+
+        GeoIndex<CircularArea> index = new GeoIndex<>(areas);
+        compare("bulk load", index, areas, random);
+
+        for (int i = 0; i < NAreas / 2; i++) {
+            CircularArea a = randomArea(random, NAreas + i);
+            areas.add(a);
+            index.add(a);
+        }
+        compare("after adds", index, areas, random);
+
+        for (int i = 0; i < NAreas; i++) {
+            CircularArea a = areas.remove(random.nextInt(areas.size()));
+            check("remove", index.remove(a));
+        }
+        check("remove of an absent area", !index.remove(randomArea(random, -1)));
+        compare("after removes", index, areas, random);
+
+        index.clear();
+        areas.clear();
+        compare("after clear", index, areas, random);
+        for (int i = 0; i < 10; i++) {
+            CircularArea a = randomArea(random, i);
+            areas.add(a);
+            index.add(a);
+        }
+        compare("small", index, areas, random);
+
+        System.out.format("%d checks, %d failures%n", checks, failures);
+        if (failures != 0) System.exit(1);
+    }
+
+    private static void compare(
+            String stage, GeoIndex<CircularArea> index, List<CircularArea> areas, Random random) {
+        check(stage + ": size", index.size() == areas.size());
+        for (int q = 0; q < NQueries; q++) {
+            double lat = 37 + random.nextDouble();
+            double lng = -122 - random.nextDouble();
+            Set<CircularArea> expected = new HashSet<>();
+            for (CircularArea a : areas) { if (a.contains(lat, lng)) expected.add(a); }
+            check(stage + ": containing", expected.equals(new HashSet<>(index.containing(lat, lng))));
+
+            double size = random.nextDouble() / 20;
+            double[] box = {lat, lng, lat + size, lng + size};
+            expected.clear();
+            for (CircularArea a : areas) { if (overlaps(a.bounds(), box)) expected.add(a); }
+            check(stage + ": intersecting", expected.equals(new HashSet<>(
+                    index.intersecting(box[0], box[1], box[2], box[3]))));
+        }
+    }
+
+    // Areas in a one degree square around Palo Alto with radii from a few
+    // meters to several kilometers
+    private static CircularArea randomArea(Random random, int i) {
+        double radius = Math.pow(10, 1 + 3 * random.nextDouble());
+        return new CircularArea(37 + random.nextDouble(), -122 - random.nextDouble(),
+                                radius, "Area " + i);
+    }
+
+    private static boolean overlaps(double[] a, double[] b) {
+        return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+    }
+
+    private static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
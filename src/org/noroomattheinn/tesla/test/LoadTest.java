@@ -0,0 +1,389 @@
+/*
+ * LoadTest.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.StringUtils;
+import org.noroomattheinn.tesla.BaseState;
+import org.noroomattheinn.tesla.Metrics;
+import org.noroomattheinn.tesla.Result;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Streamer;
+import org.noroomattheinn.tesla.Tesla;
+import org.noroomattheinn.tesla.Vehicle;
+import org.noroomattheinn.tesla.sim.Simulator;
+import org.noroomattheinn.utils.Utils;
+
+/**
+ * LoadTest: Drives Tesla, Vehicle, and Streamer against an in-process
+ * Simulator to find out how many vehicles one node can manage. For each
+ * fleet size it connects one client per account, polls every vehicle on a
+ * schedule (mixing in commands), keeps a fraction of the vehicles streaming,
+ * and then reports sustained requests/sec, latency percentiles, GC time,
+ * thread count, and heap per vehicle.
+ *
+ * The results are written as CSV so that runs can be compared. Supplying a
+ * previous report with -baseline prints the change in each measurement.
+ *
+ * Arguments are name/value pairs, all optional:
+ *     -sizes 10,100,1000,10000   Fleet sizes to ramp through
+ *     -seconds 30                Length of each measured phase
+ *     -warmup 10                 Unmeasured seconds before each phase
+ *     -pollMillis 5000           Interval between requests for a vehicle
+ *     -commandFraction 0.1       Fraction of requests that are commands
+ *     -streamFraction 0.05       Fraction of vehicles that are streaming
+ *     -threads 64                Threads used for polling and commands
+ *     -latencyMillis 0           Simulated server latency
+ *     -errorRate 0               Simulated fraction of 500 responses
+ *     -throttleRate 0            Simulated fraction of 429 responses
+ *     -out loadtest-report.csv   Where to write the report
+ *     -baseline file.csv         A previous report to compare against
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class LoadTest {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final int CarsPerAccount = 10;
+    private static final String LatencyMetric = "loadtest_latency_micros";
+    private static final long[] LatencyBuckets = geometricBuckets(10, 120000000L, 1.05);
+    private static final String[] Columns = {
+        "fleet", "requests_per_sec", "p50_ms", "p99_ms", "p999_ms", "max_ms",
+        "errors", "stream_samples_per_sec", "gc_ms", "gc_count", "peak_threads",
+        "heap_kb_per_vehicle"};
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final Map<String,String> options;
+    private final int seconds, warmup, threads;
+    private final long pollMillis;
+    private final double commandFraction, streamFraction;
+
+    private volatile Metrics.Histogram latency;
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private volatile boolean running;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public static void main(String... args) throws Exception {
+        Map<String,String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(StringUtils.removeStart(args[i], "-"), args[i+1]);
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    public LoadTest(Map<String,String> options) {
+        this.options = options;
+        this.seconds = Integer.parseInt(option("seconds", "30"));
+        this.warmup = Integer.parseInt(option("warmup", "10"));
+        this.threads = Integer.parseInt(option("threads", "64"));
+        this.pollMillis = Long.parseLong(option("pollMillis", "5000"));
+        this.commandFraction = Double.parseDouble(option("commandFraction", "0.1"));
+        this.streamFraction = Double.parseDouble(option("streamFraction", "0.05"));
+    }
+
+    public void run() throws Exception {
+        Tesla.logger.setLevel(java.util.logging.Level.WARNING);
+        List<long[]> rows = new ArrayList<>();
+        for (String size : StringUtils.split(option("sizes", "10,100,1000,10000"), ',')) {
+            long[] row = runPhase(Integer.parseInt(size.trim()));
+            rows.add(row);
+            System.out.println(format(row));
+        }
+        File out = new File(option("out", "loadtest-report.csv"));
+        writeReport(out, rows);
+        System.out.println("Report written to " + out.getAbsolutePath());
+
+        String baseline = options.get("baseline");
+        if (baseline != null) { compare(readReport(new File(baseline)), rows); }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Running one phase of the test
+ *
+ *----------------------------------------------------------------------------*/
+
+    private long[] runPhase(int fleetSize) throws IOException, InterruptedException {
+        System.out.format("Fleet of %d vehicles: connecting...%n", fleetSize);
+        Simulator.Config c = new Simulator.Config();
+        c.nCars = fleetSize;
+        c.carsPerAccount = CarsPerAccount;
+        c.latencyMillis = Long.parseLong(option("latencyMillis", "0"));
+        c.errorRate = Double.parseDouble(option("errorRate", "0"));
+        c.throttleRate = Double.parseDouble(option("throttleRate", "0"));
+        Simulator sim = new Simulator(c).start();
+
+        // Measure the heap used by the clients and their vehicles
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeap(memory);
+        List<Tesla> clients = new ArrayList<>();
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int account = 0; account < sim.getAccountCount(); account++) {
+            Tesla t = new Tesla(sim.getBaseURI(), sim.getBaseURI(), null);
+            if (t.connectWithToken("user" + account + "@sim", sim.tokenFor(account))) {
+                clients.add(t);
+                vehicles.addAll(t.getVehicles());
+            }
+        }
+        long heapPerVehicle = (usedHeap(memory) - heapBefore) / Math.max(1, vehicles.size());
+
+        // Start polling and streaming
+        errors.set(0); samples.set(0);
+        latency = histogram(fleetSize, "warmup");
+        running = true;
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(threads);
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (Vehicle v : vehicles) {
+            pool.scheduleAtFixedRate(
+                    new Poller(v), r.nextLong(pollMillis), pollMillis, TimeUnit.MILLISECONDS);
+        }
+        List<StreamReader> streams = new ArrayList<>();
+        int nStreams = (int)Math.round(vehicles.size() * streamFraction);
+        for (int i = 0; i < nStreams; i++) {
+            StreamReader sr = new StreamReader(vehicles.get(i));
+            streams.add(sr);
+            sr.start();
+        }
+
+        System.out.format("Fleet of %d vehicles: warming up...%n", fleetSize);
+        Utils.sleep(warmup * 1000L);
+
+        // Measure
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        threadBean.resetPeakThreadCount();
+        long[] gcBefore = gcTotals();
+        errors.set(0); samples.set(0);
+        latency = histogram(fleetSize, "measured");
+        long start = System.nanoTime();
+        System.out.format("Fleet of %d vehicles: measuring...%n", fleetSize);
+        Utils.sleep(seconds * 1000L);
+        Metrics.Histogram h = latency;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long count = h.count();
+        long nSamples = samples.get();
+        long nErrors = errors.get();
+        long[] gcAfter = gcTotals();
+        int peakThreads = threadBean.getPeakThreadCount();
+
+        // Shut everything down before the next phase
+        running = false;
+        pool.shutdownNow();
+        pool.awaitTermination(30, TimeUnit.SECONDS);
+        for (StreamReader sr : streams) { sr.streamer.forceClose(); sr.interrupt(); }
+        for (StreamReader sr : streams) { sr.join(5000); }
+        sim.stop();
+
+        return new long[] {
+            fleetSize, Math.round(count / elapsed),
+            h.percentile(0.50), h.percentile(0.99), h.percentile(0.999), h.max(),
+            nErrors, Math.round(nSamples / elapsed),
+            gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1], peakThreads,
+            heapPerVehicle / 1024};
+    }
+
+    /**
+     * Poller: Issues one request for a vehicle each time it runs. Most requests
+     * query one of the vehicle's states (in rotation), the rest are commands.
+     */
+    private class Poller implements Runnable {
+        private final Vehicle v;
+        private int next = 0;
+
+        Poller(Vehicle v) { this.v = v; }
+
+        @Override public void run() {
+            if (!running) return;
+            boolean ok;
+            long start = System.nanoTime();
+            if (ThreadLocalRandom.current().nextDouble() < commandFraction) {
+                ok = command().success;
+            } else {
+                ok = query().valid;
+            }
+            latency.record((System.nanoTime() - start) / 1000);
+            if (!ok) errors.incrementAndGet();
+        }
+
+        private BaseState query() {
+            switch (next++ % 5) {
+                case 0: return v.queryCharge();
+                case 1: return v.queryDrive();
+                case 2: return v.queryHVAC();
+                case 3: return v.queryVehicle();
+                default: return v.queryGUI();
+            }
+        }
+
+        private Result command() {
+            switch (next++ % 4) {
+                case 0: return v.flashLights();
+                case 1: return v.setChargePercent(80 + (next % 10));
+                case 2: return v.setLockState(next % 2 == 0);
+                default: return v.startAC();
+            }
+        }
+    }
+
+    /**
+     * StreamReader: Keeps a vehicle streaming for as long as the phase runs
+     */
+    private class StreamReader extends Thread {
+        final Streamer streamer;
+
+        StreamReader(Vehicle v) {
+            super("LoadTest-Stream-" + v.getVID());
+            setDaemon(true);
+            streamer = v.getStreamer();
+        }
+
+        @Override public void run() {
+            while (running) {
+                StreamState s = streamer.beginStreamIfNeeded();
+                if (s != null) samples.incrementAndGet();
+                else Utils.sleep(1000);
+            }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Reporting
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static String format(long[] row) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Columns.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(Columns[i]).append('=');
+            sb.append(isMillis(i) ? String.format("%.3f", row[i] / 1000.0) : String.valueOf(row[i]));
+        }
+        return sb.toString();
+    }
+
+    private void writeReport(File f, List<long[]> rows) throws IOException {
+        try (PrintWriter w = new PrintWriter(f, "UTF-8")) {
+            w.println("# LoadTest " + new Date() + ", Java " + System.getProperty("java.version") +
+                      ", " + Runtime.getRuntime().availableProcessors() + " cpus");
+            w.println("# " + options);
+            w.println(StringUtils.join(Columns, ','));
+            for (long[] row : rows) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < row.length; i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append(isMillis(i) ? String.format("%.3f", row[i] / 1000.0) : row[i]);
+                }
+                w.println(sb);
+            }
+        }
+    }
+
+    private static Map<Long,double[]> readReport(File f) throws IOException {
+        Map<Long,double[]> rows = new HashMap<>();
+        for (String line : Files.readAllLines(f.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith("#") || line.startsWith(Columns[0])) continue;
+            String[] fields = StringUtils.split(line, ',');
+            double[] values = new double[fields.length];
+            for (int i = 0; i < fields.length; i++) values[i] = Double.parseDouble(fields[i]);
+            rows.put((long)values[0], values);
+        }
+        return rows;
+    }
+
+    private static void compare(Map<Long,double[]> baseline, List<long[]> rows) {
+        System.out.println("Change from baseline:");
+        for (long[] row : rows) {
+            double[] base = baseline.get(row[0]);
+            if (base == null) continue;
+            StringBuilder sb = new StringBuilder("  fleet=" + row[0]);
+            for (int i = 1; i < Columns.length && i < base.length; i++) {
+                double now = isMillis(i) ? row[i] / 1000.0 : row[i];
+                String change = (base[i] == 0) ? "n/a" :
+                        String.format("%+.1f%%", 100.0 * (now - base[i]) / base[i]);
+                sb.append(", ").append(Columns[i]).append('=').append(change);
+            }
+            System.out.println(sb);
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private String option(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    // Latencies are recorded in microseconds and reported in milliseconds
+    private static boolean isMillis(int column) { return column >= 2 && column <= 5; }
+
+    private static Metrics.Histogram histogram(int fleetSize, String phase) {
+        return Metrics.get().histogram(
+                LatencyMetric, LatencyBuckets, "fleet", String.valueOf(fleetSize), "phase", phase);
+    }
+
+    private static long[] geometricBuckets(long first, long last, double ratio) {
+        List<Long> bounds = new ArrayList<>();
+        for (double b = first; b < last; b = Math.max(b * ratio, b + 1)) {
+            bounds.add((long)b);
+        }
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) { System.gc(); Utils.yieldFor(100); }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long[] gcTotals() {
+        long time = 0, count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return new long[] {time, count};
+    }
+}
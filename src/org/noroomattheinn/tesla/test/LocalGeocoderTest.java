@@ -0,0 +1,129 @@
+/*
+ * LocalGeocoderTest.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import org.noroomattheinn.utils.LocalGeocoder;
+
+/**
+ * LocalGeocoderTest: Builds a LocalGeocoder index from random places (some
+ * clustered, some repeated, in both the CSV and GeoNames formats) and
+ * compares its nearest place for random locations with a brute force scan
+ * using the same distance measure. Also checks that every place keeps its
+ * label and that the maximum distance is honored. Exits with a non-zero
+ * status if any check fails.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class LocalGeocoderTest {
+    private static final int NPlaces = 20000;
+    private static final int NQueries = 5000;
+    private static final double MetersPerMicrodegree = 6371000 * Math.PI / 180 / 1e6;
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String... args) throws IOException {
+        Random random = new Random(1234);
+        File source = File.createTempFile("places", ".txt");
+        File target = File.createTempFile("places", ".idx");
+        source.deleteOnExit();
+        target.deleteOnExit();
+
+        Map<String,String> labels = new HashMap<>();
+        try (PrintWriter out = new PrintWriter(source, "UTF-8")) {
+            out.println("lat,lng,label");                       // A header to skip
+            for (int i = 0; i < NPlaces; i++) {
+                double lat, lng;
+                if (i % 4 == 0) {                               // A dense cluster
+                    lat = 37.44 + random.nextDouble() / 100;
+                    lng = -122.18 + random.nextDouble() / 100;
+                } else {
+                    lat = -60 + 130 * random.nextDouble();
+                    lng = -180 + 360 * random.nextDouble();
+                }
+                String sLat = String.format(Locale.ROOT, "%.6f", lat);
+                String sLng = String.format(Locale.ROOT, "%.6f", lng);
+                String label = "Place " + i;
+                if (i % 10 == 0) {                              // GeoNames format
+                    out.println(i + "\tPlace\tPlace\t\t" + sLat + "\t" + sLng + "\tP\tPPL\tP" + i);
+                    label = "Place, P" + i;
+                } else {
+                    out.println(sLat + "," + sLng + "," + label);
+                }
+                if (i % 50 == 0) out.println(sLat + "," + sLng + "," + label);
+                labels.put(key(Math.round(Double.parseDouble(sLat) * 1e6),
+                               Math.round(Double.parseDouble(sLng) * 1e6)), label);
+            }
+        }
+
+        int n = LocalGeocoder.build(source, target);
+        check("count", n == NPlaces + NPlaces / 50);
+        LocalGeocoder geocoder = new LocalGeocoder(target);
+        check("index count", geocoder.getCount() == n);
+
+        for (int i = 0; i < n; i++) {
+            String key = key(Math.round(geocoder.latAt(i) * 1e6), Math.round(geocoder.lngAt(i) * 1e6));
+            check("label", geocoder.labelAt(i).equals(labels.get(key)));
+        }
+
+        geocoder.setMaxDistance(Double.MAX_VALUE);
+        for (int q = 0; q < NQueries; q++) {
+            double lat, lng;
+            if (q % 2 == 0) {
+                lat = 37.43 + random.nextDouble() / 30;
+                lng = -122.19 + random.nextDouble() / 30;
+            } else {
+                lat = -70 + 150 * random.nextDouble();
+                lng = -180 + 360 * random.nextDouble();
+            }
+            int found = geocoder.nearestIndex(lat, lng);
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) best = Math.min(best, distance(geocoder, i, lat, lng));
+            check("nearest", found >= 0 && distance(geocoder, found, lat, lng) == best);
+        }
+
+        geocoder.setMaxDistance(LocalGeocoder.DefaultMaxDistance);
+        for (int q = 0; q < NQueries / 10; q++) {
+            double lat = -70 + 150 * random.nextDouble();
+            double lng = -180 + 360 * random.nextDouble();
+            int found = geocoder.nearestIndex(lat, lng);
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) best = Math.min(best, distance(geocoder, i, lat, lng));
+            boolean inRange = Math.sqrt(best) * MetersPerMicrodegree <= LocalGeocoder.DefaultMaxDistance;
+            check("max distance", inRange ? found >= 0 : found == -1);
+            check("address", (geocoder.addressFor(lat, lng) != null) == inRange);
+        }
+
+        System.out.format("%d places, %d checks, %d failures%n", n, checks, failures);
+        if (failures != 0) System.exit(1);
+    }
+
+    // The squared distance, in scaled microdegrees, that LocalGeocoder uses
+    private static double distance(LocalGeocoder g, int i, double lat, double lng) {
+        double dLat = lat * 1e6 - Math.round(g.latAt(i) * 1e6);
+        double dLng = (lng * 1e6 - Math.round(g.lngAt(i) * 1e6)) * Math.cos(Math.toRadians(lat));
+        return dLat * dLat + dLng * dLng;
+    }
+
+    private static String key(long lat, long lng) { return lat + "," + lng; }
+
+    private static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
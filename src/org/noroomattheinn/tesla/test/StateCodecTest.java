@@ -0,0 +1,201 @@
+/*
+ * StateCodecTest.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.tesla.test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.noroomattheinn.tesla.BaseState;
+import org.noroomattheinn.tesla.ChargeState;
+import org.noroomattheinn.tesla.DriveState;
+import org.noroomattheinn.tesla.GUIState;
+import org.noroomattheinn.tesla.HVACState;
+import org.noroomattheinn.tesla.StateCodec;
+import org.noroomattheinn.tesla.StreamState;
+import org.noroomattheinn.tesla.Streamer;
+import org.noroomattheinn.tesla.VehicleState;
+import org.noroomattheinn.tesla.sim.SimulatedCar;
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+
+/**
+ * StateCodecTest: Round trips states through StateCodec. The states come
+ * from a SimulatedCar that is sent a script of commands, plus random
+ * streaming samples and empty states. Each state is encoded in full, as a
+ * delta from the previous state of its kind, and as part of an Encoder
+ * sequence read both from the start and from a keyframe part way through.
+ * A decoded state must have the same class, timestamp, validity, and fields
+ * as the original. Exits with a non-zero status if any check fails.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class StateCodecTest {
+    private static final String[] Script = {
+        "charge_port_door_open", "charge_start", "auto_conditioning_start",
+        "door_unlock", "charge_max_range", "charge_stop", "auto_conditioning_stop",
+        "door_lock", "charge_standard", "remote_start_drive"};
+    private static final String[] Endpoints = {
+        "charge_state", "drive_state", "gui_settings", "climate_state", "vehicle_state"};
+    private static final int Steps = 300;
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String... args) throws JSONException {
+        List<BaseState> states = generate(new Random(1234));
+
+        fullRoundTrip(states);
+        deltaRoundTrip(states);
+        sequenceRoundTrip(states);
+
+        System.out.format("%d states, %d checks, %d failures%n",
+                states.size(), checks, failures);
+        if (failures != 0) System.exit(1);
+    }
+
+    private static void fullRoundTrip(List<BaseState> states) {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        for (BaseState s : states) {
+            buf.clear();
+            StateCodec.encode(s, buf);
+            buf.flip();
+            check("full", s, StateCodec.decode(buf, null));
+            check("full: whole record read", !buf.hasRemaining());
+        }
+    }
+
+    private static void deltaRoundTrip(List<BaseState> states) {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        BaseState[] previous = new BaseState[Endpoints.length + 1];
+        for (BaseState s : states) {
+            int k = kind(s);
+            buf.clear();
+            StateCodec.encodeDelta(s, previous[k], buf);
+            buf.flip();
+            check("delta", s, StateCodec.decode(buf, previous[k]));
+            previous[k] = s;
+        }
+    }
+
+    private static void sequenceRoundTrip(List<BaseState> states) {
+        ByteBuffer buf = ByteBuffer.allocate(states.size() * 1024);
+        StateCodec.Encoder encoder = new StateCodec.Encoder().setKeyframeInterval(7);
+        List<Integer> positions = new ArrayList<>();
+        for (BaseState s : states) {
+            positions.add(buf.position());
+            encoder.encode(s, buf);
+        }
+        positions.add(buf.position());
+        buf.flip();
+
+        StateCodec.Decoder decoder = new StateCodec.Decoder();
+        for (BaseState s : states) { check("sequence", s, decoder.decode(buf)); }
+        check("sequence: whole feed read", !buf.hasRemaining());
+
+        // Join part way through: skip records until one of each kind has
+        // been a keyframe, then everything after must decode exactly
+        int start = positions.get(states.size() / 2);
+        buf.position(start);
+        decoder = new StateCodec.Decoder();
+        boolean[] synced = new boolean[Endpoints.length + 1];
+        for (int i = states.size() / 2; i < states.size(); i++) {
+            BaseState s = states.get(i);
+            int k = kind(s);
+            boolean keyframe = (buf.get(buf.position() + 1) & 0x01) == 0;  // No delta flag
+            synced[k] = synced[k] || keyframe;
+            if (synced[k]) {
+                check("joined sequence", s, decoder.decode(buf));
+            } else {
+                buf.position(positions.get(i + 1));
+            }
+        }
+    }
+
+    private static List<BaseState> generate(Random random) throws JSONException {
+        List<BaseState> states = new ArrayList<>();
+        states.add(new ChargeState(new JSONObject()));
+        states.add(new DriveState(new JSONObject()));
+        states.add(new GUIState(new JSONObject()));
+        states.add(new HVACState(new JSONObject()));
+        states.add(new VehicleState(new JSONObject()));
+        states.add(new StreamState(new JSONObject()));
+
+        long now = 1381000000000L;
+        SimulatedCar car = new SimulatedCar(0, 42, now);
+        for (int i = 0; i < Steps; i++) {
+            now += 60 * 1000;
+            if (i % 15 == 0) {
+                car.command(Script[(i / 15) % Script.length], new JSONObject(), now);
+            }
+            String endpoint = Endpoints[random.nextInt(Endpoints.length)];
+            states.add(stateFor(endpoint, car.data(endpoint, now)));
+            states.add(new StreamState(streamSample(random, now)));
+        }
+        return states;
+    }
+
+    private static BaseState stateFor(String endpoint, JSONObject jo) {
+        switch (endpoint) {
+            case "charge_state": return new ChargeState(jo);
+            case "drive_state": return new DriveState(jo);
+            case "gui_settings": return new GUIState(jo);
+            case "climate_state": return new HVACState(jo);
+            default: return new VehicleState(jo);
+        }
+    }
+
+    // A streaming sample in which some fields are missing and some repeat
+    private static JSONObject streamSample(Random random, long now) throws JSONException {
+        JSONObject jo = new JSONObject();
+        jo.put(Streamer.Keys.timestamp.name(), now);
+        if (random.nextInt(4) != 0) jo.put(Streamer.Keys.speed.name(), random.nextInt(80));
+        jo.put(Streamer.Keys.odometer.name(), 12000 + now / 3600000.0);
+        jo.put(Streamer.Keys.soc.name(), 40 + random.nextInt(3));
+        if (random.nextBoolean()) jo.put(Streamer.Keys.elevation.name(), random.nextInt(500));
+        jo.put(Streamer.Keys.est_heading.name(), random.nextInt(360));
+        jo.put(Streamer.Keys.heading.name(), random.nextInt(360));
+        jo.put(Streamer.Keys.est_lat.name(), 37.44 + random.nextDouble() / 100);
+        jo.put(Streamer.Keys.est_lng.name(), -122.18 + random.nextDouble() / 100);
+        jo.put(Streamer.Keys.power.name(), random.nextInt(120) - 20);
+        jo.put(Streamer.Keys.shift_state.name(), random.nextBoolean() ? "D" : "");
+        jo.put(Streamer.Keys.range.name(), 100 + random.nextInt(2));
+        jo.put(Streamer.Keys.est_range.name(), 90 + random.nextInt(2));
+        return jo;
+    }
+
+    private static int kind(BaseState s) {
+        if (s instanceof ChargeState) return 0;
+        if (s instanceof DriveState) return 1;
+        if (s instanceof GUIState) return 2;
+        if (s instanceof HVACState) return 3;
+        if (s instanceof VehicleState) return 4;
+        return 5;
+    }
+
+    private static void check(String what, BaseState expected, BaseState actual) {
+        boolean same = actual != null && actual.getClass() == expected.getClass() &&
+                actual.timestamp == expected.timestamp && actual.valid == expected.valid &&
+                actual.changedFields(expected) == 0;
+        if (!same) {
+            System.out.format("%s: %s decoded as %s (changed fields: %s)%n", what,
+                    expected.getClass().getSimpleName(),
+                    actual == null ? null : actual.getClass().getSimpleName(),
+                    actual == null ? "all" : Long.toBinaryString(actual.changedFields(expected)));
+        }
+        check(what, same);
+    }
+
+    private static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * ConcurrentCache.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ConcurrentCache: A thread safe cache with a bounded size (or total weight)
+ * that can be shared by many threads without external locking.
+ *
+ * Entries are kept in a ConcurrentHashMap so reads never lock. Instead of
+ * reordering a list on every read, reads are recorded in small per-thread
+ * buffers that are applied to the eviction policy in batches, so reads on
+ * different cores don't contend. Writes apply their change to the policy
+ * under a short lock.
+ *
+ * The policy is W-TinyLFU: new entries enter a small LRU window, and an
+ * entry leaving the window only displaces an entry of the main area if it
+ * has been used more often recently. Entries may also expire a fixed time
+ * after they were written, and a cache with a Loader can reload entries in
+ * the background once they reach a given age while continuing to return the
+ * old value.
+ *
+ * A RemovalListener is told about every entry that leaves the cache and why.
+ * Listeners are called after the cache's lock has been released.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class ConcurrentCache<K,V> {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    /** Why an entry was removed */
+    public enum Cause {Explicit, Replaced, Expired, Size};
+
+    private static final Logger logger = Logger.getLogger(ConcurrentCache.class.getName());
+    private static final int Stripes =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+    private static final int ReadBufferSize = 16;           // per stripe, a power of 2
+    private static final int Padding = 16;                  // ints per 64 byte line
+    private static final int MaxSketchSize = 1 << 20;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final ConcurrentHashMap<K,Node<K,V>> data;
+    private final long maximumWeight;
+    private final Weigher<K,V> weigher;
+    private volatile long expireAfterWrite = 0;
+    private volatile long refreshAfterWrite = 0;
+    private volatile Loader<K,V> loader = null;
+    private volatile RemovalListener<K,V> listener = null;
+    private volatile ExecutorService executor = null;
+
+    // The eviction policy, guarded by policyLock
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final long windowMaximum, mainMaximum, protectedMaximum;
+    private final Queue<K,V> window = new Queue<>(), probation = new Queue<>(), protect = new Queue<>();
+    private long lastSweep = 0;
+    private List<Removal<K,V>> removals = null;
+
+    // Reads waiting to be applied to the policy
+    private final AtomicReferenceArray<Node<K,V>> readBuffer =
+            new AtomicReferenceArray<>(Stripes * ReadBufferSize);
+    private final AtomicIntegerArray readCounts = new AtomicIntegerArray(Stripes * Padding);
+
+    private final Counter hits = new Counter(), misses = new Counter();
+    private final Counter loads = new Counter(), loadFailures = new Counter();
+    private final Counter evictions = new Counter();
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Weigher: Returns the weight of an entry, e.g. its approximate size in
+     * bytes. The weight of an entry may not change while it is cached.
+     */
+    public interface Weigher<K,V> {
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Loader: Produces the value for a key that isn't cached or is due to be
+     * refreshed. It returns null or throws if there is no value.
+     */
+    public interface Loader<K,V> {
+        V load(K key) throws Exception;
+    }
+
+    /**
+     * RemovalListener: Is told each time an entry leaves the cache
+     */
+    public interface RemovalListener<K,V> {
+        void removed(K key, V value, Cause cause);
+    }
+
+    /**
+     * Create a cache bounded by the number of entries
+     * @param maximumSize   The maximum number of entries
+     */
+    public ConcurrentCache(int maximumSize) {
+        this(maximumSize, null);
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its entries
+     * @param maximumWeight The maximum total weight
+     * @param weigher       Determines the weight of each entry, or null if
+     *                      each entry weighs 1
+     */
+    public ConcurrentCache(long maximumWeight, Weigher<K,V> weigher) {
+        this.maximumWeight = Math.max(1, maximumWeight);
+        this.weigher = weigher;
+        this.windowMaximum = Math.max(1, this.maximumWeight / 100);
+        this.mainMaximum = this.maximumWeight - windowMaximum;
+        this.protectedMaximum = mainMaximum * 4 / 5;
+        this.sketch = new FrequencySketch((int)Math.min(this.maximumWeight, MaxSketchSize));
+        int expected = (int)Math.min(this.maximumWeight, 1 << 16);
+        this.data = new ConcurrentHashMap<>(expected * 4 / 3 + 1, 0.75f, Stripes);
+    }
+
+    /**
+     * Expire entries a fixed time after they were written
+     * @param millis    The time to live in milliseconds, or 0 for no limit
+     * @return          this ConcurrentCache
+     */
+    public ConcurrentCache<K,V> setExpireAfterWrite(long millis) {
+        expireAfterWrite = Math.max(0, millis);
+        return this;
+    }
+
+    /**
+     * Reload entries in the background once they are a given age. Until
+     * the new value arrives, reads return the old one. Requires a Loader.
+     * @param millis    The age in milliseconds, or 0 to never refresh
+     * @return          this ConcurrentCache
+     */
+    public ConcurrentCache<K,V> setRefreshAfterWrite(long millis) {
+        refreshAfterWrite = Math.max(0, millis);
+        return this;
+    }
+
+    /**
+     * Set the Loader used by get() on a miss and to refresh entries
+     * @param loader    The Loader or null for none
+     * @return          this ConcurrentCache
+     */
+    public ConcurrentCache<K,V> setLoader(Loader<K,V> loader) {
+        this.loader = loader;
+        return this;
+    }
+
+    public ConcurrentCache<K,V> setRemovalListener(RemovalListener<K,V> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Set the ExecutorService that refreshes entries. By default refreshes
+     * run on a shared pool of daemon threads.
+     * @param executor  The ExecutorService
+     * @return          this ConcurrentCache
+     */
+    public ConcurrentCache<K,V> setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Return the value of a key if it is cached
+     * @param key   The key
+     * @return      The value or null if it isn't cached
+     */
+    public V getIfPresent(K key) {
+        Node<K,V> n = lookup(key);
+        return (n == null) ? null : n.value;
+    }
+
+    /**
+     * Return the value of a key if it is cached, without counting a hit or
+     * miss or making the entry more recently used. For callers that examine
+     * several entries to decide which one they want.
+     * @param key   The key
+     * @return      The value or null if it isn't cached
+     */
+    public V getIfPresentQuietly(K key) {
+        Node<K,V> n = data.get(key);
+        long ttl = expireAfterWrite;
+        if (n == null || (ttl > 0 && now() - n.writeTime >= ttl)) return null;
+        return n.value;
+    }
+
+    /**
+     * Return the value of a key, using the Loader to produce it if it isn't
+     * cached. Threads that miss on the same key at the same time may each
+     * load it; the first value loaded is kept.
+     * @param key   The key
+     * @return      The value or null if it isn't cached and can't be loaded
+     */
+    public V get(K key) {
+        Node<K,V> n = lookup(key);
+        if (n != null) return n.value;
+        Loader<K,V> l = loader;
+        if (l == null) return null;
+        V value = load(l, key);
+        if (value == null) return null;
+        Node<K,V> added = new Node<>(key, value, weigh(key, value), now());
+        Node<K,V> existing = data.putIfAbsent(key, added);
+        if (existing != null) return existing.value;
+        afterWrite(added, null, null);
+        return value;
+    }
+
+    /**
+     * Add an entry, replacing any entry for the same key
+     * @param key   The key
+     * @param value The value
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null) throw new NullPointerException();
+        Node<K,V> added = new Node<>(key, value, weigh(key, value), now());
+        Node<K,V> prior = data.put(key, added);
+        afterWrite(added, prior, Cause.Replaced);
+    }
+
+    public void invalidate(K key) {
+        Node<K,V> prior = data.remove(key);
+        if (prior != null) afterWrite(null, prior, Cause.Explicit);
+    }
+
+    public void invalidateAll() {
+        for (Map.Entry<K,Node<K,V>> e : data.entrySet()) {
+            if (data.remove(e.getKey(), e.getValue())) afterWrite(null, e.getValue(), Cause.Explicit);
+        }
+    }
+
+    /**
+     * Apply pending reads to the eviction policy and remove expired entries
+     * now rather than during a later read or write
+     */
+    public void cleanUp() {
+        List<Removal<K,V>> done;
+        policyLock.lock();
+        try {
+            drainReads();
+            sweep(true);
+            done = takeRemovals();
+        } finally {
+            policyLock.unlock();
+        }
+        notifyRemovals(done);
+    }
+
+    /**
+     * Return the entries the eviction policy most wants to keep, most
+     * valuable first: the protected entries, then probation, then the
+     * window, each from most to least recently used. Putting them into an
+     * empty cache in reverse order rebuilds a similar cache.
+     * @param limit The maximum number of entries to return
+     * @return      The entries, in order
+     */
+    public LinkedHashMap<K,V> hottest(int limit) {
+        LinkedHashMap<K,V> result = new LinkedHashMap<>();
+        policyLock.lock();
+        try {
+            drainReads();
+            protect.copyTo(result, limit);
+            probation.copyTo(result, limit);
+            window.copyTo(result, limit);
+        } finally {
+            policyLock.unlock();
+        }
+        return result;
+    }
+
+    public int size() { return data.size(); }
+    public long getMaximumWeight() { return maximumWeight; }
+
+    public long getWeightedSize() {
+        policyLock.lock();
+        try {
+            return window.weight + probation.weight + protect.weight;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getLoadCount() { return loads.sum(); }
+    public long getLoadFailureCount() { return loadFailures.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double)h / total;
+    }
+
+    @Override public String toString() {
+        return String.format("ConcurrentCache[size %d, hits %d, misses %d, evictions %d]",
+                size(), getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: reads, loads and writes
+ *
+ *----------------------------------------------------------------------------*/
+
+    private Node<K,V> lookup(K key) {
+        Node<K,V> n = data.get(key);
+        long ttl = expireAfterWrite;
+        if (n != null && ttl > 0 && now() - n.writeTime >= ttl) {
+            if (data.remove(key, n)) afterWrite(null, n, Cause.Expired);
+            n = null;
+        }
+        if (n == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        recordRead(n);
+        long refresh = refreshAfterWrite;
+        if (refresh > 0 && now() - n.writeTime >= refresh) refresh(n);
+        return n;
+    }
+
+    private V load(Loader<K,V> l, K key) {
+        try {
+            V value = l.load(key);
+            if (value != null) loads.increment(); else loadFailures.increment();
+            return value;
+        } catch (Exception e) {
+            loadFailures.increment();
+            logger.log(Level.WARNING, "Cache load failed for " + key, e);
+            return null;
+        }
+    }
+
+    private void refresh(final Node<K,V> old) {
+        final Loader<K,V> l = loader;
+        if (l == null || !old.refreshing.compareAndSet(false, true)) return;
+        ExecutorService e = executor;
+        (e != null ? e : RefreshPool.Instance).execute(new Runnable() {
+            @Override public void run() {
+                try {
+                    V value = load(l, old.key);
+                    if (value == null) return;
+                    Node<K,V> fresh = new Node<>(old.key, value, weigh(old.key, value), now());
+                    if (data.replace(old.key, old, fresh)) afterWrite(fresh, old, Cause.Replaced);
+                } finally {
+                    old.refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    private void afterWrite(Node<K,V> added, Node<K,V> prior, Cause cause) {
+        List<Removal<K,V>> done;
+        policyLock.lock();
+        try {
+            drainReads();
+            if (prior != null) {
+                unlink(prior);
+                pending(prior, cause);
+            }
+            if (added != null) add(added);
+            sweep(false);
+            done = takeRemovals();
+        } finally {
+            policyLock.unlock();
+        }
+        notifyRemovals(done);
+    }
+
+    private void recordRead(Node<K,V> n) {
+        int stripe = stripe();
+        int count = readCounts.getAndIncrement(stripe * Padding);
+        int index = count & (ReadBufferSize - 1);
+        readBuffer.lazySet(stripe * ReadBufferSize + index, n);
+        if (index == ReadBufferSize - 1 && policyLock.tryLock()) {
+            try {
+                drainReads(stripe * ReadBufferSize, (stripe + 1) * ReadBufferSize);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+
+    private int weigh(K key, V value) {
+        return (weigher == null) ? 1 : Math.max(0, weigher.weigh(key, value));
+    }
+
+    private static long now() { return System.currentTimeMillis(); }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int)((id * 0x9E3779B97F4A7C15L) >>> 40) & (Stripes - 1);
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: the eviction policy, called with policyLock held
+ *
+ *----------------------------------------------------------------------------*/
+
+    private void drainReads() { drainReads(0, readBuffer.length()); }
+
+    private void drainReads(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Node<K,V> n = readBuffer.get(i);
+            if (n != null) {
+                readBuffer.lazySet(i, null);
+                touch(n);
+            }
+        }
+    }
+
+    private void add(Node<K,V> n) {
+        if (data.get(n.key) != n) return;           // Already removed or replaced
+        sketch.increment(n.key.hashCode());
+        if (n.weight > maximumWeight) {
+            discard(n, Cause.Size);
+            return;
+        }
+        window.addLast(n);
+        while (window.weight > windowMaximum) {
+            Node<K,V> candidate = window.head;
+            window.remove(candidate);
+            admit(candidate);
+        }
+    }
+
+    // Move an entry from the window to the main area if it is worth more
+    // than the entries it would displace
+    private void admit(Node<K,V> candidate) {
+        int frequency = sketch.frequency(candidate.key.hashCode());
+        while (probation.weight + protect.weight + candidate.weight > mainMaximum) {
+            Node<K,V> victim = (probation.head != null) ? probation.head : protect.head;
+            if (victim == null || frequency <= sketch.frequency(victim.key.hashCode())) {
+                discard(candidate, Cause.Size);
+                return;
+            }
+            victim.queue.remove(victim);
+            discard(victim, Cause.Size);
+        }
+        probation.addLast(candidate);
+    }
+
+    private void touch(Node<K,V> n) {
+        if (n.queue == null) return;                // Already evicted
+        sketch.increment(n.key.hashCode());
+        if (n.queue == window) {
+            window.moveToLast(n);
+        } else if (n.queue == probation) {
+            probation.remove(n);
+            protect.addLast(n);
+            while (protect.weight > protectedMaximum && protect.head != n) {
+                Node<K,V> demoted = protect.head;
+                protect.remove(demoted);
+                probation.addLast(demoted);
+            }
+        } else {
+            protect.moveToLast(n);
+        }
+    }
+
+    private void unlink(Node<K,V> n) {
+        if (n.queue != null) n.queue.remove(n);
+    }
+
+    private void discard(Node<K,V> n, Cause cause) {
+        if (data.remove(n.key, n)) {
+            evictions.increment();
+            pending(n, cause);
+        }
+    }
+
+    // Remove expired entries, at most twice per time to live unless forced
+    private void sweep(boolean force) {
+        long ttl = expireAfterWrite;
+        if (ttl <= 0) return;
+        long now = now();
+        if (!force && now - lastSweep < ttl / 2) return;
+        lastSweep = now;
+        for (Node<K,V> n : data.values()) {
+            if (now - n.writeTime >= ttl && data.remove(n.key, n)) {
+                unlink(n);
+                pending(n, Cause.Expired);
+            }
+        }
+    }
+
+    private void pending(Node<K,V> n, Cause cause) {
+        if (listener == null) return;
+        if (removals == null) removals = new ArrayList<>(4);
+        removals.add(new Removal<>(n, cause));
+    }
+
+    private List<Removal<K,V>> takeRemovals() {
+        List<Removal<K,V>> taken = removals;
+        removals = null;
+        return taken;
+    }
+
+    // Called without policyLock held
+    private void notifyRemovals(List<Removal<K,V>> done) {
+        RemovalListener<K,V> l = listener;
+        if (done == null || l == null) return;
+        for (Removal<K,V> r : done) {
+            try {
+                l.removed(r.node.key, r.node.value, r.cause);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Cache removal listener failed", e);
+            }
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Entries, the queues that order them, and striped counters
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final class Node<K,V> {
+        final K key;
+        final V value;
+        final int weight;
+        final long writeTime;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        Node<K,V> prev, next;
+        Queue<K,V> queue;
+
+        Node(K key, V value, int weight, long writeTime) {
+            this.key = key; this.value = value; this.weight = weight; this.writeTime = writeTime;
+        }
+    }
+
+    private static final class Removal<K,V> {
+        final Node<K,V> node;
+        final Cause cause;
+
+        Removal(Node<K,V> node, Cause cause) { this.node = node; this.cause = cause; }
+    }
+
+    // A doubly linked list from least (head) to most (tail) recently used
+    private static final class Queue<K,V> {
+        Node<K,V> head, tail;
+        long weight;
+
+        void addLast(Node<K,V> n) {
+            n.queue = this;
+            n.prev = tail; n.next = null;
+            if (tail == null) head = n; else tail.next = n;
+            tail = n;
+            weight += n.weight;
+        }
+
+        void remove(Node<K,V> n) {
+            if (n.prev == null) head = n.next; else n.prev.next = n.next;
+            if (n.next == null) tail = n.prev; else n.next.prev = n.prev;
+            n.prev = n.next = null;
+            n.queue = null;
+            weight -= n.weight;
+        }
+
+        void moveToLast(Node<K,V> n) {
+            if (tail == n) return;
+            remove(n);
+            addLast(n);
+        }
+
+        // Most recently used first
+        void copyTo(Map<K,V> dest, int limit) {
+            for (Node<K,V> n = tail; n != null && dest.size() < limit; n = n.prev) {
+                dest.put(n.key, n.value);
+            }
+        }
+    }
+
+    // A counter that threads on different cores can increment without
+    // contending for one cache line
+    private static final class Counter {
+        private final AtomicLongArray cells = new AtomicLongArray(Stripes * Padding / 2);
+
+        void increment() { cells.getAndIncrement(stripe() * Padding / 2); }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < Stripes; i++) sum += cells.get(i * Padding / 2);
+            return sum;
+        }
+    }
+
+    private static final class RefreshPool {
+        static final ExecutorService Instance = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "00 VT - Cache Refresh");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * ElevationProvider.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.List;
+import org.noroomattheinn.utils.GeoUtils.ElevationData;
+import org.noroomattheinn.utils.GeoUtils.LocationSource;
+
+/**
+ * ElevationProvider: Looks up the elevation of locations. GeoUtils.getElevations()
+ * uses whichever ElevationProvider has been installed with
+ * GeoUtils.setElevationProvider(). Implementations must be thread safe.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public interface ElevationProvider {
+    /**
+     * Return the elevations of a list of locations
+     * @param locations The locations
+     * @return          One ElevationData per location, in the same order,
+     *                  or null if the elevations couldn't be retrieved
+     */
+    List<ElevationData> getElevations(List<? extends LocationSource> locations);
+}
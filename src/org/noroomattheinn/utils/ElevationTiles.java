@@ -0,0 +1,487 @@
+/*
+ * ElevationTiles.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.noroomattheinn.tesla.Tesla;
+import org.noroomattheinn.utils.GeoUtils.ElevationData;
+import org.noroomattheinn.utils.GeoUtils.LocationSource;
+
+/**
+ * ElevationTiles: An ElevationProvider that answers from a directory of
+ * elevation tiles and falls back to another ElevationProvider for the parts
+ * of the world the tiles don't cover yet.
+ *
+ * Each tile covers one degree of latitude and longitude and is stored in the
+ * SRTM .hgt format: a square grid of big endian 16 bit elevations in meters,
+ * north row first, named for its southwest corner (e.g. N37W123.hgt). Tiles
+ * are memory mapped, and the elevation of a location is interpolated
+ * bilinearly from the four grid points around it.
+ *
+ * SRTM or other DEM tiles in .hgt format (or zipped .hgt files, as they are
+ * usually distributed) can be loaded with importDEM() for offline use.
+ * Imported tiles are only ever read. Locations the tiles don't cover are
+ * fetched from the fallback provider, one point per location.
+ *
+ * If grid caching is enabled, the fallback is instead asked for the grid
+ * points around each such location, and they are written into tiles of a 3
+ * arc second (about 90m) grid in the "cache" subdirectory, so the next lookup
+ * anywhere nearby is answered locally. That costs up to four points per
+ * location on a cold cache, so it pays off only for places that are visited
+ * again, like the routes a car drives every day.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class ElevationTiles implements ElevationProvider {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final int DefaultSamples = 1201;          // 3 arc seconds
+
+    private static final short Void = Short.MIN_VALUE;      // The SRTM void value
+    private static final double MetersPerDegree = 6371000 * Math.PI / 180;
+    private static final Pattern TileName =
+            Pattern.compile("([NS])(\\d{2})([EW])(\\d{3})\\.hgt", Pattern.CASE_INSENSITIVE);
+    private static final Tile Missing = new Tile(null, 0, 0, 0, false);
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final File directory;
+    private final File cacheDirectory;
+    private final ElevationProvider fallback;
+    private final boolean gridCaching;
+    private final ConcurrentHashMap<Integer,Tile> tiles = new ConcurrentHashMap<>();
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public ElevationTiles(File directory, ElevationProvider fallback) {
+        this(directory, fallback, false);
+    }
+
+    /**
+     * Create an ElevationTiles that keeps its tiles in a directory
+     * @param directory     The directory, which is created if necessary
+     * @param fallback      The provider of elevations the tiles don't have,
+     *                      or null to use only the tiles
+     * @param gridCaching   Whether to keep the fallback's elevations in tiles
+     */
+    public ElevationTiles(File directory, ElevationProvider fallback, boolean gridCaching) {
+        this.directory = directory;
+        this.cacheDirectory = new File(directory, "cache");
+        this.fallback = fallback;
+        this.gridCaching = gridCaching;
+        File needed = gridCaching ? cacheDirectory : directory;
+        if (!needed.exists() && !needed.mkdirs()) {
+            Tesla.logger.warning("Could not create elevation tile directory: " + needed);
+        }
+    }
+
+    public File getDirectory() { return directory; }
+    public ElevationProvider getFallback() { return fallback; }
+    public boolean isGridCaching() { return gridCaching; }
+
+    /**
+     * Return the elevation of a location using only the tiles
+     * @param lat   The latitude in degrees
+     * @param lng   The longitude in degrees
+     * @return      The elevation in meters or NaN if the tiles don't cover
+     *              the location
+     */
+    public double elevationAt(double lat, double lng) {
+        Cell c = locate(lat, lng);
+        return (c == null) ? Double.NaN : c.interpolate();
+    }
+
+    /**
+     * Return the elevations of a list of locations. Locations the tiles
+     * don't cover are requested from the fallback provider in one call.
+     * @param locations The locations
+     * @return          One ElevationData per location, in the same order, or
+     *                  null if some elevation is known to neither the tiles
+     *                  nor the fallback
+     */
+    @Override public List<ElevationData> getElevations(List<? extends LocationSource> locations) {
+        int n = locations.size();
+        ElevationData[] elevations = new ElevationData[n];
+        boolean[] cached = new boolean[n];      // Filled into a cache tile
+        Map<Long,GridPoint> needed = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            LocationSource l = locations.get(i);
+            Cell c = locate(l.getLat(), l.getLng());
+            elevations[i] = (c == null) ? null : c.elevation(l);
+            if (elevations[i] != null || !gridCaching || fallback == null) continue;
+            if (c == null) {
+                cached[i] = addCorners(needed, l.getLat(), l.getLng());
+            } else if (c.tile.writable()) {
+                c.addVoids(needed);
+                cached[i] = true;
+            }
+        }
+        if (!needed.isEmpty()) {
+            fill(new ArrayList<>(needed.values()));
+            for (int i = 0; i < n; i++) {
+                if (!cached[i]) continue;
+                LocationSource l = locations.get(i);
+                Cell c = locate(l.getLat(), l.getLng());
+                if (c == null || (elevations[i] = c.elevation(l)) == null) return null;
+            }
+        }
+
+        List<LocationSource> missing = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (elevations[i] == null) missing.add(locations.get(i));
+        }
+        if (!missing.isEmpty()) {
+            if (fallback == null) return null;
+            List<ElevationData> fetched = fallback.getElevations(missing);
+            if (fetched == null || fetched.size() != missing.size()) return null;
+            for (int i = 0, j = 0; i < n; i++) {
+                if (elevations[i] != null) continue;
+                ElevationData e = fetched.get(j++);
+                if (e == null || Double.isNaN(e.elevation)) return null;
+                elevations[i] = e;
+            }
+        }
+        return new ArrayList<>(Arrays.asList(elevations));
+    }
+
+    /**
+     * Copy DEM tiles into the tile directory, replacing any tiles already
+     * there. A source may be an .hgt file, a zip file containing .hgt
+     * files, or a directory of either.
+     * @param source    The file or directory to import
+     * @return          The number of tiles imported
+     * @throws IOException  If a tile can't be read or written
+     */
+    public int importDEM(File source) throws IOException {
+        if (source.isDirectory()) {
+            int count = 0;
+            File[] files = source.listFiles();
+            if (files == null) return 0;
+            for (File f : files) {
+                String name = f.getName().toLowerCase(Locale.US);
+                if (name.endsWith(".hgt") || name.endsWith(".zip")) count += importDEM(f);
+            }
+            return count;
+        }
+        if (source.getName().toLowerCase(Locale.US).endsWith(".zip")) {
+            int count = 0;
+            try (ZipInputStream zip = new ZipInputStream(
+                    new BufferedInputStream(new FileInputStream(source)))) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    String name = new File(entry.getName()).getName();
+                    if (!entry.isDirectory() && TileName.matcher(name).matches()) {
+                        install(name, zip);
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(source))) {
+            install(source.getName(), in);
+        }
+        return 1;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: interpolation
+ *
+ *----------------------------------------------------------------------------*/
+
+    // The four grid points around a location and where it lies between them
+    private static final class Cell {
+        final Tile tile;
+        final int row, col;
+        final double fy, fx;
+
+        Cell(Tile tile, int row, int col, double fy, double fx) {
+            this.tile = tile; this.row = row; this.col = col; this.fy = fy; this.fx = fx;
+        }
+
+        double interpolate() {
+            int r1 = Math.min(row + 1, tile.samples - 1), c1 = Math.min(col + 1, tile.samples - 1);
+            short nw, ne, sw, se;
+            tile.beginRead();
+            try {
+                nw = tile.get(row, col); ne = tile.get(row, c1);
+                sw = tile.get(r1, col); se = tile.get(r1, c1);
+            } finally {
+                tile.endRead();
+            }
+            if (nw == Void || ne == Void || sw == Void || se == Void) return Double.NaN;
+            double north = nw + (ne - nw) * fx;
+            double south = sw + (se - sw) * fx;
+            return north + (south - north) * fy;
+        }
+
+        // The elevation, or null if a grid point around the location is void
+        ElevationData elevation(LocationSource l) {
+            double e = interpolate();
+            if (Double.isNaN(e)) return null;
+            return new ElevationData(l.getLat(), l.getLng(), e, tile.spacing());
+        }
+
+        void addVoids(Map<Long,GridPoint> needed) {
+            int r1 = Math.min(row + 1, tile.samples - 1), c1 = Math.min(col + 1, tile.samples - 1);
+            tile.beginRead();
+            try {
+                tile.addIfVoid(needed, row, col);
+                tile.addIfVoid(needed, row, c1);
+                tile.addIfVoid(needed, r1, col);
+                tile.addIfVoid(needed, r1, c1);
+            } finally {
+                tile.endRead();
+            }
+        }
+    }
+
+    private Cell locate(double lat, double lng) {
+        if (Double.isNaN(lat) || Double.isNaN(lng) || lat < -90 || lat > 90) return null;
+        int south = (int)Math.floor(lat), west = (int)Math.floor(normalize(lng));
+        if (south == 90) south = 89;
+        Tile t = tile(south, west, false);
+        if (t == Missing) return null;
+        int span = t.samples - 1;
+        double y = (south + 1 - lat) * span, x = (normalize(lng) - west) * span;
+        int row = Math.min((int)y, span), col = Math.min((int)x, span);
+        return new Cell(t, row, col, y - row, x - col);
+    }
+
+    // The grid points of a DefaultSamples tile around a location. Returns
+    // false if the location isn't valid.
+    private boolean addCorners(Map<Long,GridPoint> needed, double lat, double lng) {
+        if (Double.isNaN(lat) || Double.isNaN(lng) || lat < -90 || lat > 90) return false;
+        int south = (int)Math.floor(lat), west = (int)Math.floor(normalize(lng));
+        if (south == 90) south = 89;
+        Tile t = tile(south, west, false);
+        int span = ((t == Missing) ? DefaultSamples : t.samples) - 1;
+        int row = Math.min((int)((south + 1 - lat) * span), span);
+        int col = Math.min((int)((normalize(lng) - west) * span), span);
+        for (int r = row; r <= Math.min(row + 1, span); r++) {
+            for (int c = col; c <= Math.min(col + 1, span); c++) {
+                GridPoint p = new GridPoint(south, west, span, r, c);
+                needed.put(p.key(), p);
+            }
+        }
+        return true;
+    }
+
+    private static double normalize(double lng) {
+        if (lng >= 180) return lng - 360;
+        if (lng < -180) return lng + 360;
+        return lng;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: fetching missing grid points
+ *
+ *----------------------------------------------------------------------------*/
+
+    // A grid point of a tile that needs an elevation
+    private static final class GridPoint implements LocationSource {
+        final int south, west, span, row, col;
+
+        GridPoint(int south, int west, int span, int row, int col) {
+            this.south = south; this.west = west; this.span = span;
+            this.row = row; this.col = col;
+        }
+
+        long key() { return ((long)tileKey(south, west) << 32) | (row << 16) | col; }
+
+        @Override public double getLat() { return south + 1 - (double)row / span; }
+        @Override public double getLng() { return west + (double)col / span; }
+    }
+
+    private void fill(List<GridPoint> points) {
+        List<ElevationData> fetched = fallback.getElevations(points);
+        if (fetched == null || fetched.size() != points.size()) return;
+        for (int i = 0; i < points.size(); i++) {
+            ElevationData e = fetched.get(i);
+            if (e == null || Double.isNaN(e.elevation)) continue;
+            GridPoint p = points.get(i);
+            Tile t = tile(p.south, p.west, true);
+            if (!t.writable() || t.samples - 1 != p.span) continue;
+            long meters = Math.round(e.elevation);
+            t.put(p.row, p.col, (short)Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, meters)));
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: tiles
+ *
+ *----------------------------------------------------------------------------*/
+
+    // A tile's grid. Imported tiles are mapped read only. Cache tiles are
+    // written by fill() while other threads read them, so they have a lock.
+    private static final class Tile {
+        final MappedByteBuffer grid;
+        final int south, west, samples;
+        private final ReentrantReadWriteLock lock;      // null if read only
+
+        Tile(MappedByteBuffer grid, int south, int west, int samples, boolean writable) {
+            this.grid = grid; this.south = south; this.west = west; this.samples = samples;
+            this.lock = writable ? new ReentrantReadWriteLock() : null;
+        }
+
+        boolean writable() { return lock != null; }
+
+        void beginRead() { if (lock != null) lock.readLock().lock(); }
+        void endRead() { if (lock != null) lock.readLock().unlock(); }
+
+        // Call between beginRead() and endRead()
+        short get(int row, int col) { return grid.getShort((row * samples + col) * 2); }
+
+        void put(int row, int col, short value) {
+            lock.writeLock().lock();
+            try {
+                grid.putShort((row * samples + col) * 2, value);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Call between beginRead() and endRead()
+        void addIfVoid(Map<Long,GridPoint> needed, int row, int col) {
+            if (get(row, col) != Void) return;
+            GridPoint p = new GridPoint(south, west, samples - 1, row, col);
+            needed.put(p.key(), p);
+        }
+
+        // The distance between grid points in meters
+        double spacing() { return MetersPerDegree / (samples - 1); }
+    }
+
+    private static int tileKey(int south, int west) { return (south + 90) * 360 + (west + 180); }
+
+    private static String tileName(int south, int west) {
+        return String.format(Locale.US, "%c%02d%c%03d.hgt",
+                south < 0 ? 'S' : 'N', Math.abs(south), west < 0 ? 'W' : 'E', Math.abs(west));
+    }
+
+    // Return the tile with the given southwest corner: an imported tile if
+    // there is one, otherwise a cache tile, creating an empty one if asked
+    private Tile tile(int south, int west, boolean create) {
+        Integer key = tileKey(south, west);
+        Tile t = tiles.get(key);
+        if (t != null && (t != Missing || !create)) return t;
+        synchronized (this) {
+            t = tiles.get(key);
+            if (t == null || (t == Missing && create)) {
+                File imported = new File(directory, tileName(south, west));
+                File cached = new File(cacheDirectory, tileName(south, west));
+                File f = imported;
+                try {
+                    if (imported.exists()) t = open(imported, south, west, false);
+                    else if (cached.exists()) t = open(f = cached, south, west, gridCaching);
+                    else if (create) t = open(f = createEmpty(cached), south, west, true);
+                    else t = Missing;
+                } catch (IOException e) {
+                    Tesla.logger.warning("Can't open elevation tile " + f + ": " + e.getMessage());
+                    t = Missing;
+                }
+                tiles.put(key, t);
+            }
+            return t;
+        }
+    }
+
+    private static Tile open(File f, int south, int west, boolean writable) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, writable ? "rw" : "r");
+             FileChannel channel = raf.getChannel()) {
+            int samples = samplesFor(channel.size());
+            if (samples == 0) throw new IOException("Not an .hgt tile");
+            MappedByteBuffer grid = channel.map(
+                    writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            grid.order(ByteOrder.BIG_ENDIAN);
+            return new Tile(grid, south, west, samples, writable);
+        }
+    }
+
+    private static File createEmpty(File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        byte[] row = new byte[DefaultSamples * 2];
+        for (int i = 0; i < row.length; i += 2) {
+            row[i] = (byte)(Void >> 8);
+            row[i + 1] = (byte)Void;
+        }
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            for (int r = 0; r < DefaultSamples; r++) out.write(row);
+        }
+        if (!tmp.renameTo(f)) throw new IOException("Can't rename " + tmp);
+        return f;
+    }
+
+    private static int samplesFor(long length) {
+        int samples = (int)Math.round(Math.sqrt(length / 2.0));
+        return (samples >= 2 && 2L * samples * samples == length) ? samples : 0;
+    }
+
+    private void install(String name, InputStream in) throws IOException {
+        Matcher m = TileName.matcher(name);
+        if (!m.matches()) throw new IOException("Not an .hgt tile name: " + name);
+        int south = Integer.parseInt(m.group(2)) * (m.group(1).equalsIgnoreCase("S") ? -1 : 1);
+        int west = Integer.parseInt(m.group(4)) * (m.group(3).equalsIgnoreCase("W") ? -1 : 1);
+
+        File f = new File(directory, tileName(south, west));
+        File tmp = new File(f.getPath() + ".tmp");
+        long length = 0;
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            byte[] buf = new byte[65536];
+            int n;
+            while ((n = in.read(buf)) > 0) { out.write(buf, 0, n); length += n; }
+        }
+        if (samplesFor(length) == 0) {
+            tmp.delete();
+            throw new IOException("Not an .hgt tile: " + name);
+        }
+        synchronized (this) {
+            if (f.exists() && !f.delete()) throw new IOException("Can't replace " + f);
+            if (!tmp.renameTo(f)) throw new IOException("Can't rename " + tmp);
+            tiles.remove(tileKey(south, west));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * EnumLookup.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * EnumLookup: Converts Strings to the constants of an Enum without using
+ * Enum.valueOf, which throws for values it doesn't know. Each Enum class
+ * gets one EnumLookup, built the first time it is used, that keeps the
+ * names of the constants in a sorted array. A lookup is a binary search and
+ * doesn't allocate.
+ * <P>
+ * A value that doesn't match a constant resolves to the Enum's "Unknown"
+ * constant. Unknown values are counted, and each distinct one is logged the
+ * first time it is seen, so a value the server has newly started sending
+ * isn't logged on every poll.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public final class EnumLookup<T extends Enum<T>> {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final String UnknownName = "Unknown";
+    private static final int MaxRemembered = 64;   // Unknown values per Enum
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final Logger logger = Logger.getLogger(EnumLookup.class.getName());
+
+    private static final ClassValue<EnumLookup<?>> lookups = new ClassValue<EnumLookup<?>>() {
+        @Override protected EnumLookup<?> computeValue(Class<?> c) {
+            return newLookup(c.asSubclass(Enum.class));
+        }
+    };
+
+    private final Class<T> eClass;
+    private final String[] names;       // Sorted
+    private final T[] constants;        // constants[i] is named names[i]
+    private final T unknown;            // null if the Enum has no Unknown
+    private final AtomicLong unknownCount = new AtomicLong();
+    private final ConcurrentHashMap<String,Boolean> unknownValues = new ConcurrentHashMap<>();
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Return the EnumLookup for an Enum class
+     * @param eClass    The class of the Enum
+     * @return          Its EnumLookup
+     */
+    public static <T extends Enum<T>> EnumLookup<T> of(Class<T> eClass) {
+        return Utils.cast(lookups.get(eClass));
+    }
+
+    /**
+     * Return the constant named by a String. A null or empty String, or
+     * "null", is the Unknown constant.
+     * @param val   The name of the constant
+     * @return      The constant, or Unknown if there is no constant with
+     *              that name
+     * @throws IllegalArgumentException if there is no such constant and the
+     *              Enum has no Unknown constant
+     */
+    public T lookup(String val) {
+        if (val == null || val.isEmpty() || val.equals("null")) return unknown();
+        int i = Arrays.binarySearch(names, val);
+        if (i >= 0) return constants[i];
+        noteUnknown(val);
+        return unknown();
+    }
+
+    /**
+     * Return the constant named by a String, or a default. Unknown values
+     * aren't counted or logged.
+     * @param val   The name of the constant
+     * @param dflt  The value to return if there is no constant with that name
+     * @return      The constant or dflt
+     */
+    public T lookup(String val, T dflt) {
+        if (val == null) return dflt;
+        int i = Arrays.binarySearch(names, val);
+        return (i >= 0) ? constants[i] : dflt;
+    }
+
+    /**
+     * Return the number of times lookup(String) was given a value that
+     * doesn't name a constant
+     * @return  The count
+     */
+    public long getUnknownCount() { return unknownCount.get(); }
+
+    /**
+     * Return the distinct unknown values that have been seen. At most
+     * MaxRemembered values are kept.
+     * @return  The values, sorted
+     */
+    public List<String> getUnknownValues() {
+        List<String> values = new ArrayList<>(unknownValues.keySet());
+        Collections.sort(values);
+        return values;
+    }
+
+    @Override public String toString() {
+        return String.format("EnumLookup(%s, %d constants, %d unknown)",
+                eClass.getSimpleName(), names.length, unknownCount.get());
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * PRIVATE - Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private EnumLookup(Class<T> eClass) {
+        this.eClass = eClass;
+        T[] values = eClass.getEnumConstants();
+        int n = values.length;
+        String[] sortedNames = new String[n];
+        for (int i = 0; i < n; i++) { sortedNames[i] = values[i].name(); }
+        Arrays.sort(sortedNames);
+
+        this.names = sortedNames;
+        this.constants = Arrays.copyOf(values, n);
+        T u = null;
+        for (T value : values) {
+            constants[Arrays.binarySearch(sortedNames, value.name())] = value;
+            if (value.name().equals(UnknownName)) u = value;
+        }
+        this.unknown = u;
+    }
+
+    private static <T extends Enum<T>> EnumLookup<T> newLookup(Class<?> c) {
+        Class<T> eClass = Utils.cast(c);
+        return new EnumLookup<>(eClass);
+    }
+
+    private T unknown() {
+        if (unknown == null)
+            throw new IllegalArgumentException(
+                    "No " + UnknownName + " constant in " + eClass.getName());
+        return unknown;
+    }
+
+    private void noteUnknown(String val) {
+        unknownCount.incrementAndGet();
+        if (unknownValues.size() < MaxRemembered &&
+                unknownValues.putIfAbsent(val, Boolean.TRUE) == null) {
+            logger.info("Unknown value (" + val + ") for " + eClass.getSimpleName());
+        }
+    }
+}
@@ -233,7 +233,10 @@ public abstract class Executor<R extends Executor.Request> implements Runnable {
                 r = queue.take();
                 if (requestSuperseded(r)) continue;
                 listener.requestStarted(r);
+                Object event = FlightEvents.begin(FlightEvents.Kind.ExecutorRequest);
                 boolean success = execRequest(r);
+                FlightEvents.commit(
+                        event, r.getRequestName(), name, success ? 1 : 0, r.retriesPerformed());
                 listener.requestCompleted(r);
                 if (!success) {
                     if (ThreadManager.get().shuttingDown()) return;
@@ -0,0 +1,127 @@
+/*
+ * FlightEvents.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.logging.Logger;
+
+/**
+ * FlightEvents: Timed events describing where the library spends its time
+ * (API calls, throttle waits, stream setup and reads, executor requests).
+ * <P>
+ * The library itself is built for older JVMs, so the events are emitted
+ * through a Sink. When the JVM provides Java Flight Recorder, the JFR sink
+ * (org.noroomattheinn.utils.jfr.JFRSink, built from the jfr source set) is
+ * installed automatically and each event becomes a JFR event. Otherwise the
+ * default sink does nothing. In either case, begin() returns null when the
+ * event isn't being recorded so the cost at each call site is a single
+ * virtual call and a null check.
+ * <P>
+ * Usage:<pre>
+ *     Object e = FlightEvents.begin(FlightEvents.Kind.ApiCall);
+ *     ... do the work ...
+ *     FlightEvents.commit(e, endpoint, outcome, bytes, status);
+ * </pre>
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class FlightEvents {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    /**
+     * The kinds of events and the meaning of the fields that accompany them.
+     * Fields that aren't listed are ignored.
+     */
+    public enum Kind {
+        ApiCall,            // name: endpoint, detail: outcome, bytes, status: HTTP status
+        ThrottleWait,       // name: endpoint
+        StreamConnect,      // name: streaming VID, detail: outcome
+        StreamRead,         // name: streaming VID, detail: end reason or null, bytes
+        StreamReconnect,    // name: streaming VID, detail: outcome
+        ExecutorRequest     // name: request name, detail: executor name,
+                            // bytes: 1 if succeeded else 0, status: retries
+    };
+
+    private static final Logger logger = Logger.getLogger(FlightEvents.class.getName());
+    private static final String JFRSinkClass = "org.noroomattheinn.utils.jfr.JFRSink";
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final Sink NoSink = new Sink() {
+        @Override public Object begin(Kind kind) { return null; }
+        @Override public void commit(
+                Object event, String name, String detail, long bytes, int status) { }
+    };
+
+    private static volatile Sink sink = loadDefaultSink();
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Sink: Receives events. Implementations return an opaque handle from
+     * begin() and receive it back in commit().
+     */
+    public interface Sink {
+        /**
+         * Start timing an event
+         * @param kind  The kind of event
+         * @return      A handle for the event or null if it isn't
+         *              being recorded
+         */
+        Object begin(Kind kind);
+
+        /**
+         * Complete an event that was started by begin()
+         * @param event     The (non-null) handle returned by begin()
+         * @param name      The primary subject of the event (see Kind)
+         * @param detail    Additional detail about the event (see Kind)
+         * @param bytes     The number of bytes transferred or -1
+         * @param status    A status code (e.g. HTTP status) or 0
+         */
+        void commit(Object event, String name, String detail, long bytes, int status);
+    }
+
+    public static Object begin(Kind kind) { return sink.begin(kind); }
+
+    public static void commit(Object event, String name, String detail, long bytes, int status) {
+        if (event != null) sink.commit(event, name, detail, bytes, status);
+    }
+
+    public static void setSink(Sink s) { sink = (s == null) ? NoSink : s; }
+
+    public static Sink getSink() { return sink; }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static Sink loadDefaultSink() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Sink)Class.forName(JFRSinkClass).newInstance();
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return NoSink;  // No JFR in this JVM or the sink wasn't built
+        } catch (InstantiationException | IllegalAccessException ex) {
+            logger.warning("Unable to create JFR event sink: " + ex);
+            return NoSink;
+        }
+    }
+}
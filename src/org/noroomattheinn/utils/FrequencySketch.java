@@ -0,0 +1,91 @@
+/*
+ * FrequencySketch.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+/**
+ * FrequencySketch: A compact, approximate count of how often each key has
+ * been seen recently (a count-min sketch of 4 bit counters, as used by
+ * TinyLFU). Each key maps to four counters, one in each of four longs, and
+ * its frequency is the smallest of them. When the number of increments
+ * reaches ten times the capacity every counter is halved so that old
+ * popularity fades. This class is not thread safe.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+final class FrequencySketch {
+    private static final long[] Seeds = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long ResetMask = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    /**
+     * @param capacity  The number of entries whose frequencies matter
+     */
+    FrequencySketch(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        table = new long[size];
+        mask = size - 1;
+        sampleSize = 10 * Math.max(capacity, 16);
+    }
+
+    /**
+     * Return the estimated number of recent occurrences of a key, 0 to 15
+     */
+    int frequency(long key) {
+        int h = spread(key);
+        int start = (h & 3) << 2;
+        int min = 15;
+        for (int i = 0; i < 4; i++) {
+            int count = (int)((table[indexOf(h, i)] >>> ((start + i) << 2)) & 0xf);
+            if (count < min) min = count;
+        }
+        return min;
+    }
+
+    /**
+     * Record an occurrence of a key
+     */
+    void increment(long key) {
+        int h = spread(key);
+        int start = (h & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(h, i);
+            int offset = (start + i) << 2;
+            if (((table[index] >>> offset) & 0xf) < 15) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) { table[i] = (table[i] >>> 1) & ResetMask; }
+        additions /= 2;
+    }
+
+    private int indexOf(int h, int i) {
+        long hash = (h + Seeds[i]) * Seeds[i];
+        hash += hash >>> 32;
+        return (int)hash & mask;
+    }
+
+    private static int spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * GeoIndex.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * GeoIndex: A spatial index over GeoUtils.Areas that answers "which areas
+ * contain this point" without examining every area. It is an R-tree: areas
+ * are grouped by their bounding boxes into a balanced tree of nodes, each with
+ * the bounding box of everything beneath it, so a query only descends into
+ * the few nodes whose boxes contain the point and only calls contains() on
+ * areas whose own box contains it. Queries take logarithmic time.
+ *
+ * The tree can be built in one pass from a collection of areas using
+ * Sort-Tile-Recursive packing, which produces nearly full, non-overlapping
+ * nodes, and can then be updated with add() and remove(). Many queries may
+ * run concurrently; updates are exclusive.
+ *
+ * The index does not use Area.compareTo(), which describes intersection
+ * rather than an ordering.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class GeoIndex<T extends GeoUtils.Area> {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final int MaxEntries = 16;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node(true);
+    private int size = 0;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public GeoIndex() { }
+
+    public GeoIndex(Collection<? extends T> areas) { load(areas); }
+
+    /**
+     * Replace the contents of the index with a collection of areas
+     * @param areas The areas to index
+     */
+    public void load(Collection<? extends T> areas) {
+        List<Box> entries = new ArrayList<>(areas.size());
+        for (T a : areas) { entries.add(new Entry(a)); }
+        Node newRoot = entries.isEmpty() ? new Node(true) : pack(entries, true);
+        lock.writeLock().lock();
+        try {
+            root = newRoot;
+            size = entries.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add an area to the index
+     * @param area  The area to add
+     */
+    public void add(T area) {
+        Entry e = new Entry(area);
+        lock.writeLock().lock();
+        try {
+            Node leaf = root;
+            while (!leaf.leaf) { leaf = chooseChild(leaf, e); }
+            leaf.add(e);
+            for (Node n = leaf; n != null; n = n.parent) {
+                n.include(e);
+                if (n.n > MaxEntries) split(n);
+            }
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an area from the index
+     * @param area  The area to remove, as determined by equals()
+     * @return      true if the area was found and removed
+     */
+    public boolean remove(T area) {
+        Entry e = new Entry(area);
+        lock.writeLock().lock();
+        try {
+            Node leaf = findLeaf(root, e);
+            if (leaf == null) return false;
+            for (int i = 0; i < leaf.n; i++) {
+                if (((Entry)leaf.items[i]).area.equals(area)) { leaf.removeAt(i); break; }
+            }
+            // Remove empty nodes and shrink the boxes above the leaf
+            Node n = leaf;
+            while (n.parent != null) {
+                Node parent = n.parent;
+                if (n.n == 0) parent.removeAt(parent.indexOf(n));
+                else n.recompute();
+                n = parent;
+            }
+            root.recompute();
+            while (!root.leaf && root.n == 1) {
+                root = (Node)root.items[0];
+                root.parent = null;
+            }
+            if (!root.leaf && root.n == 0) root = new Node(true);
+            size--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            root = new Node(true);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try { return size; } finally { lock.readLock().unlock(); }
+    }
+
+    /**
+     * Return the areas that contain a point
+     * @param lat   The latitude of the point
+     * @param lng   The longitude of the point
+     * @return      The areas in no particular order
+     */
+    public List<T> containing(double lat, double lng) {
+        List<T> result = new ArrayList<>(4);
+        containing(lat, lng, result);
+        return result;
+    }
+
+    /**
+     * Add the areas that contain a point to a list. Reusing the list avoids
+     * an allocation per query.
+     * @param lat       The latitude of the point
+     * @param lng       The longitude of the point
+     * @param result    The list to add the areas to
+     */
+    public void containing(double lat, double lng, List<T> result) {
+        lock.readLock().lock();
+        try {
+            if (root.n > 0) collect(root, lat, lng, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the areas whose bounding boxes intersect a box
+     * @return  The areas in no particular order
+     */
+    public List<T> intersecting(double minLat, double minLng, double maxLat, double maxLng) {
+        Box query = new Box();
+        query.set(minLat, minLng, maxLat, maxLng);
+        List<T> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (root.n > 0) collect(root, query, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: queries
+ *
+ *----------------------------------------------------------------------------*/
+
+    @SuppressWarnings("unchecked")
+    private void collect(Node node, double lat, double lng, List<T> result) {
+        for (int i = 0; i < node.n; i++) {
+            Box b = node.items[i];
+            if (!b.contains(lat, lng)) continue;
+            if (node.leaf) {
+                T area = (T)((Entry)b).area;
+                if (area.contains(lat, lng)) result.add(area);
+            } else {
+                collect((Node)b, lat, lng, result);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collect(Node node, Box query, List<T> result) {
+        for (int i = 0; i < node.n; i++) {
+            Box b = node.items[i];
+            if (!b.intersects(query)) continue;
+            if (node.leaf) result.add((T)((Entry)b).area);
+            else collect((Node)b, query, result);
+        }
+    }
+
+    private Node findLeaf(Node node, Entry e) {
+        for (int i = 0; i < node.n; i++) {
+            Box b = node.items[i];
+            if (node.leaf) {
+                if (((Entry)b).area.equals(e.area)) return node;
+            } else if (b.covers(e)) {
+                Node found = findLeaf((Node)b, e);
+                if (found != null) return found;
+            }
+        }
+        return null;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: updates
+ *
+ *----------------------------------------------------------------------------*/
+
+    // Choose the child whose box grows least to include e, then the smallest
+    private static Node chooseChild(Node node, Box e) {
+        Node best = null;
+        double bestGrowth = Double.MAX_VALUE, bestArea = Double.MAX_VALUE;
+        for (int i = 0; i < node.n; i++) {
+            Node child = (Node)node.items[i];
+            double area = child.area();
+            double growth = child.areaWith(e) - area;
+            if (growth < bestGrowth || (growth == bestGrowth && area < bestArea)) {
+                best = child;
+                bestGrowth = growth;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    // Split an overfull node in two along the axis its contents spread most
+    private void split(Node node) {
+        Box[] items = Arrays.copyOf(node.items, node.n);
+        Arrays.sort(items, (node.maxLat - node.minLat) > (node.maxLng - node.minLng) ?
+                ByLat : ByLng);
+        int half = items.length / 2;
+        Node sibling = new Node(node.leaf);
+        node.clear();
+        for (int i = 0; i < half; i++) node.add(items[i]);
+        for (int i = half; i < items.length; i++) sibling.add(items[i]);
+        node.recompute();
+        sibling.recompute();
+
+        if (node.parent == null) {
+            Node newRoot = new Node(false);
+            newRoot.add(node);
+            newRoot.add(sibling);
+            newRoot.recompute();
+            root = newRoot;
+        } else {
+            node.parent.add(sibling);
+        }
+    }
+
+    // Sort-Tile-Recursive packing of one level, then the levels above it
+    private static Node pack(List<Box> boxes, boolean leaf) {
+        int nNodes = (boxes.size() + MaxEntries - 1) / MaxEntries;
+        int nSlices = (int)Math.ceil(Math.sqrt(nNodes));
+        int sliceSize = nSlices * MaxEntries;
+
+        List<Box> nodes = new ArrayList<>(nNodes);
+        Collections.sort(boxes, ByLng);
+        for (int start = 0; start < boxes.size(); start += sliceSize) {
+            List<Box> slice = boxes.subList(start, Math.min(start + sliceSize, boxes.size()));
+            Collections.sort(slice, ByLat);
+            for (int i = 0; i < slice.size(); i += MaxEntries) {
+                Node node = new Node(leaf);
+                for (Box b : slice.subList(i, Math.min(i + MaxEntries, slice.size()))) {
+                    node.add(b);
+                }
+                node.recompute();
+                nodes.add(node);
+            }
+        }
+        return (nodes.size() == 1) ? (Node)nodes.get(0) : pack(nodes, false);
+    }
+
+    private static final Comparator<Box> ByLat = new Comparator<Box>() {
+        @Override public int compare(Box a, Box b) {
+            return Double.compare(a.minLat + a.maxLat, b.minLat + b.maxLat);
+        }
+    };
+
+    private static final Comparator<Box> ByLng = new Comparator<Box>() {
+        @Override public int compare(Box a, Box b) {
+            return Double.compare(a.minLng + a.maxLng, b.minLng + b.maxLng);
+        }
+    };
+
+/*------------------------------------------------------------------------------
+ *
+ * The nodes of the tree
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static class Box {
+        double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+
+        final void set(double minLat, double minLng, double maxLat, double maxLng) {
+            this.minLat = minLat; this.minLng = minLng;
+            this.maxLat = maxLat; this.maxLng = maxLng;
+        }
+
+        final void include(Box b) {
+            if (b.minLat < minLat) minLat = b.minLat;
+            if (b.minLng < minLng) minLng = b.minLng;
+            if (b.maxLat > maxLat) maxLat = b.maxLat;
+            if (b.maxLng > maxLng) maxLng = b.maxLng;
+        }
+
+        final boolean contains(double lat, double lng) {
+            return lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng;
+        }
+
+        final boolean covers(Box b) {
+            return b.minLat >= minLat && b.maxLat <= maxLat &&
+                   b.minLng >= minLng && b.maxLng <= maxLng;
+        }
+
+        final boolean intersects(Box b) {
+            return b.minLat <= maxLat && b.maxLat >= minLat &&
+                   b.minLng <= maxLng && b.maxLng >= minLng;
+        }
+
+        final double area() { return (maxLat - minLat) * (maxLng - minLng); }
+
+        final double areaWith(Box b) {
+            return (Math.max(maxLat, b.maxLat) - Math.min(minLat, b.minLat)) *
+                   (Math.max(maxLng, b.maxLng) - Math.min(minLng, b.minLng));
+        }
+    }
+
+    private static final class Entry extends Box {
+        final GeoUtils.Area area;
+
+        Entry(GeoUtils.Area area) {
+            this.area = area;
+            double[] b = area.bounds();
+            set(b[0], b[1], b[2], b[3]);
+        }
+    }
+
+    private static final class Node extends Box {
+        final boolean leaf;
+        Box[] items = new Box[MaxEntries + 1];
+        int n = 0;
+        Node parent = null;
+
+        Node(boolean leaf) { this.leaf = leaf; }
+
+        void add(Box b) {
+            if (n == items.length) items = Arrays.copyOf(items, n * 2);
+            items[n++] = b;
+            if (b instanceof Node) ((Node)b).parent = this;
+            include(b);
+        }
+
+        void removeAt(int i) {
+            System.arraycopy(items, i + 1, items, i, n - i - 1);
+            items[--n] = null;
+        }
+
+        int indexOf(Box b) {
+            for (int i = 0; i < n; i++) { if (items[i] == b) return i; }
+            return -1;
+        }
+
+        void clear() {
+            Arrays.fill(items, 0, n, null);
+            n = 0;
+            set(Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+        }
+
+        void recompute() {
+            set(Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+            for (int i = 0; i < n; i++) include(items[i]);
+        }
+    }
+}
@@ -15,8 +15,14 @@ import com.google.code.geocoder.model.GeocoderStatus;
 import com.google.code.geocoder.model.LatLng;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import org.noroomattheinn.tesla.Tesla;
 import us.monoid.json.JSONArray;
 import us.monoid.json.JSONException;
@@ -31,7 +37,9 @@ import us.monoid.web.Resty;
 
 public class GeoUtils {
 
-    private static final Map<String,String> cache = new LRUMap<>(10);
+    private static final double EarthRadius = 6371000;  // meters
+    private static volatile GeocodeCache geocoder = null;       // Created on first use
+    private static volatile ElevationProvider elevationProvider = null; // Created on first use
     
     //
     // Public Class Methods
@@ -44,37 +52,56 @@ public class GeoUtils {
             return directions[ (int) Math.round((((double) x % 360) / 45))];
         }
 
+    /**
+     * Install the ReverseGeocoder used by getAddrForLatLong. The default
+     * uses Google's geocoding service. Results are cached in a GeocodeCache
+     * with the default capacity and radius unless the geocoder is itself a
+     * GeocodeCache.
+     * @param reverseGeocoder  The ReverseGeocoder to use
+     */
+    public static void setReverseGeocoder(ReverseGeocoder reverseGeocoder) {
+        geocoder = (reverseGeocoder instanceof GeocodeCache) ?
+                (GeocodeCache)reverseGeocoder : new GeocodeCache(reverseGeocoder);
+    }
+    
+    public static GeocodeCache getReverseGeocoder() {
+        GeocodeCache g = geocoder;
+        if (g == null) {
+            synchronized (GeoUtils.class) {
+                g = geocoder;
+                if (g == null) geocoder = g = new GeocodeCache(new GoogleReverseGeocoder());
+            }
+        }
+        return g;
+    }
+    
     public static String getAddrForLatLong(String lat, String lng) {
-        String resultAddr;
-        Geocoder geocoder = new Geocoder();
-        GeocoderRequest geocoderRequest;
-        GeocodeResponse geocoderResponse;
-        
-        // Round to 5 digits to avoid jitter
-        lat = String.format("%.5f", Double.valueOf(lat));
-        lng = String.format("%.5f", Double.valueOf(lng));
-        
-        String cacheKey = lat+lng;
-        synchronized (cache) { resultAddr = cache.get(cacheKey); }
-        if (resultAddr != null)
-            return resultAddr;
-
-        geocoderRequest = new GeocoderRequestBuilder()
-                .setLocation(new LatLng(lat, lng))
-                .setLanguage("en").getGeocoderRequest();
-        geocoderResponse = geocoder.geocode(geocoderRequest);
-        if (geocoderResponse != null) {
-            if (geocoderResponse.getStatus() == GeocoderStatus.OK) {
-                if (!geocoderResponse.getResults().isEmpty()) {
-                    GeocoderResult geocoderResult = // Get the first result
-                            geocoderResponse.getResults().iterator().next();
-                    resultAddr = geocoderResult.getFormattedAddress();
-                    synchronized (cache) { cache.put(cacheKey, resultAddr); }
-                    return resultAddr;
+        return getReverseGeocoder().addressFor(Double.parseDouble(lat), Double.parseDouble(lng));
+    }
+    
+    /**
+     * GoogleReverseGeocoder: Looks up addresses using Google's geocoding
+     * service. Each lookup is a blocking network request.
+     */
+    public static class GoogleReverseGeocoder implements ReverseGeocoder {
+        @Override public String addressFor(double lat, double lng) {
+            Geocoder geocoder = new Geocoder();
+            GeocoderRequest geocoderRequest = new GeocoderRequestBuilder()
+                    .setLocation(new LatLng(
+                            String.format("%.5f", lat), String.format("%.5f", lng)))
+                    .setLanguage("en").getGeocoderRequest();
+            GeocodeResponse geocoderResponse = geocoder.geocode(geocoderRequest);
+            if (geocoderResponse != null) {
+                if (geocoderResponse.getStatus() == GeocoderStatus.OK) {
+                    if (!geocoderResponse.getResults().isEmpty()) {
+                        GeocoderResult geocoderResult = // Get the first result
+                                geocoderResponse.getResults().iterator().next();
+                        return geocoderResult.getFormattedAddress();
+                    }
                 }
             }
+            return null;
         }
-        return null;
     }
     
     public static double[] getLatLngForAddr(String addr) {
@@ -115,83 +142,296 @@ public class GeoUtils {
             double lat1, double lon1,
             double lat2, double lon2) {
 
-        final int R = 6371; // Radius of the earth
+        double latDistance = deg2rad(lat2 - lat1);
+        double lonDistance = deg2rad(lon2 - lon1);
+        double sinLat = Math.sin(latDistance / 2);
+        double sinLon = Math.sin(lonDistance / 2);
+        double a = sinLat * sinLat
+                + Math.cos(deg2rad(lat1)) * Math.cos(deg2rad(lat2)) * sinLon * sinLon;
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return EarthRadius * c;     // meters
+    }
 
-        Double latDistance = deg2rad(lat2 - lat1);
-        Double lonDistance = deg2rad(lon2 - lon1);
-        Double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(deg2rad(lat1)) * Math.cos(deg2rad(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        Double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = R * c * 1000; // convert to meters
+    /**
+     * Calculate the initial bearing (forward azimuth) from one point to another
+     * @return  The bearing in degrees clockwise from north, [0, 360)
+     */
+    public static double bearing(
+            double lat1, double lon1,
+            double lat2, double lon2) {
+        double phi1 = deg2rad(lat1), phi2 = deg2rad(lat2);
+        double dLon = deg2rad(lon2 - lon1);
+        double y = Math.sin(dLon) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLon);
+        double b = Math.toDegrees(Math.atan2(y, x));
+        return (b < 0) ? b + 360 : b;
+    }
 
-        return distance;
+    //
+    // Batch distance and bearing calculations over arrays of points. These
+    // allocate nothing, compute the cosine of each latitude once, and use
+    // simple loops over primitive arrays that the JIT compiles well.
+    //
+    
+    /**
+     * Haversine is accurate at any distance. Equirectangular treats the earth
+     * as flat over each step: it is several times faster and within 0.1% for
+     * distances under about 20km (away from the poles), such as the steps
+     * between successive stream samples.
+     */
+    public enum DistanceMode {Haversine, Equirectangular};
+    
+    /**
+     * Calculate the distance of each step along a path
+     * @param lats  The latitudes of the points in degrees
+     * @param lngs  The longitudes of the points in degrees
+     * @param n     The number of points
+     * @param out   If not null, out[i] is set to the distance in meters from
+     *              point i to point i+1 for i in [0, n-1)
+     * @param mode  How to calculate the distances
+     * @return      The total length of the path in meters
+     */
+    public static double pathDistances(
+            double[] lats, double[] lngs, int n, double[] out, DistanceMode mode) {
+        if (n < 2) return 0;
+        double total = 0;
+        double prevLat = deg2rad(lats[0]), prevLng = deg2rad(lngs[0]);
+        double prevCos = Math.cos(prevLat);
+        for (int i = 1; i < n; i++) {
+            double lat = deg2rad(lats[i]), lng = deg2rad(lngs[i]);
+            double cos = Math.cos(lat);
+            double d = (mode == DistanceMode.Haversine) ?
+                    haversine(lat - prevLat, lng - prevLng, prevCos * cos) :
+                    flat(lat - prevLat, lng - prevLng, (prevCos + cos) / 2);
+            if (out != null) out[i - 1] = d;
+            total += d;
+            prevLat = lat; prevLng = lng; prevCos = cos;
+        }
+        return total;
+    }
+    
+    /**
+     * Calculate the distance from one point to each of many points
+     * @param lat   The latitude of the origin in degrees
+     * @param lng   The longitude of the origin in degrees
+     * @param lats  The latitudes of the other points in degrees
+     * @param lngs  The longitudes of the other points in degrees
+     * @param n     The number of other points
+     * @param out   out[i] is set to the distance in meters to point i
+     * @param mode  How to calculate the distances
+     */
+    public static void distancesFrom(
+            double lat, double lng, double[] lats, double[] lngs, int n,
+            double[] out, DistanceMode mode) {
+        double lat0 = deg2rad(lat), lng0 = deg2rad(lng);
+        double cos0 = Math.cos(lat0);
+        if (mode == DistanceMode.Haversine) {
+            for (int i = 0; i < n; i++) {
+                double lat1 = deg2rad(lats[i]);
+                out[i] = haversine(lat1 - lat0, deg2rad(lngs[i]) - lng0, cos0 * Math.cos(lat1));
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                out[i] = flat(deg2rad(lats[i]) - lat0, deg2rad(lngs[i]) - lng0, cos0);
+            }
+        }
+    }
+    
+    /**
+     * Find the point nearest to an origin, e.g. the closest charger. Only
+     * the haversine term is compared, so no square roots or arc tangents are
+     * needed.
+     * @param lat   The latitude of the origin in degrees
+     * @param lng   The longitude of the origin in degrees
+     * @param lats  The latitudes of the candidates in degrees
+     * @param lngs  The longitudes of the candidates in degrees
+     * @param n     The number of candidates
+     * @return      The index of the nearest candidate or -1 if n is 0
+     */
+    public static int nearest(double lat, double lng, double[] lats, double[] lngs, int n) {
+        double lat0 = deg2rad(lat), lng0 = deg2rad(lng);
+        double cos0 = Math.cos(lat0);
+        int best = -1;
+        double bestA = Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            double lat1 = deg2rad(lats[i]);
+            double sinLat = Math.sin((lat1 - lat0) / 2);
+            double sinLng = Math.sin((deg2rad(lngs[i]) - lng0) / 2);
+            double a = sinLat * sinLat + cos0 * Math.cos(lat1) * sinLng * sinLng;
+            if (a < bestA) { bestA = a; best = i; }
+        }
+        return best;
+    }
+    
+    /**
+     * Calculate the bearing of each step along a path
+     * @param lats  The latitudes of the points in degrees
+     * @param lngs  The longitudes of the points in degrees
+     * @param n     The number of points
+     * @param out   out[i] is set to the bearing in degrees from point i to
+     *              point i+1 for i in [0, n-1)
+     */
+    public static void pathBearings(double[] lats, double[] lngs, int n, double[] out) {
+        if (n < 2) return;
+        double prevLat = deg2rad(lats[0]);
+        double prevSin = Math.sin(prevLat), prevCos = Math.cos(prevLat);
+        for (int i = 1; i < n; i++) {
+            double lat = deg2rad(lats[i]);
+            double sin = Math.sin(lat), cos = Math.cos(lat);
+            double dLng = deg2rad(lngs[i] - lngs[i - 1]);
+            double y = Math.sin(dLng) * cos;
+            double x = prevCos * sin - prevSin * cos * Math.cos(dLng);
+            double b = Math.toDegrees(Math.atan2(y, x));
+            out[i - 1] = (b < 0) ? b + 360 : b;
+            prevSin = sin; prevCos = cos;
+        }
+    }
+    
+    private static double haversine(double dLat, double dLng, double cosProduct) {
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat + cosProduct * sinLng * sinLng;
+        return 2 * EarthRadius * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+    
+    private static double flat(double dLat, double dLng, double cosLat) {
+        if (dLng > Math.PI) dLng -= 2 * Math.PI;
+        else if (dLng < -Math.PI) dLng += 2 * Math.PI;
+        double x = dLng * cosLat;
+        return EarthRadius * Math.sqrt(x * x + dLat * dLat);
     }
 
     private static double deg2rad(double deg) {
         return (deg * Math.PI / 180.0);
     }
     
-    private static final String ElevationEndpoint =
-            "http://maps.googleapis.com/maps/api/elevation/";
-    private static final int MaxLocationsPerRequest = 50;
-    private enum GoogleElevationStatus {OK, INVALID_REQUEST, OVER_QUERY_LIMIT,
-                                        REQUEST_DENIED, UNKNOWN_ERROR};
+    /**
+     * Install the ElevationProvider used by getElevations. The default
+     * fetches every elevation from Google's elevation service. Wrap it in
+     * an ElevationTiles to answer from DEM tiles, and enable its grid caching
+     * to keep the results on disk.
+     * @param provider  The ElevationProvider to use
+     */
+    public static void setElevationProvider(ElevationProvider provider) {
+        elevationProvider = provider;
+    }
     
-    public static List<ElevationData> getElevations(List<? extends LocationSource> locations) {
-        List<ElevationData> elevations = new ArrayList<>();
-        int nLocs = locations.size();
-        int startIndex = 0;
-        int thisChunk = Math.min(nLocs, MaxLocationsPerRequest);
-        
-        while (thisChunk > 0) {
-            List<ElevationData> results = getElevInternal(
-                    locations.subList(startIndex, startIndex+thisChunk));
-            if (results == null) return null;
-            elevations.addAll(results);
-            startIndex += thisChunk;
-            nLocs -= thisChunk;
-            thisChunk = Math.min(nLocs, MaxLocationsPerRequest);
+    public static ElevationProvider getElevationProvider() {
+        ElevationProvider p = elevationProvider;
+        if (p == null) {
+            synchronized (GeoUtils.class) {
+                p = elevationProvider;
+                if (p == null) elevationProvider = p = new GoogleElevationProvider();
+            }
         }
-        return elevations;
+        return p;
+    }
+    
+    public static List<ElevationData> getElevations(List<? extends LocationSource> locations) {
+        return getElevationProvider().getElevations(locations);
     }
     
-    private static List<ElevationData> getElevInternal(List<? extends LocationSource> locations) {
-        List<ElevationData> elevations = new ArrayList<>();
-        Resty elevationAPI = new Resty();
-        int nLocs = locations.size();
+    /**
+     * GoogleElevationProvider: Looks up elevations using Google's elevation
+     * service. Locations are requested in chunks of up to 50 and the chunks
+     * are fetched in parallel, subject to a Throttle.
+     */
+    public static class GoogleElevationProvider implements ElevationProvider {
+        private static final String ElevationEndpoint =
+                "http://maps.googleapis.com/maps/api/elevation/";
+        private static final int MaxLocationsPerRequest = 50;
+        private static final int DefaultParallelism = 4;
+        private enum GoogleElevationStatus {OK, INVALID_REQUEST, OVER_QUERY_LIMIT,
+                                            REQUEST_DENIED, UNKNOWN_ERROR};
+        
+        private final ExecutorService pool;
+        private final RestHelper.Throttle throttle;
         
-        StringBuilder locs = new StringBuilder("json?locations=");
-        for (int i = 0; i < nLocs; i++) {
-            if (i != 0) locs.append("%7C"); // Pipe Symbol, '|'
-            LocationSource location = locations.get(i);
-            locs.append(location.getLat()).append(',').append(location.getLng());
+        public GoogleElevationProvider() {
+            this(DefaultParallelism, new RestHelper.Throttle(
+                    Arrays.asList(new Pair<>(10, 1), new Pair<>(100, 60))));
         }
-
-        try {
-            JSONObject result = elevationAPI.json(
-                    ElevationEndpoint+locs.toString()+"&sensor=true").object();
-            GoogleElevationStatus status = GoogleElevationStatus.valueOf(
-                    result.optString("status"));
-            if (status != GoogleElevationStatus.OK) {
-                Tesla.logger.warning(
-                        "Error retrieving elevation data." +
-                        "Status returned by Google = " + status);
+        
+        /**
+         * Create a provider
+         * @param parallelism   The maximum number of requests in flight
+         * @param throttle      Limits the rate of requests
+         */
+        public GoogleElevationProvider(int parallelism, RestHelper.Throttle throttle) {
+            this.throttle = throttle;
+            this.pool = Executors.newFixedThreadPool(Math.max(1, parallelism), new ThreadFactory() {
+                @Override public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "00 VT - Elevation");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        
+        @Override public List<ElevationData> getElevations(
+                final List<? extends LocationSource> locations) {
+            List<Callable<List<ElevationData>>> chunks = new ArrayList<>();
+            for (int start = 0; start < locations.size(); start += MaxLocationsPerRequest) {
+                final int from = start;
+                final int to = Math.min(locations.size(), start + MaxLocationsPerRequest);
+                chunks.add(new Callable<List<ElevationData>>() {
+                    @Override public List<ElevationData> call() {
+                        return fetch(locations.subList(from, to));
+                    }
+                });
+            }
+            
+            List<ElevationData> elevations = new ArrayList<>(locations.size());
+            try {
+                for (Future<List<ElevationData>> f : pool.invokeAll(chunks)) {
+                    List<ElevationData> results = f.get();
+                    if (results == null) return null;
+                    elevations.addAll(results);
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                Tesla.logger.warning("Error retrieving elevation data: " + ex.getMessage());
                 return null;
             }
-            JSONArray vals = result.getJSONArray("results");
-            for (int i = 0; i < vals.length(); i++) {
-                JSONObject cur = vals.getJSONObject(i);
-                double elevation = cur.optDouble("elevation");
-                double resolution = cur.optDouble("resolution");
+            return elevations;
+        }
+        
+        private List<ElevationData> fetch(List<? extends LocationSource> locations) {
+            List<ElevationData> elevations = new ArrayList<>();
+            Resty elevationAPI = RestHelper.getInstance(throttle);
+            int nLocs = locations.size();
+
+            StringBuilder locs = new StringBuilder("json?locations=");
+            for (int i = 0; i < nLocs; i++) {
+                if (i != 0) locs.append("%7C"); // Pipe Symbol, '|'
                 LocationSource location = locations.get(i);
-                elevations.add(new ElevationData(
-                        location.getLat(), location.getLng(), elevation, resolution));
+                locs.append(location.getLat()).append(',').append(location.getLng());
+            }
+
+            try {
+                JSONObject result = elevationAPI.json(
+                        ElevationEndpoint+locs.toString()+"&sensor=true").object();
+                GoogleElevationStatus status = GoogleElevationStatus.valueOf(
+                        result.optString("status"));
+                if (status != GoogleElevationStatus.OK) {
+                    Tesla.logger.warning(
+                            "Error retrieving elevation data." +
+                            "Status returned by Google = " + status);
+                    return null;
+                }
+                JSONArray vals = result.getJSONArray("results");
+                for (int i = 0; i < vals.length(); i++) {
+                    JSONObject cur = vals.getJSONObject(i);
+                    double elevation = cur.optDouble("elevation");
+                    double resolution = cur.optDouble("resolution");
+                    LocationSource location = locations.get(i);
+                    elevations.add(new ElevationData(
+                            location.getLat(), location.getLng(), elevation, resolution));
+                }
+                return elevations;
+            } catch (IOException | JSONException | IllegalArgumentException ex) {
+                Tesla.logger.warning("Error retrieving elevation data: " + ex.getMessage());
+                return null;
             }
-            return elevations;
-        } catch (IOException | JSONException ex) {
-            Tesla.logger.warning("Error retrieving elevation data: " + ex.getMessage());
-            return null;
         }
     }
     
@@ -206,7 +446,7 @@ public class GeoUtils {
         public double elevation;
         public double resolution;
         
-        ElevationData(double lat, double lng, double elevation, double resolution) {
+        public ElevationData(double lat, double lng, double elevation, double resolution) {
             this.lat = lat;
             this.lng = lng;
             this.elevation = elevation;
@@ -240,6 +480,23 @@ public class GeoUtils {
         
         public String getName() { return name; }
         
+        /**
+         * Return the bounding box of this area. Subclasses that cover more
+         * than a single point must override this and contains().
+         * @return  {minLat, minLng, maxLat, maxLng} in degrees
+         */
+        public double[] bounds() { return new double[] {lat, lng, lat, lng}; }
+        
+        /**
+         * Determine whether this area contains a point
+         * @param lat   The latitude of the point
+         * @param lng   The longitude of the point
+         * @return      true if the point is within the area
+         */
+        public boolean contains(double lat, double lng) {
+            return lat == this.lat && lng == this.lng;
+        }
+        
         /**
          * An implementation of compareTo that really is about intersection.
          * Subclasses must override this method.
@@ -277,5 +534,23 @@ public class GeoUtils {
             return false;
         }
 
+        @Override public double[] bounds() {
+            double dLat = Math.toDegrees(radius / EarthRadius);
+            double cos = Math.cos(Math.toRadians(lat));
+            double minLat = Math.max(-90, lat - dLat), maxLat = Math.min(90, lat + dLat);
+            // Near a pole, or across the antimeridian, any longitude may be inside
+            if (maxLat >= 90 || minLat <= -90 || cos < 1e-9) {
+                return new double[] {minLat, -180, maxLat, 180};
+            }
+            double dLng = Math.toDegrees(radius / (EarthRadius * cos));
+            if (dLng >= 180 || lng - dLng < -180 || lng + dLng > 180) {
+                return new double[] {minLat, -180, maxLat, 180};
+            }
+            return new double[] {minLat, lng - dLng, maxLat, lng + dLng};
+        }
+
+        @Override public boolean contains(double lat, double lng) {
+            return GeoUtils.distance(this.lat, this.lng, lat, lng) <= radius;
+        }
     }
 }
@@ -0,0 +1,305 @@
+/*
+ * GeocodeCache.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.noroomattheinn.tesla.Metrics;
+import org.noroomattheinn.tesla.Tesla;
+
+/**
+ * GeocodeCache: A ReverseGeocoder that remembers the addresses returned by
+ * another ReverseGeocoder. A lookup hits if any cached location is within
+ * the cache radius, so the slightly different coordinates a car reports each
+ * time it parks in the same place all share one entry. If several are, the
+ * nearest one is used.
+ *
+ * The default radius of 10m is about the GPS error of a parked car, so it
+ * absorbs that jitter while staying smaller than the frontage of most lots.
+ * Locations further apart than the radius, like neighboring houses or two
+ * sides of a street, are looked up and cached separately.
+ *
+ * Locations are bucketed into cells about one radius on a side, keyed by a
+ * long built from the cell's row and column, and a lookup examines the cell
+ * containing the location and its eight neighbors. Each cell holds up to
+ * MaxPerCell locations, replacing the oldest when it is full. The cells are
+ * kept in a ConcurrentCache, whose W-TinyLFU policy decides which to keep:
+ * the handful of places a car visits every day stay cached even when trips
+ * pass through many places once.
+ *
+ * The cache may be saved to and loaded from a file so that it survives
+ * restarts. Hits, misses, and evictions are counted in Metrics.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class GeocodeCache implements ReverseGeocoder {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final int DefaultCapacity = 10000;
+    public static final double DefaultRadius = 10;          // meters
+    public static final int MaxPerCell = 4;
+
+    public static final String Requests = "tesla_geocode_cache_requests_total";
+    public static final String Evictions = "tesla_geocode_cache_evictions_total";
+
+    private static final int Magic = 0x54474331;    // "TGC1"
+    private static final double EarthRadius = 6371000;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final ReverseGeocoder source;
+    private final int capacity;
+    private final double radius;
+    private final double cellDegrees;
+    private final ConcurrentCache<Long,Place[]> places;    // Oldest first
+
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final Metrics.Counter hitCounter, missCounter, evictionCounter;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    public GeocodeCache(ReverseGeocoder source) {
+        this(source, DefaultCapacity, DefaultRadius);
+    }
+
+    /**
+     * Create a cache
+     * @param source    The ReverseGeocoder to ask on a miss, or null if
+     *                  addresses will only be put() into the cache
+     * @param capacity  The maximum number of cells to remember
+     * @param radius    Locations within this many meters share an entry
+     */
+    public GeocodeCache(ReverseGeocoder source, int capacity, double radius) {
+        this.source = source;
+        this.capacity = Math.max(2, capacity);
+        this.radius = radius;
+        this.cellDegrees = Math.toDegrees(Math.max(radius, 1) / EarthRadius);
+        Metrics m = Metrics.get();
+        hitCounter = m.counter(Requests, "result", "hit");
+        missCounter = m.counter(Requests, "result", "miss");
+        evictionCounter = m.counter(Evictions);
+        this.places = new ConcurrentCache<Long,Place[]>(this.capacity).setRemovalListener(
+            new ConcurrentCache.RemovalListener<Long,Place[]>() {
+                @Override public void removed(Long key, Place[] p, ConcurrentCache.Cause cause) {
+                    if (cause == ConcurrentCache.Cause.Size) {
+                        evictions.incrementAndGet();
+                        evictionCounter.inc();
+                    }
+                }
+            });
+    }
+
+    public ReverseGeocoder getSource() { return source; }
+    public int getCapacity() { return capacity; }
+    public double getRadius() { return radius; }
+    public int size() { return places.size(); }
+
+    @Override public String addressFor(double lat, double lng) {
+        String address = get(lat, lng);
+        if (address == null && source != null) {
+            address = source.addressFor(lat, lng);
+            if (address != null) put(lat, lng, address);
+        }
+        return address;
+    }
+
+    /**
+     * Return the cached address of a location without asking the source
+     * @param lat   The latitude in degrees
+     * @param lng   The longitude in degrees
+     * @return      The address of the nearest cached location within the
+     *              radius, or null if there is none
+     */
+    public String get(double lat, double lng) {
+        long nearestKey = 0;
+        Place nearest = null;
+        double nearestDistance = radius;
+        int row = row(lat);
+        for (int r = row - 1; r <= row + 1; r++) {
+            int col = col(r, lng);
+            for (int c = col - 1; c <= col + 1; c++) {
+                long key = key(r, c);
+                Place[] cell = places.getIfPresentQuietly(key);
+                if (cell == null) continue;
+                for (Place p : cell) {
+                    double d = GeoUtils.distance(p.lat, p.lng, lat, lng);
+                    if (d <= nearestDistance) {
+                        nearestKey = key; nearest = p; nearestDistance = d;
+                    }
+                }
+            }
+        }
+        if (nearest == null) {
+            misses.incrementAndGet();
+            missCounter.inc();
+            return null;
+        }
+        hits.incrementAndGet();
+        hitCounter.inc();
+        places.getIfPresent(nearestKey);        // Record the use with the policy
+        return nearest.address;
+    }
+
+    /**
+     * Add the address of a location to the cache. It replaces a location
+     * of the same cell that is within the radius, if there is one.
+     * @param lat       The latitude in degrees
+     * @param lng       The longitude in degrees
+     * @param address   The address
+     */
+    public void put(double lat, double lng, String address) {
+        add(new Place(lat, lng, address), true);
+    }
+
+    public void clear() { places.invalidateAll(); }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+
+    public double getHitRate() {
+        long h = hits.get(), total = h + misses.get();
+        return total == 0 ? 0 : (double)h / total;
+    }
+
+    /**
+     * Save the cache, most valuable entries first
+     * @param file  The file to write
+     * @throws IOException  If the file can't be written
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        Map<Long,Place[]> hottest = places.hottest(capacity);
+        int count = 0;
+        for (Place[] cell : hottest.values()) { count += cell.length; }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(Magic);
+            out.writeInt(count);
+            for (Place[] cell : hottest.values()) {
+                for (int i = cell.length - 1; i >= 0; i--) {    // Newest first
+                    out.writeDouble(cell[i].lat);
+                    out.writeDouble(cell[i].lng);
+                    out.writeUTF(cell[i].address);
+                }
+            }
+        }
+        if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+            throw new IOException("Couldn't replace " + file);
+        }
+    }
+
+    /**
+     * Load entries saved by save(). Entries beyond the capacity, which are
+     * the least valuable ones, are dropped, as are entries within the radius
+     * of a location already in the cache.
+     * @param file  The file to read
+     * @return      The number of entries loaded
+     * @throws IOException  If the file can't be read
+     */
+    public int load(File file) throws IOException {
+        List<Place> saved = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != Magic) throw new IOException("Not a geocode cache: " + file);
+            int count = in.readInt();
+            for (int i = 0; i < count && saved.size() < capacity * MaxPerCell; i++) {
+                double lat = in.readDouble(), lng = in.readDouble();
+                saved.add(new Place(lat, lng, in.readUTF()));
+            }
+        } catch (EOFException e) {
+            Tesla.logger.warning("Geocode cache file was truncated: " + file);
+        }
+        
+        // Least valuable first, so the most valuable are the most recently
+        // used. Locations already in the cache are kept.
+        int loaded = 0;
+        for (int i = saved.size() - 1; i >= 0; i--) {
+            if (add(saved.get(i), false)) loaded++;
+        }
+        return loaded;
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: cells
+ *
+ *----------------------------------------------------------------------------*/
+
+    private int row(double lat) {
+        return (int)Math.floor(lat / cellDegrees);
+    }
+
+    // Columns are narrower in degrees away from the equator so that a cell
+    // is about one radius wide at any latitude
+    private int col(int row, double lng) {
+        double cos = Math.cos(Math.toRadians((row + 0.5) * cellDegrees));
+        return (int)Math.floor(lng * Math.max(cos, 0.01) / cellDegrees);
+    }
+
+    private static long key(int row, int col) {
+        return ((long)row << 32) | (col & 0xffffffffL);
+    }
+
+    // Add a place to its cell, dropping the cell's oldest place if it is
+    // full. A place of the cell within the radius of the new one is replaced,
+    // or if replace is false the new place isn't added. Cells are updated
+    // one at a time so concurrent puts into a cell don't lose each other.
+    private synchronized boolean add(Place p, boolean replace) {
+        int row = row(p.lat);
+        long key = key(row, col(row, p.lng));
+        Place[] cell = places.getIfPresentQuietly(key);
+        List<Place> updated = new ArrayList<>(MaxPerCell);
+        if (cell != null) {
+            for (Place q : cell) {
+                if (GeoUtils.distance(q.lat, q.lng, p.lat, p.lng) > radius) updated.add(q);
+                else if (!replace) return false;
+            }
+        }
+        while (updated.size() >= MaxPerCell) updated.remove(0);
+        updated.add(p);
+        places.put(key, updated.toArray(new Place[updated.size()]));
+        return true;
+    }
+
+    // A cached location and its address. Entries are replaced as a whole so
+    // a reader never sees the address of one location with the coordinates
+    // of another.
+    private static final class Place {
+        final double lat, lng;
+        final String address;
+
+        Place(double lat, double lng, String address) {
+            this.lat = lat; this.lng = lng; this.address = address;
+        }
+    }
+}
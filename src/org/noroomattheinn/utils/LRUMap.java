@@ -13,7 +13,10 @@ import java.util.Map;
  * examples of this floating around on the net.
  *
  * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ * @deprecated Even get() modifies the map, so every access must be locked.
+ * Use ConcurrentCache.
  */
+@Deprecated
 public class LRUMap<K,V> extends LinkedHashMap<K,V> {
     private final int maxEntries;
 
@@ -0,0 +1,312 @@
+/*
+ * LocalGeocoder.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * LocalGeocoder: A ReverseGeocoder that answers from a prebuilt index of
+ * places on the local disk instead of a network service. The index is memory
+ * mapped and laid out as an implicit k-d tree, so finding the place nearest
+ * to a location reads a few dozen records and takes microseconds.
+ *
+ * An index is built once from an open dataset with build() or by running
+ * this class: java org.noroomattheinn.utils.LocalGeocoder source index
+ * The source may be a GeoNames dump (e.g. cities1000.txt or allCountries.txt
+ * from download.geonames.org), whose places are labeled "name, country", or
+ * a CSV file of "lat,lng,label" lines, e.g. addresses exported from
+ * OpenAddresses.
+ *
+ * Index layout (little endian):
+ *     int magic, int version, int count, int reserved, long stringsOffset, long stringsLength
+ *     count x (int lat, int lng, int labelOffset)   Coordinates in microdegrees
+ *     The labels, each an unsigned short length followed by UTF-8 bytes
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class LocalGeocoder implements ReverseGeocoder {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    public static final double DefaultMaxDistance = 5000;   // meters
+
+    private static final int Magic = 0x54474931;    // "TGI1"
+    private static final int Version = 1;
+    private static final int HeaderSize = 32;
+    private static final int RecordSize = 12;
+    private static final ByteOrder Order = ByteOrder.LITTLE_ENDIAN;
+    private static final double MetersPerMicrodegree = 6371000 * Math.PI / 180 / 1e6;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final MappedByteBuffer index;
+    private final int count;
+    private final int stringsOffset;
+    private volatile double maxDistance = DefaultMaxDistance;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Open an index built by build()
+     * @param file  The index file
+     * @throws IOException  If the file can't be mapped or isn't an index
+     */
+    public LocalGeocoder(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Geocoding index too large: " + file);
+            }
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        index.order(Order);
+        if (index.limit() < HeaderSize || index.getInt(0) != Magic || index.getInt(4) != Version) {
+            throw new IOException("Not a geocoding index: " + file);
+        }
+        count = index.getInt(8);
+        stringsOffset = (int)index.getLong(16);
+    }
+
+    /**
+     * Places farther than this from a location aren't returned
+     * @param meters    The maximum distance in meters
+     * @return          this LocalGeocoder
+     */
+    public LocalGeocoder setMaxDistance(double meters) { maxDistance = meters; return this; }
+
+    public int getCount() { return count; }
+
+    @Override public String addressFor(double lat, double lng) {
+        int i = nearestIndex(lat, lng);
+        return (i < 0) ? null : labelAt(i);
+    }
+
+    /**
+     * Return the index of the place nearest to a location
+     * @param lat   The latitude in degrees
+     * @param lng   The longitude in degrees
+     * @return      The index of the place or -1 if there is none within
+     *              the maximum distance
+     */
+    public int nearestIndex(double lat, double lng) {
+        if (count == 0) return -1;
+        Search s = new Search(lat, lng);
+        search(s, 0, count, 0);
+        double meters = Math.sqrt(s.best) * MetersPerMicrodegree;
+        return (meters <= maxDistance) ? s.bestIndex : -1;
+    }
+
+    public double latAt(int i) { return index.getInt(HeaderSize + i * RecordSize) / 1e6; }
+    public double lngAt(int i) { return index.getInt(HeaderSize + i * RecordSize + 4) / 1e6; }
+
+    public String labelAt(int i) {
+        int offset = stringsOffset + index.getInt(HeaderSize + i * RecordSize + 8);
+        int length = index.getShort(offset) & 0xffff;
+        byte[] bytes = new byte[length];
+        for (int b = 0; b < length; b++) bytes[b] = index.get(offset + 2 + b);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build an index from a GeoNames dump or a "lat,lng,label" CSV file
+     * @param source    The dataset
+     * @param target    The index file to create
+     * @return          The number of places in the index
+     * @throws IOException  If the dataset can't be read or the index written
+     */
+    public static int build(File source, File target) throws IOException {
+        Places places = new Places();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                new FileInputStream(source), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) { places.parse(line); }
+        }
+
+        arrange(places, 0, places.n, 0);
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        int[] labelOffsets = new int[places.n];
+        for (int i = 0; i < places.n; i++) {
+            byte[] label = places.labels[places.order[i]].getBytes(StandardCharsets.UTF_8);
+            if (label.length > 0xffff) label = Arrays.copyOf(label, 0xffff);
+            labelOffsets[i] = strings.size();
+            strings.write(label.length & 0xff);
+            strings.write((label.length >>> 8) & 0xff);
+            strings.write(label);
+        }
+
+        long recordsEnd = HeaderSize + (long)places.n * RecordSize;
+        ByteBuffer buf = ByteBuffer.allocate(HeaderSize).order(Order);
+        buf.putInt(Magic).putInt(Version).putInt(places.n).putInt(0);
+        buf.putLong(recordsEnd).putLong(strings.size());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(target), 65536))) {
+            out.write(buf.array());
+            ByteBuffer record = ByteBuffer.allocate(RecordSize).order(Order);
+            for (int i = 0; i < places.n; i++) {
+                record.clear();
+                record.putInt(places.lats[i]).putInt(places.lngs[i]).putInt(labelOffsets[i]);
+                out.write(record.array());
+            }
+            strings.writeTo(out);
+        }
+        return places.n;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: LocalGeocoder source index");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        int n = build(new File(args[0]), new File(args[1]));
+        System.out.format("Indexed %d places in %dms%n", n, System.currentTimeMillis() - start);
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: nearest neighbor search
+ *
+ *----------------------------------------------------------------------------*/
+
+    // The search state. Distances are in (scaled) microdegrees squared.
+    private static final class Search {
+        final double lat, lng, lngScale;
+        double best = Double.MAX_VALUE;
+        int bestIndex = -1;
+
+        Search(double lat, double lng) {
+            this.lat = lat * 1e6;
+            this.lng = lng * 1e6;
+            this.lngScale = Math.cos(Math.toRadians(lat));
+        }
+    }
+
+    // The median of each range is the node; ranges alternate lat and lng
+    private void search(Search s, int lo, int hi, int depth) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        int at = HeaderSize + mid * RecordSize;
+        double dLat = s.lat - index.getInt(at);
+        double dLng = (s.lng - index.getInt(at + 4)) * s.lngScale;
+        double d = dLat * dLat + dLng * dLng;
+        if (d < s.best) { s.best = d; s.bestIndex = mid; }
+
+        double split = ((depth & 1) == 0) ? dLat : dLng;
+        if (split < 0) {
+            search(s, lo, mid, depth + 1);
+            if (split * split < s.best) search(s, mid + 1, hi, depth + 1);
+        } else {
+            search(s, mid + 1, hi, depth + 1);
+            if (split * split < s.best) search(s, lo, mid, depth + 1);
+        }
+    }
+
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods: building the index
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final class Places {
+        int n = 0;
+        int[] lats = new int[1024], lngs = new int[1024], order = new int[1024];
+        String[] labels = new String[1024];
+
+        void parse(String line) {
+            String[] f = line.split("\t", -1);
+            double lat, lng;
+            String label;
+            try {
+                if (f.length >= 9) {            // GeoNames
+                    lat = Double.parseDouble(f[4]);
+                    lng = Double.parseDouble(f[5]);
+                    label = f[8].isEmpty() ? f[1] : f[1] + ", " + f[8];
+                } else {                        // lat,lng,label
+                    f = line.split(",", 3);
+                    if (f.length < 3) return;
+                    lat = Double.parseDouble(f[0].trim());
+                    lng = Double.parseDouble(f[1].trim());
+                    label = f[2].trim();
+                }
+            } catch (NumberFormatException e) {
+                return;                         // A header or malformed line
+            }
+            if (n == lats.length) {
+                lats = Arrays.copyOf(lats, n * 2);
+                lngs = Arrays.copyOf(lngs, n * 2);
+                order = Arrays.copyOf(order, n * 2);
+                labels = Arrays.copyOf(labels, n * 2);
+            }
+            lats[n] = (int)Math.round(lat * 1e6);
+            lngs[n] = (int)Math.round(lng * 1e6);
+            labels[n] = label;
+            order[n] = n;
+            n++;
+        }
+
+        int key(int i, int depth) { return ((depth & 1) == 0) ? lats[i] : lngs[i]; }
+
+        void swap(int i, int j) {
+            int t = lats[i]; lats[i] = lats[j]; lats[j] = t;
+            t = lngs[i]; lngs[i] = lngs[j]; lngs[j] = t;
+            t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+    }
+
+    // Arrange places[lo, hi) into an implicit k-d tree
+    private static void arrange(Places p, int lo, int hi, int depth) {
+        if (hi - lo <= 1) return;
+        int mid = (lo + hi) >>> 1;
+        select(p, lo, hi - 1, mid, depth);
+        arrange(p, lo, mid, depth + 1);
+        arrange(p, mid + 1, hi, depth + 1);
+    }
+
+    // Quickselect: put the k'th smallest key of [left, right] at k
+    private static void select(Places p, int left, int right, int k, int depth) {
+        while (left < right) {
+            int pivot = p.key((left + right) >>> 1, depth);
+            int i = left, j = right;
+            while (i <= j) {
+                while (p.key(i, depth) < pivot) i++;
+                while (p.key(j, depth) > pivot) j--;
+                if (i <= j) { p.swap(i, j); i++; j--; }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+}
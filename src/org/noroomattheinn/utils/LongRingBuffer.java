@@ -0,0 +1,94 @@
+/*
+ * LongRingBuffer.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LongRingBuffer: A fixed capacity ring buffer of longs, e.g. timestamps,
+ * that doesn't box its values. Inserts and reads never take a lock.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public class LongRingBuffer extends RingSequence {
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    private final AtomicLongArray data;
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    /**
+     * Create a LongRingBuffer
+     * @param capacity  The number of values to keep. It is rounded up to a
+     *                  power of two.
+     */
+    public LongRingBuffer(int capacity) {
+        super(capacity);
+        data = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * Insert a value, replacing the oldest value if the buffer is full
+     * @param value The value
+     */
+    public void insert(long value) {
+        long seq = claim();
+        if (seq < 0) return;
+        data.set((int)seq & mask, value);
+        publish(seq);
+    }
+
+    /**
+     * Return the value n inserts before the most recent one
+     * @param n The number of values back; 0 is the most recent
+     * @return  The value
+     * @throws NoSuchElementException   If the buffer doesn't hold that value
+     */
+    public long peekBack(int n) {
+        for (;;) {
+            long seq = sequenceBack(n);
+            if (seq < 0) throw new NoSuchElementException();
+            if (await(seq)) {
+                long value = data.get((int)seq & mask);
+                if (valid(seq)) return value;
+            }
+            // Newer values replaced it while we looked; try again
+        }
+    }
+
+    public long peekLast() { return peekBack(0); }
+
+    /**
+     * Copy the most recent values, oldest first. The values copied were all
+     * in the buffer at the same moment.
+     * @param dest  Where to put the values. At most dest.length are copied.
+     * @return      The number of values copied
+     */
+    public int snapshot(long[] dest) {
+        for (;;) {
+            long end = end(), start = Math.max(oldest(), end - dest.length);
+            int n = 0;
+            for (long seq = start; seq < end; seq++) {
+                if (!await(seq)) break;
+                dest[n] = data.get((int)seq & mask);
+                if (!valid(seq)) break;
+                n++;
+            }
+            if (n == end - start) return n;
+        }
+    }
+}
@@ -112,19 +112,45 @@ public class RestHelper {
     }
         
     public static class Throttle extends Resty.Option {
-        private CircularBuffer<Pair<Long,String>> timestamps = new CircularBuffer<>(200);
-        private List<Pair<Integer,Integer>> rateLimits;
+        private final LongRingBuffer timestamps;
+        private final List<Pair<Integer,Integer>> rateLimits;
+        private volatile Listener listener = null;
+        
+        /**
+         * Listener: Informed each time a request is admitted by the Throttle
+         */
+        public interface Listener {
+            /**
+             * Called once a request is allowed to proceed
+             * @param endpoint      The URL of the request
+             * @param waitMillis    How long the request was held by the
+             *                      Throttle. 0 if it was not delayed.
+             */
+            void admitted(String endpoint, long waitMillis);
+        }
         
         public Throttle(List<Pair<Integer,Integer>> rateLimits) {
             this.rateLimits = rateLimits;
+            int capacity = 200;
+            for (Pair<Integer,Integer> limit : rateLimits) {
+                capacity = Math.max(capacity, limit.item1);
+            }
+            this.timestamps = new LongRingBuffer(capacity);
         }
         
+        public void setListener(Listener listener) { this.listener = listener; }
+        
         @Override public void apply(URLConnection aConnection) {
             String endpoint = aConnection.getURL().toExternalForm();
-            timestamps.insert(new Pair<>(System.currentTimeMillis(), endpoint));
+            long start = System.currentTimeMillis();
+            Object event = FlightEvents.begin(FlightEvents.Kind.ThrottleWait);
+            timestamps.insert(start);
             while (rateLimit(endpoint)) {
                 Utils.sleep(5 * 1000);
             }
+            FlightEvents.commit(event, endpoint, null, -1, 0);
+            Listener l = listener;
+            if (l != null) l.admitted(endpoint, System.currentTimeMillis() - start);
         }
         
         private boolean rateLimit(String endpoint) {
@@ -134,10 +160,9 @@ public class RestHelper {
             for (Pair<Integer,Integer> limit : rateLimits) {
                 int count = limit.item1;
                 int seconds = limit.item2;
-                if (size < count) return false;
+                if (size < count) continue;
 
-                Pair<Long,String> p = timestamps.peekAt(size - count);
-                long nthRequest = p.item1;
+                long nthRequest = timestamps.peekBack(count - 1);
 
                 if ((now - nthRequest) < seconds * 1000) {
                     logger.log(
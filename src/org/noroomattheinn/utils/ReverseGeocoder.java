@@ -0,0 +1,26 @@
+/*
+ * ReverseGeocoder.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+/**
+ * ReverseGeocoder: Turns a location into a human readable address or place
+ * name. GeoUtils.getAddrForLatLong() uses whichever ReverseGeocoder has been
+ * installed with GeoUtils.setReverseGeocoder(). Implementations must be
+ * thread safe.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+public interface ReverseGeocoder {
+    /**
+     * Return the address of a location
+     * @param lat   The latitude in degrees
+     * @param lng   The longitude in degrees
+     * @return      The address or null if it isn't known
+     */
+    String addressFor(double lat, double lng);
+}
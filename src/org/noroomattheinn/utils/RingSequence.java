@@ -0,0 +1,139 @@
+/*
+ * RingSequence.java - Copyright(c) 2026 Joe Pasqua
+ * Provided under the MIT License. See the LICENSE file for details.
+ * Created: Oct 19, 2026
+ */
+
+package org.noroomattheinn.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RingSequence: The sequencing used by LongRingBuffer. Every insert is numbered, and each slot records the
+ * number of the value it holds: negated while the value is being written.
+ * A reader checks the slot's number before and after reading a value, so it
+ * never returns a value that was overwritten while it was reading. Only the
+ * writer that marked a slot stores into it: an insert waits if the insert
+ * capacity values before it is still writing the same slot, and an insert
+ * that has already been lapped by a newer one isn't written at all. Values
+ * are kept in atomic arrays so those checks are ordered with the reads and
+ * writes of the values themselves. Nothing takes a lock.
+ * <P>
+ * A slot is marked only for the single store of its value, so an insert or
+ * read that finds it marked normally waits a few spins. If the writer is
+ * descheduled in that window the waiter yields and then parks briefly
+ * between checks rather than spinning until the writer runs again.
+ *
+ * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
+ */
+
+abstract class RingSequence {
+/*------------------------------------------------------------------------------
+ *
+ * Constants and Enums
+ *
+ *----------------------------------------------------------------------------*/
+
+    private static final int MaxYields = 64;
+    private static final long ParkNanos = 10 * 1000;
+
+/*------------------------------------------------------------------------------
+ *
+ * Internal State
+ *
+ *----------------------------------------------------------------------------*/
+
+    final int capacity;
+    final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray published;     // The sequence + 1 each slot holds
+
+/*==============================================================================
+ * -------                                                               -------
+ * -------              Public Interface To This Class                   -------
+ * -------                                                               -------
+ *============================================================================*/
+
+    RingSequence(int capacity) {
+        int c = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.capacity = c;
+        this.mask = c - 1;
+        this.published = new AtomicLongArray(c);
+    }
+
+    /**
+     * Returns the capacity, which is the requested capacity rounded up to a
+     * power of two
+     * @return  The capacity
+     */
+    public int capacity() { return capacity; }
+
+    /**
+     * Returns the number of values in the buffer, which never exceeds the
+     * capacity
+     * @return  The number of values
+     */
+    public int size() { return (int)Math.min(next.get(), capacity); }
+
+    /**
+     * Returns the number of values ever inserted
+     * @return  The number of values
+     */
+    public long count() { return next.get(); }
+
+/*------------------------------------------------------------------------------
+ *
+ * Methods for the subclasses
+ *
+ *----------------------------------------------------------------------------*/
+
+    // Claim the next sequence and mark its slot as being written. Returns -1
+    // if a newer insert already has the slot, in which case the value must
+    // not be written: it would have been overwritten anyway.
+    final long claim() {
+        long seq = next.getAndIncrement();
+        int slot = (int)seq & mask;
+        for (int spins = 0; ; ) {
+            long p = published.get(slot);
+            if (Math.abs(p) > seq + 1) return -1;       // Lapped
+            if (p < 0) { pause(spins++); continue; }    // An older insert is writing
+            if (published.compareAndSet(slot, p, -(seq + 1))) return seq;
+        }
+    }
+
+    // Only the claiming writer can be in the slot, so a plain set is enough
+    final void publish(long seq) { published.set((int)seq & mask, seq + 1); }
+
+    // The sequence of the value n back from the newest, or -1 if there isn't one
+    final long sequenceBack(int n) {
+        long seq = next.get() - 1 - n;
+        return (n < 0 || n >= capacity || seq < 0) ? -1 : seq;
+    }
+
+    // The sequence of the oldest value still in the buffer
+    final long oldest() { return Math.max(0, next.get() - capacity); }
+
+    final long end() { return next.get(); }
+
+    // Wait until seq has been written. Returns false if it has been overwritten.
+    final boolean await(long seq) {
+        int slot = (int)seq & mask;
+        for (int spins = 0; ; spins++) {
+            long p = published.get(slot);
+            if (p == seq + 1) return true;
+            if (Math.abs(p) > seq + 1 || next.get() - seq > capacity) return false;
+            pause(spins);                       // A writer is in the middle of it
+        }
+    }
+
+    // Whether seq is still in its slot after its value was read
+    final boolean valid(long seq) { return published.get((int)seq & mask) == seq + 1; }
+
+    // Back off while another thread finishes with a slot
+    private static void pause(int spins) {
+        if (spins < MaxYields) Thread.yield();
+        else LockSupport.parkNanos(ParkNanos);
+    }
+}
@@ -5,8 +5,15 @@
  */
 package org.noroomattheinn.utils;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * TrackedObject is like an observable object with a listener. Wrap an object of
@@ -14,6 +21,14 @@ import java.util.List;
  * called any time the object is set, EVEN if it is set to the same object or an
  * equal() object. A tracker is like a listener except it is not passed any state.
  * 
+ * A TrackedObject may be used from any number of threads. By default trackers
+ * run on the thread that sets the value. If a dispatcher is installed with
+ * setDispatcher() they run there instead, so a slow tracker doesn't hold up
+ * the setter. Dispatched trackers coalesce: a tracker that is still waiting to
+ * run or is running when the value changes again runs once more afterward,
+ * not once per change, and it sees the latest value when it calls get().
+ * A tracker never runs on two threads at once.
+ * 
  * @author Joe Pasqua <joe at NoRoomAtTheInn dot org>
  */
 public class TrackedObject<T> {
@@ -24,9 +39,11 @@ public class TrackedObject<T> {
  * 
  *----------------------------------------------------------------------------*/
     
-    private final List<Runnable> trackers;
-    private T val;
-    private long lastSet = 0;
+    private static final Logger logger = Logger.getLogger(TrackedObject.class.getName());
+    
+    private final List<Tracker> trackers;
+    private final AtomicReference<Value<T>> current;
+    private volatile ExecutorService dispatcher = null;
     
 /*==============================================================================
  * -------                                                               -------
@@ -39,16 +56,15 @@ public class TrackedObject<T> {
      * @param initialVal    The initial value of the TrackedObject
      */
     public TrackedObject(T initialVal) {
-        trackers = new ArrayList<>(4);
-        val = initialVal;
-        lastSet = System.currentTimeMillis();
+        trackers = new CopyOnWriteArrayList<>();
+        current = new AtomicReference<>(new Value<>(initialVal));
     }
 
     /**
      * Return the current value of the TrackedObject
      * @return  The current value
      */
-    public T get() { return val; }
+    public T get() { return current.get().val; }
     
     /**
      * Set the value of the TrackedObject and call all of the trackers.
@@ -58,42 +74,116 @@ public class TrackedObject<T> {
      * @param newVal    The new value for the TrackedObject
      */
     public void set(T newVal) {
-        this.val = newVal;
-        this.lastSet = System.currentTimeMillis();
-        for (Runnable tracker : trackers) {
-            tracker.run();
-        }
+        current.set(new Value<>(newVal));
+        notifyTrackers();
     }
     
     /**
      * Update the value of the TrackedObject if and only if the old and new
      * values are different. If they are, then this is equivalent to calling
-     * set(). If the values are the same object, then this is a no-op. No
-     * trackers will be called.
+     * set(). If the values are equal(), then this is a no-op. No trackers
+     * will be called.
      * @param newVal    The new value for the TrackedObject
      */
-    public void update(T newVal) { if (val != newVal)  set(newVal); }
+    public void update(T newVal) {
+        Value<T> next = null;
+        for (;;) {
+            Value<T> old = current.get();
+            if (Objects.equals(old.val, newVal)) return;
+            if (next == null) next = new Value<>(newVal);
+            if (current.compareAndSet(old, next)) break;
+        }
+        notifyTrackers();
+    }
 
     /**
      * Reset the value of the TrackedObject. This is like starting over with
      * the object, so no trackers are called.
      * @param newVal    The new value for the TrackedObject
      */
-    public void reset(T newVal) { 
-        this.val = newVal;
-        this.lastSet = System.currentTimeMillis();
-    }
+    public void reset(T newVal) { current.set(new Value<>(newVal)); }
 
     /**
      * Add a tracker to be called whenever the value is set or updated.
      * @param r         The runnable to call
      */
-    public void addTracker(Runnable r) { trackers.add(r); }
+    public void addTracker(Runnable r) { trackers.add(new Tracker(r)); }
+    
+    /**
+     * Remove a tracker added by addTracker()
+     * @param r         The runnable to remove
+     */
+    public void removeTracker(Runnable r) {
+        for (Tracker t : trackers) {
+            if (t.runnable == r) { trackers.remove(t); return; }
+        }
+    }
+    
+    /**
+     * Run trackers on an ExecutorService rather than on the setter's thread
+     * @param dispatcher    The ExecutorService, or null to run trackers on
+     *                      the setter's thread
+     * @return              this TrackedObject
+     */
+    public TrackedObject<T> setDispatcher(ExecutorService dispatcher) {
+        this.dispatcher = dispatcher;
+        return this;
+    }
     
     /**
      * Returns the time at which the value of the TrackedObject was last set
      * @return  The last set time
      */
-    public long lastSet() { return lastSet; }
-}
+    public long lastSet() { return current.get().time; }
+    
+/*------------------------------------------------------------------------------
+ *
+ * Private Utility Methods and Classes
+ * 
+ *----------------------------------------------------------------------------*/
     
+    private void notifyTrackers() {
+        ExecutorService d = dispatcher;
+        for (Tracker t : trackers) {
+            if (d == null) t.runnable.run();
+            else t.request(d);
+        }
+    }
+    
+    // A value and when it was set, published together
+    private static final class Value<T> {
+        final T val;
+        final long time;
+        
+        Value(T val) { this.val = val; this.time = System.currentTimeMillis(); }
+    }
+    
+    private static final class Tracker implements Runnable {
+        final Runnable runnable;
+        final AtomicInteger requests = new AtomicInteger();  // Changes not yet seen
+        
+        Tracker(Runnable runnable) { this.runnable = runnable; }
+        
+        // Only the first request of a burst schedules a run
+        void request(ExecutorService d) {
+            if (requests.getAndIncrement() != 0) return;
+            try {
+                d.execute(this);
+            } catch (RejectedExecutionException e) {
+                run();                          // The dispatcher has been shut down
+            }
+        }
+        
+        @Override public void run() {
+            int seen;
+            do {
+                seen = requests.get();
+                try {
+                    runnable.run();
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Tracker failed", e);
+                }
+            } while (!requests.compareAndSet(seen, 0));
+        }
+    }
+}
@@ -144,11 +144,11 @@ public class Utils {
  *----------------------------------------------------------------------------*/
     
     /*
-     * Returns a member of an Enumeration corresponding to a String value. This
-     * is based on <code>Enum.valueof()</code>, but is wrapped with a try block
-     * to deal with the case where the String value does not correspond to a
-     * value of the Enum. In this case the Enum value "Unknown" is used. So,
-     * to use this method safely, the Enum type must have Unknown as an option.
+     * Returns a member of an Enumeration corresponding to a String value. If
+     * the String value does not correspond to a value of the Enum, the Enum
+     * value "Unknown" is used. So, to use this method safely, the Enum type
+     * must have Unknown as an option. The lookup is done by the Enum's
+     * EnumLookup, which doesn't throw, and logs each unknown value only once.
      * <P>
      * This code is a little weird because it is both parameterized by the Enum
      * Type and the class is alo passed in. This is required to handle some
@@ -160,13 +160,7 @@ public class Utils {
      *                  to the specified prefix
      */
     public static <T extends Enum<T>> T stringToEnum(Class<T> eClass, String val) {
-        try {
-            if (val == null || val.isEmpty() || val.equals("null")) { val = "Unknown"; }
-            return Enum.valueOf(eClass, val);
-        } catch (Exception e) {
-            logger.info("Problem converting String (" + val + ") to Enum: " + e);
-            return Enum.valueOf(eClass, "Unknown");
-        }
+        return EnumLookup.of(eClass).lookup(val);
     }
     
     /**